@@ -51,8 +51,16 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import com.sleepycat.db.Database;
+import com.sleepycat.db.DatabaseConfig;
+import com.sleepycat.db.DatabaseEntry;
+import com.sleepycat.db.DatabaseException;
+import com.sleepycat.db.DatabaseType;
 import com.sleepycat.db.Environment;
 import com.sleepycat.db.EnvironmentConfig;
+import com.sleepycat.db.LockMode;
+import com.sleepycat.db.OperationStatus;
+import com.sleepycat.db.Transaction;
 import com.sleepycat.dbxml.XmlContainer;
 import com.sleepycat.dbxml.XmlContainerConfig;
 import com.sleepycat.dbxml.XmlDocument;
@@ -120,6 +128,14 @@ public class DbXmlPolicyDataManager
     private static final String XACML_RESOURCE_ID =
             "urn:oasis:names:tc:xacml:1.0:resource:resource-id";
 
+    /**
+     * The database, in the same environment as the container, that holds the
+     * version of the policy store.
+     */
+    private static final String VERSION_DATABASE = "policy-version.db";
+
+    private static final String VERSION_KEY = "version";
+
     private String DB_HOME = null;
 
     private String CONTAINER = null;
@@ -136,11 +152,13 @@ public class DbXmlPolicyDataManager
 
     private Environment env = null;
 
+    private Database versionDb = null;
+
     private Map<String, XmlQueryExpression> queries = null;
 
     private XmlQueryExpression[] searchQueries = null;
 
-    private long lastUpdate;
+    private volatile long lastUpdate;
 
     /**
      * The default constructor for DbXmlPolicyDataManager. This constructor
@@ -229,6 +247,16 @@ public class DbXmlPolicyDataManager
                             manager.openContainer(txn, CONTAINER, containerCfg);
                 }
 
+                DatabaseConfig versionCfg = new DatabaseConfig();
+                versionCfg.setAllowCreate(true);
+                versionCfg.setTransactional(true);
+                versionCfg.setType(DatabaseType.BTREE);
+                versionDb =
+                        env.openDatabase(txn.getTransaction(),
+                                         VERSION_DATABASE,
+                                         null,
+                                         versionCfg);
+
                 txn.commit();
                 log.info("Opened Container: " + CONTAINER);
 
@@ -319,6 +347,7 @@ public class DbXmlPolicyDataManager
                 docName = doc.getName();
                 txn = manager.createTransaction();
                 container.putDocument(txn, doc, updateContext);
+                incrementVersion(txn);
                 txn.commit();
                 setLastUpdate(System.currentTimeMillis());
             } catch (XmlException xe) {
@@ -329,6 +358,10 @@ public class DbXmlPolicyDataManager
                 txn.abort();
                 throw new PolicyDataManagerException("Error adding policy: "
                         + xe.getMessage(), xe);
+            } catch (DatabaseException de) {
+                txn.abort();
+                throw new PolicyDataManagerException("Error adding policy: "
+                        + de.getMessage(), de);
             }
         } catch (XmlException xe) {
             throw new PolicyDataManagerException("Error aborting transaction: "
@@ -349,6 +382,7 @@ public class DbXmlPolicyDataManager
             try {
                 txn = manager.createTransaction();
                 container.deleteDocument(txn, name, updateContext);
+                incrementVersion(txn);
                 txn.commit();
                 setLastUpdate(System.currentTimeMillis());
             } catch (XmlException xe) {
@@ -356,6 +390,11 @@ public class DbXmlPolicyDataManager
                 throw new PolicyDataManagerException("Error deleting document: "
                                                              + name,
                                                      xe);
+            } catch (DatabaseException de) {
+                txn.abort();
+                throw new PolicyDataManagerException("Error deleting document: "
+                                                             + name,
+                                                     de);
             }
         } catch (XmlException xe) {
             throw new PolicyDataManagerException("Error aborting transaction: "
@@ -394,6 +433,7 @@ public class DbXmlPolicyDataManager
                 txn = manager.createTransaction();
                 XmlDocument doc = makeDocument(name, newDocument);
                 container.updateDocument(txn, doc, updateContext);
+                incrementVersion(txn);
                 txn.commit();
                 setLastUpdate(System.currentTimeMillis());
             } catch (XmlException xe) {
@@ -401,6 +441,11 @@ public class DbXmlPolicyDataManager
                 throw new PolicyDataManagerException("Error updating document: "
                                                              + name,
                                                      xe);
+            } catch (DatabaseException de) {
+                txn.abort();
+                throw new PolicyDataManagerException("Error updating document: "
+                                                             + name,
+                                                     de);
             }
         } catch (XmlException xe) {
             throw new PolicyDataManagerException("Error aborting transaction: "
@@ -632,6 +677,11 @@ public class DbXmlPolicyDataManager
      */
     private void close() {
         try {
+            if (versionDb != null) {
+                versionDb.close();
+                versionDb = null;
+            }
+
             if (container != null) {
                 container.close();
                 container = null;
@@ -1233,6 +1283,53 @@ public class DbXmlPolicyDataManager
         return lastUpdate;
     }
 
+    /*
+     * (non-Javadoc)
+     * @see melcoe.xacml.pdp.data.PolicyDataManager#getVersion()
+     */
+    public long getVersion() throws PolicyDataManagerException {
+        try {
+            return readVersion(null, LockMode.DEFAULT);
+        } catch (DatabaseException de) {
+            throw new PolicyDataManagerException("Error reading policy store "
+                    + "version: " + de.getMessage(), de);
+        }
+    }
+
+    /**
+     * Increases the version of the policy store, in the transaction that
+     * changes the policies. The version is stored in the database rather than
+     * held in memory, so every PolicyDataManager using the same database sees
+     * changes made through any of them.
+     * 
+     * @param txn
+     *        the transaction changing the policies
+     * @throws DatabaseException
+     */
+    private void incrementVersion(XmlTransaction txn)
+            throws DatabaseException {
+        Transaction dbTxn = txn.getTransaction();
+        long version = readVersion(dbTxn, LockMode.RMW) + 1;
+        versionDb.put(dbTxn, new DatabaseEntry(VERSION_KEY.getBytes()),
+                      new DatabaseEntry(Long.toString(version).getBytes()));
+    }
+
+    private long readVersion(Transaction txn, LockMode lockMode)
+            throws DatabaseException {
+        DatabaseEntry data = new DatabaseEntry();
+        OperationStatus status =
+                versionDb.get(txn,
+                              new DatabaseEntry(VERSION_KEY.getBytes()),
+                              data,
+                              lockMode);
+        if (status != OperationStatus.SUCCESS) {
+            return 0;
+        }
+        return Long.parseLong(new String(data.getData(),
+                                         data.getOffset(),
+                                         data.getSize()));
+    }
+
     /**
      * @param lastUpdate
      *        the lastUpdate to set
@@ -38,6 +38,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -89,7 +90,9 @@ public class FilePolicyDataManager
 
     private Map<String, Map<String, String>> indexMap = null;
 
-    private long lastUpdate;
+    private volatile long lastUpdate;
+
+    private final AtomicLong version = new AtomicLong();
 
     /**
      * The default constructor for DbXmlPolicyDataManager. This constructor
@@ -183,6 +186,7 @@ public class FilePolicyDataManager
         }
 
         setLastUpdate(System.currentTimeMillis());
+        version.incrementAndGet();
 
         return docName;
     }
@@ -210,6 +214,8 @@ public class FilePolicyDataManager
 
         policies.remove(name);
         policyFiles.remove(name);
+        setLastUpdate(System.currentTimeMillis());
+        version.incrementAndGet();
 
         return true;
     }
@@ -377,6 +383,14 @@ public class FilePolicyDataManager
         return lastUpdate;
     }
 
+    /*
+     * (non-Javadoc)
+     * @see melcoe.xacml.pdp.data.PolicyDataManager#getVersion()
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
     /**
      * @param lastUpdate
      *        the lastUpdate to set
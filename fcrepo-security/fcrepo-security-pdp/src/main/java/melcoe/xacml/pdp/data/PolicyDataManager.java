@@ -152,6 +152,18 @@ public interface PolicyDataManager {
      */
     public long getLastUpdate();
 
+    /**
+     * Obtains the version of the policy store. The version is increased every
+     * time a policy is added, updated or deleted, so unlike the last update
+     * time it changes even when two updates happen within the same clock tick.
+     * Where the store is shared, the version reflects changes made through
+     * any PolicyDataManager using it, not only this one.
+     * 
+     * @return the current version of the policy store.
+     * @throws PolicyDataManagerException
+     */
+    public long getVersion() throws PolicyDataManagerException;
+
     /**
      * Searches through the policy store for policies that match the search
      * criteria. Search criteria is passed in through the AttributeBean class.
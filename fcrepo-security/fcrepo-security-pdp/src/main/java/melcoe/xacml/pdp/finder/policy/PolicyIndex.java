@@ -0,0 +1,437 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package melcoe.xacml.pdp.finder.policy;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.log4j.Logger;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import com.sun.xacml.AbstractPolicy;
+import com.sun.xacml.EvaluationCtx;
+import com.sun.xacml.ParsingException;
+import com.sun.xacml.attr.AttributeValue;
+import com.sun.xacml.attr.BagAttribute;
+import com.sun.xacml.cond.EvaluationResult;
+
+/**
+ * The parsed policies from the policy store, indexed by their targets.
+ * <p>
+ * Each policy is parsed once, when it is added. A policy whose target requires
+ * a resource, action or subject attribute to have one of a fixed set of string
+ * values is filed under those values, so it is only returned as a candidate for
+ * requests that carry one of them. All other policies are returned for every
+ * request. The index only narrows the candidates; each candidate must still be
+ * matched against the request.
+ * <p>
+ * An index is built by one thread and is read-only after that, so it may be
+ * shared by any number of requests.
+ */
+public class PolicyIndex {
+
+    private static final Logger log =
+            Logger.getLogger(PolicyIndex.class.getName());
+
+    private static final String STRING_EQUAL =
+            "urn:oasis:names:tc:xacml:1.0:function:string-equal";
+
+    private static final String STRING_TYPE =
+            "http://www.w3.org/2001/XMLSchema#string";
+
+    private static final String ACCESS_SUBJECT =
+            "urn:oasis:names:tc:xacml:1.0:subject-category:access-subject";
+
+    /** The target sections to index on, in order of preference. */
+    private static final String[] SECTIONS =
+            {"Resource", "Action", "Subject"};
+
+    private final long version;
+
+    private final PolicyReader policyReader;
+
+    private final DocumentBuilder builder;
+
+    private final Map<String, Entry> policies = new HashMap<String, Entry>();
+
+    private final Map<String, Entry> unindexed = new HashMap<String, Entry>();
+
+    private final Map<Key, Map<String, List<Entry>>> index =
+            new HashMap<Key, Map<String, List<Entry>>>();
+
+    /**
+     * Creates an empty index.
+     *
+     * @param version
+     *        the version of the policy store that this index reflects
+     * @param policyReader
+     *        used to parse the policies
+     */
+    public PolicyIndex(long version, PolicyReader policyReader) {
+        this.version = version;
+        this.policyReader = policyReader;
+
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setIgnoringComments(true);
+        factory.setNamespaceAware(true);
+        try {
+            builder = factory.newDocumentBuilder();
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to setup index: "
+                    + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the version of the policy store that this index reflects
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the number of policies in the index
+     */
+    public int size() {
+        return policies.size();
+    }
+
+    /**
+     * Parses a policy and adds it to the index. If the previous index holds
+     * the same policy, unchanged, its parsed form is reused.
+     *
+     * @param name
+     *        the name of the policy in the policy store
+     * @param policy
+     *        the policy document
+     * @param previous
+     *        the index that this one replaces, or null
+     * @throws ParsingException
+     *         if the policy could not be parsed
+     */
+    public void add(String name, byte[] policy, PolicyIndex previous)
+            throws ParsingException {
+        Entry entry = null;
+        if (previous != null) {
+            Entry old = previous.policies.get(name);
+            if (old != null && Arrays.equals(old.document, policy)) {
+                entry = old;
+            }
+        }
+        if (entry == null) {
+            entry = parse(name, policy);
+        }
+
+        policies.put(name, entry);
+        if (entry.key == null) {
+            unindexed.put(name, entry);
+            return;
+        }
+
+        Map<String, List<Entry>> byValue = index.get(entry.key);
+        if (byValue == null) {
+            byValue = new HashMap<String, List<Entry>>();
+            index.put(entry.key, byValue);
+        }
+        for (String value : entry.values) {
+            List<Entry> entries = byValue.get(value);
+            if (entries == null) {
+                entries = new ArrayList<Entry>(1);
+                byValue.put(value, entries);
+            }
+            entries.add(entry);
+        }
+    }
+
+    /**
+     * Finds the policies that might apply to a request: those that are not
+     * indexed, and those filed under an attribute value found in the request.
+     * If a request attribute can't be retrieved, every policy filed under it is
+     * returned, and matching will report the problem.
+     *
+     * @param eval
+     *        the Evaluation Context
+     * @return the candidate policies, keyed by name
+     */
+    public Map<String, AbstractPolicy> getCandidates(EvaluationCtx eval) {
+        Map<String, AbstractPolicy> candidates =
+                new HashMap<String, AbstractPolicy>();
+        for (Entry entry : unindexed.values()) {
+            candidates.put(entry.name, entry.policy);
+        }
+
+        for (Map.Entry<Key, Map<String, List<Entry>>> indexEntry : index
+                .entrySet()) {
+            Map<String, List<Entry>> byValue = indexEntry.getValue();
+            Set<String> values = indexEntry.getKey().getValues(eval);
+            if (values == null) {
+                for (List<Entry> entries : byValue.values()) {
+                    addAll(candidates, entries);
+                }
+            } else {
+                for (String value : values) {
+                    addAll(candidates, byValue.get(value));
+                }
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Candidate policies: " + candidates.size() + " of "
+                    + policies.size());
+        }
+        return candidates;
+    }
+
+    private static void addAll(Map<String, AbstractPolicy> candidates,
+                               List<Entry> entries) {
+        if (entries != null) {
+            for (Entry entry : entries) {
+                candidates.put(entry.name, entry.policy);
+            }
+        }
+    }
+
+    private Entry parse(String name, byte[] policy) throws ParsingException {
+        Document doc;
+        try {
+            doc = builder.parse(new ByteArrayInputStream(policy));
+        } catch (Exception e) {
+            throw new ParsingException("Failed to parse the policy", e);
+        }
+
+        Entry entry = new Entry(name, policy, policyReader.readPolicy(doc));
+
+        Element target = getChild(doc.getDocumentElement(), "Target");
+        if (target != null) {
+            for (String section : SECTIONS) {
+                Element element = getChild(target, section + "s");
+                if (element != null && indexSection(entry, element, section)) {
+                    break;
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Looks for one attribute that every group in a target section (every
+     * Subject in Subjects, for instance) requires to be string-equal to some
+     * value. If there is one, the entry is filed under it.
+     *
+     * @return true if the entry could be indexed on this section
+     */
+    private boolean indexSection(Entry entry, Element section, String name) {
+        List<Map<Key, String>> groups = new ArrayList<Map<Key, String>>();
+        for (Node n = section.getFirstChild(); n != null; n =
+                n.getNextSibling()) {
+            if (n.getNodeType() != Node.ELEMENT_NODE) {
+                continue;
+            }
+            // AnySubject and the like, in XACML 1.x policies
+            if (!name.equals(localName(n))) {
+                return false;
+            }
+            groups.add(getEqualityMatches((Element) n, name));
+        }
+        if (groups.isEmpty()) {
+            return false;
+        }
+
+        for (Key key : groups.get(0).keySet()) {
+            Set<String> values = new HashSet<String>();
+            for (Map<Key, String> group : groups) {
+                String value = group.get(key);
+                if (value == null) {
+                    values = null;
+                    break;
+                }
+                values.add(value);
+            }
+            if (values != null) {
+                entry.key = key;
+                entry.values = values;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Collects the matches in a target group that compare a string attribute,
+     * which need not be present, to a single string value.
+     */
+    private Map<Key, String> getEqualityMatches(Element group, String name) {
+        Map<Key, String> matches = new HashMap<Key, String>();
+        for (Node n = group.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n.getNodeType() != Node.ELEMENT_NODE
+                    || !(name + "Match").equals(localName(n))
+                    || !STRING_EQUAL.equals(((Element) n)
+                            .getAttribute("MatchId"))) {
+                continue;
+            }
+
+            Element value = getChild((Element) n, "AttributeValue");
+            Element designator =
+                    getChild((Element) n, name + "AttributeDesignator");
+            if (value == null || designator == null
+                    || !STRING_TYPE.equals(value.getAttribute("DataType"))
+                    || !STRING_TYPE.equals(designator.getAttribute("DataType"))
+                    || "true".equals(designator.getAttribute("MustBePresent"))) {
+                continue;
+            }
+
+            // only a plain text value is compared as-is by the policy
+            Node text = value.getFirstChild();
+            if (text == null || text.getNodeType() != Node.TEXT_NODE
+                    || text.getNextSibling() != null) {
+                continue;
+            }
+
+            String category = null;
+            if (name.equals("Subject")) {
+                category = designator.getAttribute("SubjectCategory");
+                if (category.length() == 0) {
+                    category = ACCESS_SUBJECT;
+                }
+            }
+
+            try {
+                Key key =
+                        new Key(name,
+                                new URI(designator.getAttribute("AttributeId")),
+                                category == null ? null : new URI(category));
+                if (!matches.containsKey(key)) {
+                    matches.put(key, text.getNodeValue());
+                }
+            } catch (URISyntaxException e) {
+                continue;
+            }
+        }
+        return matches;
+    }
+
+    private static Element getChild(Element parent, String name) {
+        for (Node n = parent.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n.getNodeType() == Node.ELEMENT_NODE
+                    && name.equals(localName(n))) {
+                return (Element) n;
+            }
+        }
+        return null;
+    }
+
+    private static String localName(Node node) {
+        String name = node.getLocalName();
+        return name == null ? node.getNodeName() : name;
+    }
+
+    /**
+     * A parsed policy, and the attribute and values it is filed under, if
+     * any.
+     */
+    private static class Entry {
+
+        final String name;
+
+        final byte[] document;
+
+        final AbstractPolicy policy;
+
+        Key key;
+
+        Set<String> values;
+
+        Entry(String name, byte[] document, AbstractPolicy policy) {
+            this.name = name;
+            this.document = document;
+            this.policy = policy;
+        }
+    }
+
+    /**
+     * A string attribute of the resource, action or subject of a request.
+     */
+    private static class Key {
+
+        private static final URI TYPE;
+
+        static {
+            try {
+                TYPE = new URI(STRING_TYPE);
+            } catch (URISyntaxException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        final String section;
+
+        final URI id;
+
+        final URI category;
+
+        Key(String section, URI id, URI category) {
+            this.section = section;
+            this.id = id;
+            this.category = category;
+        }
+
+        /**
+         * @return the values of this attribute in the request, or null if they
+         *         could not be retrieved
+         */
+        Set<String> getValues(EvaluationCtx eval) {
+            EvaluationResult result;
+            if (section.equals("Resource")) {
+                result = eval.getResourceAttribute(TYPE, id, null);
+            } else if (section.equals("Action")) {
+                result = eval.getActionAttribute(TYPE, id, null);
+            } else {
+                result = eval.getSubjectAttribute(TYPE, id, category);
+            }
+            if (result.indeterminate()) {
+                return null;
+            }
+
+            Set<String> values = new HashSet<String>();
+            BagAttribute bag = (BagAttribute) result.getAttributeValue();
+            Iterator<?> i = bag.iterator();
+            while (i.hasNext()) {
+                values.add(((AttributeValue) i.next()).encode());
+            }
+            return values;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return section.equals(other.section) && id.equals(other.id)
+                    && (category == null ? other.category == null : category
+                            .equals(other.category));
+        }
+
+        @Override
+        public int hashCode() {
+            return section.hashCode() ^ id.hashCode()
+                    ^ (category == null ? 0 : category.hashCode());
+        }
+    }
+}
@@ -18,7 +18,6 @@
 
 package melcoe.xacml.pdp.finder.policy;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.net.URI;
@@ -73,6 +72,9 @@ public class PolicyManager {
 
     private PolicyReader policyReader = null;
 
+    // the parsed policies, rebuilt when the policy store changes
+    private volatile PolicyIndex policyIndex = null;
+
     // the policy identifier for any policy sets we dynamically create
     private static final String PARENT_POLICY_ID =
             "urn:com:sun:xacml:support:finder:dynamic-policy-set";
@@ -140,6 +142,31 @@ public class PolicyManager {
         }
 
         policyReader = new PolicyReader(polFinder, null);
+        init();
+    }
+
+    /**
+     * Creates a PolicyManager for the given policy store, for testing.
+     * 
+     * @param policyDataManager
+     *        the policy store
+     * @param combiningAlg
+     *        the algorithm used to combine matching policies
+     * @param policyReader
+     *        used to parse the policies
+     * @throws URISyntaxException
+     */
+    PolicyManager(PolicyDataManager policyDataManager,
+                  PolicyCombiningAlgorithm combiningAlg,
+                  PolicyReader policyReader)
+            throws URISyntaxException {
+        this.policyDataManager = policyDataManager;
+        this.combiningAlg = combiningAlg;
+        this.policyReader = policyReader;
+        init();
+    }
+
+    private void init() throws URISyntaxException {
         parentPolicyId = new URI(PARENT_POLICY_ID);
 
         target =
@@ -160,7 +187,8 @@ public class PolicyManager {
     /**
      * Obtains a policy or policy set of matching policies from the policy
      * store. If more than one policy is returned it creates a dynamic policy
-     * set that contains all the applicable policies.
+     * set that contains all the applicable policies. Only the candidates from
+     * the policy index are matched, and they are not parsed again.
      * 
      * @param eval
      *        the Evaluation Context
@@ -170,8 +198,8 @@ public class PolicyManager {
      */
     public AbstractPolicy getPolicy(EvaluationCtx eval)
             throws TopLevelPolicyException, PolicyDataManagerException {
-        Map<String, byte[]> potentialPolicies =
-                policyDataManager.getPolicies(eval);
+        Map<String, AbstractPolicy> potentialPolicies =
+                getPolicyIndex().getCandidates(eval);
         log.debug("Obtained policies: " + potentialPolicies.size());
 
         AbstractPolicy policy = matchPolicies(eval, potentialPolicies);
@@ -180,6 +208,51 @@ public class PolicyManager {
         return policy;
     }
 
+    /**
+     * Returns the policy index, first rebuilding it if the policy store has
+     * been updated since it was built. Policies that haven't changed keep their
+     * parsed form.
+     * 
+     * @return the current policy index
+     * @throws {@link PolicyDataManagerException}
+     */
+    private PolicyIndex getPolicyIndex() throws PolicyDataManagerException {
+        // read before listing, so a change made while the index is being
+        // built causes another rebuild
+        long version = policyDataManager.getVersion();
+        PolicyIndex index = policyIndex;
+        if (index != null && index.getVersion() == version) {
+            return index;
+        }
+
+        synchronized (this) {
+            index = policyIndex;
+            if (index != null && index.getVersion() == version) {
+                return index;
+            }
+
+            long start = System.currentTimeMillis();
+            PolicyIndex newIndex = new PolicyIndex(version, policyReader);
+            for (String name : policyDataManager.listPolicies()) {
+                byte[] policy = policyDataManager.getPolicy(name);
+                if (policy == null) {
+                    continue;
+                }
+                try {
+                    newIndex.add(name, policy, index);
+                } catch (ParsingException pe) {
+                    log.error("Error parsing policy: " + name + " ("
+                            + pe.getMessage() + ")");
+                }
+            }
+            policyIndex = newIndex;
+
+            log.info("Indexed " + newIndex.size() + " policies in "
+                    + (System.currentTimeMillis() - start) + "ms");
+            return newIndex;
+        }
+    }
+
     /**
      * Given and Evaluation Context and a list of potential policies, this
      * method matches each policy against the Evaluation Context and extracts
@@ -190,13 +263,13 @@ public class PolicyManager {
      * @param eval
      *        the Evaluation Context
      * @param policyList
-     *        the list of policies as a map with PolicyId as key and policy as a
-     *        byte array as the value
+     *        the list of policies as a map with PolicyId as key and the parsed
+     *        policy as the value
      * @return the Policy/PolicySet that applies to this EvaluationCtx
      * @throws {@link TopLevelPolicyException}
      */
     private AbstractPolicy matchPolicies(EvaluationCtx eval,
-                                         Map<String, byte[]> policyList)
+                                         Map<String, AbstractPolicy> policyList)
             throws TopLevelPolicyException {
         // setup a list of matching policies
         Map<String, AbstractPolicy> list =
@@ -204,40 +277,33 @@ public class PolicyManager {
 
         // get an iterator over all the identifiers
         for (String policyId : policyList.keySet()) {
-            try {
-                byte[] pol = policyList.get(policyId);
-                AbstractPolicy policy =
-                        policyReader.readPolicy(new ByteArrayInputStream(pol));
+            AbstractPolicy policy = policyList.get(policyId);
 
-                MatchResult match = policy.match(eval);
+            MatchResult match = policy.match(eval);
 
-                int result = match.getResult();
-                if (result == MatchResult.INDETERMINATE) {
-                    throw new TopLevelPolicyException(match.getStatus());
-                }
-
-                // if we matched, we keep track of the matching policy...
-                if (result == MatchResult.MATCH) {
-                    // ...first checking if this is the first match and if
-                    // we automaticlly nest policies
-                    if (combiningAlg == null && list.size() > 0) {
-                        ArrayList<String> code = new ArrayList<String>();
-                        code.add(Status.STATUS_PROCESSING_ERROR);
-                        Status status =
-                                new Status(code, "too many applicable"
-                                        + " top-level policies");
-                        throw new TopLevelPolicyException(status);
-                    }
+            int result = match.getResult();
+            if (result == MatchResult.INDETERMINATE) {
+                throw new TopLevelPolicyException(match.getStatus());
+            }
 
-                    if (log.isDebugEnabled()) {
-                        log.debug("Matched policy: " + policyId);
-                    }
+            // if we matched, we keep track of the matching policy...
+            if (result == MatchResult.MATCH) {
+                // ...first checking if this is the first match and if
+                // we automaticlly nest policies
+                if (combiningAlg == null && list.size() > 0) {
+                    ArrayList<String> code = new ArrayList<String>();
+                    code.add(Status.STATUS_PROCESSING_ERROR);
+                    Status status =
+                            new Status(code, "too many applicable"
+                                    + " top-level policies");
+                    throw new TopLevelPolicyException(status);
+                }
 
-                    list.put(policyId, policy);
+                if (log.isDebugEnabled()) {
+                    log.debug("Matched policy: " + policyId);
                 }
-            } catch (ParsingException pe) {
-                log.error("Error parsing policy: " + policyId + " ("
-                        + pe.getMessage() + ")");
+
+                list.put(policyId, policy);
             }
         }
 
@@ -199,6 +199,20 @@ public class PolicyReader
         }
     }
 
+    /**
+     * Tries to read an XACML policy or policy set from a document that has
+     * already been parsed.
+     * 
+     * @param doc
+     *        the namespace-aware DOM document containing the policy
+     * @return a policy loaded from the given document
+     * @throws ParsingException
+     *         if an error occurs while parsing the policy
+     */
+    public AbstractPolicy readPolicy(Document doc) throws ParsingException {
+        return handleDocument(doc);
+    }
+
     /**
      * Tries to read an XACML policy or policy set based on the given URL. This
      * may be any resolvable URL, like a file or http pointer.
@@ -0,0 +1,202 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package melcoe.xacml.pdp.finder.policy;
+
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.xacml.AbstractPolicy;
+import com.sun.xacml.BasicEvaluationCtx;
+import com.sun.xacml.EvaluationCtx;
+import com.sun.xacml.attr.AnyURIAttribute;
+import com.sun.xacml.attr.StringAttribute;
+import com.sun.xacml.ctx.Attribute;
+import com.sun.xacml.ctx.RequestCtx;
+import com.sun.xacml.ctx.Subject;
+import com.sun.xacml.finder.PolicyFinder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests that the policy index returns the right candidates for a request, and
+ * reuses unchanged policies when it is rebuilt.
+ */
+public class PolicyIndexTest {
+
+    static final String PID_ATTRIBUTE =
+            "urn:fedora:names:fedora:2.1:resource:object:pid";
+
+    static final String ACTION_ATTRIBUTE =
+            "urn:fedora:names:fedora:2.1:action:id";
+
+    private static final String RESOURCE_ID =
+            "urn:oasis:names:tc:xacml:1.0:resource:resource-id";
+
+    private PolicyReader policyReader;
+
+    @Before
+    public void setUp() {
+        policyReader = new PolicyReader(new PolicyFinder(), null);
+    }
+
+    @Test
+    public void testCandidatesByAttributeValue() throws Exception {
+        PolicyIndex index = new PolicyIndex(1, policyReader);
+        index.add("demo1", resourcePolicy("demo1", "demo:1"), null);
+        index.add("demo2", resourcePolicy("demo2", "demo:2"), null);
+        index.add("read", actionPolicy("read", "read"), null);
+        index.add("any", anyPolicy("any"), null);
+        assertEquals(4, index.size());
+
+        assertEquals(names("demo1", "read", "any"), index
+                .getCandidates(request("demo:1", "read")).keySet());
+        assertEquals(names("demo2", "any"), index
+                .getCandidates(request("demo:2", null)).keySet());
+        assertEquals(names("any"), index.getCandidates(request("demo:3",
+                                                               "write"))
+                .keySet());
+    }
+
+    @Test
+    public void testPolicyOnSeveralValues() throws Exception {
+        PolicyIndex index = new PolicyIndex(1, policyReader);
+        index.add("both", resourcePolicy("both", "demo:1", "demo:2"), null);
+
+        assertEquals(names("both"), index.getCandidates(request("demo:1",
+                                                                null))
+                .keySet());
+        assertEquals(names("both"), index.getCandidates(request("demo:2",
+                                                                null))
+                .keySet());
+        assertEquals(names(), index.getCandidates(request("demo:3", null))
+                .keySet());
+    }
+
+    @Test
+    public void testRebuildReusesUnchangedPolicies() throws Exception {
+        PolicyIndex first = new PolicyIndex(1, policyReader);
+        first.add("demo1", resourcePolicy("demo1", "demo:1"), null);
+        first.add("demo2", resourcePolicy("demo2", "demo:2"), null);
+
+        PolicyIndex second = new PolicyIndex(2, policyReader);
+        second.add("demo1", resourcePolicy("demo1", "demo:1"), first);
+        second.add("demo2", resourcePolicy("demo2", "demo:3"), first);
+        assertEquals(2, second.getVersion());
+
+        EvaluationCtx demo1 = request("demo:1", null);
+        assertSame(first.getCandidates(demo1).get("demo1"), second
+                .getCandidates(demo1).get("demo1"));
+
+        // the changed policy is parsed again, and filed under its new value
+        assertEquals(names(), second.getCandidates(request("demo:2", null))
+                .keySet());
+        AbstractPolicy changed =
+                second.getCandidates(request("demo:3", null)).get("demo2");
+        assertNotSame(first.getCandidates(request("demo:2", null))
+                .get("demo2"), changed);
+    }
+
+    static Set<String> names(String... names) {
+        Set<String> set = new HashSet<String>();
+        for (String name : names) {
+            set.add(name);
+        }
+        return set;
+    }
+
+    /**
+     * @return a policy that applies to the objects with the given PIDs.
+     */
+    static byte[] resourcePolicy(String id, String... pids) {
+        StringBuilder target = new StringBuilder("<Resources>");
+        for (String pid : pids) {
+            target.append("<Resource>" + match("Resource", PID_ATTRIBUTE, pid)
+                    + "</Resource>");
+        }
+        target.append("</Resources>");
+        return policy(id, target.toString());
+    }
+
+    /**
+     * @return a policy that applies to the given action.
+     */
+    static byte[] actionPolicy(String id, String action) {
+        return policy(id, "<Actions><Action>"
+                + match("Action", ACTION_ATTRIBUTE, action)
+                + "</Action></Actions>");
+    }
+
+    /**
+     * @return a policy that applies to every request.
+     */
+    static byte[] anyPolicy(String id) {
+        return policy(id, "");
+    }
+
+    private static String match(String section, String attribute, String value) {
+        return "<"
+                + section
+                + "Match MatchId=\"urn:oasis:names:tc:xacml:1.0:function:string-equal\">"
+                + "<AttributeValue DataType=\"http://www.w3.org/2001/XMLSchema#string\">"
+                + value + "</AttributeValue>" + "<" + section
+                + "AttributeDesignator AttributeId=\"" + attribute
+                + "\" DataType=\"http://www.w3.org/2001/XMLSchema#string\"/>"
+                + "</" + section + "Match>";
+    }
+
+    private static byte[] policy(String id, String target) {
+        return ("<Policy xmlns=\"urn:oasis:names:tc:xacml:2.0:policy:schema:os\""
+                + " PolicyId=\"urn:test:policy:" + id + "\""
+                + " RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:first-applicable\">"
+                + "<Target>" + target + "</Target>"
+                + "<Rule RuleId=\"permit\" Effect=\"Permit\"/>" + "</Policy>")
+                .getBytes();
+    }
+
+    /**
+     * @return a request for an action on an object, with no subject
+     *         attributes.
+     */
+    static EvaluationCtx request(String pid, String action) throws Exception {
+        Set<Subject> subjects = new HashSet<Subject>();
+        subjects.add(new Subject(new HashSet<Attribute>()));
+
+        Set<Attribute> resource = new HashSet<Attribute>();
+        resource.add(new Attribute(new URI(RESOURCE_ID),
+                                   null,
+                                   null,
+                                   new AnyURIAttribute(new URI(pid))));
+        resource.add(new Attribute(new URI(PID_ATTRIBUTE),
+                                   null,
+                                   null,
+                                   new StringAttribute(pid)));
+
+        Set<Attribute> actions = new HashSet<Attribute>();
+        if (action != null) {
+            actions.add(new Attribute(new URI(ACTION_ATTRIBUTE),
+                                      null,
+                                      null,
+                                      new StringAttribute(action)));
+        }
+
+        return new BasicEvaluationCtx(new RequestCtx(subjects,
+                                                     resource,
+                                                     actions,
+                                                     new HashSet<Attribute>()));
+    }
+
+    // Supports legacy test runners
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PolicyIndexTest.class);
+    }
+}
@@ -0,0 +1,177 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package melcoe.xacml.pdp.finder.policy;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.JUnit4TestAdapter;
+
+import melcoe.xacml.pdp.data.PolicyDataManager;
+import melcoe.xacml.util.AttributeBean;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.xacml.AbstractPolicy;
+import com.sun.xacml.EvaluationCtx;
+import com.sun.xacml.PolicySet;
+import com.sun.xacml.combine.PermitOverridesPolicyAlg;
+import com.sun.xacml.finder.PolicyFinder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import static melcoe.xacml.pdp.finder.policy.PolicyIndexTest.request;
+import static melcoe.xacml.pdp.finder.policy.PolicyIndexTest.resourcePolicy;
+
+/**
+ * Tests that the PolicyManager matches policies from its index, and rebuilds
+ * the index whenever the policy store changes.
+ */
+public class PolicyManagerTest {
+
+    private MemoryPolicyDataManager store;
+
+    private PolicyManager manager;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new MemoryPolicyDataManager();
+        store.put("demo1", resourcePolicy("demo1", "demo:1"));
+        store.put("demo2", resourcePolicy("demo2", "demo:2"));
+        manager =
+                new PolicyManager(store,
+                                  new PermitOverridesPolicyAlg(),
+                                  new PolicyReader(new PolicyFinder(), null));
+    }
+
+    @Test
+    public void testMatchingPolicy() throws Exception {
+        assertEquals(new URI("urn:test:policy:demo1"), manager
+                .getPolicy(request("demo:1", null)).getId());
+        assertEquals(new URI("urn:test:policy:demo2"), manager
+                .getPolicy(request("demo:2", null)).getId());
+        assertNull(manager.getPolicy(request("demo:3", null)));
+    }
+
+    @Test
+    public void testIndexKeptWhileUnchanged() throws Exception {
+        manager.getPolicy(request("demo:1", null));
+        manager.getPolicy(request("demo:2", null));
+        manager.getPolicy(request("demo:3", null));
+        assertEquals(1, store.listCount);
+    }
+
+    @Test
+    public void testRebuildAfterUpdate() throws Exception {
+        EvaluationCtx demo3 = request("demo:3", null);
+        assertNull(manager.getPolicy(demo3));
+
+        store.put("demo2", resourcePolicy("demo2", "demo:3"));
+        assertEquals(new URI("urn:test:policy:demo2"), manager
+                .getPolicy(demo3).getId());
+        assertNull(manager.getPolicy(request("demo:2", null)));
+        assertEquals(2, store.listCount);
+    }
+
+    @Test
+    public void testRebuildAfterAddAndDelete() throws Exception {
+        EvaluationCtx demo1 = request("demo:1", null);
+        manager.getPolicy(demo1);
+
+        store.put("demo1b", resourcePolicy("demo1b", "demo:1"));
+        AbstractPolicy policy = manager.getPolicy(demo1);
+        assertTrue(policy instanceof PolicySet);
+        assertEquals(2, policy.getChildren().size());
+
+        store.deletePolicy("demo1b");
+        store.deletePolicy("demo1");
+        assertNull(manager.getPolicy(demo1));
+        assertEquals(3, store.listCount);
+    }
+
+    /**
+     * A policy store kept in memory, whose version is increased on every
+     * change, as the real ones do, without waiting for the clock to move.
+     */
+    private static class MemoryPolicyDataManager
+            implements PolicyDataManager {
+
+        private final Map<String, byte[]> policies =
+                new HashMap<String, byte[]>();
+
+        private long version;
+
+        int listCount;
+
+        void put(String name, byte[] policy) {
+            policies.put(name, policy);
+            version++;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public long getLastUpdate() {
+            return 0;
+        }
+
+        public List<String> listPolicies() {
+            listCount++;
+            return new ArrayList<String>(policies.keySet());
+        }
+
+        public byte[] getPolicy(String name) {
+            return policies.get(name);
+        }
+
+        public boolean deletePolicy(String name) {
+            version++;
+            return policies.remove(name) != null;
+        }
+
+        public boolean updatePolicy(String name, String newDocument) {
+            put(name, newDocument.getBytes());
+            return true;
+        }
+
+        public String addPolicy(String document, String name) {
+            put(name, document.getBytes());
+            return name;
+        }
+
+        public String addPolicy(String document) {
+            throw new UnsupportedOperationException();
+        }
+
+        public String addPolicy(File f, String name) {
+            throw new UnsupportedOperationException();
+        }
+
+        public String addPolicy(File f) {
+            throw new UnsupportedOperationException();
+        }
+
+        public Map<String, byte[]> getPolicies(EvaluationCtx eval) {
+            throw new UnsupportedOperationException();
+        }
+
+        public Map<String, byte[]> findPolicies(AttributeBean[] attributes) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    // Supports legacy test runners
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PolicyManagerTest.class);
+    }
+}
@@ -89,4 +89,16 @@ public interface ContextHandler {
      * @return a reference to the response cache.
      */
     public ResponseCache getResponseCache();
+
+    /**
+     * Invalidates the cached responses that a permitted request may have made
+     * stale, once the operation has completed. A change to an object
+     * invalidates the responses for that object. A change to a POLICY
+     * datastream, to a relationship, or a purge, may change the policies that
+     * apply to other objects, so invalidates them all.
+     * 
+     * @param reqCtx
+     *        the request for the completed operation
+     */
+    public void invalidateChanges(RequestCtx reqCtx);
 }
@@ -23,9 +23,12 @@ import java.io.FileInputStream;
 import java.io.InputStream;
 import java.lang.reflect.Constructor;
 import java.net.URI;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -39,6 +42,7 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import com.sun.xacml.attr.AttributeValue;
+import com.sun.xacml.ctx.Attribute;
 import com.sun.xacml.ctx.RequestCtx;
 import com.sun.xacml.ctx.ResponseCtx;
 
@@ -54,6 +58,30 @@ public class ContextHandlerImpl
     private static Logger log =
             Logger.getLogger(ContextHandlerImpl.class.getName());
 
+    /** Actions that change the object they act on. */
+    private static final Set<String> CHANGE_ACTIONS =
+            new HashSet<String>(Arrays.asList(new String[] {
+                    Constants.ACTION.ADD_DATASTREAM.uri,
+                    Constants.ACTION.MODIFY_DATASTREAM_BY_REFERENCE.uri,
+                    Constants.ACTION.MODIFY_DATASTREAM_BY_VALUE.uri,
+                    Constants.ACTION.MODIFY_OBJECT.uri,
+                    Constants.ACTION.PURGE_DATASTREAM.uri,
+                    Constants.ACTION.SET_DATASTREAM_STATE.uri,
+                    Constants.ACTION.SET_DATASTREAM_VERSIONABLE.uri}));
+
+    /**
+     * Actions that may change the policies of other objects, through the
+     * relationships between parents and children.
+     */
+    private static final Set<String> RELATIONSHIP_ACTIONS =
+            new HashSet<String>(Arrays.asList(new String[] {
+                    Constants.ACTION.ADD_RELATIONSHIP.uri,
+                    Constants.ACTION.PURGE_RELATIONSHIP.uri,
+                    Constants.ACTION.PURGE_OBJECT.uri}));
+
+    /** The datastream that holds an object's policy. */
+    private static final String POLICY_DATASTREAM = "POLICY";
+
     private ContextUtil contextUtil = null;
 
     private static ContextHandler contextHandler = null;
@@ -143,6 +171,57 @@ public class ContextHandlerImpl
         return responseCache;
     }
 
+    /*
+     * (non-Javadoc)
+     * @see
+     * melcoe.fedora.pep.ContextHandler#invalidateChanges(com.sun.xacml.ctx.
+     * RequestCtx)
+     */
+    public void invalidateChanges(RequestCtx reqCtx) {
+        if (responseCache != null) {
+            invalidateChanges(responseCache, reqCtx);
+        }
+    }
+
+    /**
+     * Invalidates the responses in a cache that a request may make out of
+     * date: all of them if it may change a policy, otherwise those for the
+     * object it changes, if any.
+     * 
+     * @param responseCache
+     *        the cache
+     * @param reqCtx
+     *        the request
+     */
+    @SuppressWarnings("unchecked")
+    static void invalidateChanges(ResponseCache responseCache,
+                                  RequestCtx reqCtx) {
+        String action =
+                getAttributeValue(reqCtx.getAction(), Constants.ACTION.ID.uri);
+        if (RELATIONSHIP_ACTIONS.contains(action)) {
+            responseCache.invalidate();
+        } else if (CHANGE_ACTIONS.contains(action)) {
+            Set<Attribute> resource = reqCtx.getResource();
+            if (POLICY_DATASTREAM.equals(getAttributeValue(resource,
+                                                           Constants.DATASTREAM.ID.uri))) {
+                responseCache.invalidate();
+            } else {
+                responseCache.invalidate(getAttributeValue(resource,
+                                                           Constants.OBJECT.PID.uri));
+            }
+        }
+    }
+
+    private static String getAttributeValue(Set<Attribute> attributes,
+                                            String id) {
+        for (Attribute a : attributes) {
+            if (id.equals(a.getId().toString())) {
+                return a.getValue().encode();
+            }
+        }
+        return null;
+    }
+
     /**
      * Reads a configuration file and configures this instance of the
      * ContextHandler. It can instantiate a client (that communicates with the
@@ -20,6 +20,7 @@ package melcoe.fedora.pep;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import melcoe.xacml.MelcoeXacmlException;
 import melcoe.xacml.util.ContextUtil;
@@ -45,6 +46,10 @@ public class EvaluationEngineImpl
 
     private ResponseCache responseCache = null;
 
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    private final AtomicLong cacheMisses = new AtomicLong();
+
     /*
      * (non-Javadoc)
      * @see
@@ -99,6 +104,11 @@ public class EvaluationEngineImpl
 
             if (responseCache != null) {
                 response = responseCache.getCacheItem(r);
+                if (response == null) {
+                    cacheMisses.incrementAndGet();
+                } else {
+                    cacheHits.incrementAndGet();
+                }
             }
 
             if (response == null) {
@@ -118,6 +128,10 @@ public class EvaluationEngineImpl
             b = System.currentTimeMillis();
             if (log.isDebugEnabled()) {
                 log.debug("Time taken for XACML Evaluation: " + (b - a) + "ms");
+                if (responseCache != null) {
+                    log.debug("Response cache hits: " + cacheHits.get()
+                            + ", misses: " + cacheMisses.get());
+                }
             }
 
             ResponseCtx resCtx;
@@ -172,4 +186,29 @@ public class EvaluationEngineImpl
     public void setResponseCache(ResponseCache responseCache) {
         this.responseCache = responseCache;
     }
+
+    /**
+     * @return the number of requests answered from the response cache.
+     */
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /**
+     * @return the number of requests that were not in the response cache, and
+     *         were sent to the PDP.
+     */
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    /**
+     * @return the fraction of requests answered from the response cache, or 0
+     *         if there have been none.
+     */
+    public double getCacheHitRate() {
+        long hits = cacheHits.get();
+        long total = hits + cacheMisses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
 }
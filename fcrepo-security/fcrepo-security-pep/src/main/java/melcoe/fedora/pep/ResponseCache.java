@@ -27,4 +27,12 @@ public interface ResponseCache {
      * Invalidates the cache.
      */
     public void invalidate();
+
+    /**
+     * Invalidates the cached responses for requests about an object.
+     * 
+     * @param pid
+     *        the PID of the object
+     */
+    public void invalidate(String pid);
 }
@@ -18,16 +18,20 @@
 
 package melcoe.fedora.pep;
 
+import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
 import melcoe.fedora.util.AttributeComparator;
-import melcoe.fedora.util.SubjectComparator;
 import melcoe.xacml.MelcoeXacmlException;
 import melcoe.xacml.util.ContextUtil;
 
@@ -37,7 +41,18 @@ import com.sun.xacml.ctx.Attribute;
 import com.sun.xacml.ctx.RequestCtx;
 import com.sun.xacml.ctx.Subject;
 
+import fedora.common.Constants;
+
 /**
+ * A thread-safe cache of PDP responses, keyed by a digest of a canonical
+ * fingerprint of the request's attributes.
+ * <p>
+ * The cache is divided into segments, each with its own lock and its own
+ * least-recently-used ordering, so concurrent requests seldom wait for each
+ * other. Items expire after the time to live, and the items for an object can
+ * be invalidated when it changes, without looking at the items for other
+ * objects.
+ * 
  * @author nishen@melcoe.mq.edu.au
  */
 public class ResponseCacheImpl
@@ -52,17 +67,42 @@ public class ResponseCacheImpl
 
     private static final long DEFAULT_TTL = 10 * 60 * 1000;
 
-    private final int CACHE_SIZE;
+    /** The number of segments; must be a power of two. */
+    private static final int SEGMENTS = 16;
 
-    private long TTL;
+    /** Separates the fields of an attribute in a fingerprint. */
+    private static final char FIELD_SEPARATOR = '\u0000';
+
+    /** Ends each attribute, subject and section in a fingerprint. */
+    private static final char END = '\u0001';
+
+    private static final String PID_ATTRIBUTE = Constants.OBJECT.PID.uri;
+
+    /**
+     * The digest of the fingerprint that items are keyed by, so the size of a
+     * key doesn't depend on the size of the request. Two requests with the
+     * same digest share a decision, so the digest must be collision
+     * resistant.
+     */
+    private static final String DIGEST_ALGORITHM = "SHA-256";
 
-    private Map<String, String> requestCache = null;
+    private static final char[] HEX_CHARS =
+            {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c',
+                    'd', 'e', 'f'};
 
-    private Map<String, Long> requestCacheTimeTracker = null;
+    private final int CACHE_SIZE;
 
-    private List<String> requestCacheUsageTracker = null;
+    private long TTL;
 
-    private MessageDigest digest = null;
+    private final Segment[] segments;
+
+    /**
+     * The fingerprint of the last request seen by each thread. A miss is
+     * followed by an add for the same request, so this saves parsing it
+     * twice.
+     */
+    private final ThreadLocal<Fingerprint> lastFingerprint =
+            new ThreadLocal<Fingerprint>();
 
     /**
      * The default constructor that initialises the cache with default values.
@@ -96,14 +136,10 @@ public class ResponseCacheImpl
 
         CACHE_SIZE = size.intValue();
 
-        requestCache = new HashMap<String, String>(CACHE_SIZE);
-        requestCacheTimeTracker = new HashMap<String, Long>(CACHE_SIZE);
-        requestCacheUsageTracker = new ArrayList<String>(CACHE_SIZE);
-
-        try {
-            digest = MessageDigest.getInstance("MD5");
-        } catch (Exception e) {
-            throw new PEPException("Could not initialize the ResponseCache", e);
+        int segmentSize = Math.max(1, (CACHE_SIZE + SEGMENTS - 1) / SEGMENTS);
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentSize);
         }
     }
 
@@ -113,29 +149,22 @@ public class ResponseCacheImpl
      * java.lang.String)
      */
     public void addCacheItem(String request, String response) {
-        String hash = null;
+        if (TTL <= 0) {
+            return;
+        }
 
         try {
-            hash = makeHash(request);
-
-            // if we have a maxxed cache, remove least used item
-            if (requestCache.size() >= CACHE_SIZE) {
-                String key = requestCacheUsageTracker.remove(0);
-                requestCache.remove(key);
-                if (log.isDebugEnabled()) {
-                    log.debug("Purging cache element");
-                }
+            Fingerprint fingerprint = getFingerprint(request);
+            Segment segment = segmentFor(fingerprint.key);
+            synchronized (segment) {
+                segment.add(fingerprint.key, new Item(response,
+                                                      fingerprint.pid,
+                                                      System
+                                                              .currentTimeMillis()));
             }
 
-            requestCache.put(hash, response);
-            requestCacheUsageTracker.add(hash);
-            requestCacheTimeTracker.put(hash, new Long(System
-                    .currentTimeMillis()));
-
             if (log.isDebugEnabled()) {
-                log.debug("Adding Cache Item (" + requestCache.size() + "/"
-                        + requestCacheUsageTracker.size() + "/"
-                        + requestCacheTimeTracker.size() + "): " + hash);
+                log.debug("Adding Cache Item for " + fingerprint.pid);
             }
         } catch (Exception e) {
             log.warn("Error adding cache item: " + e.getMessage(), e);
@@ -147,50 +176,33 @@ public class ResponseCacheImpl
      * @see melcoe.fedora.pep.ResponseCache#getCacheItem(java.lang.String)
      */
     public String getCacheItem(String request) {
-        String hash = null;
-        String response = null;
-
         try {
-            hash = makeHash(request);
-
-            if (log.isDebugEnabled()) {
-                log.debug("Getting Cache Item (" + requestCache.size() + "/"
-                        + requestCacheUsageTracker.size() + "/"
-                        + requestCacheTimeTracker.size() + "): " + hash);
-            }
-
-            response = requestCache.get(hash);
+            Fingerprint fingerprint = getFingerprint(request);
+            Segment segment = segmentFor(fingerprint.key);
+            synchronized (segment) {
+                Item item = segment.get(fingerprint.key);
+                if (item == null) {
+                    return null;
+                }
 
-            if (response == null) {
-                return null;
-            }
+                // if this item is older than CACHE_ITEM_TTL then we can't use it
+                if (System.currentTimeMillis() - item.created > TTL) {
+                    segment.discard(fingerprint.key);
 
-            // if this item is older than CACHE_ITEM_TTL then we can't use it
-            long usedLast =
-                    System.currentTimeMillis()
-                            - requestCacheTimeTracker.get(hash).longValue();
-            if (usedLast > TTL) {
-                requestCache.remove(hash);
-                requestCacheUsageTracker.remove(hash);
-                requestCacheTimeTracker.remove(hash);
+                    if (log.isDebugEnabled()) {
+                        log.debug("CACHE_ITEM_TTL exceeded for "
+                                + fingerprint.pid);
+                    }
 
-                if (log.isDebugEnabled()) {
-                    log.debug("CACHE_ITEM_TTL exceeded: " + hash);
+                    return null;
                 }
 
-                return null;
+                return item.response;
             }
-
-            // we just used this item, move it to the end of the list (items at
-            // beginning get removed...)
-            requestCacheUsageTracker.add(requestCacheUsageTracker
-                    .remove(requestCacheUsageTracker.indexOf(hash)));
         } catch (Exception e) {
             log.warn("Error getting cache item: " + e.getMessage(), e);
-            response = null;
+            return null;
         }
-
-        return response;
     }
 
     /*
@@ -198,21 +210,75 @@ public class ResponseCacheImpl
      * @see melcoe.fedora.pep.ResponseCache#invalidate()
      */
     public void invalidate() {
-        requestCache = new HashMap<String, String>(CACHE_SIZE);
-        requestCacheTimeTracker = new HashMap<String, Long>(CACHE_SIZE);
-        requestCacheUsageTracker = new ArrayList<String>(CACHE_SIZE);
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see melcoe.fedora.pep.ResponseCache#invalidate(java.lang.String)
+     */
+    public void invalidate(String pid) {
+        if (pid == null) {
+            return;
+        }
+
+        int removed = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                removed += segment.invalidate(pid);
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Invalidated " + removed + " cache items for " + pid);
+        }
+    }
+
+    /**
+     * @return the number of items in the cache, including any that have
+     *         expired but not yet been removed.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    private Segment segmentFor(String key) {
+        int hash = key.hashCode();
+        return segments[(hash ^ hash >>> 16) & SEGMENTS - 1];
+    }
+
+    private Fingerprint getFingerprint(String request) throws CacheException {
+        Fingerprint fingerprint = lastFingerprint.get();
+        if (fingerprint == null || fingerprint.request != request) {
+            fingerprint = makeFingerprint(request);
+            lastFingerprint.set(fingerprint);
+        }
+        return fingerprint;
     }
 
     /**
-     * Given a request, this method generates a hash.
+     * Given a request, this method generates a fingerprint: a digest of its
+     * subjects, resource, action and environment attributes, each in a
+     * canonical order. Two requests with the same attributes have the same
+     * fingerprint, however they were marshalled.
      * 
      * @param request
-     *        the request to hash
-     * @return the hash
+     *        the request to fingerprint
+     * @return the fingerprint
      * @throws CacheException
      */
     @SuppressWarnings("unchecked")
-    private String makeHash(String request) throws CacheException {
+    private Fingerprint makeFingerprint(String request) throws CacheException {
         RequestCtx reqCtx = null;
         try {
             reqCtx = contextUtil.makeRequestCtx(request);
@@ -220,79 +286,211 @@ public class ResponseCacheImpl
             throw new CacheException("Error converting request", pe);
         }
 
-        digest.reset();
+        StringBuilder key = new StringBuilder(256);
 
-        Set<Attribute> attributes = null;
+        List<String> subjects = new ArrayList<String>();
+        for (Subject s : (Set<Subject>) reqCtx.getSubjects()) {
+            StringBuilder subject = new StringBuilder();
+            subject.append(s.getCategory()).append(END);
+            appendAttributes(subject, s.getAttributes());
+            subjects.add(subject.toString());
+        }
+        Collections.sort(subjects);
+        for (String subject : subjects) {
+            key.append(subject).append(END);
+        }
+        key.append(END);
 
-        Set<Subject> subjects = new TreeSet(new SubjectComparator());
-        subjects.addAll(reqCtx.getSubjects());
-        for (Subject s : subjects) {
-            attributes = new TreeSet(new AttributeComparator());
-            attributes.addAll(s.getAttributes());
-            for (Attribute a : attributes) {
-                hashAttribute(a);
+        appendAttributes(key, reqCtx.getResource());
+        appendAttributes(key, reqCtx.getAction());
+        appendAttributes(key, reqCtx.getEnvironmentAttributes());
+
+        String pid = null;
+        for (Attribute a : (Set<Attribute>) reqCtx.getResource()) {
+            if (PID_ATTRIBUTE.equals(a.getId().toString())) {
+                pid = a.getValue().encode();
+                break;
             }
         }
 
-        attributes = new TreeSet(new AttributeComparator());
-        attributes.addAll(reqCtx.getResource());
-        for (Attribute a : attributes) {
-            hashAttribute(a);
+        return new Fingerprint(request, digest(key.toString()), pid);
+    }
+
+    /**
+     * @return the hexadecimal digest of the given text.
+     */
+    private static String digest(String text) throws CacheException {
+        byte[] hash;
+        try {
+            hash =
+                    MessageDigest.getInstance(DIGEST_ALGORITHM)
+                            .digest(text.getBytes("UTF-8"));
+        } catch (NoSuchAlgorithmException e) {
+            throw new CacheException("Error creating digest", e);
+        } catch (UnsupportedEncodingException e) {
+            throw new CacheException("Error creating digest", e);
         }
 
-        attributes = new TreeSet(new AttributeComparator());
-        attributes.addAll(reqCtx.getAction());
-        for (Attribute a : attributes) {
-            hashAttribute(a);
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX_CHARS[hash[i] >> 4 & 0xf];
+            hex[i * 2 + 1] = HEX_CHARS[hash[i] & 0xf];
         }
+        return new String(hex);
+    }
 
-        attributes = new TreeSet(new AttributeComparator());
-        attributes.addAll(reqCtx.getEnvironmentAttributes());
-        for (Attribute a : attributes) {
-            hashAttribute(a);
+    /**
+     * Utility function to add a set of attributes to a fingerprint, in a
+     * canonical order.
+     * 
+     * @param key
+     *        the fingerprint so far
+     * @param attributes
+     *        the attributes to add
+     */
+    @SuppressWarnings("unchecked")
+    private void appendAttributes(StringBuilder key, Set attributes) {
+        Set<Attribute> sorted = new TreeSet(new AttributeComparator());
+        sorted.addAll(attributes);
+        for (Attribute a : sorted) {
+            key.append(a.getId()).append(FIELD_SEPARATOR);
+            key.append(a.getType()).append(FIELD_SEPARATOR);
+            key.append(a.getValue().encode()).append(FIELD_SEPARATOR);
+            if (a.getIssuer() != null) {
+                key.append(a.getIssuer());
+            }
+            key.append(FIELD_SEPARATOR);
+            if (a.getIssueInstant() != null) {
+                key.append(a.getIssueInstant().encode());
+            }
+            key.append(END);
         }
+        key.append(END);
+    }
+
+    /**
+     * A request, its fingerprint, and the PID it is about.
+     */
+    private static class Fingerprint {
+
+        final String request;
+
+        final String key;
 
-        byte[] hash = digest.digest();
+        final String pid;
 
-        return byte2hex(hash);
+        Fingerprint(String request, String key, String pid) {
+            this.request = request;
+            this.key = key;
+            this.pid = pid;
+        }
     }
 
     /**
-     * Utility function to add an attribute to the hash digest.
-     * 
-     * @param a
-     *        the attribute to hash
+     * A cached response.
      */
-    private void hashAttribute(Attribute a) {
-        digest.update(a.getId().toString().getBytes());
-        digest.update(a.getType().toString().getBytes());
-        digest.update(a.getValue().encode().getBytes());
-        if (a.getIssuer() != null) {
-            digest.update(a.getIssuer().getBytes());
-        }
-        if (a.getIssueInstant() != null) {
-            digest.update(a.getIssueInstant().encode().getBytes());
+    private static class Item {
+
+        final String response;
+
+        final String pid;
+
+        final long created;
+
+        Item(String response, String pid, long created) {
+            this.response = response;
+            this.pid = pid;
+            this.created = created;
         }
     }
 
     /**
-     * Converts a hash into its hexadecimal string representation.
-     * 
-     * @param bytes
-     *        the byte array to convert
-     * @return the hexadecimal string representation
+     * One segment of the cache: a map in least-recently-used order, which
+     * drops its eldest item when it is full, and the keys of its items for
+     * each PID. Items are added and removed with add and discard, which keep
+     * the two in step. Callers synchronize on it.
      */
-    private String byte2hex(byte[] bytes) {
-        char[] hexChars =
-                {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b',
-                        'c', 'd', 'e', 'f'};
-
-        StringBuffer sb = new StringBuffer();
-        for (byte b : bytes) {
-            sb.append(hexChars[b >> 4 & 0xf]);
-            sb.append(hexChars[b & 0xf]);
+    private static class Segment
+            extends LinkedHashMap<String, Item> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        private final Map<String, Set<String>> keysByPid =
+                new HashMap<String, Set<String>>();
+
+        Segment(int capacity) {
+            super(capacity * 4 / 3 + 1, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        void add(String key, Item item) {
+            Item old = put(key, item);
+            if (old != null) {
+                unindex(key, old);
+            }
+            if (item.pid != null) {
+                Set<String> keys = keysByPid.get(item.pid);
+                if (keys == null) {
+                    keys = new HashSet<String>();
+                    keysByPid.put(item.pid, keys);
+                }
+                keys.add(key);
+            }
+        }
+
+        void discard(String key) {
+            Item item = remove(key);
+            if (item != null) {
+                unindex(key, item);
+            }
+        }
+
+        /**
+         * Removes the items for a PID.
+         * 
+         * @return the number of items removed
+         */
+        int invalidate(String pid) {
+            Set<String> keys = keysByPid.remove(pid);
+            if (keys == null) {
+                return 0;
+            }
+            for (String key : keys) {
+                remove(key);
+            }
+            return keys.size();
+        }
+
+        @Override
+        public void clear() {
+            super.clear();
+            keysByPid.clear();
+        }
+
+        private void unindex(String key, Item item) {
+            if (item.pid != null) {
+                Set<String> keys = keysByPid.get(item.pid);
+                if (keys != null) {
+                    keys.remove(key);
+                    if (keys.isEmpty()) {
+                        keysByPid.remove(item.pid);
+                    }
+                }
+            }
         }
 
-        return new String(sb);
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Item> eldest) {
+            if (size() > capacity) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Purging cache element");
+                }
+                unindex(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+            return false;
+        }
     }
 }
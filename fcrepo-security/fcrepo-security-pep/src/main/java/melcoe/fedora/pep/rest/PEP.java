@@ -149,6 +149,11 @@ public final class PEP
 
                 // pass the request along to the next chain...
                 chain.doFilter(req, res);
+
+                // the operation has completed, so its changes can now be seen
+                if (reqCtx != null) {
+                    ctxHandler.invalidateChanges(reqCtx);
+                }
             } else {
                 // no filter, just use the original request/response...
                 chain.doFilter(request, response);
@@ -66,6 +66,14 @@ public class PEP
 
     private static Logger log = Logger.getLogger(PEP.class.getName());
 
+    /**
+     * The MessageContext property that holds a permitted request, so the
+     * cached responses it makes stale can be invalidated once the operation
+     * has completed.
+     */
+    private static final String PERMITTED_REQUEST =
+            "melcoe.fedora.pep.ws.permittedRequest";
+
     /**
      * A list of instantiated handlers. As operations are invoked, handlers for
      * those operations are created and added to this list
@@ -106,6 +114,15 @@ public class PEP
                     + "/" + context.getOperation().getName() + " [" + ts + "]");
         }
 
+        // the operation has completed, so its changes can now be seen
+        if (context.getPastPivot()) {
+            RequestCtx permitted =
+                    (RequestCtx) context.getProperty(PERMITTED_REQUEST);
+            if (permitted != null) {
+                ctxHandler.invalidateChanges(permitted);
+            }
+        }
+
         // Obtain the service details
         ServiceDesc service = context.getService().getServiceDescription();
         // Obtain the operation details and message type
@@ -169,6 +186,10 @@ public class PEP
 
         // TODO: enforce will need to ensure that obligations are met.
         enforce(resCtx);
+
+        if (!context.getPastPivot()) {
+            context.setProperty(PERMITTED_REQUEST, reqCtx);
+        }
     }
 
     /**
@@ -0,0 +1,256 @@
+/*
+ * File: ResponseCacheImplTest.java
+ *
+ * Copyright 2007 Macquarie E-Learning Centre Of Excellence
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package melcoe.fedora.pep;
+
+import junit.framework.JUnit4TestAdapter;
+
+import melcoe.xacml.util.ContextUtil;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.xacml.ctx.RequestCtx;
+
+import fedora.common.Constants;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the response cache: request fingerprints, expiry, eviction,
+ * invalidation, and the hit counters kept by the evaluation engine.
+ */
+public class ResponseCacheImplTest {
+
+    private static final String PERMIT =
+            "<Response><Result><Decision>Permit</Decision>"
+                    + "<Status><StatusCode Value=\"urn:oasis:names:tc:xacml:1.0:status:ok\"/></Status>"
+                    + "</Result></Response>";
+
+    private static final String READ =
+            "urn:fedora:names:fedora:2.1:action:id-getDatastreamDissemination";
+
+    private ResponseCacheImpl cache;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new ResponseCacheImpl(new Integer(1000), new Long(60000));
+    }
+
+    @Test
+    public void testFingerprintIgnoresOrderAndLayout() throws Exception {
+        cache.addCacheItem(request("demo:1", READ, false), PERMIT);
+        assertEquals(PERMIT, cache.getCacheItem(request("demo:1", READ, true)));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testFingerprintDistinguishesAttributes() throws Exception {
+        cache.addCacheItem(request("demo:1", READ, false), PERMIT);
+        assertNull(cache.getCacheItem(request("demo:2", READ, false)));
+        assertNull(cache.getCacheItem(request("demo:1",
+                                              Constants.ACTION.MODIFY_OBJECT.uri,
+                                              false)));
+        assertNull(cache.getCacheItem(request("demo:1", READ, false)
+                .replace("fedoraAdmin", "someoneElse")));
+    }
+
+    @Test
+    public void testTimeToLive() throws Exception {
+        cache = new ResponseCacheImpl(new Integer(1000), new Long(50));
+        String request = request("demo:1", READ, false);
+        cache.addCacheItem(request, PERMIT);
+        assertEquals(PERMIT, cache.getCacheItem(request));
+
+        Thread.sleep(100);
+        assertNull(cache.getCacheItem(request));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testSizeLimit() throws Exception {
+        cache = new ResponseCacheImpl(new Integer(32), new Long(60000));
+        String last = null;
+        for (int i = 0; i < 200; i++) {
+            last = request("demo:" + i, READ, false);
+            cache.addCacheItem(last, PERMIT);
+        }
+        assertTrue("Cache grew to " + cache.size(), cache.size() <= 32);
+        assertEquals(PERMIT, cache.getCacheItem(last));
+
+        // evicted items must not be found by invalidation
+        for (int i = 0; i < 199; i++) {
+            cache.invalidate("demo:" + i);
+        }
+        assertEquals(1, cache.size());
+        assertEquals(PERMIT, cache.getCacheItem(last));
+    }
+
+    @Test
+    public void testInvalidateByPid() throws Exception {
+        cache.addCacheItem(request("demo:1", READ, false), PERMIT);
+        cache.addCacheItem(request("demo:1",
+                                   Constants.ACTION.MODIFY_OBJECT.uri,
+                                   false), PERMIT);
+        cache.addCacheItem(request("demo:2", READ, false), PERMIT);
+
+        cache.invalidate("demo:1");
+        assertEquals(1, cache.size());
+        assertNull(cache.getCacheItem(request("demo:1", READ, false)));
+        assertEquals(PERMIT, cache.getCacheItem(request("demo:2", READ, false)));
+
+        // a re-added item can be invalidated again
+        cache.addCacheItem(request("demo:1", READ, false), PERMIT);
+        cache.invalidate("demo:1");
+        assertNull(cache.getCacheItem(request("demo:1", READ, false)));
+    }
+
+    @Test
+    public void testInvalidateOnChange() throws Exception {
+        cache.addCacheItem(request("demo:1", READ, false), PERMIT);
+        cache.addCacheItem(request("demo:2", READ, false), PERMIT);
+
+        // changing an object's content drops only its responses
+        ContextHandlerImpl.invalidateChanges(cache,
+                                             requestCtx("demo:1",
+                                                        Constants.ACTION.MODIFY_DATASTREAM_BY_VALUE.uri,
+                                                        "DC"));
+        assertNull(cache.getCacheItem(request("demo:1", READ, false)));
+        assertEquals(PERMIT, cache.getCacheItem(request("demo:2", READ, false)));
+
+        // changing its policy may change the decisions for any object
+        ContextHandlerImpl.invalidateChanges(cache,
+                                             requestCtx("demo:1",
+                                                        Constants.ACTION.MODIFY_DATASTREAM_BY_VALUE.uri,
+                                                        "POLICY"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testHitCounters() throws Exception {
+        CountingClient client = new CountingClient();
+        EvaluationEngineImpl engine = new EvaluationEngineImpl();
+        engine.setClient(client);
+        engine.setResponseCache(cache);
+        assertEquals(0.0, engine.getCacheHitRate(), 0.0);
+
+        engine.evaluate(request("demo:1", READ, false));
+        engine.evaluate(request("demo:1", READ, true));
+        engine.evaluate(request("demo:2", READ, false));
+        engine.evaluate(request("demo:2", READ, false));
+
+        assertEquals(2, client.calls);
+        assertEquals(2, engine.getCacheHits());
+        assertEquals(2, engine.getCacheMisses());
+        assertEquals(0.5, engine.getCacheHitRate(), 0.0);
+    }
+
+    /**
+     * Builds a request for an action on an object by fedoraAdmin. The
+     * alternative form has the same attributes, in a different order and
+     * layout.
+     */
+    private static String request(String pid,
+                                  String action,
+                                  boolean alternative) {
+        String subject1 =
+                "<Subject SubjectCategory=\"urn:oasis:names:tc:xacml:1.0:subject-category:access-subject\">"
+                        + attribute("urn:oasis:names:tc:xacml:1.0:subject:subject-id",
+                                    "string",
+                                    "fedoraAdmin") + "</Subject>";
+        String loginId =
+                attribute("urn:fedora:names:fedora:2.1:subject:loginId",
+                          "string",
+                          "fedoraAdmin");
+        String represented =
+                attribute("urn:fedora:names:fedora:2.1:subject:subjectRepresented",
+                          "string",
+                          "fedoraAdmin");
+        String pidAttribute =
+                attribute(Constants.OBJECT.PID.uri, "string", pid);
+        String resourceId =
+                attribute("urn:oasis:names:tc:xacml:1.0:resource:resource-id",
+                          "anyURI",
+                          pid);
+        String actionId = attribute(Constants.ACTION.ID.uri, "string", action);
+        String api =
+                attribute(Constants.ACTION.API.uri,
+                          "string",
+                          Constants.ACTION.APIA.uri);
+
+        if (!alternative) {
+            return "<Request>" + subject1
+                    + "<Subject SubjectCategory=\"urn:oasis:names:tc:xacml:1.0:subject-category:access-subject\">"
+                    + loginId + represented + "</Subject>" + "<Resource>"
+                    + pidAttribute + resourceId + "</Resource>" + "<Action>"
+                    + api + actionId + "</Action>" + "</Request>";
+        }
+        return "<Request>\n  "
+                + "<Subject SubjectCategory=\"urn:oasis:names:tc:xacml:1.0:subject-category:access-subject\">\n    "
+                + represented + "\n    " + loginId + "\n  </Subject>\n  "
+                + subject1 + "\n  <Resource>\n    " + resourceId + "\n    "
+                + pidAttribute + "\n  </Resource>\n  <Action>\n    "
+                + actionId + "\n    " + api + "\n  </Action>\n</Request>\n";
+    }
+
+    private static String attribute(String id, String type, String value) {
+        return "<Attribute AttributeId=\"" + id
+                + "\" DataType=\"http://www.w3.org/2001/XMLSchema#" + type
+                + "\"><AttributeValue>" + value
+                + "</AttributeValue></Attribute>";
+    }
+
+    private static RequestCtx requestCtx(String pid,
+                                         String action,
+                                         String dsid)
+            throws Exception {
+        String request = request(pid, action, false);
+        request =
+                request.replace("</Resource>", attribute(Constants.DATASTREAM.ID.uri,
+                                                         "string",
+                                                         dsid)
+                        + "</Resource>");
+        return new ContextUtil().makeRequestCtx(request);
+    }
+
+    /**
+     * A PDP that permits everything, and counts the requests it is sent.
+     */
+    private static class CountingClient
+            implements PDPClient {
+
+        int calls;
+
+        public String evaluate(String request) {
+            calls++;
+            return PERMIT;
+        }
+
+        public String evaluateBatch(String[] requests) {
+            calls += requests.length;
+            return PERMIT;
+        }
+    }
+
+    // Supports legacy test runners
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ResponseCacheImplTest.class);
+    }
+}
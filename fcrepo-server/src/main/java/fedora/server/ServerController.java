@@ -6,6 +6,10 @@ package fedora.server;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import java.util.Date;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -26,8 +30,14 @@ import fedora.server.errors.servletExceptionExtensions.InternalError500Exception
 import fedora.server.errors.servletExceptionExtensions.Ok200Exception;
 import fedora.server.errors.servletExceptionExtensions.Unavailable503Exception;
 import fedora.server.security.Authorization;
+import fedora.server.storage.DefaultDOManager;
+import fedora.server.storage.RepositoryCounters;
+import fedora.server.utilities.DateUtility;
+import fedora.server.utilities.StreamUtility;
 import fedora.server.utilities.status.ServerState;
 import fedora.server.utilities.status.ServerStatusFile;
+import fedora.utilities.XmlTransformUtility;
+import fedora.utilities.XmlTransformUtility.TransformStatistics;
 
 /**
  * Server Controller.
@@ -180,10 +190,144 @@ public class ServerController
                                      new String[0]);
         }
 
+        if (action.equals("counters")) {
+            actionLabel = "getting repository counters";
+            Server server = getRunningServer(request, actionLabel);
+            Object manager =
+                    server.getModule("fedora.server.storage.DOManager");
+            if (!(manager instanceof DefaultDOManager)) {
+                throw new InternalError500Exception(request,
+                                                    actionLabel,
+                                                    "error performing action2",
+                                                    new String[0]);
+            }
+            DefaultDOManager doManager = (DefaultDOManager) manager;
+            RepositoryCounters counters = doManager.getRepositoryCounters();
+            // the counters are part of the server status
+            checkStatusAccess(server, request, actionLabel);
+            long objectCount = counters.getObjectCount();
+            long latestModDate = counters.getLatestModDate();
+            String repositoryHash;
+            try {
+                repositoryHash = doManager.getRepositoryHash();
+            } catch (Throwable t) {
+                throw new InternalError500Exception(request,
+                                                    actionLabel,
+                                                    "error performing action3",
+                                                    new String[0]);
+            }
+            response.setContentType("text/xml; charset=UTF-8");
+            PrintWriter out =
+                    new PrintWriter(new OutputStreamWriter(response
+                            .getOutputStream(), "UTF-8"));
+            out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            out.println("<repositoryCounters>");
+            out.println("  <" + RepositoryCounters.OBJECT_COUNT + ">"
+                    + objectCount + "</" + RepositoryCounters.OBJECT_COUNT
+                    + ">");
+            out.println("  <" + RepositoryCounters.LATEST_MOD_DATE + ">"
+                    + DateUtility.convertDateToString(new Date(latestModDate))
+                    + "</" + RepositoryCounters.LATEST_MOD_DATE + ">");
+            out.println("  <repositoryHash>" + StreamUtility.enc(repositoryHash)
+                    + "</repositoryHash>");
+            out.println("</repositoryCounters>");
+            out.flush();
+            return;
+        }
+
+        if (action.equals("transformStatistics")) {
+            actionLabel = "getting stylesheet statistics";
+            Server server = getRunningServer(request, actionLabel);
+            checkStatusAccess(server, request, actionLabel);
+            response.setContentType("text/xml; charset=UTF-8");
+            PrintWriter out =
+                    new PrintWriter(new OutputStreamWriter(response
+                            .getOutputStream(), "UTF-8"));
+            out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            out.println("<transformStatistics>");
+            for (TransformStatistics stats : XmlTransformUtility
+                    .getTransformStatistics()) {
+                out.println("  <stylesheet path=\""
+                        + StreamUtility.enc(stats.getPath()) + "\" count=\""
+                        + stats.getCount() + "\" averageMicroseconds=\""
+                        + stats.getAverageMicroseconds() + "\"/>");
+            }
+            out.println("</transformStatistics>");
+            out.flush();
+            return;
+        }
+
         throw new BadRequest400Exception(request, actionLabel, "bad action:  "
                 + action, new String[0]);
     }
 
+    /**
+     * Gets the running server instance for an action.
+     */
+    private Server getRunningServer(HttpServletRequest request,
+                                    String actionLabel)
+            throws ServletException {
+        File fedoraHome = new File(Constants.FEDORA_HOME);
+        if (!Server.hasInstance(fedoraHome)) {
+            throw new Unavailable503Exception(request,
+                                              actionLabel,
+                                              "server not available",
+                                              new String[0]);
+        }
+        Server server = null;
+        try {
+            server = Server.getInstance(fedoraHome, false);
+        } catch (Throwable t) {
+            throw new InternalError500Exception(request,
+                                                actionLabel,
+                                                "error performing action0",
+                                                new String[0]);
+        }
+        if (server == null) {
+            throw new InternalError500Exception(request,
+                                                actionLabel,
+                                                "error performing action1",
+                                                new String[0]);
+        }
+        return server;
+    }
+
+    /**
+     * Checks that the caller may see the server status, which the counters
+     * and statistics are part of.
+     */
+    private void checkStatusAccess(Server server,
+                                   HttpServletRequest request,
+                                   String actionLabel)
+            throws ServletException {
+        Context context =
+                ReadOnlyContext.getContext(Constants.HTTP_REQUEST.REST.uri,
+                                           request);
+        try {
+            server.status(context);
+        } catch (AuthzOperationalException aoe) {
+            throw new Forbidden403Exception(request,
+                                            actionLabel,
+                                            "authorization failed",
+                                            new String[0]);
+        } catch (AuthzDeniedException ade) {
+            throw new Forbidden403Exception(request,
+                                            actionLabel,
+                                            "authorization denied",
+                                            new String[0]);
+        } catch (AuthzPermittedException ape) {
+            throw new Continue100Exception(request,
+                                           actionLabel,
+                                           "authorization permitted",
+                                           new String[0]);
+        } catch (Throwable t) {
+            throw new InternalError500Exception(request,
+                                                actionLabel,
+                                                "error performing action3",
+                                                new String[0]);
+        }
+    }
+
     @Override
     public void init() throws ServletException {
 
@@ -1099,12 +1099,16 @@ public class DefaultAccess
                             .GetDatastream(dsID, asOfDateTime);
             mimeTypedStream =
                     new MIMETypedStream(ds.DSMIME, dmc.getContentStream(), null);
+            mimeTypedStream.setETag(getETag(ds));
+            mimeTypedStream.setLastModified(ds.DSCreateDT);
         } else if (ds.DSControlGrp.equalsIgnoreCase("X")) {
             DatastreamXMLMetadata dxm =
                     (DatastreamXMLMetadata) reader.GetDatastream(dsID,
                                                                  asOfDateTime);
             mimeTypedStream =
                     new MIMETypedStream(ds.DSMIME, dxm.getContentStream(), null);
+            mimeTypedStream.setETag(getETag(ds));
+            mimeTypedStream.setLastModified(ds.DSCreateDT);
         } else if (ds.DSControlGrp.equalsIgnoreCase("R")) {
             DatastreamReferencedContent drc =
                     (DatastreamReferencedContent) reader
@@ -1144,4 +1148,26 @@ public class DefaultAccess
                 + " milliseconds.");
         return mimeTypedStream;
     }
+
+    /**
+     * Gets an HTTP entity tag for the content of a datastream version: its
+     * stored checksum if it has one, otherwise its version id and creation
+     * date, which never change for a given version.
+     * <p>
+     * Inline XML is re-serialized from the object each time it is read, so
+     * its bytes are not guaranteed to match from one read to the next, nor
+     * its checksum. Its tag is weak, built from the version id and creation
+     * date, and can't be used to resume a download with a range request.
+     */
+    private static String getETag(Datastream ds) {
+        long created = ds.DSCreateDT == null ? 0 : ds.DSCreateDT.getTime();
+        String versionTag = "\"" + ds.DSVersionID + "-" + created + "\"";
+        if (ds.DSControlGrp.equalsIgnoreCase("X")) {
+            return "W/" + versionTag;
+        } else if (ds.DSChecksum != null && ds.DSChecksum.length() > 0
+                && !ds.DSChecksum.equals(Datastream.CHECKSUM_NONE)) {
+            return "\"" + ds.DSChecksum + "\"";
+        }
+        return versionTag;
+    }
 }
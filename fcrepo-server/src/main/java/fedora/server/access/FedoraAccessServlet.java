@@ -6,6 +6,7 @@ package fedora.server.access;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -18,6 +19,7 @@ import java.net.URLDecoder;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.Map;
 
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
@@ -25,9 +27,7 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
@@ -54,6 +54,8 @@ import fedora.server.errors.servletExceptionExtensions.RootException;
 import fedora.server.storage.types.MIMETypedStream;
 import fedora.server.storage.types.Property;
 import fedora.server.utilities.DateUtility;
+import fedora.server.utilities.HttpRangeRequest;
+import fedora.server.utilities.SendfileUtility;
 import fedora.server.utilities.StreamUtility;
 
 import fedora.utilities.XmlTransformUtility;
@@ -567,12 +569,8 @@ public class FedoraAccessServlet
                     File xslFile =
                             new File(s_server.getHomeDir(),
                                      "access/viewObjectProfile.xslt");
-                    TransformerFactory factory =
-                            XmlTransformUtility.getTransformerFactory();
-
-                    Templates template =
-                            factory.newTemplates(new StreamSource(xslFile));
-                    Transformer transformer = template.newTransformer();
+                    Transformer transformer =
+                            XmlTransformUtility.getTransformer(xslFile);
                     transformer.setParameter("fedora", context
                             .getEnvironmentValue(FEDORA_APP_CONTEXT_NAME));
                     transformer.transform(new StreamSource(pr),
@@ -663,7 +661,24 @@ public class FedoraAccessServlet
                 response.sendRedirect(sb.toString());
             } else {
 
-                response.setContentType(dissemination.MIMEType);
+                InputStream dissemResult = dissemination.getStream();
+                long length = -1;
+                if (dissemResult instanceof FileInputStream) {
+                    length =
+                            ((FileInputStream) dissemResult).getChannel()
+                                    .size();
+                }
+                HttpRangeRequest rangeRequest =
+                        new HttpRangeRequest(length,
+                                             dissemination.getETag(),
+                                             dissemination.getLastModified(),
+                                             request.getHeader("If-None-Match"),
+                                             request.getHeader("If-Modified-Since"),
+                                             request.getHeader("Range"),
+                                             request.getHeader("If-Range"));
+                response.setStatus(rangeRequest.getStatus());
+                response.setContentType(rangeRequest
+                        .getContentType(dissemination.MIMEType));
                 Property[] headerArray = dissemination.header;
                 if (headerArray != null) {
                     for (int i = 0; i < headerArray.length; i++) {
@@ -681,19 +696,29 @@ public class FedoraAccessServlet
                         }
                     }
                 }
-                out = response.getOutputStream();
-                int byteStream = 0;
+                for (Map.Entry<String, String> header : rangeRequest
+                        .getHeaders().entrySet()) {
+                    response.setHeader(header.getKey(), header.getValue());
+                }
                 LOG.debug("Started reading dissemination stream");
-                InputStream dissemResult = dissemination.getStream();
-                byte[] buffer = new byte[BUF];
-                while ((byteStream = dissemResult.read(buffer)) != -1) {
-                    out.write(buffer, 0, byteStream);
+                File file =
+                        SendfileUtility.getSendableFile(request, dissemResult);
+                long[] range = rangeRequest.getBodyRange();
+                if (!rangeRequest.hasBody()) {
+                    dissemResult.close();
+                } else if (file != null && range != null) {
+                    // the container sends the stored file itself
+                    SendfileUtility.sendfile(request, file, range[0], range[1]);
+                    dissemResult.close();
+                } else {
+                    out = response.getOutputStream();
+                    rangeRequest.writeBody(dissemResult,
+                                           out,
+                                           dissemination.MIMEType);
+                    out.flush();
+                    out.close();
                 }
-                buffer = null;
-                dissemResult.close();
                 dissemResult = null;
-                out.flush();
-                out.close();
                 LOG.debug("Finished reading dissemination stream");
             }
         } finally {
@@ -20,9 +20,7 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
@@ -228,11 +226,8 @@ public class GetObjectHistoryServlet
                     File xslFile =
                             new File(s_server.getHomeDir(),
                                      "access/viewObjectHistory.xslt");
-                    TransformerFactory factory =
-                            XmlTransformUtility.getTransformerFactory();
-                    Templates template =
-                            factory.newTemplates(new StreamSource(xslFile));
-                    Transformer transformer = template.newTransformer();
+                    Transformer transformer =
+                            XmlTransformUtility.getTransformer(xslFile);
                     transformer.setParameter("fedora", context
                                              .getEnvironmentValue(FEDORA_APP_CONTEXT_NAME));
                     transformer.transform(new StreamSource(pr),
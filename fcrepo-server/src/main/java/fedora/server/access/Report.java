@@ -23,7 +23,6 @@ import java.util.List;
 import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
@@ -749,11 +748,9 @@ public class Report {
         Hashtable<String, String> params = null;
 
         protected void xform(Source source) throws TransformerException {
-            TransformerFactory factory = XmlTransformUtility.getTransformerFactory();
             transformer =
-                    factory.newTransformer(new StreamSource(s_server
-                            .getHomeDir()
-                            + "/" + XSLT_DIR + "/" + xslt));
+                    XmlTransformUtility.getTransformer(new File(s_server
+                            .getHomeDir(), XSLT_DIR + "/" + xslt));
             Enumeration<String> keys = params.keys();
             while (keys.hasMoreElements()) {
                 String key = keys.nextElement();
@@ -13,10 +13,8 @@ import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Date;
 
-import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
@@ -123,11 +121,8 @@ public class DefaultDisseminatorImpl
             ByteArrayOutputStream out = new ByteArrayOutputStream();
             File xslFile =
                     new File(reposHomeDir, "access/viewObjectProfile.xslt");
-            TransformerFactory factory =
-                    XmlTransformUtility.getTransformerFactory();
-            Templates template =
-                    factory.newTemplates(new StreamSource(xslFile));
-            Transformer transformer = template.newTransformer();
+            Transformer transformer =
+                    XmlTransformUtility.getTransformer(xslFile);
             transformer.setParameter("fedora", context
                     .getEnvironmentValue(Constants.FEDORA_APP_CONTEXT_NAME));
             transformer.transform(new StreamSource(in), new StreamResult(out));
@@ -187,11 +182,8 @@ public class DefaultDisseminatorImpl
             ByteArrayOutputStream out = new ByteArrayOutputStream();
             File xslFile =
                     new File(reposHomeDir, "access/listMethods.xslt");
-            TransformerFactory factory =
-                    XmlTransformUtility.getTransformerFactory();
-            Templates template =
-                    factory.newTemplates(new StreamSource(xslFile));
-            Transformer transformer = template.newTransformer();
+            Transformer transformer =
+                    XmlTransformUtility.getTransformer(xslFile);
             transformer.setParameter("fedora", context
                     .getEnvironmentValue(Constants.FEDORA_APP_CONTEXT_NAME));
             transformer.transform(new StreamSource(in), new StreamResult(out));
@@ -237,11 +229,8 @@ public class DefaultDisseminatorImpl
             //InputStream in = getItemIndex().getStream();
             ByteArrayOutputStream out = new ByteArrayOutputStream();
             File xslFile = new File(reposHomeDir, "access/viewItemIndex.xslt");
-            TransformerFactory factory =
-                    XmlTransformUtility.getTransformerFactory();
-            Templates template =
-                    factory.newTemplates(new StreamSource(xslFile));
-            Transformer transformer = template.newTransformer();
+            Transformer transformer =
+                    XmlTransformUtility.getTransformer(xslFile);
             transformer.setParameter("fedora", context
                     .getEnvironmentValue(Constants.FEDORA_APP_CONTEXT_NAME));
             transformer.transform(new StreamSource(in), new StreamResult(out));
@@ -292,11 +281,8 @@ public class DefaultDisseminatorImpl
             //InputStream in = getDublinCore().getStream();
             ByteArrayOutputStream out = new ByteArrayOutputStream();
             File xslFile = new File(reposHomeDir, "access/viewDublinCore.xslt");
-            TransformerFactory factory =
-                    XmlTransformUtility.getTransformerFactory();
-            Templates template =
-                    factory.newTemplates(new StreamSource(xslFile));
-            Transformer transformer = template.newTransformer();
+            Transformer transformer =
+                    XmlTransformUtility.getTransformer(xslFile);
             transformer.setParameter("fedora", context
                     .getEnvironmentValue(Constants.FEDORA_APP_CONTEXT_NAME));
             transformer.transform(new StreamSource(in), new StreamResult(out));
@@ -39,6 +39,10 @@ public interface JournalConstants {
 
     String PARAMETER_JOURNAL_FILE_AGE_LIMIT = "journalFileAgeLimit";
 
+    String PARAMETER_JOURNAL_GROUP_COMMIT = "journalGroupCommit";
+
+    String PARAMETER_JOURNAL_REPLAY_THREADS = "journalReplayThreads";
+
     // Acceptable values for server parameters.
     String VALUE_TRUE = "true";
 
@@ -55,12 +55,16 @@ public class JournalConsumer
         reader =
                 JournalReader
                         .getInstance(parameters, role, recoveryLog, server);
-        consumerThread =
-                new JournalConsumerThread(parameters,
-                                          role,
-                                          server,
-                                          reader,
-                                          recoveryLog);
+        try {
+            consumerThread =
+                    new JournalConsumerThread(parameters,
+                                              role,
+                                              server,
+                                              reader,
+                                              recoveryLog);
+        } catch (JournalException e) {
+            throw new ModuleInitializationException(e.getMessage(), role, e);
+        }
     }
 
     /**
@@ -4,23 +4,31 @@
  */
 package fedora.server.journal;
 
+import java.util.Date;
 import java.util.Map;
 
 import org.apache.log4j.Logger;
 
+import fedora.server.errors.ServerException;
 import fedora.server.journal.entry.ConsumerJournalEntry;
 import fedora.server.journal.helpers.JournalHelper;
+import fedora.server.journal.helpers.ParameterHelper;
 import fedora.server.journal.recoverylog.JournalRecoveryLog;
 import fedora.server.management.ManagementDelegate;
 
 /**
  * Process the journal entries as a separate Thread, while the JournalConsumer
  * is blocking all calls from outside.
+ * <p>
+ * If the <code>journalReplayThreads</code> parameter is greater than 1, the
+ * entries are replayed by that many worker threads, while this thread reads
+ * ahead. See {@link JournalReplayDispatcher}.
  * 
  * @author Jim Blake
  */
 public class JournalConsumerThread
-        extends Thread {
+        extends Thread
+        implements JournalConstants {
 
     /** Logger for this class. */
     private static final Logger LOG =
@@ -32,6 +40,8 @@ public class JournalConsumerThread
 
     private final JournalRecoveryLog recoveryLog;
 
+    private final int replayThreads;
+
     private ManagementDelegate delegate;
 
     private boolean shutdown = false;
@@ -45,10 +55,16 @@ public class JournalConsumerThread
                                  String role,
                                  ServerInterface server,
                                  JournalReader reader,
-                                 JournalRecoveryLog recoveryLog) {
+                                 JournalRecoveryLog recoveryLog)
+            throws JournalException {
         this.server = server;
         this.reader = reader;
         this.recoveryLog = recoveryLog;
+        replayThreads =
+                ParameterHelper
+                        .getOptionalPositiveIntegerParameter(parameters,
+                                                             PARAMETER_JOURNAL_REPLAY_THREADS,
+                                                             1);
     }
 
     /**
@@ -72,19 +88,18 @@ public class JournalConsumerThread
 
             recoveryLog.log("Start recovery.");
 
-            while (true) {
-                if (shutdown) {
-                    break;
-                }
-                ConsumerJournalEntry cje = reader.readJournalEntry();
-                if (cje == null) {
-                    break;
-                }
-                cje.invokeMethod(delegate, recoveryLog);
-                cje.close();
+            JournalReplayStatistics statistics =
+                    new JournalReplayStatistics(recoveryLog);
+            if (replayThreads > 1) {
+                recoveryLog.log("Replaying with " + replayThreads
+                        + " threads.");
+                replayInParallel(statistics);
+            } else {
+                replay(statistics);
             }
             reader.shutdown();
 
+            statistics.logTotals();
             recoveryLog.log("Recovery complete.");
         } catch (Throwable e) {
             /*
@@ -104,6 +119,59 @@ public class JournalConsumerThread
         }
     }
 
+    /**
+     * Read each entry and replay it, one at a time.
+     */
+    private void replay(JournalReplayStatistics statistics)
+            throws ServerException, JournalException {
+        while (true) {
+            if (shutdown) {
+                break;
+            }
+            ConsumerJournalEntry cje = reader.readJournalEntry();
+            if (cje == null) {
+                break;
+            }
+            Date entryTime = cje.getContext().now();
+            cje.invokeMethod(delegate, recoveryLog);
+            cje.close();
+            statistics.entryReplayed(entryTime);
+        }
+    }
+
+    /**
+     * Read each entry and hand it to the dispatcher, then wait for the
+     * dispatcher to finish. The reader waits for the dispatcher at each file
+     * boundary, so no file is archived before its entries are replayed.
+     */
+    private void replayInParallel(JournalReplayStatistics statistics)
+            throws ServerException, JournalException, InterruptedException {
+        JournalReplayDispatcher dispatcher =
+                new JournalReplayDispatcher(replayThreads,
+                                            delegate,
+                                            recoveryLog,
+                                            statistics);
+        reader.setFileBoundaryListener(dispatcher);
+        try {
+            while (true) {
+                if (shutdown) {
+                    break;
+                }
+                ConsumerJournalEntry cje = reader.readJournalEntry();
+                if (cje == null) {
+                    break;
+                }
+                dispatcher.dispatch(cje);
+            }
+        } finally {
+            try {
+                dispatcher.finish();
+            } finally {
+                reader.setFileBoundaryListener(null);
+            }
+        }
+    }
+
     /**
      * Wait for the server to initialize. If we wait too long, give up and shut
      * down the thread.
@@ -74,6 +74,9 @@ public class JournalCreator
      */
     public void shutdown() throws ModuleShutdownException {
         try {
+            if (writer.getGroupCommitter() != null) {
+                writer.getGroupCommitter().shutdown();
+            }
             writer.shutdown();
         } catch (JournalException e) {
             throw new ModuleShutdownException("JournalWriter generated an error on shutdown()",
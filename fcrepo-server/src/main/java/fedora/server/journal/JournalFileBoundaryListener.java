@@ -0,0 +1,23 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.journal;
+
+/**
+ * Told by a {@link JournalReader} when it is about to close a journal file,
+ * or to check the repository hash of the next one.
+ */
+public interface JournalFileBoundaryListener {
+
+    /**
+     * Return only when every entry read so far has been replayed. The reader
+     * archives the file it has finished, or compares the repository hash,
+     * after this returns.
+     *
+     * @throws JournalException
+     *         if an entry could not be replayed. The reader leaves the file
+     *         where it is, so the entry is not lost.
+     */
+    void fileBoundary() throws JournalException;
+}
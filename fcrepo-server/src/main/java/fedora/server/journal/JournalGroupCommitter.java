@@ -0,0 +1,317 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.journal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.log4j.Logger;
+
+import fedora.server.errors.ServerException;
+import fedora.server.journal.entry.CreatorJournalEntry;
+import fedora.server.management.ManagementDelegate;
+
+/**
+ * Invokes journaled Management methods concurrently, and writes their journal
+ * entries in batches from a single thread.
+ * <p>
+ * Without group commit, each Management method holds the
+ * {@link JournalWriter#SYNCHRONIZER} while it runs and while its entry is
+ * written, so only one runs at a time. Here, instead:
+ * <ul>
+ * <li>Methods on different objects run at the same time. Methods on the same
+ * object (as given by the <code>pid</code> argument) take turns, holding one
+ * of a fixed set of locks chosen by the PID.</li>
+ * <li>When a method completes, and before it lets go of its object, its entry
+ * is given the next sequence number. The commit thread writes entries in
+ * sequence order, as many as are waiting, and the writer flushes once per
+ * batch. The method returns only after its entry has been written.</li>
+ * <li>So entries for any one object are written in the order that the
+ * methods ran, which is the order a {@link JournalConsumer} will replay
+ * them.</li>
+ * <li>Each method holds a shared lock on the writer's journal files until its
+ * entry is written. Opening or closing a journal file takes the lock
+ * exclusively, so the repository hash for a new file is calculated when no
+ * method is running and every earlier entry is in the earlier file.</li>
+ * <li>An ingest that keeps the PID from its serialization can't be matched to
+ * its object until it has run, so it takes the exclusive lock too. Ingests
+ * that are given a new PID don't.</li>
+ * </ul>
+ */
+public class JournalGroupCommitter
+        implements JournalConstants {
+
+    /** Logger for this class. */
+    private static final Logger LOG =
+            Logger.getLogger(JournalGroupCommitter.class.getName());
+
+    /** How many locks the PIDs are spread across. */
+    private static final int PID_LOCK_COUNT = 64;
+
+    /** The most entries that will be written in one batch. */
+    private static final int MAX_BATCH_SIZE = 256;
+
+    private final JournalWriter writer;
+
+    private final ReentrantReadWriteLock fileLock;
+
+    private final ReentrantLock[] pidLocks = new ReentrantLock[PID_LOCK_COUNT];
+
+    private final AtomicLong lastSequenceNumber = new AtomicLong();
+
+    private final BlockingQueue<PendingEntry> queue =
+            new LinkedBlockingQueue<PendingEntry>();
+
+    private final Thread commitThread;
+
+    private volatile boolean shutdown = false;
+
+    JournalGroupCommitter(JournalWriter writer) {
+        this.writer = writer;
+        fileLock = writer.getFileLock();
+        for (int i = 0; i < pidLocks.length; i++) {
+            pidLocks[i] = new ReentrantLock();
+        }
+        commitThread = new Thread(new CommitLoop(), "JournalGroupCommitter");
+        commitThread.setDaemon(true);
+        commitThread.start();
+    }
+
+    /**
+     * Invoke the method of the journal entry on the delegate, and return when
+     * the entry has been written to the journal.
+     */
+    public Object invokeMethod(CreatorJournalEntry journalEntry,
+                               ManagementDelegate delegate)
+            throws ServerException, JournalException {
+        Lock lock = lockFiles(isExclusive(journalEntry));
+        try {
+            JournalOperatingMode.enforceCurrentMode();
+
+            Object result;
+            PendingEntry pending;
+            Lock pidLock = getPidLock(journalEntry);
+            if (pidLock != null) {
+                pidLock.lock();
+            }
+            try {
+                result = journalEntry.getMethod().invoke(delegate);
+                if (shutdown) {
+                    writeJournalEntries(Collections.singletonList(journalEntry));
+                    return result;
+                }
+                pending =
+                        new PendingEntry(journalEntry, lastSequenceNumber
+                                .incrementAndGet());
+                queue.add(pending);
+            } finally {
+                if (pidLock != null) {
+                    pidLock.unlock();
+                }
+            }
+
+            pending.awaitWritten();
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait for the methods in progress to finish, and stop the commit thread.
+     * Any methods invoked after this write their own entries.
+     */
+    public void shutdown() {
+        fileLock.writeLock().lock();
+        try {
+            shutdown = true;
+            commitThread.interrupt();
+            commitThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Take the file lock, prepare the writer if it needs it, and return the
+     * lock that is held.
+     */
+    private Lock lockFiles(boolean exclusive) throws JournalException {
+        Lock readLock = fileLock.readLock();
+        Lock writeLock = fileLock.writeLock();
+        if (!exclusive) {
+            readLock.lock();
+            if (!writer.needsPreparation()) {
+                return readLock;
+            }
+            readLock.unlock();
+        }
+
+        writeLock.lock();
+        try {
+            if (writer.needsPreparation()) {
+                writer.prepareToWriteJournalEntry();
+            }
+            if (exclusive) {
+                return writeLock;
+            }
+            // downgrade, so other methods can start
+            readLock.lock();
+        } catch (JournalException e) {
+            writeLock.unlock();
+            throw e;
+        } catch (RuntimeException e) {
+            writeLock.unlock();
+            throw e;
+        }
+        writeLock.unlock();
+        return readLock;
+    }
+
+    private boolean isExclusive(CreatorJournalEntry journalEntry) {
+        return METHOD_INGEST.equals(journalEntry.getMethodName())
+                && !Boolean.TRUE.equals(journalEntry.getArgumentsMap()
+                        .get(ARGUMENT_NAME_NEW_PID));
+    }
+
+    /**
+     * The PID picks the lock. Methods without a PID argument don't need one.
+     */
+    private Lock getPidLock(CreatorJournalEntry journalEntry) {
+        String pid = journalEntry.getObjectPid();
+        if (pid == null) {
+            return null;
+        }
+        return pidLocks[(pid.hashCode() & 0x7fffffff) % pidLocks.length];
+    }
+
+    private void writeJournalEntries(List<CreatorJournalEntry> journalEntries)
+            throws JournalException {
+        synchronized (JournalWriter.SYNCHRONIZER) {
+            writer.writeJournalEntries(journalEntries);
+        }
+    }
+
+    /**
+     * An entry waiting to be written, and the news of how the write went.
+     */
+    private static class PendingEntry {
+
+        final CreatorJournalEntry journalEntry;
+
+        final long sequenceNumber;
+
+        private final CountDownLatch written = new CountDownLatch(1);
+
+        private volatile JournalException error;
+
+        PendingEntry(CreatorJournalEntry journalEntry, long sequenceNumber) {
+            this.journalEntry = journalEntry;
+            this.sequenceNumber = sequenceNumber;
+        }
+
+        void setWritten(JournalException error) {
+            this.error = error;
+            written.countDown();
+        }
+
+        void awaitWritten() throws JournalException {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    written.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
+    }
+
+    /**
+     * Take entries from the queue, and write each run of consecutive sequence
+     * numbers as a batch. An entry can reach the queue a little after one with
+     * a later number, so entries wait until the ones before them arrive.
+     */
+    private class CommitLoop
+            implements Runnable {
+
+        public void run() {
+            long nextSequenceNumber = 1;
+            Map<Long, PendingEntry> waiting = new HashMap<Long, PendingEntry>();
+            List<PendingEntry> arrived = new ArrayList<PendingEntry>();
+            while (true) {
+                try {
+                    arrived.add(queue.take());
+                } catch (InterruptedException e) {
+                    if (shutdown) {
+                        return;
+                    }
+                    continue;
+                }
+                queue.drainTo(arrived);
+                for (PendingEntry pending : arrived) {
+                    waiting.put(pending.sequenceNumber, pending);
+                }
+                arrived.clear();
+
+                while (waiting.containsKey(nextSequenceNumber)) {
+                    List<PendingEntry> batch = new ArrayList<PendingEntry>();
+                    PendingEntry pending;
+                    while (batch.size() < MAX_BATCH_SIZE
+                            && (pending = waiting.remove(nextSequenceNumber)) != null) {
+                        batch.add(pending);
+                        nextSequenceNumber++;
+                    }
+                    writeBatch(batch);
+                }
+            }
+        }
+
+        private void writeBatch(List<PendingEntry> batch) {
+            List<CreatorJournalEntry> journalEntries =
+                    new ArrayList<CreatorJournalEntry>(batch.size());
+            for (PendingEntry pending : batch) {
+                journalEntries.add(pending.journalEntry);
+            }
+
+            JournalException error = null;
+            try {
+                writeJournalEntries(journalEntries);
+            } catch (JournalException e) {
+                LOG.error("Failed to write " + batch.size()
+                        + " journal entries", e);
+                error = e;
+            } catch (RuntimeException e) {
+                LOG.error("Failed to write " + batch.size()
+                        + " journal entries", e);
+                error = new JournalException(e);
+            }
+
+            for (PendingEntry pending : batch) {
+                pending.setWritten(error);
+            }
+        }
+    }
+
+}
@@ -59,6 +59,8 @@ public abstract class JournalReader
 
     private boolean ignoreHashErrors;
 
+    private volatile JournalFileBoundaryListener fileBoundaryListener;
+
     /**
      * Create an instance of the proper JournalReader child class, as determined
      * by the server parameters.
@@ -129,6 +131,26 @@ public abstract class JournalReader
      */
     public abstract void shutdown() throws JournalException;
 
+    /**
+     * Set the listener to be told before a journal file is closed, or the
+     * repository hash of the next one is checked. May be null.
+     */
+    public void setFileBoundaryListener(JournalFileBoundaryListener listener) {
+        fileBoundaryListener = listener;
+    }
+
+    /**
+     * Concrete sub-classes must call this before they close a journal file,
+     * and before they call {@link #checkRepositoryHash(String)}, so that
+     * entries still being replayed are finished first.
+     */
+    protected void fileBoundary() throws JournalException {
+        JournalFileBoundaryListener listener = fileBoundaryListener;
+        if (listener != null) {
+            listener.fileBoundary();
+        }
+    }
+
     /**
      * Concrete sub-classes should insure that their XMLEventReader is
      * positioned at the beginning of a JournalEntry, and call
@@ -0,0 +1,214 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.journal;
+
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.log4j.Logger;
+
+import fedora.server.errors.ServerException;
+import fedora.server.journal.entry.ConsumerJournalEntry;
+import fedora.server.journal.recoverylog.JournalRecoveryLog;
+import fedora.server.management.ManagementDelegate;
+
+/**
+ * Replays journal entries on several worker threads, while the
+ * {@link JournalConsumerThread} reads the entries that follow.
+ * <p>
+ * Entries are partitioned by the PID of the object they act on (for an
+ * ingest, the PID it recorded), so all of the entries for one object are
+ * replayed by the same worker, in journal order. An ingest is therefore
+ * replayed before any change to the object it creates.
+ * <p>
+ * An entry with no PID, or one that other entries may depend on without
+ * naming the same object (<code>getNextPID</code>,
+ * <code>putTempStream</code>), is a barrier: every entry before it is
+ * replayed first, then it is replayed alone, before any entry after it.
+ * <p>
+ * At each journal file boundary, the reader waits until every entry it has
+ * read is replayed, so a file is archived, and the repository hash of the
+ * next file checked, only once all of the entries before them are applied.
+ * <p>
+ * If an entry fails, no more entries are dispatched, and the failure is
+ * thrown from the next call to {@link #dispatch(ConsumerJournalEntry)},
+ * {@link #fileBoundary()} or {@link #finish()}.
+ */
+class JournalReplayDispatcher
+        implements JournalConstants, JournalFileBoundaryListener {
+
+    /** Logger for this class. */
+    private static final Logger LOG =
+            Logger.getLogger(JournalReplayDispatcher.class.getName());
+
+    /** How many entries may wait for each worker. */
+    private static final int QUEUE_CAPACITY = 64;
+
+    private final ManagementDelegate delegate;
+
+    private final JournalRecoveryLog recoveryLog;
+
+    private final JournalReplayStatistics statistics;
+
+    private final Worker[] workers;
+
+    /** Guards {@link #outstanding}. */
+    private final Object outstandingLock = new Object();
+
+    /** Entries dispatched to workers and not yet finished. */
+    private int outstanding = 0;
+
+    private volatile Throwable failure;
+
+    private volatile boolean stopped = false;
+
+    JournalReplayDispatcher(int threadCount,
+                            ManagementDelegate delegate,
+                            JournalRecoveryLog recoveryLog,
+                            JournalReplayStatistics statistics) {
+        this.delegate = delegate;
+        this.recoveryLog = recoveryLog;
+        this.statistics = statistics;
+        workers = new Worker[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            workers[i] = new Worker(i);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Hand the entry to the worker for its object, or replay it here if it is
+     * a barrier. This blocks if the worker is too far behind.
+     */
+    public void dispatch(ConsumerJournalEntry journalEntry)
+            throws ServerException, JournalException, InterruptedException {
+        checkForFailure();
+        String pid = isBarrier(journalEntry) ? null : journalEntry.getObjectPid();
+        if (pid == null) {
+            awaitIdle();
+            checkForFailure();
+            replay(journalEntry);
+        } else {
+            synchronized (outstandingLock) {
+                outstanding++;
+            }
+            workers[(pid.hashCode() & 0x7fffffff) % workers.length].queue
+                    .put(journalEntry);
+        }
+    }
+
+    /**
+     * Wait for the workers to replay everything they were given, and stop
+     * them.
+     */
+    public void finish() throws JournalException, InterruptedException {
+        try {
+            awaitIdle();
+        } finally {
+            stopped = true;
+            for (Worker worker : workers) {
+                worker.interrupt();
+            }
+        }
+        checkForFailure();
+    }
+
+    /**
+     * Wait for the workers to replay everything they were given.
+     */
+    public void fileBoundary() throws JournalException {
+        try {
+            awaitIdle();
+        } catch (InterruptedException e) {
+            throw new JournalException("Interrupted while waiting for journal "
+                    + "entries to be replayed", e);
+        }
+        checkForFailure();
+    }
+
+    private boolean isBarrier(ConsumerJournalEntry journalEntry) {
+        String methodName = journalEntry.getMethodName();
+        return METHOD_GET_NEXT_PID.equals(methodName)
+                || METHOD_PUT_TEMP_STREAM.equals(methodName);
+    }
+
+    private void replay(ConsumerJournalEntry journalEntry)
+            throws ServerException, JournalException {
+        Date entryTime = journalEntry.getContext().now();
+        journalEntry.invokeMethod(delegate, recoveryLog);
+        journalEntry.close();
+        statistics.entryReplayed(entryTime);
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        synchronized (outstandingLock) {
+            while (outstanding > 0) {
+                outstandingLock.wait();
+            }
+        }
+    }
+
+    private void entryFinished() {
+        synchronized (outstandingLock) {
+            outstanding--;
+            if (outstanding == 0) {
+                outstandingLock.notifyAll();
+            }
+        }
+    }
+
+    private void checkForFailure() throws JournalException {
+        if (failure != null) {
+            throw new JournalException("Failed to replay a journal entry",
+                                       failure);
+        }
+    }
+
+    /**
+     * Replays the entries for its share of the objects, in the order given.
+     */
+    private class Worker
+            extends Thread {
+
+        final BlockingQueue<ConsumerJournalEntry> queue =
+                new ArrayBlockingQueue<ConsumerJournalEntry>(QUEUE_CAPACITY);
+
+        Worker(int index) {
+            super("JournalReplayWorker-" + index);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                ConsumerJournalEntry journalEntry;
+                try {
+                    journalEntry = queue.take();
+                } catch (InterruptedException e) {
+                    if (stopped) {
+                        return;
+                    }
+                    continue;
+                }
+                try {
+                    if (failure == null) {
+                        replay(journalEntry);
+                    } else {
+                        journalEntry.close();
+                    }
+                } catch (Throwable e) {
+                    LOG.error("Error replaying journal entry", e);
+                    if (failure == null) {
+                        failure = e;
+                    }
+                } finally {
+                    entryFinished();
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.journal;
+
+import java.util.Date;
+
+import fedora.server.journal.recoverylog.JournalRecoveryLog;
+
+/**
+ * Counts the journal entries as they are replayed, and writes the throughput
+ * and the lag behind the leading server to the recovery log about once a
+ * minute.
+ * <p>
+ * The lag is the time between now and the timestamp of the newest entry
+ * replayed so far: how far behind the leading server this one is, if the
+ * leader is still busy.
+ */
+class JournalReplayStatistics {
+
+    /** How often to report, in milliseconds. */
+    private static final long REPORT_INTERVAL = 60 * 1000;
+
+    private final JournalRecoveryLog recoveryLog;
+
+    private final long startTime;
+
+    private long lastReportTime;
+
+    private long entryCount = 0;
+
+    private long entryCountAtLastReport = 0;
+
+    private long newestEntryTime = -1;
+
+    JournalReplayStatistics(JournalRecoveryLog recoveryLog) {
+        this.recoveryLog = recoveryLog;
+        startTime = System.currentTimeMillis();
+        lastReportTime = startTime;
+    }
+
+    /**
+     * Count an entry that has been replayed.
+     *
+     * @param entryTime
+     *        the time the entry was created on the leading server, or null.
+     */
+    public synchronized void entryReplayed(Date entryTime) {
+        entryCount++;
+        if (entryTime != null && entryTime.getTime() > newestEntryTime) {
+            newestEntryTime = entryTime.getTime();
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastReportTime >= REPORT_INTERVAL) {
+            recoveryLog.log("Replay progress: " + entryCount + " entries, "
+                    + getRate(entryCount - entryCountAtLastReport,
+                              now - lastReportTime) + " per second, "
+                    + getLag(now) + " seconds behind.");
+            lastReportTime = now;
+            entryCountAtLastReport = entryCount;
+        }
+    }
+
+    /**
+     * Report the totals since replay began.
+     */
+    public synchronized void logTotals() {
+        long now = System.currentTimeMillis();
+        recoveryLog.log("Replayed " + entryCount + " entries in "
+                + (now - startTime) / 1000 + " seconds, "
+                + getRate(entryCount, now - startTime) + " per second, "
+                + getLag(now) + " seconds behind.");
+    }
+
+    public synchronized long getEntryCount() {
+        return entryCount;
+    }
+
+    private String getRate(long count, long millis) {
+        return String.format("%.1f", count * 1000.0 / Math.max(millis, 1));
+    }
+
+    private long getLag(long now) {
+        if (newestEntryTime < 0) {
+            return 0;
+        }
+        return Math.max(0, now - newestEntryTime) / 1000;
+    }
+
+}
@@ -10,7 +10,9 @@ import java.io.FileInputStream;
 import java.io.IOException;
 
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.xml.stream.XMLEventWriter;
 import javax.xml.stream.XMLStreamException;
@@ -23,6 +25,7 @@ import fedora.server.errors.ServerException;
 import fedora.server.journal.entry.CreatorJournalEntry;
 import fedora.server.journal.helpers.EncodingBase64InputStream;
 import fedora.server.journal.helpers.JournalHelper;
+import fedora.server.journal.helpers.ParameterHelper;
 import fedora.server.journal.xmlhelpers.AbstractXmlWriter;
 import fedora.server.journal.xmlhelpers.ContextXmlWriter;
 
@@ -61,6 +64,12 @@ import fedora.server.journal.xmlhelpers.ContextXmlWriter;
  * journal.</li>
  * </ul>
  * </p>
+ * <p>
+ * If the <code>journalGroupCommit</code> parameter is <code>true</code>, the
+ * writer is given a {@link JournalGroupCommitter}, which lets Management
+ * methods run concurrently and writes their entries in batches through
+ * {@link #writeJournalEntries(List)}.
+ * </p>
  * 
  * @author Jim Blake
  */
@@ -101,7 +110,16 @@ public abstract class JournalWriter
                                                                     server},
                                                             parameters);
         LOG.info("JournalWriter is " + journalWriter.toString());
-        return (JournalWriter) journalWriter;
+
+        JournalWriter writer = (JournalWriter) journalWriter;
+        if (ParameterHelper
+                .getOptionalBooleanParameter(parameters,
+                                             PARAMETER_JOURNAL_GROUP_COMMIT,
+                                             false)) {
+            LOG.info("Journal entries will be group-committed");
+            writer.groupCommitter = new JournalGroupCommitter(writer);
+        }
+        return writer;
     }
 
     protected final String role;
@@ -110,6 +128,16 @@ public abstract class JournalWriter
 
     protected final ServerInterface server;
 
+    /**
+     * Held shared by each Management method while group-committing, and
+     * exclusively whenever a journal file is opened or closed.
+     */
+    private final ReentrantReadWriteLock fileLock =
+            new ReentrantReadWriteLock();
+
+    /** Null unless journal entries are group-committed. */
+    private JournalGroupCommitter groupCommitter;
+
     /**
      * Concrete sub-classes must implement this constructor.
      */
@@ -123,6 +151,43 @@ public abstract class JournalWriter
 
     public abstract void shutdown() throws JournalException;
 
+    /**
+     * Get the {@link JournalGroupCommitter} that Management methods should be
+     * invoked through, or null if each method should hold the
+     * {@link #SYNCHRONIZER} while it runs.
+     */
+    public JournalGroupCommitter getGroupCommitter() {
+        return groupCommitter;
+    }
+
+    ReentrantReadWriteLock getFileLock() {
+        return fileLock;
+    }
+
+    /**
+     * Sub-classes must call this before closing a journal file from a timer
+     * thread, and {@link #unlockForFileChange()} afterwards. This waits until
+     * all of the Management methods that are being group-committed have had
+     * their entries written.
+     */
+    protected void lockForFileChange() {
+        fileLock.writeLock().lock();
+    }
+
+    protected void unlockForFileChange() {
+        fileLock.writeLock().unlock();
+    }
+
+    /**
+     * Would a call to {@link #prepareToWriteJournalEntry()} do anything? This
+     * is only asked when group-committing, and the answer must not change
+     * while entries are being written. The default is to answer true, so
+     * every Management method prepares the writer by itself.
+     */
+    public boolean needsPreparation() {
+        return true;
+    }
+
     /**
      * Concrete sub-classes should insure that a message transport is ready, and
      * call {@link #writeDocumentHeader(XMLEventWriter) if needed. This method
@@ -142,6 +207,20 @@ public abstract class JournalWriter
     public abstract void writeJournalEntry(CreatorJournalEntry journalEntry)
             throws JournalException;
 
+    /**
+     * Write several entries, in order. This is called by the
+     * {@link JournalGroupCommitter}, and must not close the current journal
+     * file. Sub-classes should override it to flush once for the whole batch;
+     * by default, each entry is written with
+     * {@link #writeJournalEntry(CreatorJournalEntry)}.
+     */
+    public void writeJournalEntries(List<CreatorJournalEntry> journalEntries)
+            throws JournalException {
+        for (CreatorJournalEntry journalEntry : journalEntries) {
+            writeJournalEntry(journalEntry);
+        }
+    }
+
     /**
      * Subclasses should call this method to initialize a new Journal file.
      */
@@ -188,20 +267,42 @@ public abstract class JournalWriter
                                      XMLEventWriter writer)
             throws JournalException {
         try {
-            writeJournaEntryStartTag(journalEntry, writer);
-
-            new ContextXmlWriter().writeContext(journalEntry.getContext(),
-                                                writer);
-
-            writeArguments(journalEntry.getArgumentsMap(), writer);
+            putJournalEntry(journalEntry, writer);
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new JournalException(e);
+        }
+    }
 
-            putEndTag(writer, QNAME_TAG_JOURNAL_ENTRY);
+    /**
+     * Format several JournalEntry objects and write them to the journal,
+     * flushing only after the last one.
+     */
+    protected void writeJournalEntries(List<CreatorJournalEntry> journalEntries,
+                                       XMLEventWriter writer)
+            throws JournalException {
+        try {
+            for (CreatorJournalEntry journalEntry : journalEntries) {
+                putJournalEntry(journalEntry, writer);
+            }
             writer.flush();
         } catch (XMLStreamException e) {
             throw new JournalException(e);
         }
     }
 
+    private void putJournalEntry(CreatorJournalEntry journalEntry,
+                                 XMLEventWriter writer)
+            throws XMLStreamException, JournalException {
+        writeJournaEntryStartTag(journalEntry, writer);
+
+        new ContextXmlWriter().writeContext(journalEntry.getContext(), writer);
+
+        writeArguments(journalEntry.getArgumentsMap(), writer);
+
+        putEndTag(writer, QNAME_TAG_JOURNAL_ENTRY);
+    }
+
     private void writeJournaEntryStartTag(CreatorJournalEntry journalEntry,
                                           XMLEventWriter writer)
             throws XMLStreamException {
@@ -351,7 +452,7 @@ public abstract class JournalWriter
      * DOManager is present, and ready to create the repository has that we will
      * compare to.
      */
-    private String getRepositoryHash() throws JournalException {
+    protected String getRepositoryHash() throws JournalException {
         if (!server.hasInitialized()) {
             throw new IllegalStateException("The repository hash is not available until "
                     + "the server is fully initialized.");
@@ -7,6 +7,7 @@ package fedora.server.journal.entry;
 import fedora.server.Context;
 import fedora.server.errors.ServerException;
 import fedora.server.journal.JournalException;
+import fedora.server.journal.JournalGroupCommitter;
 import fedora.server.journal.JournalOperatingMode;
 import fedora.server.journal.JournalWriter;
 import fedora.server.management.ManagementDelegate;
@@ -48,11 +49,16 @@ public class CreatorJournalEntry
      * block, we can be confident that the previous one had completed before the
      * current one started.
      * <p>
-     * There might be a way to enforce the synchronization at a lower level,
-     * thus increasing throughput, but we haven't explored it yet.
+     * If the writer has a {@link JournalGroupCommitter}, the synchronization is
+     * enforced at a lower level instead: methods on different objects run
+     * concurrently, and their entries are written in batches.
      */
     public Object invokeMethod(ManagementDelegate delegate, JournalWriter writer)
             throws ServerException, JournalException {
+        JournalGroupCommitter groupCommitter = writer.getGroupCommitter();
+        if (groupCommitter != null) {
+            return groupCommitter.invokeMethod(this, delegate);
+        }
         synchronized (JournalWriter.SYNCHRONIZER) {
             JournalOperatingMode.enforceCurrentMode();
             writer.prepareToWriteJournalEntry();
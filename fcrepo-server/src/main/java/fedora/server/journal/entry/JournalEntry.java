@@ -14,6 +14,9 @@ import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import fedora.common.Constants;
+
+import fedora.server.journal.JournalConstants;
 import fedora.server.journal.JournalException;
 import fedora.server.journal.helpers.JournalHelper;
 import fedora.server.journal.managementmethods.ManagementMethod;
@@ -31,6 +34,8 @@ import fedora.server.journal.managementmethods.ManagementMethod;
  */
 public abstract class JournalEntry {
 
+    private static final String FEDORA_URI_PREFIX = "info:fedora/";
+
     private boolean open = true;
 
     private final Map<String, Object> arguments =
@@ -63,6 +68,33 @@ public abstract class JournalEntry {
         return methodName;
     }
 
+    /**
+     * Get the PID of the object that this entry acts on, if it is known. This
+     * is the <code>pid</code> argument (or the object part of it, if it is a
+     * subject URI), or the PID recorded for recovery by an ingest.
+     * 
+     * @return the PID, or null if the entry has neither.
+     */
+    public String getObjectPid() {
+        checkOpen();
+        Object pid = arguments.get(JournalConstants.ARGUMENT_NAME_PID);
+        if (!(pid instanceof String)) {
+            pid = context.getRecoveryValue(Constants.RECOVERY.PID.uri);
+            if (pid == null) {
+                return null;
+            }
+        }
+        String objectPid = (String) pid;
+        if (objectPid.startsWith(FEDORA_URI_PREFIX)) {
+            objectPid = objectPid.substring(FEDORA_URI_PREFIX.length());
+        }
+        int slash = objectPid.indexOf('/');
+        if (slash != -1) {
+            objectPid = objectPid.substring(0, slash);
+        }
+        return objectPid;
+    }
+
     public Map<String, Object> getArgumentsMap() {
         checkOpen();
         return new LinkedHashMap<String, Object>(arguments);
@@ -84,6 +84,38 @@ public class ParameterHelper
 
     }
 
+    /**
+     * Get an optional positive integer parameter. If not found, use the
+     * default value.
+     * 
+     * @throws JournalException
+     *         if a value is supplied that is not a positive integer.
+     * @throws NullPointerException
+     *         if either 'parameters' or 'parameterName' is null.
+     */
+    public static int getOptionalPositiveIntegerParameter(Map<String, String> parameters,
+                                                          String parameterName,
+                                                          int defaultValue)
+            throws JournalException {
+        validateParameters(parameters);
+        validateParameterName(parameterName);
+
+        String string = parameters.get(parameterName);
+        if (string == null) {
+            return defaultValue;
+        }
+        try {
+            int value = Integer.parseInt(string.trim());
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        throw new JournalException("'" + parameterName
+                + "' parameter must be a positive integer");
+    }
+
     /**
      * Look in the parameters for the path to a writable directory. The
      * parameter is required.
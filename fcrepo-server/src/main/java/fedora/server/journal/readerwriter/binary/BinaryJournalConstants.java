@@ -0,0 +1,68 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.journal.readerwriter.binary;
+
+/**
+ * Parameters and format codes for the binary journal classes.
+ * <p>
+ * A binary journal file begins with a header, which is never compressed:
+ * <ul>
+ * <li>the {@link #FILE_MAGIC} number, and the {@link #FORMAT_VERSION}</li>
+ * <li>a compression code, which applies to the rest of the file</li>
+ * <li>the repository hash, and the time the file was created</li>
+ * </ul>
+ * The rest of the file is a series of blocks, each holding up to
+ * {@link #BLOCK_SIZE} bytes of data. A block is the length of its data, the
+ * number of bytes stored, and the stored bytes. If the stored length is less
+ * than the data length, the bytes are compressed.
+ * <p>
+ * The data in the blocks is a series of records. Each journal entry is a
+ * {@link #RECORD_ENTRY}: its method name, its context, and its arguments.
+ * Stream arguments are written as their length and their raw bytes, not as
+ * Base64. A complete file ends with a {@link #RECORD_END_OF_FILE}.
+ */
+public interface BinaryJournalConstants {
+
+    /**
+     * Either {@link #VALUE_COMPRESSION_NONE} (the default) or
+     * {@link #VALUE_COMPRESSION_DEFLATE}.
+     */
+    String PARAMETER_JOURNAL_COMPRESSION = "journalCompression";
+
+    String VALUE_COMPRESSION_NONE = "none";
+
+    String VALUE_COMPRESSION_DEFLATE = "deflate";
+
+    /** "FDJB" */
+    int FILE_MAGIC = 0x46444A42;
+
+    short FORMAT_VERSION = 1;
+
+    byte COMPRESSION_NONE = 0;
+
+    byte COMPRESSION_DEFLATE = 1;
+
+    /** The most data in one block, before compression. */
+    int BLOCK_SIZE = 64 * 1024;
+
+    byte RECORD_ENTRY = 1;
+
+    byte RECORD_END_OF_FILE = 2;
+
+    byte ARGUMENT_NULL = 0;
+
+    byte ARGUMENT_STRING = 1;
+
+    byte ARGUMENT_STRINGARRAY = 2;
+
+    byte ARGUMENT_INTEGER = 3;
+
+    byte ARGUMENT_BOOLEAN = 4;
+
+    byte ARGUMENT_DATE = 5;
+
+    byte ARGUMENT_STREAM = 6;
+
+}
@@ -0,0 +1,284 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.journal.readerwriter.binary;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.util.Date;
+
+import fedora.server.MultiValueMap;
+import fedora.server.journal.JournalException;
+import fedora.server.journal.entry.ConsumerJournalEntry;
+import fedora.server.journal.entry.JournalEntryContext;
+import fedora.server.journal.helpers.FileMovingUtil;
+import fedora.server.journal.helpers.JournalHelper;
+import fedora.server.journal.helpers.PasswordCipher;
+
+/**
+ * Encapsulate the information that goes with consuming a binary Journal file,
+ * and read the journal entries from it.
+ */
+class BinaryJournalInputFile
+        implements BinaryJournalConstants {
+
+    private final File file;
+
+    private final String repositoryHash;
+
+    private final Date created;
+
+    private final DataInputStream in;
+
+    private boolean finished = false;
+
+    /**
+     * Open the file and read its header.
+     */
+    public BinaryJournalInputFile(File file)
+            throws JournalException {
+        if (!file.isFile()) {
+            throw new JournalException("Journal file '" + file.getPath()
+                    + "' is not a file.");
+        }
+        if (!file.canRead()) {
+            throw new JournalException("Journal file '" + file.getPath()
+                    + "' is not readable.");
+        }
+
+        this.file = file;
+        InputStream fileIn = null;
+        try {
+            fileIn = new BufferedInputStream(new FileInputStream(file));
+            DataInputStream header = new DataInputStream(fileIn);
+            if (header.readInt() != FILE_MAGIC) {
+                throw new JournalException("Journal file '" + file.getPath()
+                        + "' is not a binary journal file.");
+            }
+            short version = header.readShort();
+            if (version != FORMAT_VERSION) {
+                throw new JournalException("Journal file '" + file.getPath()
+                        + "' has format version " + version
+                        + ", but only version " + FORMAT_VERSION
+                        + " can be read.");
+            }
+            byte compression = header.readByte();
+            if (compression != COMPRESSION_NONE
+                    && compression != COMPRESSION_DEFLATE) {
+                throw new JournalException("Journal file '" + file.getPath()
+                        + "' has an unknown compression code: " + compression);
+            }
+            repositoryHash = readString(header);
+            created = new Date(header.readLong());
+            in = new DataInputStream(new BlockInputStream(fileIn));
+        } catch (IOException e) {
+            closeQuietly(fileIn);
+            throw new JournalException("Can't read the header of journal file '"
+                                               + file.getPath() + "'",
+                                       e);
+        } catch (JournalException e) {
+            closeQuietly(fileIn);
+            throw e;
+        }
+    }
+
+    private static void closeQuietly(InputStream stream) {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // nothing more to do.
+            }
+        }
+    }
+
+    public String getFilename() {
+        return file.getPath();
+    }
+
+    public String getRepositoryHash() {
+        return repositoryHash;
+    }
+
+    public Date getCreated() {
+        return created;
+    }
+
+    /**
+     * Read the next journal entry.
+     *
+     * @return the entry, or null if there are no more in this file.
+     */
+    public ConsumerJournalEntry readJournalEntry() throws JournalException {
+        if (finished) {
+            return null;
+        }
+        try {
+            byte record = in.readByte();
+            if (record == RECORD_END_OF_FILE) {
+                finished = true;
+                return null;
+            } else if (record != RECORD_ENTRY) {
+                throw new JournalException("Unknown record type " + record
+                        + " in journal file '" + file.getPath() + "'");
+            }
+
+            String methodName = readString(in);
+            JournalEntryContext context = readContext();
+            ConsumerJournalEntry journalEntry =
+                    new ConsumerJournalEntry(methodName, context);
+            readArguments(journalEntry);
+            journalEntry.setIdentifier("file='" + file.getPath()
+                    + "', entry='" + JournalHelper.formatDate(context.now())
+                    + "'");
+            return journalEntry;
+        } catch (EOFException e) {
+            throw new JournalException("Journal file '" + file.getPath()
+                    + "' ends in the middle of an entry", e);
+        } catch (IOException e) {
+            throw new JournalException(e);
+        }
+    }
+
+    private JournalEntryContext readContext() throws IOException,
+            JournalException {
+        JournalEntryContext context = new JournalEntryContext();
+        String passwordType = readString(in);
+        String passwordCipher = readString(in);
+        context.setNoOp(in.readBoolean());
+        context.setNow(new Date(in.readLong()));
+        context.setEnvironmentAttributes(readMultiMap());
+        context.setSubjectAttributes(readMultiMap());
+        context.setActionAttributes(readMultiMap());
+        context.setResourceAttributes(readMultiMap());
+        context.setRecoveryAttributes(readMultiMap());
+
+        String key = JournalHelper.formatDate(context.now());
+        context.setPassword(PasswordCipher.decipher(key,
+                                                    passwordCipher,
+                                                    passwordType));
+        return context;
+    }
+
+    private MultiValueMap readMultiMap() throws IOException, JournalException {
+        MultiValueMap map = new MultiValueMap();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            String name = readString(in);
+            String[] values = readStringArray();
+            try {
+                map.set(name, values);
+            } catch (Exception e) {
+                // totally bogus Exception here.
+                throw new JournalException(e);
+            }
+        }
+        return map;
+    }
+
+    private void readArguments(ConsumerJournalEntry journalEntry)
+            throws IOException, JournalException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String name = readString(in);
+            byte type = in.readByte();
+            if (type == ARGUMENT_NULL) {
+                // as with an XML journal, a null argument isn't added.
+            } else if (type == ARGUMENT_STRING) {
+                journalEntry.addArgument(name, readString(in));
+            } else if (type == ARGUMENT_STRINGARRAY) {
+                Object values = readStringArray();
+                journalEntry.addArgument(name, values);
+            } else if (type == ARGUMENT_INTEGER) {
+                journalEntry.addArgument(name, in.readInt());
+            } else if (type == ARGUMENT_BOOLEAN) {
+                journalEntry.addArgument(name, in.readBoolean());
+            } else if (type == ARGUMENT_DATE) {
+                journalEntry.addArgument(name, new Date(in.readLong()));
+            } else if (type == ARGUMENT_STREAM) {
+                journalEntry.addArgument(name, readStreamArgument());
+            } else {
+                throw new JournalException("Unknown argument type: name='"
+                        + name + "', type=" + type + ", method='"
+                        + journalEntry.getMethodName() + "'");
+            }
+        }
+    }
+
+    private String[] readStringArray() throws IOException {
+        String[] values = new String[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readString(in);
+        }
+        return values;
+    }
+
+    /**
+     * A stream argument is copied to a temp file, so it can be presented to
+     * the management method as an InputStream again.
+     */
+    private File readStreamArgument() throws IOException {
+        long remaining = in.readLong();
+        File tempFile = JournalHelper.createTempFile();
+        OutputStream out = new FileOutputStream(tempFile);
+        try {
+            byte[] buffer = new byte[BLOCK_SIZE];
+            while (remaining > 0) {
+                int howMany =
+                        in.read(buffer, 0, (int) Math.min(buffer.length,
+                                                          remaining));
+                if (howMany == -1) {
+                    throw new EOFException();
+                }
+                out.write(buffer, 0, howMany);
+                remaining -= howMany;
+            }
+        } finally {
+            out.close();
+        }
+        return tempFile;
+    }
+
+    /**
+     * Read a string written by
+     * {@link BinaryJournalOutputFile#writeString(java.io.DataOutputStream, String)}.
+     */
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * When we have processed the file, move it to the archive directory.
+     */
+    public void closeAndRename(File archiveDirectory) throws JournalException {
+        try {
+            in.close();
+            File archiveFile = new File(archiveDirectory, file.getName());
+            try {
+                FileMovingUtil.move(file, archiveFile);
+            } catch (IOException e) {
+                throw new JournalException("Failed to rename file from '"
+                        + file.getPath() + "' to '" + archiveFile.getPath()
+                        + "'", e);
+            }
+        } catch (IOException e) {
+            throw new JournalException(e);
+        }
+    }
+
+}
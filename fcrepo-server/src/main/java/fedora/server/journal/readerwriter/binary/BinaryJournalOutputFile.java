@@ -0,0 +1,370 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.journal.readerwriter.binary;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import fedora.server.MultiValueMap;
+import fedora.server.journal.JournalConstants;
+import fedora.server.journal.JournalException;
+import fedora.server.journal.JournalWriter;
+import fedora.server.journal.entry.CreatorJournalEntry;
+import fedora.server.journal.entry.JournalEntryContext;
+import fedora.server.journal.helpers.FileMovingUtil;
+import fedora.server.journal.helpers.JournalHelper;
+import fedora.server.journal.helpers.PasswordCipher;
+
+/**
+ * Encapsulate the information that goes with the creation of a binary Journal
+ * file, and format journal entries into it.
+ * <p>
+ * <b>CAUTION:</b> As with the XML journal files, an asynchronous timer thread
+ * can close the file. The {@link #isOpen()} and {@link #close()} methods are
+ * synchronized against the {@link JournalWriter#SYNCHRONIZER}, and any other
+ * operations on the file should be too.
+ */
+class BinaryJournalOutputFile
+        implements BinaryJournalConstants, JournalConstants {
+
+    /** A "dummy" file instance that is already closed. */
+    public static final BinaryJournalOutputFile DUMMY_FILE =
+            new BinaryJournalOutputFile();
+
+    /** The parent JournalWriter, used by the timer. */
+    private final BinaryJournalWriter parent;
+
+    /** The name of the file after it is closed. */
+    private final File file;
+
+    /** The name of the file while it is being written. */
+    private final File tempFile;
+
+    private final DataOutputStream out;
+
+    /** If the file is larger than this (in bytes), close it. */
+    private final long sizeLimit;
+
+    /** The timer that monitors the age of this file. */
+    private final Timer timer;
+
+    /** Is this file still open? */
+    private boolean open = true;
+
+    /**
+     * This private constructor creates a "dummy" file that is closed to start
+     * with.
+     */
+    private BinaryJournalOutputFile() {
+        parent = null;
+        file = null;
+        tempFile = null;
+        out = null;
+        sizeLimit = 0;
+        timer = null;
+        open = false;
+    }
+
+    /**
+     * Open the file, write the header, and set the timer.
+     */
+    BinaryJournalOutputFile(BinaryJournalWriter parent,
+                            String filenamePrefix,
+                            File journalDirectory,
+                            long sizeLimit,
+                            long ageLimit,
+                            byte compression,
+                            String repositoryHash)
+            throws JournalException {
+        this.parent = parent;
+        this.sizeLimit = sizeLimit;
+        Date now = new Date();
+        file =
+                new File(journalDirectory, JournalHelper
+                        .createTimestampedFilename(filenamePrefix, now));
+        if (file.exists()) {
+            throw new JournalException("File '" + file.getPath()
+                    + "' already exists.");
+        }
+        tempFile = new File(journalDirectory, "_" + file.getName());
+
+        try {
+            if (!tempFile.createNewFile()) {
+                throw new JournalException("Unable to create file '"
+                        + tempFile.getPath() + "'.");
+            }
+            OutputStream fileOut =
+                    new BufferedOutputStream(new FileOutputStream(tempFile));
+            writeHeader(new DataOutputStream(fileOut),
+                        compression,
+                        repositoryHash,
+                        now);
+            out =
+                    new DataOutputStream(new BlockOutputStream(fileOut,
+                                                               compression));
+            out.flush();
+        } catch (IOException e) {
+            throw new JournalException(e);
+        }
+
+        timer = createTimer(ageLimit);
+    }
+
+    private void writeHeader(DataOutputStream header,
+                             byte compression,
+                             String repositoryHash,
+                             Date now) throws IOException {
+        header.writeInt(FILE_MAGIC);
+        header.writeShort(FORMAT_VERSION);
+        header.writeByte(compression);
+        writeString(header, repositoryHash);
+        header.writeLong(now.getTime());
+    }
+
+    /**
+     * Create the timer, and schedule a task that will let us know when the file
+     * is too old to continue. If the age limit is 0 or negative, we treat it as
+     * "no limit".
+     */
+    private Timer createTimer(long ageLimit) {
+        Timer fileTimer = new Timer();
+        if (ageLimit > 0) {
+            fileTimer.schedule(new CloseFileTimerTask(), ageLimit);
+        }
+        return fileTimer;
+    }
+
+    /**
+     * Format the entries and write them, flushing once after the last.
+     */
+    public void writeJournalEntries(List<CreatorJournalEntry> journalEntries)
+            throws JournalException {
+        synchronized (JournalWriter.SYNCHRONIZER) {
+            if (!open) {
+                throw new JournalException("Journal file '"
+                        + tempFile.getPath() + "' is closed.");
+            }
+            try {
+                for (CreatorJournalEntry journalEntry : journalEntries) {
+                    writeJournalEntry(journalEntry);
+                }
+                out.flush();
+            } catch (IOException e) {
+                throw new JournalException(e);
+            }
+        }
+    }
+
+    private void writeJournalEntry(CreatorJournalEntry journalEntry)
+            throws IOException, JournalException {
+        out.writeByte(RECORD_ENTRY);
+        writeString(out, journalEntry.getMethodName());
+        writeContext(journalEntry.getContext());
+        writeArguments(journalEntry.getArgumentsMap());
+    }
+
+    /**
+     * The password is enciphered, just as it is in an XML journal.
+     */
+    private void writeContext(JournalEntryContext context) throws IOException {
+        String password = context.getPassword();
+        if (password == null) {
+            password = "";
+        }
+        String key = JournalHelper.formatDate(context.now());
+        writeString(out, PASSWORD_CIPHER_TYPE);
+        writeString(out, PasswordCipher.encipher(key, password));
+        out.writeBoolean(context.getNoOp());
+        out.writeLong(context.now().getTime());
+
+        writeMultiMap(context.getEnvironmentAttributes());
+        writeMultiMap(context.getSubjectAttributes());
+        writeMultiMap(context.getActionAttributes());
+        writeMultiMap(context.getResourceAttributes());
+        writeMultiMap(context.getRecoveryAttributes());
+    }
+
+    private void writeMultiMap(MultiValueMap map) throws IOException {
+        int size = 0;
+        for (Iterator names = map.names(); names.hasNext(); names.next()) {
+            size++;
+        }
+        out.writeInt(size);
+        for (Iterator names = map.names(); names.hasNext();) {
+            String name = (String) names.next();
+            writeString(out, name);
+            writeStringArray(map.getStringArray(name));
+        }
+    }
+
+    private void writeArguments(Map<String, Object> arguments)
+            throws IOException, JournalException {
+        out.writeInt(arguments.size());
+        for (String key : arguments.keySet()) {
+            Object value = arguments.get(key);
+            writeString(out, key);
+            if (value == null) {
+                out.writeByte(ARGUMENT_NULL);
+            } else if (value instanceof String) {
+                out.writeByte(ARGUMENT_STRING);
+                writeString(out, (String) value);
+            } else if (value instanceof String[]) {
+                out.writeByte(ARGUMENT_STRINGARRAY);
+                writeStringArray((String[]) value);
+            } else if (value instanceof Date) {
+                out.writeByte(ARGUMENT_DATE);
+                out.writeLong(((Date) value).getTime());
+            } else if (value instanceof Integer) {
+                out.writeByte(ARGUMENT_INTEGER);
+                out.writeInt((Integer) value);
+            } else if (value instanceof Boolean) {
+                out.writeByte(ARGUMENT_BOOLEAN);
+                out.writeBoolean((Boolean) value);
+            } else if (value instanceof File) {
+                out.writeByte(ARGUMENT_STREAM);
+                writeFileArgument((File) value);
+            } else {
+                throw new JournalException("Unknown argument type: name='"
+                        + key + "', type='" + value.getClass().getName() + "'");
+            }
+        }
+    }
+
+    private void writeStringArray(String[] values) throws IOException {
+        out.writeInt(values.length);
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    /**
+     * A stream argument is written as its length and its bytes, copied
+     * straight from the temp file.
+     */
+    private void writeFileArgument(File streamFile) throws IOException,
+            JournalException {
+        long length = streamFile.length();
+        out.writeLong(length);
+        InputStream in = new FileInputStream(streamFile);
+        try {
+            byte[] buffer = new byte[BLOCK_SIZE];
+            long remaining = length;
+            while (remaining > 0) {
+                int howMany =
+                        in.read(buffer, 0, (int) Math.min(buffer.length,
+                                                          remaining));
+                if (howMany == -1) {
+                    throw new JournalException("Temp file '"
+                            + streamFile.getPath()
+                            + "' is shorter than " + length + " bytes.");
+                }
+                out.write(buffer, 0, howMany);
+                remaining -= howMany;
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Strings are written as a length and UTF-8 bytes, since
+     * {@link DataOutputStream#writeUTF(String)} can't handle long ones. A null
+     * is written as a length of -1.
+     */
+    static void writeString(DataOutputStream out, String string)
+            throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = string.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Check the size limit and see whether the file is big enough to close.
+     */
+    public void closeIfAppropriate() throws JournalException {
+        synchronized (JournalWriter.SYNCHRONIZER) {
+            if (open && isOverSizeLimit()) {
+                close();
+            }
+        }
+    }
+
+    /**
+     * Has the file grown past the size limit?
+     */
+    public boolean isOverSizeLimit() {
+        // if the size limit is 0 or negative, treat it as "no limit".
+        return sizeLimit > 0 && tempFile.length() > sizeLimit;
+    }
+
+    /**
+     * Is this file available for writing?
+     */
+    public boolean isOpen() {
+        synchronized (JournalWriter.SYNCHRONIZER) {
+            return open;
+        }
+    }
+
+    /**
+     * Write the end-of-file record, close the file and rename it. Set the flag
+     * saying we are closed.
+     */
+    public void close() throws JournalException {
+        synchronized (JournalWriter.SYNCHRONIZER) {
+            if (!open) {
+                return;
+            }
+
+            try {
+                out.writeByte(RECORD_END_OF_FILE);
+                out.close();
+                timer.cancel();
+                FileMovingUtil.move(tempFile, file);
+                open = false;
+            } catch (IOException e) {
+                throw new JournalException("Failed to close journal file '"
+                        + tempFile.getPath() + "'", e);
+            }
+        }
+    }
+
+    /**
+     * When the timer goes off, close the file.
+     */
+    private final class CloseFileTimerTask
+            extends TimerTask {
+
+        @Override
+        public void run() {
+            try {
+                parent.closeFromTimer(BinaryJournalOutputFile.this);
+            } catch (JournalException e) {
+                e.printStackTrace();
+                IllegalStateException ise = new IllegalStateException();
+                ise.initCause(e);
+                throw ise;
+            }
+        }
+    }
+
+}
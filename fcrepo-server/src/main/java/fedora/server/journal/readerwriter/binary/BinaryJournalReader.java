@@ -0,0 +1,152 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.journal.readerwriter.binary;
+
+import java.io.File;
+
+import java.util.Map;
+
+import fedora.server.journal.JournalException;
+import fedora.server.journal.JournalReader;
+import fedora.server.journal.ServerInterface;
+import fedora.server.journal.entry.ConsumerJournalEntry;
+import fedora.server.journal.helpers.JournalHelper;
+import fedora.server.journal.helpers.ParameterHelper;
+import fedora.server.journal.readerwriter.multifile.MultiFileJournalConstants;
+import fedora.server.journal.readerwriter.multifile.MultiFileJournalHelper;
+import fedora.server.journal.recoverylog.JournalRecoveryLog;
+
+/**
+ * A JournalReader implementation for "recovering", when using a
+ * {@link BinaryJournalWriter}.
+ * <p>
+ * The recovery is complete when the all of the files in the journal directory
+ * have been processed and moved to the archive directory. It uses the same
+ * <code>journalDirectory</code>, <code>archiveDirectory</code> and
+ * <code>journalFilenamePrefix</code> parameters as the
+ * {@link fedora.server.journal.readerwriter.multifile.MultiFileJournalReader}.
+ * To use it, set the <code>journalReaderClassname</code> parameter of the
+ * Journaler module in <code>fedora.fcfg</code> to
+ * <code>fedora.server.journal.readerwriter.binary.BinaryJournalReader</code>,
+ * or to {@link BinaryFollowingJournalReader} on a following server.
+ */
+public class BinaryJournalReader
+        extends JournalReader
+        implements MultiFileJournalConstants {
+
+    // the directory that holds the journal files before they are processed.
+    private final File journalDirectory;
+
+    // the directory that will hold the journal files after they are processed.
+    private final File archiveDirectory;
+
+    // journal file names will start with this.
+    private final String filenamePrefix;
+
+    protected BinaryJournalInputFile currentFile;
+
+    protected boolean open = true;
+
+    public BinaryJournalReader(Map<String, String> parameters,
+                               String role,
+                               JournalRecoveryLog recoveryLog,
+                               ServerInterface server)
+            throws JournalException {
+        super(parameters, role, recoveryLog, server);
+        journalDirectory =
+                ParameterHelper
+                        .parseParametersForWritableDirectory(parameters,
+                                                             PARAMETER_JOURNAL_DIRECTORY);
+        archiveDirectory =
+                ParameterHelper
+                        .parseParametersForWritableDirectory(parameters,
+                                                             PARAMETER_ARCHIVE_DIRECTORY);
+        filenamePrefix =
+                ParameterHelper.parseParametersForFilenamePrefix(parameters);
+        if (archiveDirectory.equals(journalDirectory)) {
+            throw new JournalException("Archive directory and Journal directory are identical: '"
+                    + archiveDirectory.getPath() + "'");
+        }
+    }
+
+    /*
+     * Close the current file and set the closed flag.
+     */
+    @Override
+    public synchronized void shutdown() throws JournalException {
+        if (open) {
+            recoveryLog.log("Shutdown requested by server.");
+            fileBoundary();
+            closeCurrentFile();
+            open = false;
+        }
+    }
+
+    /*
+     * Read the next entry from the current file. At the end of the file, close
+     * it and try the next file. If there are no more files, return null.
+     */
+    @Override
+    public synchronized ConsumerJournalEntry readJournalEntry()
+            throws JournalException {
+        while (open) {
+            if (currentFile == null) {
+                currentFile = openNextFile();
+                if (currentFile == null) {
+                    return null;
+                }
+                fileBoundary();
+                checkRepositoryHash(currentFile.getRepositoryHash());
+            }
+
+            ConsumerJournalEntry journalEntry = currentFile.readJournalEntry();
+            if (journalEntry != null) {
+                return journalEntry;
+            }
+            fileBoundary();
+            closeCurrentFile();
+        }
+        return null;
+    }
+
+    /**
+     * Look in the directory for files that match the prefix. If there are none,
+     * return null. If we find one, open it and read its header.
+     */
+    protected BinaryJournalInputFile openNextFile() throws JournalException {
+        File[] journalFiles =
+                MultiFileJournalHelper
+                        .getSortedArrayOfJournalFiles(journalDirectory,
+                                                      filenamePrefix);
+
+        if (journalFiles.length == 0) {
+            return null;
+        }
+
+        BinaryJournalInputFile nextFile =
+                new BinaryJournalInputFile(journalFiles[0]);
+        recoveryLog.log("Opening journal file: '" + nextFile.getFilename()
+                + "', created "
+                + JournalHelper.formatDate(nextFile.getCreated()));
+        return nextFile;
+    }
+
+    private void closeCurrentFile() throws JournalException {
+        if (currentFile != null) {
+            recoveryLog.log("Closing journal file: '"
+                    + currentFile.getFilename() + "'");
+            currentFile.closeAndRename(archiveDirectory);
+            currentFile = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + ", journalDirectory='" + journalDirectory
+                + "', archiveDirectory='" + archiveDirectory
+                + "', filenamePrefix='" + filenamePrefix + "'";
+    }
+
+}
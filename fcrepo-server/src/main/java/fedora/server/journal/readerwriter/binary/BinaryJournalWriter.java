@@ -0,0 +1,233 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.journal.readerwriter.binary;
+
+import java.io.File;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import fedora.server.journal.JournalException;
+import fedora.server.journal.JournalWriter;
+import fedora.server.journal.ServerInterface;
+import fedora.server.journal.entry.CreatorJournalEntry;
+import fedora.server.journal.helpers.JournalHelper;
+import fedora.server.journal.helpers.ParameterHelper;
+import fedora.server.journal.readerwriter.multifile.MultiFileJournalConstants;
+import fedora.server.journal.readerwriter.multifile.MultiFileJournalHelper;
+
+/**
+ * An implementation of JournalWriter that writes a series of binary Journal
+ * files to a specified directory, for a {@link BinaryJournalReader} or a
+ * {@link BinaryFollowingJournalReader} to read. See
+ * {@link BinaryJournalConstants} for the format.
+ * <p>
+ * The files are smaller than XML Journal files, and quicker to write and to
+ * read: there is no markup, and stream arguments (such as the content of a
+ * managed datastream) are copied as they are, rather than in Base64. If the
+ * <code>journalCompression</code> parameter is <code>deflate</code>, the files
+ * are compressed as well.
+ * <p>
+ * Like the
+ * {@link fedora.server.journal.readerwriter.multifile.MultiFileJournalWriter},
+ * this uses the <code>journalDirectory</code>,
+ * <code>journalFilenamePrefix</code>, <code>journalFileSizeLimit</code> and
+ * <code>journalFileAgeLimit</code> parameters. To use it, set the
+ * <code>journalWriterClassname</code> parameter of the Journaler module in
+ * <code>fedora.fcfg</code> to
+ * <code>fedora.server.journal.readerwriter.binary.BinaryJournalWriter</code>.
+ */
+public class BinaryJournalWriter
+        extends JournalWriter
+        implements BinaryJournalConstants, MultiFileJournalConstants {
+
+    /** the directory that will hold the journal files. */
+    private final File journalDirectory;
+
+    /** journal file names will start with this string. */
+    private final String filenamePrefix;
+
+    /** number of bytes before we start a new file - 0 means no limit */
+    private final long sizeLimit;
+
+    /** number of milliseconds before we start a new file - 0 means no limit */
+    private final long ageLimit;
+
+    private final byte compression;
+
+    /** the current journal file - start with a dummy that is already closed. */
+    private BinaryJournalOutputFile currentJournal =
+            BinaryJournalOutputFile.DUMMY_FILE;
+
+    private boolean open = true;
+
+    /**
+     * Parse the parameters to find out how we are operating.
+     */
+    public BinaryJournalWriter(Map<String, String> parameters,
+                               String role,
+                               ServerInterface server)
+            throws JournalException {
+        super(parameters, role, server);
+        journalDirectory =
+                ParameterHelper
+                        .parseParametersForWritableDirectory(parameters,
+                                                             PARAMETER_JOURNAL_DIRECTORY);
+        filenamePrefix =
+                ParameterHelper.parseParametersForFilenamePrefix(parameters);
+        sizeLimit = ParameterHelper.parseParametersForSizeLimit(parameters);
+        ageLimit = ParameterHelper.parseParametersForAgeLimit(parameters);
+        compression = parseParametersForCompression(parameters);
+
+        checkForPotentialFilenameConflict();
+    }
+
+    private byte parseParametersForCompression(Map<String, String> parameters)
+            throws JournalException {
+        String value =
+                ParameterHelper
+                        .getOptionalStringParameter(parameters,
+                                                    PARAMETER_JOURNAL_COMPRESSION,
+                                                    VALUE_COMPRESSION_NONE);
+        if (VALUE_COMPRESSION_NONE.equals(value)) {
+            return COMPRESSION_NONE;
+        } else if (VALUE_COMPRESSION_DEFLATE.equals(value)) {
+            return COMPRESSION_DEFLATE;
+        } else {
+            throw new JournalException("'" + PARAMETER_JOURNAL_COMPRESSION
+                    + "' parameter must be '" + VALUE_COMPRESSION_NONE
+                    + "'(default) or '" + VALUE_COMPRESSION_DEFLATE + "'");
+        }
+    }
+
+    /**
+     * Look at the list of files in the current directory, and make sure that
+     * any new files we create won't conflict with them.
+     */
+    private void checkForPotentialFilenameConflict() throws JournalException {
+        File[] journalFiles =
+                MultiFileJournalHelper
+                        .getSortedArrayOfJournalFiles(journalDirectory,
+                                                      filenamePrefix);
+        if (journalFiles.length == 0) {
+            return;
+        }
+
+        String newestFilename = journalFiles[journalFiles.length - 1].getName();
+        String potentialFilename =
+                JournalHelper.createTimestampedFilename(filenamePrefix,
+                                                        new Date());
+        if (newestFilename.compareTo(potentialFilename) > 0) {
+            throw new JournalException("The name of one or more existing files in the journal "
+                    + "directory (e.g. '"
+                    + newestFilename
+                    + "') may conflict with new Journal "
+                    + "files. Has the system clock changed?");
+        }
+    }
+
+    /**
+     * Before writing an entry, check to see whether we need to close the
+     * current file and/or open a new one.
+     */
+    @Override
+    public void prepareToWriteJournalEntry() throws JournalException {
+        if (open) {
+            currentJournal.closeIfAppropriate();
+
+            if (!currentJournal.isOpen()) {
+                currentJournal =
+                        new BinaryJournalOutputFile(this,
+                                                    filenamePrefix,
+                                                    journalDirectory,
+                                                    sizeLimit,
+                                                    ageLimit,
+                                                    compression,
+                                                    getRepositoryHash());
+            }
+        }
+    }
+
+    /**
+     * Preparation is needed if the current file has been closed, or is too
+     * large.
+     */
+    @Override
+    public boolean needsPreparation() {
+        return open
+                && (!currentJournal.isOpen() || currentJournal
+                        .isOverSizeLimit());
+    }
+
+    /**
+     * Write the entry and flush it, and close the file if it has become too
+     * large.
+     */
+    @Override
+    public void writeJournalEntry(CreatorJournalEntry journalEntry)
+            throws JournalException {
+        if (open) {
+            synchronized (JournalWriter.SYNCHRONIZER) {
+                currentJournal.writeJournalEntries(Collections
+                        .singletonList(journalEntry));
+                currentJournal.closeIfAppropriate();
+            }
+        }
+    }
+
+    /**
+     * Write a batch of entries to the current file, flushing once. The file is
+     * not closed here if it has become too large; that waits for the next
+     * preparation.
+     */
+    @Override
+    public void writeJournalEntries(List<CreatorJournalEntry> journalEntries)
+            throws JournalException {
+        if (open) {
+            synchronized (JournalWriter.SYNCHRONIZER) {
+                currentJournal.writeJournalEntries(journalEntries);
+            }
+        }
+    }
+
+    /**
+     * Close the current journal file.
+     */
+    @Override
+    public void shutdown() throws JournalException {
+        if (open) {
+            currentJournal.close();
+            open = false;
+        }
+    }
+
+    /**
+     * A convenience method so the output file's timer can close it without
+     * interrupting entries that are being group-committed.
+     */
+    void closeFromTimer(BinaryJournalOutputFile journalFile)
+            throws JournalException {
+        lockForFileChange();
+        try {
+            journalFile.close();
+        } finally {
+            unlockForFileChange();
+        }
+    }
+
+    /**
+     * Create an informative message for debugging purposes.
+     */
+    @Override
+    public String toString() {
+        return super.toString() + ", journalDirectory='" + journalDirectory
+                + "', filenamePrefix='" + filenamePrefix + "', sizeLimit="
+                + sizeLimit + "(bytes), ageLimit=" + ageLimit
+                + "(msec), compression=" + compression;
+    }
+
+}
@@ -0,0 +1,121 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.journal.readerwriter.binary;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Read the blocks written by a {@link BlockOutputStream}, and present their
+ * data as a single stream.
+ */
+class BlockInputStream
+        extends InputStream
+        implements BinaryJournalConstants {
+
+    private final DataInputStream in;
+
+    private final Inflater inflater = new Inflater();
+
+    private final byte[] buffer = new byte[BLOCK_SIZE];
+
+    private final byte[] stored = new byte[BLOCK_SIZE];
+
+    private int count = 0;
+
+    private int position = 0;
+
+    BlockInputStream(InputStream in) {
+        this.in = new DataInputStream(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == count && !readBlock()) {
+            return -1;
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position == count && !readBlock()) {
+            return -1;
+        }
+        int howMany = Math.min(len, count - position);
+        System.arraycopy(buffer, position, b, off, howMany);
+        position += howMany;
+        return howMany;
+    }
+
+    @Override
+    public int available() {
+        return count - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    /**
+     * Read the next block into the buffer.
+     *
+     * @return false if there are no more blocks.
+     */
+    private boolean readBlock() throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return false;
+        }
+        int storedLength = in.readInt();
+        if (length <= 0 || length > BLOCK_SIZE || storedLength <= 0
+                || storedLength > length) {
+            throw new IOException("Invalid block in binary journal: length="
+                    + length + ", stored length=" + storedLength);
+        }
+
+        if (storedLength == length) {
+            in.readFully(buffer, 0, length);
+        } else {
+            in.readFully(stored, 0, storedLength);
+            inflate(storedLength, length);
+        }
+        count = length;
+        position = 0;
+        return true;
+    }
+
+    private void inflate(int storedLength, int length) throws IOException {
+        try {
+            inflater.reset();
+            inflater.setInput(stored, 0, storedLength);
+            int inflatedLength = inflater.inflate(buffer, 0, length);
+            if (inflatedLength != length || !inflater.finished()) {
+                throw new IOException("Compressed block in binary journal "
+                        + "should hold " + length + " bytes, but holds "
+                        + inflatedLength);
+            }
+        } catch (DataFormatException e) {
+            IOException ioe =
+                    new IOException("Invalid compressed block in binary "
+                            + "journal");
+            ioe.initCause(e);
+            throw ioe;
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.journal.readerwriter.binary;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.util.zip.Deflater;
+
+/**
+ * Collect data into blocks, compress each block if asked, and write it with its
+ * lengths. A {@link #flush()} writes whatever has been collected as a short
+ * block, so callers should flush once for each batch of records, not for each
+ * record.
+ */
+class BlockOutputStream
+        extends OutputStream
+        implements BinaryJournalConstants {
+
+    private final DataOutputStream out;
+
+    /** Null if the blocks are not compressed. */
+    private final Deflater deflater;
+
+    private final byte[] buffer = new byte[BLOCK_SIZE];
+
+    private final byte[] compressed;
+
+    private int count = 0;
+
+    BlockOutputStream(OutputStream out, byte compression) {
+        this.out = new DataOutputStream(out);
+        if (compression == COMPRESSION_DEFLATE) {
+            deflater = new Deflater(Deflater.BEST_SPEED);
+            compressed = new byte[BLOCK_SIZE];
+        } else {
+            deflater = null;
+            compressed = null;
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == buffer.length) {
+            writeBlock();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == buffer.length) {
+                writeBlock();
+            }
+            int howMany = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, howMany);
+            count += howMany;
+            off += howMany;
+            len -= howMany;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeBlock();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        if (deflater != null) {
+            deflater.end();
+        }
+        out.close();
+    }
+
+    /**
+     * Write the collected data as a block. If compression doesn't make it
+     * smaller, store it as it is.
+     */
+    private void writeBlock() throws IOException {
+        if (count == 0) {
+            return;
+        }
+
+        int storedLength = count;
+        byte[] stored = buffer;
+        if (deflater != null) {
+            deflater.reset();
+            deflater.setInput(buffer, 0, count);
+            deflater.finish();
+            int compressedLength = deflater.deflate(compressed);
+            if (deflater.finished() && compressedLength < count) {
+                storedLength = compressedLength;
+                stored = compressed;
+            }
+        }
+
+        out.writeInt(count);
+        out.writeInt(storedLength);
+        out.write(stored, 0, storedLength);
+        count = 0;
+    }
+
+}
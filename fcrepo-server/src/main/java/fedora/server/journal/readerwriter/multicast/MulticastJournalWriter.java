@@ -8,6 +8,7 @@ package fedora.server.journal.readerwriter.multicast;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -312,6 +313,45 @@ public class MulticastJournalWriter
         }
     }
 
+    /**
+     * Preparation is needed if there is no open file, or the current file is
+     * too large.
+     */
+    @Override
+    public boolean needsPreparation() {
+        synchronized (JournalWriter.SYNCHRONIZER) {
+            return state == FILE_CLOSED
+                    || (state == FILE_OPEN && sizeLimit != 0
+                            && currentSize >= sizeLimit);
+        }
+    }
+
+    /**
+     * <p>
+     * Write a batch of journal entries.
+     * </p>
+     * <p>
+     * Each Transport is sent the whole batch, and flushes once. If this puts
+     * the file size over the limit, the file is not closed until the next
+     * preparation.
+     * </p>
+     */
+    @Override
+    public void writeJournalEntries(List<CreatorJournalEntry> journalEntries)
+            throws JournalException {
+        synchronized (JournalWriter.SYNCHRONIZER) {
+            if (state == SHUTDOWN) {
+                return;
+            }
+            LOG.debug("Writing " + journalEntries.size() + " journal entries.");
+            sendRequestToAllTransports(new WriteEntryRequest(this,
+                                                             journalEntries));
+            for (CreatorJournalEntry journalEntry : journalEntries) {
+                currentSize += sizeEstimator.estimateSize(journalEntry);
+            }
+        }
+    }
+
     /**
      * <p>
      * Shut it down
@@ -387,7 +427,12 @@ public class MulticastJournalWriter
         public void run() {
             try {
                 LOG.debug("Timer task requests file close.");
-                closeFile();
+                lockForFileChange();
+                try {
+                    closeFile();
+                } finally {
+                    unlockForFileChange();
+                }
             } catch (JournalException e) {
                 /*
                  * What to do with this exception? If we print it, where is the
@@ -443,6 +488,14 @@ public class MulticastJournalWriter
         super.writeJournalEntry(journalEntry, writer);
     }
 
+    /** make this public, so the TransportRequest class can call it. */
+    @Override
+    public void writeJournalEntries(List<CreatorJournalEntry> journalEntries,
+                                    XMLEventWriter writer)
+            throws JournalException {
+        super.writeJournalEntries(journalEntries, writer);
+    }
+
     /**
      * make this public so the Transport classes can call it via
      * TransportParent.
@@ -5,29 +5,38 @@
 
 package fedora.server.journal.readerwriter.multicast.request;
 
+import java.util.Collections;
+import java.util.List;
+
 import fedora.server.journal.JournalException;
 import fedora.server.journal.entry.CreatorJournalEntry;
 import fedora.server.journal.readerwriter.multicast.MulticastJournalWriter;
 import fedora.server.journal.readerwriter.multicast.Transport;
 
 /**
- * TransportRequest that writes a journalEntry to each Transport.
+ * TransportRequest that writes a journalEntry, or a batch of them, to each
+ * Transport.
  */
 public class WriteEntryRequest
         extends TransportRequest {
 
     private final MulticastJournalWriter journalWriter;
 
-    private final CreatorJournalEntry journalEntry;
+    private final List<CreatorJournalEntry> journalEntries;
 
     public WriteEntryRequest(MulticastJournalWriter journalWriter,
                              CreatorJournalEntry journalEntry) {
+        this(journalWriter, Collections.singletonList(journalEntry));
+    }
+
+    public WriteEntryRequest(MulticastJournalWriter journalWriter,
+                             List<CreatorJournalEntry> journalEntries) {
         this.journalWriter = journalWriter;
-        this.journalEntry = journalEntry;
+        this.journalEntries = journalEntries;
     }
 
     @Override
     public void performRequest(Transport transport) throws JournalException {
-        journalWriter.writeJournalEntry(journalEntry, transport.getWriter());
+        journalWriter.writeJournalEntries(journalEntries, transport.getWriter());
     }
 }
\ No newline at end of file
@@ -193,14 +193,20 @@ class JournalOutputFile
                 return;
             }
 
-            // if the size limit is 0 or negative, treat it as "no limit".
-            long currentSize = tempFile.length();
-            if (sizeLimit > 0 && currentSize > sizeLimit) {
+            if (isOverSizeLimit()) {
                 close();
             }
         }
     }
 
+    /**
+     * Has the file grown past the size limit?
+     */
+    public boolean isOverSizeLimit() {
+        // if the size limit is 0 or negative, treat it as "no limit".
+        return sizeLimit > 0 && tempFile.length() > sizeLimit;
+    }
+
     /**
      * Is this file available for writing?
      */
@@ -259,7 +265,7 @@ class JournalOutputFile
         @Override
         public void run() {
             try {
-                close();
+                parent.closeFromTimer(JournalOutputFile.this);
             } catch (JournalException e) {
                 /*
                  * What to do with this exception? If we print it, where is the
@@ -46,7 +46,7 @@ public class MultiFileJournalHelper
      * Find the polling interval that we will choose when checking for new
      * journal files to appear.
      */
-    static long parseParametersForPollingInterval(Map<String, String> parameters)
+    public static long parseParametersForPollingInterval(Map<String, String> parameters)
             throws JournalException {
         String intervalString =
                 parameters.get(PARAMETER_FOLLOW_POLLING_INTERVAL);
@@ -74,8 +74,8 @@ public class MultiFileJournalHelper
     /**
      * Get the Journal Files that exist the Journal Directory, sorted by name.
      */
-    static File[] getSortedArrayOfJournalFiles(File journalDirectory,
-                                               String filenamePrefix) {
+    public static File[] getSortedArrayOfJournalFiles(File journalDirectory,
+                                                      String filenamePrefix) {
         JournalFileFilter filter = new JournalFileFilter(filenamePrefix);
         File[] journalFiles = journalDirectory.listFiles(filter);
         Arrays.sort(journalFiles, new FilenameComparator());
@@ -80,6 +80,7 @@ public class MultiFileJournalReader
     public synchronized void shutdown() throws JournalException {
         if (open) {
             recoveryLog.log("Shutdown requested by server.");
+            fileBoundary();
             closeCurrentFile();
             open = false;
         }
@@ -154,6 +155,7 @@ public class MultiFileJournalReader
                         return;
                     } else if (isEndTagEvent(next, QNAME_TAG_JOURNAL)) {
                         // need to get the next file
+                        fileBoundary();
                         closeCurrentFile();
                     } else {
                         // problems
@@ -222,6 +224,7 @@ public class MultiFileJournalReader
         String hash =
                 getOptionalAttributeValue(event.asStartElement(),
                                           QNAME_ATTR_REPOSITORY_HASH);
+        fileBoundary();
         checkRepositoryHash(hash);
     }
 
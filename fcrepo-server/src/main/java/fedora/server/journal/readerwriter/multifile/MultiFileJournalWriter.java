@@ -7,6 +7,7 @@ package fedora.server.journal.readerwriter.multifile;
 import java.io.File;
 
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 import javax.xml.stream.XMLEventWriter;
@@ -113,6 +114,17 @@ public class MultiFileJournalWriter
         }
     }
 
+    /**
+     * Preparation is needed if the current file has been closed, or is too
+     * large.
+     */
+    @Override
+    public boolean needsPreparation() {
+        return open
+                && (!currentJournal.isOpen() || currentJournal
+                        .isOverSizeLimit());
+    }
+
     /**
      * We've prepared for the entry, so just write it, but remember to
      * synchronize on the file, so we don't get an asynchronous close while
@@ -135,6 +147,22 @@ public class MultiFileJournalWriter
         }
     }
 
+    /**
+     * Write a batch of entries to the current file, flushing once. Unlike
+     * {@link #writeJournalEntry(CreatorJournalEntry)}, this doesn't close the
+     * file if it has become too large; that waits for the next preparation.
+     */
+    @Override
+    public void writeJournalEntries(List<CreatorJournalEntry> journalEntries)
+            throws JournalException {
+        if (open) {
+            synchronized (JournalWriter.SYNCHRONIZER) {
+                super.writeJournalEntries(journalEntries, currentJournal
+                        .getXmlWriter());
+            }
+        }
+    }
+
     /**
      * Close the current journal file.
      */
@@ -153,6 +181,19 @@ public class MultiFileJournalWriter
         super.writeDocumentHeader(xmlWriter);
     }
 
+    /**
+     * A convenience method so the JournalOutputFile's timer can close it
+     * without interrupting entries that are being group-committed.
+     */
+    void closeFromTimer(JournalOutputFile journalFile) throws JournalException {
+        lockForFileChange();
+        try {
+            journalFile.close();
+        } finally {
+            unlockForFileChange();
+        }
+    }
+
     /**
      * A convenience method so the JournalOutputFile can request its own
      * trailer.
@@ -117,6 +117,7 @@ public class SingleFileJournalReader
         String hash =
                 getOptionalAttributeValue(event.asStartElement(),
                                           QNAME_ATTR_REPOSITORY_HASH);
+        fileBoundary();
         checkRepositoryHash(hash);
     }
 
@@ -7,6 +7,7 @@ package fedora.server.journal.readerwriter.singlefile;
 import java.io.FileWriter;
 import java.io.IOException;
 
+import java.util.List;
 import java.util.Map;
 
 import javax.xml.stream.XMLEventWriter;
@@ -92,6 +93,23 @@ public class SingleFileJournalWriter
         }
     }
 
+    /**
+     * The only preparation is writing the document header.
+     */
+    @Override
+    public boolean needsPreparation() {
+        return !fileHasHeader;
+    }
+
+    /**
+     * A batch of entries is added to the file with a single flush.
+     */
+    @Override
+    public void writeJournalEntries(List<CreatorJournalEntry> journalEntries)
+            throws JournalException {
+        super.writeJournalEntries(journalEntries, writer);
+    }
+
     /**
      * Add the document trailer and close the journal file.
      */
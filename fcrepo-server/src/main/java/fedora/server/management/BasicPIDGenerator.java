@@ -35,6 +35,8 @@ public class BasicPIDGenerator
 
     private File m_oldPidGenDir;
 
+    private int m_blockSize;
+
     /**
      * Constructs a BasicPIDGenerator.
      * 
@@ -55,7 +57,7 @@ public class BasicPIDGenerator
     }
 
     @Override
-    public void initModule() {
+    public void initModule() throws ModuleInitializationException {
         // this parameter is no longer required; but if it's specified,
         // we can automatically upgrade from a pre-1.2 version of Fedora by 
         // making sure the old "last pid generated" value is respected later.
@@ -68,6 +70,22 @@ public class BasicPIDGenerator
                 m_oldPidGenDir = new File(getServer().getHomeDir(), dir);
             }
         }
+        // the number of pids to reserve in the database at a time
+        String blockSize = getParameter("pidgen_block_size");
+        if (blockSize == null || blockSize.equals("")) {
+            m_blockSize = DBPIDGenerator.DEFAULT_BLOCK_SIZE;
+        } else {
+            try {
+                m_blockSize = Integer.parseInt(blockSize);
+                if (m_blockSize < 1) {
+                    throw new NumberFormatException("Cannot be less than 1");
+                }
+            } catch (NumberFormatException e) {
+                throw new ModuleInitializationException("Bad value for pidgen_block_size parameter: "
+                                                                + e.getMessage(),
+                                                        getRole());
+            }
+        }
     }
 
     /**
@@ -84,7 +102,9 @@ public class BasicPIDGenerator
                                                     getRole());
         }
         try {
-            m_pidGenerator = new DBPIDGenerator(mgr.getPool(), m_oldPidGenDir);
+            m_pidGenerator = new DBPIDGenerator(mgr.getPool(),
+                                       m_oldPidGenDir,
+                                       m_blockSize);
         } catch (Exception e) {
             String msg = "Can't get default connection pool";
             LOG.fatal(msg, e);
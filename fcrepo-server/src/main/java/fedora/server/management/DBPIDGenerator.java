@@ -17,6 +17,9 @@ import java.sql.Statement;
 
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 
@@ -29,6 +32,12 @@ import fedora.server.utilities.SQLUtility;
 /**
  * A PIDGenerator that uses a database to keep track of the highest pid it knows
  * about for each namespace.
+ * <p>
+ * Ids are reserved in the database a block at a time, and handed out from
+ * memory until the block is used up, so generating a pid usually doesn't touch
+ * the database. The highest id recorded for a namespace is the end of its
+ * current block; after a restart, generation resumes beyond it, so at most one
+ * block per namespace goes unused.
  * 
  * @author Chris Wilper
  */
@@ -39,9 +48,18 @@ public class DBPIDGenerator
     private static final Logger LOG =
             Logger.getLogger(DBPIDGenerator.class.getName());
 
-    private final HashMap m_highestID;
+    /** The number of ids to reserve at a time, if not specified. */
+    public static final int DEFAULT_BLOCK_SIZE = 100;
 
-    private PID m_lastPID;
+    /** The highest ids found in the database at startup, by namespace. */
+    private final Map<String, Integer> m_highestID;
+
+    /** The ids handed out and reserved so far, by namespace. */
+    private final ConcurrentHashMap<String, Range> m_ranges;
+
+    private final int m_blockSize;
+
+    private volatile PID m_lastPID;
 
     private final ConnectionPool m_connectionPool;
 
@@ -55,8 +73,25 @@ public class DBPIDGenerator
      */
     public DBPIDGenerator(ConnectionPool cPool, File oldPidGenDir)
             throws IOException {
+        this(cPool, oldPidGenDir, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Initialize the DBPIDGenerator, reserving the given number of ids at a
+     * time.
+     * 
+     * @see #DBPIDGenerator(ConnectionPool, File)
+     */
+    public DBPIDGenerator(ConnectionPool cPool, File oldPidGenDir, int blockSize)
+            throws IOException {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive: "
+                    + blockSize);
+        }
         m_connectionPool = cPool;
-        m_highestID = new HashMap();
+        m_blockSize = blockSize;
+        m_highestID = new HashMap<String, Integer>();
+        m_ranges = new ConcurrentHashMap<String, Range>();
         // load the values from the database into the m_highestID hash
         // pidGen:  namespace  highestID
         Statement s = null;
@@ -128,37 +163,54 @@ public class DBPIDGenerator
      * Generate a new pid that is guaranteed to be unique, within the given
      * namespace.
      */
-    public synchronized PID generatePID(String namespace) throws IOException {
-        int i = getHighestID(namespace);
-        i++;
-        setHighestID(namespace, i);
+    public PID generatePID(String namespace) throws IOException {
+        Range range = getRange(namespace);
+        int i;
+        while (true) {
+            int last = range.last.get();
+            i = last + 1;
+            if (i <= range.reserved) {
+                if (range.last.compareAndSet(last, i)) {
+                    break;
+                }
+            } else {
+                range.reserveBeyond(last);
+            }
+        }
 
         try {
-            m_lastPID = new PID(namespace + ":" + i);
+            PID pid = new PID(namespace + ":" + i);
+            m_lastPID = pid;
+            return pid;
         } catch (MalformedPIDException e) {
             throw new IOException(e.getMessage());
         }
-        return m_lastPID;
     }
 
     /**
      * Get the last pid that was generated.
      */
-    public synchronized PID getLastPID() {
+    public PID getLastPID() {
         return m_lastPID;
     }
 
     /**
      * Cause the given PID to never be generated by the PID generator.
      */
-    public synchronized void neverGeneratePID(String pid) throws IOException {
+    public void neverGeneratePID(String pid) throws IOException {
         LOG.debug("Never generating PID: " + pid);
         try {
             PID p = new PID(pid);
             String ns = p.getNamespaceId();
             int id = Integer.parseInt(p.getObjectId());
-            if (id > getHighestID(ns)) {
-                setHighestID(ns, id);
+            Range range = getRange(ns);
+            // move past the id first, so it can't be handed out meanwhile
+            int last = range.last.get();
+            while (id > last && !range.last.compareAndSet(last, id)) {
+                last = range.last.get();
+            }
+            if (id > range.reserved) {
+                range.reserveThrough(id);
             }
         } catch (MalformedPIDException mpe) {
             throw new IOException(mpe.getMessage());
@@ -169,23 +221,30 @@ public class DBPIDGenerator
     }
 
     /**
-     * Gets the highest id ever used for the given namespace.
+     * Gets the range of ids for the given namespace, starting it after the
+     * highest id in the database if this is the first time it's used.
      */
-    private int getHighestID(String namespace) {
-        Integer i = (Integer) m_highestID.get(namespace);
-        if (i == null) {
-            return 0;
+    private Range getRange(String namespace) {
+        Range range = m_ranges.get(namespace);
+        if (range == null) {
+            Integer highest = m_highestID.get(namespace);
+            Range newRange =
+                    new Range(namespace, highest == null ? 0 : highest
+                            .intValue());
+            range = m_ranges.putIfAbsent(namespace, newRange);
+            if (range == null) {
+                range = newRange;
+            }
         }
-        return i.intValue();
+        return range;
     }
 
     /**
-     * Sets the highest id ever used for the given namespace.
+     * Sets the highest id ever used for the given namespace in the database.
      */
     private void setHighestID(String namespace, int id) throws IOException {
         LOG.debug("Setting highest ID for " + namespace + " to " + id);
-        m_highestID.put(namespace, new Integer(id));
-        // write the new highest id in the database, too
+        // write the new highest id in the database
         Connection conn = null;
         try {
             conn = m_connectionPool.getConnection();
@@ -205,4 +264,49 @@ public class DBPIDGenerator
         }
     }
 
+    /**
+     * The ids of a namespace that have been handed out, and the end of the
+     * block reserved in the database. An id is only handed out once the
+     * database records it as used.
+     */
+    private class Range {
+
+        private final String m_namespace;
+
+        /** The highest id handed out, or known to be in use. */
+        final AtomicInteger last;
+
+        /** The highest id reserved in the database; written under lock. */
+        volatile int reserved;
+
+        Range(String namespace, int highest) {
+            m_namespace = namespace;
+            last = new AtomicInteger(highest);
+            reserved = highest;
+        }
+
+        /**
+         * Reserves the next block of ids, unless another thread already has
+         * since the given id was handed out.
+         */
+        synchronized void reserveBeyond(int lastSeen) throws IOException {
+            if (reserved > lastSeen) {
+                return;
+            }
+            int end = Math.max(reserved, last.get()) + m_blockSize;
+            setHighestID(m_namespace, end);
+            reserved = end;
+        }
+
+        /**
+         * Makes sure the database records the given id as used.
+         */
+        synchronized void reserveThrough(int id) throws IOException {
+            if (id > reserved) {
+                setHighestID(m_namespace, id);
+                reserved = id;
+            }
+        }
+    }
+
 }
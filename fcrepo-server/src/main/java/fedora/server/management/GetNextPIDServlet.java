@@ -19,9 +19,7 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
@@ -229,11 +227,8 @@ public class GetNextPIDServlet
                     File xslFile =
                             new File(s_server.getHomeDir(),
                                      "management/getNextPIDInfo.xslt");
-                    TransformerFactory factory =
-                            XmlTransformUtility.getTransformerFactory();
-                    Templates template =
-                            factory.newTemplates(new StreamSource(xslFile));
-                    Transformer transformer = template.newTransformer();
+                    Transformer transformer =
+                            XmlTransformUtility.getTransformer(xslFile);
                     transformer.transform(new StreamSource(pr),
                                           new StreamResult(out));
                 }
@@ -116,13 +116,16 @@ public class AtomAPIMMessage
 
     public AtomAPIMMessage(FedoraMethod method, String fedoraBaseUrl, String serverVersion, String format)
             throws MessagingException {
-        if (fedoraTypes == null) {
-            try {
-                fedoraTypes = new FedoraTypes();
-            } catch (FileNotFoundException e) {
-                throw new MessagingException(e.getMessage(), e);
-            } catch (DocumentException e) {
-                throw new MessagingException(e.getMessage(), e);
+        // Messages may be built on several notification threads at once
+        synchronized (AtomAPIMMessage.class) {
+            if (fedoraTypes == null) {
+                try {
+                    fedoraTypes = new FedoraTypes();
+                } catch (FileNotFoundException e) {
+                    throw new MessagingException(e.getMessage(), e);
+                } catch (DocumentException e) {
+                    throw new MessagingException(e.getMessage(), e);
+                }
             }
         }
         this.method = method.getMethod();
@@ -91,7 +91,11 @@ public class FedoraMethod {
                         pid = PID.getInstance(subject);
                     }
                 } else {
-                    pid = PID.getInstance((String)getParameter("pid"));
+                    // Some methods, such as getNextPID, have no pid
+                    String pidString = (String)getParameter("pid");
+                    if (pidString != null) {
+                        pid = PID.getInstance(pidString);
+                    }
                 }
             }
         }
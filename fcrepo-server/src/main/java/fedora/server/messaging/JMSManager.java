@@ -77,6 +77,18 @@ public class JMSManager {
 
     private final Properties jndiProps;
 
+    // Transacted sessions for batched sends, keyed by destination name.
+    // A Session may only be used by one thread at a time, so each thread
+    // that sends a batch gets its own. They are closed with the connection.
+    private final ThreadLocal<Map<String, JMSDestination>> batchDestinations =
+            new ThreadLocal<Map<String, JMSDestination>>() {
+
+                @Override
+                protected Map<String, JMSDestination> initialValue() {
+                    return new HashMap<String, JMSDestination>();
+                }
+            };
+
     // Destination type determines the method by which messages are transferred
     public static enum DestinationType {
         Topic, Queue;
@@ -550,6 +562,40 @@ public class JMSManager {
         this.send(destName, (Serializable) messageText);
     }
 
+    /**
+     * Sends a batch of messages to a named destination in a single
+     * transaction. The messages should be created with the session returned
+     * by {@link #getBatchSession(String)}, by the same thread. If any of
+     * the sends fail, the transaction is rolled back and none of the
+     * messages are delivered.
+     *
+     * @param destName
+     * @param msgs
+     * @throws MessagingException
+     */
+    public void sendBatch(String destName, List<? extends Message> msgs)
+            throws MessagingException {
+        JMSDestination batchDest = getBatchDestination(destName);
+        try {
+            for (Message msg : msgs) {
+                batchDest.producer.send(msg);
+            }
+            batchDest.session.commit();
+        } catch (JMSException e) {
+            try {
+                batchDest.session.rollback();
+            } catch (JMSException re) {
+                LOG.warn("Unable to roll back batch to " + destName, re);
+            }
+            throw new MessagingException(e.getMessage(), e);
+        }
+
+        if(LOG.isDebugEnabled()) {
+            LOG.debug("sendBatch() - " + msgs.size()
+                    + " messages sent to destination " + destName);
+        }
+    }
+
     /**
      * Stops producers and consumers on a given destination.
      * This has no effect on durable subscriptions.
@@ -724,6 +770,17 @@ public class JMSManager {
         return jmsDest.session;
     }
 
+    /**
+     * @param destName
+     * @return a transacted Session for sending batches to the specified
+     *         destination name, which belongs to the calling thread.
+     * @throws MessagingException
+     */
+    public Session getBatchSession(String destName)
+            throws MessagingException {
+        return getBatchDestination(destName).session;
+    }
+
     /**
      * Gets the named Destination if it has been created.
      *
@@ -835,6 +892,27 @@ public class JMSManager {
         return jmsDest;
     }
 
+    protected JMSDestination getBatchDestination(String name)
+            throws MessagingException {
+        Map<String, JMSDestination> destinations = batchDestinations.get();
+        JMSDestination batchDest = destinations.get(name);
+        if (batchDest == null) {
+            Destination destination = getJMSDestination(name).destination;
+            try {
+                Session session =
+                        connection.createSession(true,
+                                                 Session.SESSION_TRANSACTED);
+                MessageProducer producer = session.createProducer(destination);
+                batchDest =
+                        new JMSDestination(destination, session, producer, null);
+            } catch (JMSException e) {
+                throw new MessagingException(e.getMessage(), e);
+            }
+            destinations.put(name, batchDest);
+        }
+        return batchDest;
+    }
+
     protected void setupProducer(JMSDestination jmsDest)
             throws MessagingException {
         if (jmsDest.producer != null) return;
@@ -4,6 +4,8 @@
  */
 package fedora.server.messaging;
 
+import java.util.List;
+
 import fedora.server.errors.MessagingException;
 
 /**
@@ -37,6 +39,18 @@ public interface Messaging {
      */
     public void send(FedoraMethod method) throws MessagingException;
 
+    /**
+     * Send messages representing each of the <code>FedoraMethod</code>s, in
+     * order. Implementations may send them together.
+     *
+     * @param methods The methods to send.
+     * @throws PartialBatchException if some of the messages could not be
+     *         sent, after any retries of the implementation's own. The others
+     *         were sent, so the batch must not be sent again.
+     * @throws MessagingException if none of the messages were sent.
+     */
+    public void send(List<FedoraMethod> methods) throws MessagingException;
+
     /**
      * Shutdown and/or close any resources and/or connections.
      *
@@ -4,11 +4,18 @@
  */
 package fedora.server.messaging;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
 import javax.jms.TextMessage;
 
 import org.apache.log4j.Logger;
@@ -72,14 +79,7 @@ public class MessagingImpl implements Messaging {
     public void send(String destName, FedoraMethod method, FedoraMessage message)
             throws MessagingException {
         TextMessage jmsMessage = jmsMgr.createTextMessage(destName, message.toString());
-        try {
-            jmsMessage.setStringProperty("methodName", method.getName());
-            if(method.getPID() != null) {
-                jmsMessage.setStringProperty("pid", method.getPID().toString());
-            }
-        } catch(JMSException jmse) {
-            throw new MessagingException("Unable to set message properties.", jmse);
-        }
+        setMessageProperties(jmsMessage, method);
         jmsMgr.send(destName, jmsMessage);
     }
 
@@ -91,28 +91,144 @@ public class MessagingImpl implements Messaging {
      * {@inheritDoc}
      */
     public void send(FedoraMethod method) throws MessagingException {
-        if (Management.class == method.getMethod().getDeclaringClass()) {
-
+        List<String> destNames = getDestinationNames(method);
+        if (!destNames.isEmpty()) {
             APIMMessage message = new AtomAPIMMessage(method, fedoraBaseUrl, Server.VERSION, messageFormat);
+            for (String destName : destNames) {
+                send(destName, method, message);
+            }
+        }
+    }
 
-            String methodName = method.getName();
-            if (methodName.startsWith("ingest")
-                    || methodName.startsWith("add")
-                    || methodName.startsWith("modify")
-                    || methodName.startsWith("purge")
-                    || methodName.startsWith("set")) {
-                for (String destName : mdMap.get(MessageType.apimUpdate.toString())) {
-                    send(destName, method, message);
+    /**
+     * Send the messages for each of the {@link FedoraMethod}s in a single
+     * transaction per destination, using the calling thread's batch
+     * sessions. Each message is serialized once, however many destinations
+     * it goes to. Messages to the same destination keep their order.
+     * <p>
+     * If a destination's transaction fails, its messages are sent to it one
+     * at a time, without resending anything to the destinations that have
+     * already committed.
+     * {@inheritDoc}
+     */
+    public void send(List<FedoraMethod> methods) throws MessagingException {
+        Map<String, Batch> batches = new LinkedHashMap<String, Batch>();
+        for (FedoraMethod method : methods) {
+            List<String> destNames = getDestinationNames(method);
+            if (destNames.isEmpty()) {
+                continue;
+            }
+
+            String text = new AtomAPIMMessage(method, fedoraBaseUrl, Server.VERSION, messageFormat).toString();
+            for (String destName : destNames) {
+                Session session = jmsMgr.getBatchSession(destName);
+                TextMessage jmsMessage;
+                try {
+                    jmsMessage = session.createTextMessage(text);
+                } catch (JMSException jmse) {
+                    throw new MessagingException("Unable to create message.", jmse);
                 }
-            } else {
-                for (String destName : mdMap.get(MessageType.apimAccess.toString())) {
-                    send(destName, method, message);
+                setMessageProperties(jmsMessage, method);
+
+                Batch batch = batches.get(destName);
+                if (batch == null) {
+                    batch = new Batch();
+                    batches.put(destName, batch);
                 }
+                batch.methods.add(method);
+                batch.messages.add(jmsMessage);
             }
-        } else {
+        }
+
+        Set<FedoraMethod> unsent = new HashSet<FedoraMethod>();
+        MessagingException firstFailure = null;
+        for (Map.Entry<String, Batch> entry : batches.entrySet()) {
+            String destName = entry.getKey();
+            Batch batch = entry.getValue();
+            try {
+                jmsMgr.sendBatch(destName, batch.messages);
+                continue;
+            } catch (MessagingException e) {
+                LOG.warn("Unable to send batch of " + batch.messages.size()
+                        + " messages to " + destName
+                        + "; sending them one at a time", e);
+            }
+            for (int i = 0; i < batch.messages.size(); i++) {
+                try {
+                    jmsMgr.sendBatch(destName, Collections
+                            .singletonList(batch.messages.get(i)));
+                } catch (MessagingException e) {
+                    unsent.add(batch.methods.get(i));
+                    if (firstFailure == null) {
+                        firstFailure = e;
+                    }
+                }
+            }
+        }
+
+        if (!unsent.isEmpty()) {
+            List<FedoraMethod> unsentInOrder = new ArrayList<FedoraMethod>();
+            for (FedoraMethod method : methods) {
+                if (unsent.remove(method)) {
+                    unsentInOrder.add(method);
+                }
+            }
+            throw new PartialBatchException("Unable to send "
+                    + unsentInOrder.size() + " of " + methods.size()
+                    + " messages", unsentInOrder, firstFailure);
+        }
+    }
+
+    /**
+     * The messages for one destination, and the methods they represent.
+     */
+    private static class Batch {
+
+        final List<FedoraMethod> methods = new ArrayList<FedoraMethod>();
+
+        final List<Message> messages = new ArrayList<Message>();
+    }
+
+    /**
+     * Get the destinations for a {@link FedoraMethod}. Currently, only
+     * {@link FedoraMethod}s that represent {@link fedora.server.Management}
+     * methods have any.
+     */
+    private List<String> getDestinationNames(FedoraMethod method) {
+        if (Management.class != method.getMethod().getDeclaringClass()) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Silently dropping non-Management method: " + method.getName());
             }
+            return Collections.emptyList();
+        }
+
+        String methodName = method.getName();
+        List<String> destNames;
+        if (methodName.startsWith("ingest")
+                || methodName.startsWith("add")
+                || methodName.startsWith("modify")
+                || methodName.startsWith("purge")
+                || methodName.startsWith("set")) {
+            destNames = mdMap.get(MessageType.apimUpdate.toString());
+        } else {
+            destNames = mdMap.get(MessageType.apimAccess.toString());
+        }
+        if (destNames == null) {
+            return Collections.emptyList();
+        }
+        return destNames;
+    }
+
+    private void setMessageProperties(TextMessage jmsMessage,
+                                      FedoraMethod method)
+            throws MessagingException {
+        try {
+            jmsMessage.setStringProperty("methodName", method.getName());
+            if(method.getPID() != null) {
+                jmsMessage.setStringProperty("pid", method.getPID().toString());
+            }
+        } catch(JMSException jmse) {
+            throw new MessagingException("Unable to set message properties.", jmse);
         }
     }
 
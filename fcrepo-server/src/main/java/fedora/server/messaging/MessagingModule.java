@@ -48,6 +48,12 @@ public class MessagingModule
 
     private JMSManager jmsMgr;
 
+    private int notificationThreads;
+
+    private int notificationQueueSize;
+
+    private int notificationBatchSize;
+
     private static final String ACTIVEMQ_PREFIX = 
             "org.apache.activemq.default.directory.prefix";
     
@@ -73,6 +79,12 @@ public class MessagingModule
                                + File.separator);
         }
         
+        notificationThreads = getPositiveIntParameter("notificationThreads", 4);
+        notificationQueueSize =
+                getPositiveIntParameter("notificationQueueSize", 1000);
+        notificationBatchSize =
+                getPositiveIntParameter("notificationBatchSize", 50);
+
         Properties jndiProps = getJNDISettings();
 
         try {
@@ -117,6 +129,51 @@ public class MessagingModule
         msg.send(method);
     }
 
+    public void send(List<FedoraMethod> methods) throws MessagingException {
+        msg.send(methods);
+    }
+
+    /**
+     * @return the number of threads that send API-M notifications.
+     */
+    public int getNotificationThreads() {
+        return notificationThreads;
+    }
+
+    /**
+     * @return the number of API-M notifications each notification thread may
+     *         hold before the API-M callers must wait.
+     */
+    public int getNotificationQueueSize() {
+        return notificationQueueSize;
+    }
+
+    /**
+     * @return the largest number of API-M notifications to send in one
+     *         transaction.
+     */
+    public int getNotificationBatchSize() {
+        return notificationBatchSize;
+    }
+
+    private int getPositiveIntParameter(String name, int defaultValue)
+            throws ModuleInitializationException {
+        String value = getParameter(name);
+        if (value == null || value.length() == 0) {
+            return defaultValue;
+        }
+        try {
+            int number = Integer.parseInt(value);
+            if (number > 0) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        throw new ModuleInitializationException(name
+                + " must be a positive integer", getRole());
+    }
+
     private Properties getJNDISettings() {
 
         String contextFactory = getParameter(Context.INITIAL_CONTEXT_FACTORY);
@@ -249,6 +306,13 @@ public class MessagingModule
         return dsConfig;
     }
     
+    /**
+     * @return whether messaging is enabled.
+     */
+    public boolean isEnabled() {
+        return enabled();
+    }
+
     // Check to see if messaging is enabled
     private boolean enabled() {
         String enabled = getParameter("enabled");
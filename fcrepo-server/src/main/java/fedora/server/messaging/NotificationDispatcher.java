@@ -0,0 +1,340 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.messaging;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import fedora.common.PID;
+
+/**
+ * Sends notifications of API-M calls through {@link Messaging}, on a fixed
+ * number of worker threads.
+ * <p>
+ * Notifications are divided among the workers by PID, so the notifications
+ * for any one object are sent in the order that its calls were made. Each
+ * worker has a bounded queue. When the queue is full, the calling thread waits
+ * for room, so a slow broker slows down the API-M callers instead of piling up
+ * threads or messages. A worker sends everything waiting in its queue, up to
+ * the batch size, in a single call to {@link Messaging#send(List)}.
+ * <p>
+ * Throughput, latency and queue depth are logged every minute, and when the
+ * dispatcher is closed.
+ */
+class NotificationDispatcher {
+
+    /** Logger for this class. */
+    private static Logger LOG =
+            Logger.getLogger(NotificationDispatcher.class.getName());
+
+    /** How often to log the statistics, in milliseconds. */
+    private static final long STATISTICS_INTERVAL = 60 * 1000;
+
+    /** Put on each queue by {@link #close()} to stop its worker. */
+    private static final Notification STOP = new Notification(null);
+
+    /**
+     * How long {@link #close()} waits for room to queue the STOP marker, and
+     * then for the workers to finish, in milliseconds.
+     */
+    private static final long CLOSE_TIMEOUT = 30 * 1000;
+
+    private final Messaging messaging;
+
+    private final int batchSize;
+
+    private final Worker[] workers;
+
+    private volatile boolean closed = false;
+
+    private final AtomicLong sentCount = new AtomicLong();
+
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private final AtomicLong batchCount = new AtomicLong();
+
+    private final AtomicLong totalLatency = new AtomicLong();
+
+    private final AtomicLong blockedCount = new AtomicLong();
+
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    private long lastStatisticsTime = System.currentTimeMillis();
+
+    /**
+     * @param messaging where to send the notifications.
+     * @param threads the number of worker threads.
+     * @param queueSize the number of notifications each worker may hold
+     *        before the callers must wait.
+     * @param batchSize the largest number of notifications to send at once.
+     */
+    NotificationDispatcher(Messaging messaging,
+                           int threads,
+                           int queueSize,
+                           int batchSize) {
+        this.messaging = messaging;
+        this.batchSize = batchSize;
+
+        workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(i, queueSize);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Queue a notification for the worker responsible for its PID, waiting if
+     * that worker's queue is full.
+     */
+    public void dispatch(FedoraMethod method) {
+        if (closed) {
+            LOG.warn("Notification dispatcher is closed; dropping "
+                    + method.getName());
+            return;
+        }
+
+        Worker worker = workers[partition(method)];
+        Notification notification = new Notification(method);
+        if (!worker.queue.offer(notification)) {
+            blockedCount.incrementAndGet();
+            try {
+                worker.queue.put(notification);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOG.warn("Interrupted while waiting to queue "
+                        + method.getName() + "; notification dropped");
+                return;
+            }
+        }
+        recordQueueDepth(worker.queue.size());
+    }
+
+    /**
+     * Stop accepting notifications, wait for the workers to send everything
+     * already queued, and log the statistics. A worker that cannot be stopped
+     * within the timeout, because its broker is not taking messages, is left
+     * to finish on its own; it is a daemon thread.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT;
+            for (Worker worker : workers) {
+                if (!worker.queue.offer(STOP, remaining(deadline),
+                                        TimeUnit.MILLISECONDS)) {
+                    LOG.warn(worker.getName() + " queue stayed full for "
+                            + CLOSE_TIMEOUT + " ms; " + worker.queue.size()
+                            + " notifications not sent");
+                }
+            }
+            for (Worker worker : workers) {
+                worker.join(remaining(deadline));
+                if (worker.isAlive()) {
+                    LOG.warn(worker.getName() + " did not finish within "
+                            + CLOSE_TIMEOUT + " ms; " + worker.queue.size()
+                            + " notifications not sent");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted while waiting for notifications to be sent");
+        }
+        logStatistics();
+    }
+
+    /**
+     * @return the milliseconds left until the deadline, but at least one, so
+     *         that a timed wait never means "forever".
+     */
+    private static long remaining(long deadline) {
+        return Math.max(1, deadline - System.currentTimeMillis());
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * @return the number of notifications waiting to be sent.
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Worker worker : workers) {
+            depth += worker.queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * Calls without a PID all go to the first worker.
+     */
+    private int partition(FedoraMethod method) {
+        PID pid;
+        try {
+            pid = method.getPID();
+        } catch (RuntimeException e) {
+            pid = null;
+        }
+        if (pid == null) {
+            return 0;
+        }
+        return (pid.toString().hashCode() & Integer.MAX_VALUE)
+                % workers.length;
+    }
+
+    private void recordQueueDepth(int depth) {
+        int max = maxQueueDepth.get();
+        while (depth > max && !maxQueueDepth.compareAndSet(max, depth)) {
+            max = maxQueueDepth.get();
+        }
+    }
+
+    /**
+     * Send a batch. If none of it was sent, send the notifications one at a
+     * time, so one bad notification doesn't lose the others. If only part of
+     * it was sent, the rest are counted as failed; sending them again would
+     * duplicate the messages that did reach some of their destinations.
+     */
+    private void send(List<Notification> batch) {
+        List<FedoraMethod> methods = new ArrayList<FedoraMethod>(batch.size());
+        for (Notification notification : batch) {
+            methods.add(notification.method);
+        }
+
+        try {
+            messaging.send(methods);
+        } catch (PartialBatchException e) {
+            int unsent = e.getUnsent().size();
+            failedCount.addAndGet(unsent);
+            LOG.error("Unable to send " + unsent + " of " + batch.size()
+                    + " notifications", e);
+            recordSent(batch, e.getUnsent());
+            return;
+        } catch (Exception e) {
+            if (batch.size() == 1) {
+                failedCount.incrementAndGet();
+                LOG.error("Unable to send notification of "
+                        + methods.get(0).getName(), e);
+            } else {
+                LOG.warn("Unable to send batch of " + batch.size()
+                        + " notifications; sending them one at a time", e);
+                for (Notification notification : batch) {
+                    send(Collections.singletonList(notification));
+                }
+            }
+            return;
+        }
+        recordSent(batch, Collections.<FedoraMethod>emptyList());
+    }
+
+    private void recordSent(List<Notification> batch,
+                            List<FedoraMethod> unsent) {
+        long now = System.currentTimeMillis();
+        int sent = 0;
+        for (Notification notification : batch) {
+            if (!unsent.contains(notification.method)) {
+                totalLatency.addAndGet(now - notification.queued);
+                sent++;
+            }
+        }
+        sentCount.addAndGet(sent);
+        batchCount.incrementAndGet();
+    }
+
+    private synchronized void logStatisticsIfDue() {
+        long now = System.currentTimeMillis();
+        if (now - lastStatisticsTime >= STATISTICS_INTERVAL) {
+            lastStatisticsTime = now;
+            logStatistics();
+        }
+    }
+
+    private void logStatistics() {
+        long sent = sentCount.get();
+        long batches = batchCount.get();
+        LOG.info("Notifications sent: " + sent + ", failed: "
+                + failedCount.get() + ", batches: " + batches
+                + ", average latency: "
+                + (sent == 0 ? 0 : totalLatency.get() / sent)
+                + " ms, queued: " + getQueueDepth() + ", maximum queued: "
+                + maxQueueDepth.get() + ", callers blocked: "
+                + blockedCount.get());
+    }
+
+    /**
+     * A notification, and when it was queued.
+     */
+    private static class Notification {
+
+        final FedoraMethod method;
+
+        final long queued = System.currentTimeMillis();
+
+        Notification(FedoraMethod method) {
+            this.method = method;
+        }
+    }
+
+    /**
+     * Takes notifications from its queue and sends them in batches, until it
+     * finds the STOP marker.
+     */
+    private class Worker
+            extends Thread {
+
+        final BlockingQueue<Notification> queue;
+
+        Worker(int index, int queueSize) {
+            super("NotificationDispatcher-" + index);
+            setDaemon(true);
+            queue = new ArrayBlockingQueue<Notification>(queueSize);
+        }
+
+        @Override
+        public void run() {
+            List<Notification> batch = new ArrayList<Notification>(batchSize);
+            boolean stopping = false;
+            while (!stopping) {
+                batch.clear();
+                try {
+                    batch.add(queue.take());
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                queue.drainTo(batch, batchSize - 1);
+
+                int stop = batch.indexOf(STOP);
+                if (stop >= 0) {
+                    stopping = true;
+                    batch.subList(stop, batch.size()).clear();
+                }
+                if (!batch.isEmpty()) {
+                    send(batch);
+                    logStatisticsIfDue();
+                }
+            }
+        }
+    }
+}
@@ -9,10 +9,6 @@ import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
 import org.apache.log4j.Logger;
 
 import fedora.common.Constants;
@@ -23,6 +19,12 @@ import fedora.server.proxy.AbstractInvocationHandler;
 /**
  * A {@link java.lang.reflect.InvocationHandler InvocationHandler} responsible
  * for sending notifications via {@link Messaging Messaging}.
+ * <p>
+ * Notifications are sent by a {@link NotificationDispatcher}, on a fixed
+ * number of threads, in order for each object. When messaging is provided by
+ * the {@link MessagingModule}, its <code>notificationThreads</code>,
+ * <code>notificationQueueSize</code> and <code>notificationBatchSize</code>
+ * parameters configure the dispatcher.
  *
  * @author Edwin Shin
  * @version $Id$
@@ -34,10 +36,15 @@ public class NotificationInvocationHandler
     private static Logger LOG =
             Logger.getLogger(MessagingModule.class.getName());
 
+    private static final int DEFAULT_THREADS = 4;
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
+    private static final int DEFAULT_BATCH_SIZE = 50;
+
     private Messaging messaging;
     private boolean attemptedToLoad = false;
 
-    private final ExecutorService exec = Executors.newCachedThreadPool();
+    private NotificationDispatcher dispatcher;
+    private boolean closed = false;
 
     /**
      * Note: Setting of <code>messaging</code> does not take place in this
@@ -56,6 +63,7 @@ public class NotificationInvocationHandler
         if (messaging != null) {
             this.messaging = messaging;
             attemptedToLoad = true;
+            dispatcher = createDispatcher(messaging);
         }
     }
 
@@ -74,40 +82,49 @@ public class NotificationInvocationHandler
 
         if (attemptedToLoad == false) {
             Server server = Server.getInstance(new File(Constants.FEDORA_HOME), false);
-            messaging = (MessagingModule)server.getModule("fedora.server.messaging.Messaging");
-            if (messaging == null) {
+            MessagingModule module = (MessagingModule)server.getModule("fedora.server.messaging.Messaging");
+            if (module == null) {
                 LOG.warn("Unable to load MessagingModule.");
+            } else if (module.isEnabled()) {
+                messaging = module;
             }
             attemptedToLoad = true;
         }
 
-        if (messaging != null && !exec.isShutdown()) {
-            exec.submit(new Notifier(method, args, returnValue));
+        NotificationDispatcher d = getDispatcher();
+        if (d != null) {
+            d.dispatch(new FedoraMethod(method, args, returnValue));
         }
 
         return returnValue;
     }
 
     @Override
-    public void close() {
-        exec.shutdown();
+    public synchronized void close() {
+        closed = true;
+        if (dispatcher != null) {
+            dispatcher.close();
+        }
     }
 
-    class Notifier implements Callable<Void> {
-        private final Method method;
-        private final Object[] args;
-        private final Object returnValue;
-
-        public Notifier(Method method, Object[] args, Object returnValue) {
-            this.method = method;
-            this.args = args;
-            this.returnValue = returnValue;
+    private synchronized NotificationDispatcher getDispatcher() {
+        if (dispatcher == null && messaging != null && !closed) {
+            dispatcher = createDispatcher(messaging);
         }
+        return dispatcher;
+    }
 
-        public Void call() throws Exception {
-            FedoraMethod fm = new FedoraMethod(method, args, returnValue);
-            messaging.send(fm);
-            return null;
+    private static NotificationDispatcher createDispatcher(Messaging messaging) {
+        if (messaging instanceof MessagingModule) {
+            MessagingModule module = (MessagingModule) messaging;
+            return new NotificationDispatcher(messaging,
+                                              module.getNotificationThreads(),
+                                              module.getNotificationQueueSize(),
+                                              module.getNotificationBatchSize());
         }
+        return new NotificationDispatcher(messaging,
+                                          DEFAULT_THREADS,
+                                          DEFAULT_QUEUE_SIZE,
+                                          DEFAULT_BATCH_SIZE);
     }
 }
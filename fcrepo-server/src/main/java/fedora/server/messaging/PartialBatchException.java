@@ -0,0 +1,44 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.messaging;
+
+import java.util.Collections;
+import java.util.List;
+
+import fedora.server.errors.MessagingException;
+
+/**
+ * Thrown by {@link Messaging#send(List)} when some of the messages could not
+ * be sent. The others may have been, so callers must not send the batch
+ * again; that would duplicate them.
+ */
+public class PartialBatchException
+        extends MessagingException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<FedoraMethod> unsent;
+
+    /**
+     * @param message An informative message explaining what happened.
+     * @param unsent The methods that could not be sent to at least one of
+     *        their destinations.
+     * @param cause The first failure, if known.
+     */
+    public PartialBatchException(String message,
+                                 List<FedoraMethod> unsent,
+                                 Throwable cause) {
+        super(message, cause);
+        this.unsent = Collections.unmodifiableList(unsent);
+    }
+
+    /**
+     * @return the methods that could not be sent to at least one of their
+     *         destinations, in the order they were given.
+     */
+    public List<FedoraMethod> getUnsent() {
+        return unsent;
+    }
+}
@@ -11,9 +11,11 @@ import java.io.InputStreamReader;
 
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import org.trippi.TriplestoreConnector;
+import org.trippi.TrippiException;
 
 import fedora.server.config.DatastoreConfiguration;
 import fedora.server.config.ModuleConfiguration;
@@ -22,13 +24,14 @@ import fedora.server.config.ServerConfiguration;
 import fedora.server.errors.ResourceIndexException;
 import fedora.server.storage.SimpleDOReader;
 import fedora.server.storage.types.DigitalObject;
-import fedora.server.utilities.rebuild.Rebuilder;
+import fedora.server.utilities.rebuild.BatchRebuilder;
+import fedora.server.utilities.rebuild.Rebuild;
 
 /**
  * A Rebuilder for the resource index.
  */
 public class ResourceIndexRebuilder
-        implements Rebuilder {
+        implements BatchRebuilder {
 
     private ServerConfiguration m_serverConfig;
 
@@ -111,7 +114,11 @@ public class ResourceIndexRebuilder
             }
         }
 
-        if (tsPath == null) {
+        if ("true".equals(options.get(Rebuild.RESUME_OPTION))) {
+            // keep what the interrupted rebuild added; re-adding the
+            // triples of an object that was not checkpointed is harmless
+            System.out.println("Keeping the existing triplestore...");
+        } else if (tsPath == null) {
             BufferedReader reader =
                     new BufferedReader(new InputStreamReader(System.in));
             System.out.println();
@@ -159,6 +166,29 @@ public class ResourceIndexRebuilder
         m_ri.addObject(new SimpleDOReader(null, null, null, null, null, obj));
     }
 
+    /**
+     * Add the data of interest for the given objects. Their triples are
+     * buffered, and written when the buffer fills or is flushed.
+     *
+     * @throws ResourceIndexException
+     */
+    public void addObjects(List<DigitalObject> objects)
+            throws ResourceIndexException {
+        for (DigitalObject obj : objects) {
+            addObject(obj);
+        }
+    }
+
+    /**
+     * Write the buffered triples to the triplestore.
+     *
+     * @throws IOException
+     * @throws TrippiException
+     */
+    public void flush() throws IOException, TrippiException {
+        m_ri.flushBuffer();
+    }
+
     /**
      * Free up any system resources associated with rebuilding.
      */
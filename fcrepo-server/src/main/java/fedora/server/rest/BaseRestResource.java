@@ -5,20 +5,23 @@
 package fedora.server.rest;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringReader;
 import java.io.Writer;
 
 import java.net.URI;
 
 import java.util.Date;
+import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
 
-import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.TransformerFactoryConfigurationError;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
@@ -27,12 +30,11 @@ import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
 
-import net.sf.saxon.FeatureKeys;
-
 import org.apache.commons.io.IOUtils;
 
 import org.apache.log4j.Logger;
@@ -50,6 +52,10 @@ import fedora.server.management.Management;
 import fedora.server.storage.types.MIMETypedStream;
 import fedora.server.storage.types.Property;
 import fedora.server.utilities.DateUtility;
+import fedora.server.utilities.HttpRangeRequest;
+import fedora.server.utilities.SendfileUtility;
+
+import fedora.utilities.XmlTransformUtility;
 
 /**
  * A barebone RESTFUL resource implementation.
@@ -112,12 +118,7 @@ public class BaseRestResource {
            TransformerConfigurationException,
            TransformerException {
         File xslFile = new File(fedoraServer.getHomeDir(), xslt);
-        TransformerFactory factory = TransformerFactory.newInstance();
-        if (factory.getClass().getName().equals("net.sf.saxon.TransformerFactoryImpl")) {
-            factory.setAttribute(FeatureKeys.VERSION_WARNING, Boolean.FALSE);
-        }
-        Templates template = factory.newTemplates(new StreamSource(xslFile));
-        Transformer transformer = template.newTransformer();
+        Transformer transformer = XmlTransformUtility.getTransformer(xslFile);
         String appContext = getContext().getEnvironmentValue(Constants.FEDORA_APP_CONTEXT_NAME);
         transformer.setParameter("fedora", appContext);
         transformer.transform(new StreamSource(new StringReader(xml)), new StreamResult(out));
@@ -128,7 +129,21 @@ public class BaseRestResource {
             URI location = URI.create(IOUtils.toString(result.getStream()));
             return Response.temporaryRedirect(location).build();
         } else {
-            ResponseBuilder builder = Response.ok();
+            final InputStream content = result.getStream();
+            long length = -1;
+            if (content instanceof FileInputStream) {
+                length = ((FileInputStream) content).getChannel().size();
+            }
+            final HttpRangeRequest rangeRequest =
+                    new HttpRangeRequest(length,
+                                         result.getETag(),
+                                         result.getLastModified(),
+                                         getRequestHeader("If-None-Match"),
+                                         getRequestHeader("If-Modified-Since"),
+                                         getRequestHeader("Range"),
+                                         getRequestHeader("If-Range"));
+            ResponseBuilder builder =
+                    Response.status(rangeRequest.getStatus());
 
             if (result.header != null) {
                 for (Property header : result.header) {
@@ -140,12 +155,40 @@ public class BaseRestResource {
                 }
             }
 
-            builder.type(result.MIMEType);
-            builder.entity(result.getStream());
+            final String mimeType = result.MIMEType;
+            builder.type(rangeRequest.getContentType(mimeType));
+            for (Map.Entry<String, String> header : rangeRequest.getHeaders()
+                    .entrySet()) {
+                builder.header(header.getKey(), header.getValue());
+            }
+            File file = SendfileUtility.getSendableFile(servletRequest, content);
+            long[] range = rangeRequest.getBodyRange();
+            if (!rangeRequest.hasBody()) {
+                content.close();
+            } else if (file != null && range != null) {
+                // the container sends the stored file itself
+                SendfileUtility.sendfile(servletRequest, file, range[0], range[1]);
+                content.close();
+            } else if (content instanceof FileInputStream) {
+                builder.entity(new StreamingOutput() {
+                    public void write(OutputStream out) throws IOException {
+                        rangeRequest.writeBody(content, out, mimeType);
+                    }
+                });
+            } else {
+                builder.entity(content);
+            }
             return builder.build();
         }
     }
 
+    private String getRequestHeader(String name) {
+        if (servletRequest == null) {
+            return null;
+        }
+        return servletRequest.getHeader(name);
+    }
+
     protected Response handleException(Exception ex) {
         if (ex instanceof ObjectNotInLowlevelStorageException ||
             ex instanceof DatastreamNotFoundException) {
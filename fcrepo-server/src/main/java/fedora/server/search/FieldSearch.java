@@ -46,6 +46,15 @@ public interface FieldSearch {
      */
     public boolean delete(String pid) throws ServerException;
 
+    /**
+     * Write any updates and deletes that have been accepted but not yet
+     * written to the search indexes.
+     * 
+     * @throws ServerException
+     *         if anything went wrong
+     */
+    public void flush() throws ServerException;
+
     /**
      * Search across specific fields and return the desired fields.
      * 
@@ -5,13 +5,18 @@
 package fedora.server.search;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 
@@ -29,14 +34,15 @@ import fedora.server.storage.DOReader;
 import fedora.server.storage.RepositoryReader;
 import fedora.server.storage.types.DatastreamXMLMetadata;
 import fedora.server.utilities.DateUtility;
-import fedora.server.utilities.MD5Utility;
+import fedora.server.utilities.SQLUtility;
 
 /**
  * A FieldSearchResults object returned as the result of a FieldSearchSQLImpl
  * search.
  * <p>
- * A FieldSearchResultSQLImpl is intended to be re-used in cases where the
- * results of a query require more than one call to the server.
+ * Each FieldSearchResultSQLImpl is one page of the results of a query. When
+ * the results require more than one call to the server, the next page is
+ * obtained with a new instance that starts after the last pid of this one.
  * </p>
  *
  * @author Chris Wilper
@@ -49,7 +55,7 @@ public class FieldSearchResultSQLImpl
             Logger.getLogger(FieldSearchResultSQLImpl.class.getName());
 
     /* fields supporting public accessors */
-    private ArrayList m_objectFields;
+    private List<ObjectFields> m_objectFields;
 
     private String m_token;
 
@@ -59,42 +65,37 @@ public class FieldSearchResultSQLImpl
 
     private Date m_expirationDate;
 
-    private String m_nextPID;
-
     /* invariants */
-    private final Connection m_conn;
-
     private final ConnectionPool m_cPool;
 
     private final RepositoryReader m_repoReader;
 
     private final String[] m_resultFields;
 
-    private final int m_maxResults;
+    /** Lowercased resultFields, for matching names of indexed values. */
+    private final Set<String> m_wantedFields;
 
-    private final int m_maxSeconds;
+    private final boolean m_useIndexedValues;
 
-    private long m_startMillis;
+    private final int m_maxResults;
 
-    /* internal state */
-    private Statement m_statement;
+    private final FieldSearchQuery m_query;
 
-    private ResultSet m_resultSet;
+    private final String m_afterPID;
 
-    private long m_nextCursor = 0;
+    private final long m_startCursor;
 
-    private boolean m_expired;
+    /* internal state */
+    private String m_lastPID;
 
     /**
-     * Construct a FieldSearchResultSQLImpl object.
-     * <p />
-     * Upon construction, a connection is obtained from the connectionPool, and
-     * the query is executed. (The connection will be returned to the pool only
-     * after the last result has been obtained from the ResultSet, the session
-     * is expired, or some non-recoverable error has occurred)
+     * Construct a FieldSearchResultSQLImpl object for one page of the results
+     * of a query.
      * <p />
-     * Once the ResultSet is obtained, one result is requested of it (and
-     * remembered for use in step()); then the call returns.
+     * Results are ordered by pid. A page holds up to maxResults results whose
+     * pids sort after afterPID, so the query for each page is independent of
+     * the others and no database resources are held between pages. Nothing
+     * is queried until step() is called.
      *
      * @param cPool
      *        the connectionPool
@@ -108,75 +109,63 @@ public class FieldSearchResultSQLImpl
      *        and b) the requested limit [the client limit]
      * @param query
      *        the end-user query
+     * @param useIndexedValues
+     *        whether exact field values are maintained in the doFieldValues
+     *        table, so results can be built without reading each object from
+     *        the repository
+     * @param afterPID
+     *        the last pid of the previous page, or null for the first page
+     * @param cursor
+     *        the number of results in the previous pages
      */
     protected FieldSearchResultSQLImpl(ConnectionPool cPool,
                                        RepositoryReader repoReader,
                                        String[] resultFields,
                                        int maxResults,
-                                       int maxSeconds,
-                                       FieldSearchQuery query)
-            throws SQLException, QueryParseException {
+                                       FieldSearchQuery query,
+                                       boolean useIndexedValues,
+                                       String afterPID,
+                                       long cursor) {
         m_cPool = cPool;
         m_repoReader = repoReader;
         m_resultFields = resultFields;
-        m_maxResults = maxResults;
-        m_maxSeconds = maxSeconds;
-        m_conn = m_cPool.getConnection();
-        try {
-            m_statement = m_conn.createStatement();
-            m_resultSet =
-                    m_statement
-                            .executeQuery(logAndGetQueryText(query,
-                                                             m_resultFields)); //2004.05.02 wdn5e
-        } catch (SQLException sqle) {
-            // if there's any kind of problem getting the resultSet,
-            // give the connection back to the pool
-            try {
-                if (m_resultSet != null) {
-                    m_resultSet.close();
-                }
-                if (m_statement != null) {
-                    m_statement.close();
-                }
-                if (m_conn != null) {
-                    m_cPool.free(m_conn);
-                }
-                throw sqle;
-            } catch (SQLException sqle2) {
-                throw sqle2;
-            } finally {
-                m_resultSet = null;
-                m_statement = null;
-            }
+        m_wantedFields = new HashSet<String>();
+        for (String field : resultFields) {
+            m_wantedFields.add(field.toLowerCase());
         }
+        m_useIndexedValues = useIndexedValues;
+        m_maxResults = maxResults;
+        m_query = query;
+        m_afterPID = afterPID;
+        m_startCursor = cursor;
     }
 
-    //2004.05.02 wdn5e -- sort on selected fields
+    /**
+     * Get the text of the query for a page of pids, in pid order. If
+     * afterPID is true, the query has a single parameter: the pid that
+     * returned pids must sort after.
+     */
     private String logAndGetQueryText(FieldSearchQuery query,
-                                      String[] resultFields) //2004.05.02 wdn5e
-            throws SQLException, QueryParseException {
-        StringBuffer queryText = new StringBuffer("SELECT");
+                                      boolean afterPID)
+            throws QueryParseException {
+        StringBuffer queryText =
+                new StringBuffer("SELECT DISTINCT doFields.pid FROM doFields");
+        String whereClause;
         if (query.getType() == FieldSearchQuery.TERMS_TYPE) {
-            queryText.append(" doFields.pid FROM doFields"
-                    + getWhereClause(query.getTerms()));
+            whereClause = getWhereClause(query.getTerms());
         } else {
-            StringBuffer resultFieldsString = new StringBuffer();
-            if (resultFields.length > 0) {
-                String delimiter = " ";
-                for (String element : resultFields) {
-                    String dbColumn = "doFields." + dcFixup(element);
-                    resultFieldsString.append(delimiter + dbColumn);
-                    delimiter = ", ";
-                }
+            whereClause = getWhereClause(query.getConditions());
+        }
+        queryText.append(whereClause);
+        if (afterPID) {
+            if (whereClause.length() == 0) {
+                queryText.append(" WHERE");
+            } else {
+                queryText.append(" AND");
             }
-            queryText.append(resultFieldsString);
-            queryText.append(" FROM doFields");
-            queryText.append(getWhereClause(query.getConditions()));
-            // disabled sorting: see bug 78
-            //            queryText.append(" ORDER BY");
-            //            queryText.append(resultFieldsString);
-
+            queryText.append(" doFields.pid > ?");
         }
+        queryText.append(" ORDER BY doFields.pid");
         String qt = queryText.toString();
         LOG.debug(qt);
         return qt;
@@ -188,7 +177,7 @@ public class FieldSearchResultSQLImpl
         }
         StringBuffer whereClause = new StringBuffer();
         if (!terms.equals("*") && !terms.equals("")) {
-            whereClause.append(" WHERE");
+            whereClause.append(" WHERE (");
             // formulate the where clause if the terms aren't * or ""
             int usedCount = 0;
             boolean needsEscape = false;
@@ -214,6 +203,7 @@ public class FieldSearchResultSQLImpl
                     usedCount++;
                 }
             }
+            whereClause.append(")");
             if (needsEscape) {
                 //    whereClause.append(" {escape '/'}");
             }
@@ -336,121 +326,198 @@ public class FieldSearchResultSQLImpl
         return whereClause.toString();
     }
 
-    protected boolean isExpired() {
-        long passedSeconds =
-                (System.currentTimeMillis() - m_startMillis) / 1000;
-        m_expired = passedSeconds > m_maxSeconds;
-        LOG.debug("has fieldSearchResultSQL expired? "+m_expired +
-                  ", passed: "+passedSeconds);
-        if (m_expired) {
-            // clean up
+    /**
+     * Query for this page of results. The connection is returned to the pool
+     * before this method returns. If getLastPID() is null after this call,
+     * there are no more results.
+     */
+    protected void step() throws UnrecognizedFieldException,
+            ObjectIntegrityException, RepositoryConfigurationException,
+            StreamIOException, ServerException {
+        String queryText = logAndGetQueryText(m_query, m_afterPID != null);
+        List<String> pids = new ArrayList<String>();
+        boolean hasMore = false;
+        Connection conn = null;
+        PreparedStatement st = null;
+        ResultSet rs = null;
+        try {
+            conn = m_cPool.getConnection();
+            st = conn.prepareStatement(queryText);
+            // one more than a page, to tell whether there are more
+            st.setMaxRows(m_maxResults + 1);
+            if (m_afterPID != null) {
+                st.setString(1, m_afterPID);
+            }
+            rs = st.executeQuery();
+            while (rs.next()) {
+                if (pids.size() == m_maxResults) {
+                    hasMore = true;
+                    break;
+                }
+                pids.add(rs.getString(1));
+            }
+        } catch (SQLException sqle) {
+            throw new StorageDeviceException("Error with sql database. "
+                    + sqle.getMessage(), sqle);
+        } finally {
             try {
-                if (m_resultSet != null) {
-                    m_resultSet.close();
+                if (rs != null) {
+                    rs.close();
                 }
-                if (m_statement != null) {
-                    m_statement.close();
+                if (st != null) {
+                    st.close();
                 }
-                if (m_conn != null) {
-                    m_cPool.free(m_conn);
+                if (conn != null) {
+                    m_cPool.free(conn);
                 }
-            } catch (SQLException sqle) {
+            } catch (SQLException sqle2) {
+                throw new StorageDeviceException("Error closing statement "
+                        + "or result set." + sqle2.getMessage());
             } finally {
-                m_resultSet = null;
-                m_statement = null;
+                rs = null;
+                st = null;
             }
         }
-        return m_expired;
+        m_objectFields = getObjectFields(pids);
+        if (hasMore) {
+            m_lastPID = pids.get(pids.size() - 1);
+        }
     }
 
     /**
-     * Update object with the next chunk of results. if getToken() is null after
-     * this call, the resultSet was exhausted.
+     * Get the pid of the last result in this page, if there are more results
+     * after it.
+     *
+     * @return the pid, or null if this is the last page.
      */
-    protected void step() throws UnrecognizedFieldException,
-            ObjectIntegrityException, RepositoryConfigurationException,
-            StreamIOException, ServerException {
-        m_objectFields = new ArrayList();
-        int resultCount = 0;
-        // Run through resultSet, adding each result to m_objectFields
-        // for up to maxResults objects, or until the result set is
-        // empty, whichever comes first.
-        // Note: If this is the first chunk of results for the entire search,
-        // m_nextPID will be null, and will require the cursor to be advanced
-        // to the first result.  For all remaining chunks, the cursor will
-        // already be in the correct position (and m_nextPID will have been set)
-        // so a call to m_resultSet.next() is not initially necessary.
+    protected String getLastPID() {
+        return m_lastPID;
+    }
+
+    /**
+     * Set the token with which the next page can be requested, and the time
+     * it is good until.
+     */
+    protected void setToken(String token, Date expirationDate) {
+        m_token = token;
+        m_expirationDate = expirationDate;
+        m_cursor = m_startCursor;
+    }
+
+    /**
+     * Get ObjectFields, with resultFields fields populated, for each of the
+     * given pids. If exact field values are indexed, they are read for the
+     * whole list in a single query; any object whose values are not in the
+     * index (for instance, because it was indexed by an older version of
+     * Fedora) is read from the repository instead.
+     *
+     * @param pids
+     *        the pids, in the order the results should be returned.
+     * @return the ObjectFields, in the same order.
+     */
+    private List<ObjectFields> getObjectFields(List<String> pids)
+            throws UnrecognizedFieldException, ObjectIntegrityException,
+            RepositoryConfigurationException, StreamIOException,
+            ServerException {
+        Map<String, ObjectFields> indexed;
+        if (m_useIndexedValues && pids.size() > 0) {
+            indexed = getIndexedObjectFields(pids);
+        } else {
+            indexed = Collections.emptyMap();
+        }
+        List<ObjectFields> fieldsList =
+                new ArrayList<ObjectFields>(pids.size());
+        for (String pid : pids) {
+            ObjectFields f = indexed.get(pid);
+            if (f == null) {
+                f = getObjectFields(pid);
+            }
+            fieldsList.add(f);
+        }
+        return fieldsList;
+    }
+
+    /**
+     * Get ObjectFields for those of the given pids whose exact field values
+     * are in the doFieldValues table, using one query.
+     *
+     * @return a map of pid to ObjectFields.
+     */
+    private Map<String, ObjectFields> getIndexedObjectFields(List<String> pids)
+            throws UnrecognizedFieldException, StorageDeviceException {
+        StringBuffer sql = new StringBuffer();
+        sql.append("SELECT doFields.pid, doFields.cDate, doFields.mDate, "
+                + "doFields.dcmDate, doFieldValues.fieldName, "
+                + "doFieldValues.fieldValue FROM doFields INNER JOIN "
+                + "doFieldValues ON doFields.pid = doFieldValues.pid "
+                + "WHERE doFields.pid IN (");
+        for (int i = 0; i < pids.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append("?");
+        }
+        sql.append(") ORDER BY doFieldValues.valueIndex");
+
+        Map<String, ObjectFields> fieldsMap =
+                new HashMap<String, ObjectFields>();
+        Connection conn = null;
+        PreparedStatement st = null;
+        ResultSet rs = null;
         try {
-            while (resultCount < m_maxResults
-                    && (m_nextPID != null || m_resultSet.next())) {
-                resultCount++;
-                // add the current object's info to m_objectFields
-                String pid;
-                if (m_nextPID == null) {
-                    pid = m_resultSet.getString("pid");
-                } else {
-                    pid = m_nextPID;
-                    m_nextPID = null;
-                }
-                m_objectFields.add(getObjectFields(pid));
+            conn = m_cPool.getConnection();
+            st = conn.prepareStatement(sql.toString());
+            for (int i = 0; i < pids.size(); i++) {
+                st.setString(i + 1, pids.get(i));
             }
-            // done with this block. now, are there more results?
-            if (resultCount == m_maxResults && m_resultSet.next()) {
-                // yes, and we've now advanced the cursor so we must remember
-                // the pid so the next chunk can use it
-                m_nextPID = m_resultSet.getString("pid");
-                // generate a token, make sure the cursor is set,
-                // and make sure the expirationDate is set
-                long now = System.currentTimeMillis();
-                m_token = MD5Utility.getBase16Hash(hashCode() + "" + now);
-                m_cursor = m_nextCursor;
-                // keep m_nextCursor updated for next block
-                m_nextCursor += resultCount;
-                m_startMillis = now;
-                Date dt = new Date();
-                dt.setTime(m_startMillis + 1000 * m_maxSeconds);
-                m_expirationDate = dt;
-            } else {
-                // no, so make sure the token is null and clean up
-                m_token = null;
-                try {
-                    if (m_resultSet != null) {
-                        m_resultSet.close();
+            rs = st.executeQuery();
+            while (rs.next()) {
+                String pid = rs.getString(1);
+                ObjectFields f = fieldsMap.get(pid);
+                if (f == null) {
+                    f = new ObjectFields();
+                    if (m_wantedFields.contains("pid")) {
+                        f.setPid(pid);
                     }
-                    if (m_statement != null) {
-                        m_statement.close();
+                    if (m_wantedFields.contains("cdate")) {
+                        f.setCDate(new Date(rs.getLong(2)));
                     }
-                    if (m_conn != null) {
-                        m_cPool.free(m_conn);
+                    if (m_wantedFields.contains("mdate")) {
+                        f.setMDate(new Date(rs.getLong(3)));
                     }
-                } catch (SQLException sqle2) {
-                    throw new StorageDeviceException("Error closing statement "
-                            + "or result set." + sqle2.getMessage());
-                } finally {
-                    m_resultSet = null;
-                    m_statement = null;
+                    // dcmDate is zero if the object has no DC datastream
+                    long dcmDate = rs.getLong(4);
+                    if (m_wantedFields.contains("dcmdate") && dcmDate != 0) {
+                        f.setDCMDate(new Date(dcmDate));
+                    }
+                    fieldsMap.put(pid, f);
+                }
+                String name = rs.getString(5);
+                if (m_wantedFields.contains(name.toLowerCase())) {
+                    f.addFieldValue(name, SQLUtility.getLongString(rs, 6));
                 }
             }
+            return fieldsMap;
         } catch (SQLException sqle) {
+            throw new StorageDeviceException("Error getting indexed field "
+                    + "values: " + sqle.getMessage(), sqle);
+        } finally {
             try {
-                if (m_resultSet != null) {
-                    m_resultSet.close();
+                if (rs != null) {
+                    rs.close();
                 }
-                if (m_statement != null) {
-                    m_statement.close();
+                if (st != null) {
+                    st.close();
                 }
-                if (m_conn != null) {
-                    m_cPool.free(m_conn);
+                if (conn != null) {
+                    m_cPool.free(conn);
                 }
-                throw new StorageDeviceException("Error with sql database. "
-                        + sqle.getMessage());
             } catch (SQLException sqle2) {
                 throw new StorageDeviceException("Error closing statement "
-                        + "or result set." + sqle.getMessage()
-                        + sqle2.getMessage());
+                        + "or result set." + sqle2.getMessage());
             } finally {
-                m_resultSet = null;
-                m_statement = null;
+                rs = null;
+                st = null;
             }
         }
     }
@@ -5,19 +5,18 @@
 package fedora.server.search;
 
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 
-import java.sql.Connection;
-import java.sql.SQLException;
-import java.sql.Statement;
-
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 
+import fedora.common.rdf.RDFName;
+
 import fedora.server.errors.ObjectIntegrityException;
 import fedora.server.errors.RepositoryConfigurationException;
 import fedora.server.errors.ServerException;
@@ -32,7 +31,8 @@ import fedora.server.storage.types.DatastreamXMLMetadata;
 import fedora.server.utilities.DCField;
 import fedora.server.utilities.DCFields;
 import fedora.server.utilities.DateUtility;
-import fedora.server.utilities.SQLUtility;
+import fedora.server.utilities.MD5Utility;
+import fedora.server.utilities.StringUtility;
 
 /**
  * A FieldSearch implementation that uses a relational database as a backend.
@@ -57,6 +57,8 @@ public class FieldSearchSQLImpl
 
     private final int m_maxSecondsPerSession;
 
+    private final FieldSearchSQLWriter m_writer;
+
     public static String[] DB_COLUMN_NAMES =
             new String[] {"pid", "label", "state", "ownerId", "cDate", "mDate",
                     "dcmDate", "dcTitle", "dcCreator", "dcSubject",
@@ -64,21 +66,18 @@ public class FieldSearchSQLImpl
                     "dcType", "dcFormat", "dcIdentifier", "dcSource",
                     "dcLanguage", "dcRelation", "dcCoverage", "dcRights"};
 
-    private static boolean[] s_dbColumnNumeric =
-            new boolean[] {false, false, false, false, true, true, true, false,
-                    false, false, false, false, false, false, false, false,
-                    false, false, false, false, false, false};
-
     public static String[] DB_COLUMN_NAMES_NODC =
             new String[] {"pid", "label", "state", "ownerId", "cDate", "mDate",
                     "dcmDate"};
 
-    private static boolean[] s_dbColumnNumericNoDC =
-            new boolean[] {false, false, false, false, true, true, true};
-
-    // a hash of token-keyed FieldSearchResultSQLImpls
-    private final HashMap<String, FieldSearchResultSQLImpl> m_currentResults =
-            new HashMap<String, FieldSearchResultSQLImpl>();
+    /**
+     * The queries of current list sessions, keyed by query key. Session tokens
+     * carry the key along with the position in the results, so identical
+     * queries share an entry and no database resources are held between
+     * pages.
+     */
+    private final Map<String, SessionQuery> m_sessionQueries =
+            new ConcurrentHashMap<String, SessionQuery>();
 
     /**
      * Construct a FieldSearchSQLImpl that indexes DC fields.
@@ -126,184 +125,189 @@ public class FieldSearchSQLImpl
                               int maxResults,
                               int maxSecondsPerSession,
                               boolean indexDCFields) {
+        this(cPool,
+             repoReader,
+             maxResults,
+             maxSecondsPerSession,
+             indexDCFields,
+             1,
+             0);
+    }
+
+    /**
+     * Construct a FieldSearchSQLImpl that may queue its updates and write
+     * them in batches.
+     *
+     * @param cPool
+     *        the ConnectionPool with connections to the db containing the
+     *        fields
+     * @param repoReader
+     *        the RepositoryReader to use when getting the original values of
+     *        the fields
+     * @param maxResults
+     *        the maximum number of results to return at a time, regardless of
+     *        what the user might request
+     * @param maxSecondsPerSession
+     *        maximum number of seconds per session.
+     * @param indexDCFields
+     *        whether DC field values should be examined and updated in the
+     *        database.
+     * @param writeBatchSize
+     *        the number of queued updates that causes them to be written
+     *        right away.
+     * @param writeBehindMillis
+     *        the maximum number of milliseconds an update may stay queued, or
+     *        0 to write each update before returning from update or delete.
+     * @see FieldSearchSQLWriter
+     */
+    public FieldSearchSQLImpl(ConnectionPool cPool,
+                              RepositoryReader repoReader,
+                              int maxResults,
+                              int maxSecondsPerSession,
+                              boolean indexDCFields,
+                              int writeBatchSize,
+                              long writeBehindMillis) {
         LOG.debug("Entering constructor");
         m_cPool = cPool;
         m_repoReader = repoReader;
         m_maxResults = maxResults;
         m_maxSecondsPerSession = maxSecondsPerSession;
         m_indexDCFields = indexDCFields;
+        m_writer =
+                new FieldSearchSQLWriter(cPool,
+                                         writeBatchSize,
+                                         writeBehindMillis);
         LOG.debug("Exiting constructor");
     }
 
     public void update(DOReader reader) throws ServerException {
         LOG.debug("Entering update(DOReader)");
         String pid = reader.GetObjectPID();
-        Connection conn = null;
-        Statement st = null;
-        try {
-            conn = m_cPool.getConnection();
-            String[] dbRowValues;
-            if (m_indexDCFields) {
-                dbRowValues = new String[DB_COLUMN_NAMES.length];
-            } else {
-                dbRowValues = new String[DB_COLUMN_NAMES_NODC.length];
-            }
-            dbRowValues[0] = reader.GetObjectPID();
-            String v;
-            v = reader.GetObjectLabel();
-            if (v != null) {
-                v = v.toLowerCase();
-            }
-            dbRowValues[1] = v;
+        FieldSearchSQLWriter.ObjectRows rows =
+                new FieldSearchSQLWriter.ObjectRows(pid);
+        DCFields dc = null;
+        String[] dbRowValues = new String[DB_COLUMN_NAMES.length];
+        dbRowValues[0] = reader.GetObjectPID();
+        String v;
+        v = reader.GetObjectLabel();
+        if (v != null) {
+            v = v.toLowerCase();
+        }
+        dbRowValues[1] = v;
 
-            dbRowValues[2] = reader.GetObjectState().toLowerCase();
-            v = reader.getOwnerId();
-            if (v != null) {
-                v = v.toLowerCase();
-            }
-            dbRowValues[3] = v;
-            Date date = reader.getCreateDate();
-            if (date == null) { // should never happen, but if it does, don't die
-                date = new Date();
-            }
-            dbRowValues[4] = "" + date.getTime();
-            date = reader.getLastModDate();
-            if (date == null) { // should never happen, but if it does, don't die
-                date = new Date();
-            }
-            dbRowValues[5] = "" + date.getTime();
+        dbRowValues[2] = reader.GetObjectState().toLowerCase();
+        v = reader.getOwnerId();
+        if (v != null) {
+            v = v.toLowerCase();
+        }
+        dbRowValues[3] = v;
+        Date date = reader.getCreateDate();
+        if (date == null) { // should never happen, but if it does, don't die
+            date = new Date();
+        }
+        dbRowValues[4] = "" + date.getTime();
+        date = reader.getLastModDate();
+        if (date == null) { // should never happen, but if it does, don't die
+            date = new Date();
+        }
+        dbRowValues[5] = "" + date.getTime();
 
-            // do dc stuff if needed
-            DatastreamXMLMetadata dcmd = null;
-            try {
-                dcmd = (DatastreamXMLMetadata) reader.GetDatastream("DC", null);
-            } catch (ClassCastException cce) {
-                throw new ObjectIntegrityException("Object "
-                        + reader.GetObjectPID()
-                        + " has a DC datastream, but it's not inline XML.");
-            }
-            if (dcmd == null) {
-                dbRowValues[6] = "0";
-            } else {
-                dbRowValues[6] = "" + dcmd.DSCreateDT.getTime();
-            }
-            if (dcmd != null && m_indexDCFields) {
-                InputStream in = dcmd.getContentStream();
-                DCFields dc = new DCFields(in);
-
-                dbRowValues[7] = getDbValue(dc.titles());
-                dbRowValues[8] = getDbValue(dc.creators());
-                dbRowValues[9] = getDbValue(dc.subjects());
-                dbRowValues[10] = getDbValue(dc.descriptions());
-                dbRowValues[11] = getDbValue(dc.publishers());
-                dbRowValues[12] = getDbValue(dc.contributors());
-                dbRowValues[13] = getDbValue(dc.dates());
-
-                // delete any dc.dates that survive from earlier versions
-                st = conn.createStatement();
-                st.executeUpdate("DELETE FROM dcDates WHERE pid='" + pid
-                        + "'");
-
-                // get any dc.dates strings that are formed such that they
-                // can be treated as a timestamp
-                List<Date> wellFormedDates = null;
-                for (int i = 0; i < dc.dates().size(); i++) {
-                    if (i == 0) {
-                        wellFormedDates = new ArrayList<Date>();
-                    }
-                    Date p = DateUtility.parseDateAsUTC(dc.dates().get(i).getValue());
-                    if (p != null) {
-                        wellFormedDates.add(p);
-                    }
-                }
-                if (wellFormedDates != null && wellFormedDates.size() > 0) {
-                    // found at least one valid date, so add them.
-                    for (int i = 0; i < wellFormedDates.size(); i++) {
-                        Date dt = wellFormedDates.get(i);
-                        st
-                                .executeUpdate("INSERT INTO dcDates (pid, dcDate) "
-                                        + "values ('"
-                                        + pid
-                                        + "', "
-                                        + dt.getTime() + ")");
-                    }
+        // do dc stuff if needed
+        DatastreamXMLMetadata dcmd = null;
+        try {
+            dcmd = (DatastreamXMLMetadata) reader.GetDatastream("DC", null);
+        } catch (ClassCastException cce) {
+            throw new ObjectIntegrityException("Object "
+                    + reader.GetObjectPID()
+                    + " has a DC datastream, but it's not inline XML.");
+        }
+        if (dcmd == null) {
+            dbRowValues[6] = "0";
+        } else {
+            dbRowValues[6] = "" + dcmd.DSCreateDT.getTime();
+        }
+        if (dcmd != null && m_indexDCFields) {
+            InputStream in = dcmd.getContentStream();
+            dc = new DCFields(in);
+
+            dbRowValues[7] = getDbValue(dc.titles());
+            dbRowValues[8] = getDbValue(dc.creators());
+            dbRowValues[9] = getDbValue(dc.subjects());
+            dbRowValues[10] = getDbValue(dc.descriptions());
+            dbRowValues[11] = getDbValue(dc.publishers());
+            dbRowValues[12] = getDbValue(dc.contributors());
+            dbRowValues[13] = getDbValue(dc.dates());
+
+            // get any dc.dates strings that are formed such that they
+            // can be treated as a timestamp
+            for (int i = 0; i < dc.dates().size(); i++) {
+                Date p = DateUtility.parseDateAsUTC(dc.dates().get(i).getValue());
+                if (p != null) {
+                    rows.addDCDate(p.getTime());
                 }
-                dbRowValues[14] = getDbValue(dc.types());
-                dbRowValues[15] = getDbValue(dc.formats());
-                dbRowValues[16] = getDbValue(dc.identifiers());
-                dbRowValues[17] = getDbValue(dc.sources());
-                dbRowValues[18] = getDbValue(dc.languages());
-                dbRowValues[19] = getDbValue(dc.relations());
-                dbRowValues[20] = getDbValue(dc.coverages());
-                dbRowValues[21] = getDbValue(dc.rights());
-                LOG.debug("Formulating SQL and inserting/updating WITH DC...");
-                SQLUtility.replaceInto(conn,
-                                       "doFields",
-                                       DB_COLUMN_NAMES,
-                                       dbRowValues,
-                                       "pid",
-                                       s_dbColumnNumeric);
-            } else {
-                LOG.debug("Formulating SQL and inserting/updating WITHOUT DC...");
-                SQLUtility.replaceInto(conn,
-                                       "doFields",
-                                       DB_COLUMN_NAMES_NODC,
-                                       dbRowValues,
-                                       "pid",
-                                       s_dbColumnNumericNoDC);
             }
-        } catch (SQLException sqle) {
-            throw new StorageDeviceException("Error attempting FieldSearch "
-                    + "update of " + pid, sqle);
-        } finally {
-            try {
-                if (st != null) {
-                    st.close();
-                }
-                if (conn != null) {
-                    m_cPool.free(conn);
+            dbRowValues[14] = getDbValue(dc.types());
+            dbRowValues[15] = getDbValue(dc.formats());
+            dbRowValues[16] = getDbValue(dc.identifiers());
+            dbRowValues[17] = getDbValue(dc.sources());
+            dbRowValues[18] = getDbValue(dc.languages());
+            dbRowValues[19] = getDbValue(dc.relations());
+            dbRowValues[20] = getDbValue(dc.coverages());
+            dbRowValues[21] = getDbValue(dc.rights());
+        }
+        // without dc indexing, the dc columns are left null
+        rows.setFieldValues(dbRowValues);
+        if (m_indexDCFields) {
+            addExactValues(rows, reader, dc);
+        }
+        m_writer.write(rows);
+        LOG.debug("Exiting update(DOReader)");
+    }
+
+    /**
+     * Add the exact (as opposed to normalized) values of the object's
+     * string-valued fields, which go in the doFieldValues table so that
+     * search results can be built without reading the object from the
+     * repository. A row for the state is always added; its presence tells
+     * readers that the object's values are in the table.
+     */
+    private static void addExactValues(FieldSearchSQLWriter.ObjectRows rows,
+                                       DOReader reader,
+                                       DCFields dc) throws ServerException {
+        rows.addExactValue("state", 0, reader.GetObjectState());
+        rows.addExactValue("label", 0, reader.GetObjectLabel());
+        rows.addExactValue("ownerId", 0, reader.getOwnerId());
+        if (dc != null) {
+            for (Map.Entry<RDFName, List<DCField>> entry : dc.getMap()
+                    .entrySet()) {
+                String name = entry.getKey().localName;
+                List<DCField> values = entry.getValue();
+                for (int i = 0; i < values.size(); i++) {
+                    rows.addExactValue(name, i, values.get(i).getValue());
                 }
-            } catch (SQLException sqle2) {
-                throw new StorageDeviceException("Error closing statement "
-                        + "while attempting update of object"
-                        + sqle2.getMessage());
-            } finally {
-                st = null;
-                LOG.debug("Exiting update(DOReader)");
             }
         }
     }
 
     public boolean delete(String pid) throws ServerException {
         LOG.debug("Entering delete(String)");
-        Connection conn = null;
-        Statement st = null;
-        try {
-            conn = m_cPool.getConnection();
-            st = conn.createStatement();
-            st.executeUpdate("DELETE FROM doFields WHERE pid='" + pid + "'");
-            st.executeUpdate("DELETE FROM dcDates WHERE pid='" + pid + "'");
-            return true;
-        } catch (SQLException sqle) {
-            throw new StorageDeviceException("Error attempting delete of "
-                    + "object with pid '" + pid + "': " + sqle.getMessage());
-        } finally {
-            try {
-                if (st != null) {
-                    st.close();
-                }
-                if (conn != null) {
-                    m_cPool.free(conn);
-                }
-            } catch (SQLException sqle2) {
-                throw new StorageDeviceException("Error closing statement "
-                        + "while attempting update of object"
-                        + sqle2.getMessage());
-            } finally {
-                st = null;
-                LOG.debug("Exiting delete(String)");
-            }
-        }
+        m_writer.write(new FieldSearchSQLWriter.ObjectRows(pid));
+        LOG.debug("Exiting delete(String)");
+        return true;
+    }
+
+    public void flush() throws ServerException {
+        m_writer.flush();
+    }
+
+    /**
+     * Stop writing behind, after writing any queued changes.
+     *
+     * @throws ServerException
+     *         if the queued changes could not be written.
+     */
+    public void close() throws ServerException {
+        m_writer.close();
     }
 
     public FieldSearchResult findObjects(String[] resultFields,
@@ -312,67 +316,111 @@ public class FieldSearchSQLImpl
             throws UnrecognizedFieldException, ObjectIntegrityException,
             RepositoryConfigurationException, StreamIOException,
             ServerException, StorageDeviceException {
-        closeAndForgetOldResults();
+        // make sure queued updates are visible to the query
+        m_writer.flush();
+        forgetExpiredQueries();
         int actualMax = maxResults;
         if (m_maxResults < maxResults) {
             actualMax = m_maxResults;
         }
-        try {
-            return stepAndRemember(new FieldSearchResultSQLImpl(m_cPool,
-                                                                m_repoReader,
-                                                                resultFields,
-                                                                actualMax,
-                                                                m_maxSecondsPerSession,
-                                                                query));
-        } catch (SQLException sqle) {
-            throw new StorageDeviceException("Error querying sql db: "
-                    + sqle.getMessage(), sqle);
-        }
+        SessionQuery sessionQuery =
+                new SessionQuery(resultFields, actualMax, query);
+        return stepAndRemember(sessionQuery, null, 0);
     }
 
     public FieldSearchResult resumeFindObjects(String sessionToken)
             throws UnrecognizedFieldException, ObjectIntegrityException,
             RepositoryConfigurationException, StreamIOException,
             ServerException, UnknownSessionTokenException {
-        closeAndForgetOldResults();
-        FieldSearchResultSQLImpl result =
-                m_currentResults
-                .remove(sessionToken);
-        if (result == null) {
+        m_writer.flush();
+        forgetExpiredQueries();
+        // token is queryKey-cursor-expirationMillis-hex(afterPID)
+        String[] parts = sessionToken.split("-");
+        SessionQuery sessionQuery = null;
+        long cursor = 0;
+        String afterPID = null;
+        if (parts.length == 4) {
+            try {
+                cursor = Long.parseLong(parts[1]);
+                long expiration = Long.parseLong(parts[2]);
+                afterPID =
+                        new String(StringUtility
+                                .hexStringtoByteArray(parts[3]), "UTF-8");
+                if (expiration >= System.currentTimeMillis()) {
+                    sessionQuery = m_sessionQueries.get(parts[0]);
+                }
+            } catch (NumberFormatException e) {
+                LOG.debug("Malformed session token: " + sessionToken);
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException("UTF-8 not supported", e);
+            }
+        }
+        if (sessionQuery == null) {
             throw new UnknownSessionTokenException("Session is expired "
                     + "or never existed.");
         }
-        return stepAndRemember(result);
+        return stepAndRemember(sessionQuery, afterPID, cursor);
     }
 
-    private FieldSearchResult stepAndRemember(FieldSearchResultSQLImpl result)
+    /**
+     * Get the page of results that follows afterPID and, if there are more,
+     * give it a token for the next page and remember the query.
+     */
+    private FieldSearchResult stepAndRemember(SessionQuery sessionQuery,
+                                              String afterPID,
+                                              long cursor)
             throws UnrecognizedFieldException, ObjectIntegrityException,
             RepositoryConfigurationException, StreamIOException,
-            ServerException, UnrecognizedFieldException {
+            ServerException {
+        FieldSearchResultSQLImpl result =
+                new FieldSearchResultSQLImpl(m_cPool,
+                                             m_repoReader,
+                                             sessionQuery.resultFields,
+                                             sessionQuery.maxResults,
+                                             sessionQuery.query,
+                                             m_indexDCFields,
+                                             afterPID,
+                                             cursor);
         result.step();
-        if (result.getToken() != null) {
-            m_currentResults.put(result.getToken(), result);
+        String lastPID = result.getLastPID();
+        if (lastPID != null) {
+            long expiration =
+                    System.currentTimeMillis() + 1000L
+                            * m_maxSecondsPerSession;
+            sessionQuery.expiration = expiration;
+            m_sessionQueries.put(sessionQuery.key, sessionQuery);
+            long nextCursor = cursor + result.objectFieldsList().size();
+            String token;
+            try {
+                token =
+                        sessionQuery.key
+                                + "-"
+                                + nextCursor
+                                + "-"
+                                + expiration
+                                + "-"
+                                + StringUtility.byteArraytoHexString(lastPID
+                                        .getBytes("UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException("UTF-8 not supported", e);
+            }
+            result.setToken(token, new Date(expiration));
         }
         return result;
     }
 
-    // erase and cleanup expired stuff
-    private void closeAndForgetOldResults() {
-        Iterator<FieldSearchResultSQLImpl> iter =
-                m_currentResults.values().iterator();
-        ArrayList<String> toRemove = new ArrayList<String>();
+    // forget queries whose sessions have all expired
+    private void forgetExpiredQueries() {
+        long now = System.currentTimeMillis();
+        Iterator<SessionQuery> iter = m_sessionQueries.values().iterator();
         while (iter.hasNext()) {
-            FieldSearchResultSQLImpl r = iter.next();
-            if (r.isExpired()) {
-                LOG.debug("listSession " + r.getToken()
+            SessionQuery sessionQuery = iter.next();
+            if (sessionQuery.expiration < now) {
+                LOG.debug("listSession query " + sessionQuery.key
                         + " expired; will forget it.");
-                toRemove.add(r.getToken());
+                iter.remove();
             }
         }
-        for (int i = 0; i < toRemove.size(); i++) {
-            String token = toRemove.get(i);
-            m_currentResults.remove(token);
-        }
     }
 
     /**
@@ -398,6 +446,49 @@ public class FieldSearchSQLImpl
         return out.toString();
     }
 
+    /**
+     * The definition of a query whose results are being listed in one or
+     * more sessions, identified by a key computed from its contents.
+     */
+    private static class SessionQuery {
+
+        public final String[] resultFields;
+
+        public final int maxResults;
+
+        public final FieldSearchQuery query;
+
+        public final String key;
+
+        /** When the latest session using this query expires. */
+        public volatile long expiration;
+
+        public SessionQuery(String[] resultFields,
+                            int maxResults,
+                            FieldSearchQuery query) {
+            this.resultFields = resultFields;
+            this.maxResults = maxResults;
+            this.query = query;
+            StringBuffer buf = new StringBuffer();
+            buf.append(maxResults);
+            for (String field : resultFields) {
+                buf.append(' ');
+                buf.append(field);
+            }
+            if (query.getType() == FieldSearchQuery.TERMS_TYPE) {
+                buf.append(" terms ");
+                buf.append(query.getTerms());
+            } else {
+                buf.append(" conditions");
+                for (Condition condition : query.getConditions()) {
+                    buf.append(' ');
+                    buf.append(condition.toString());
+                }
+            }
+            key = MD5Utility.getBase16Hash(buf.toString());
+        }
+    }
+
     // same as above, but for case sensitive repeating values
     private static String getDbValueCaseSensitive(List<String> dcItem) {
         if (dcItem.size() == 0) {
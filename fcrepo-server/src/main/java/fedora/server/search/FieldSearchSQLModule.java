@@ -12,6 +12,7 @@ import fedora.server.Module;
 import fedora.server.Server;
 import fedora.server.errors.ConnectionPoolNotFoundException;
 import fedora.server.errors.ModuleInitializationException;
+import fedora.server.errors.ModuleShutdownException;
 import fedora.server.errors.ServerException;
 import fedora.server.storage.ConnectionPool;
 import fedora.server.storage.ConnectionPoolManager;
@@ -93,6 +94,36 @@ public class FieldSearchSQLModule
             }
         }
 
+        //
+        // get and validate writeBatchSize and writeBehindMillis (optional)
+        //
+        int writeBatchSize = 1000;
+        if (getParameter("writeBatchSize") != null) {
+            try {
+                writeBatchSize =
+                        Integer.parseInt(getParameter("writeBatchSize"));
+                if (writeBatchSize < 1) {
+                    throw new NumberFormatException("");
+                }
+            } catch (NumberFormatException nfe) {
+                throw new ModuleInitializationException("writeBatchSize must be a positive integer.",
+                                                        getRole());
+            }
+        }
+        long writeBehindMillis = 0;
+        if (getParameter("writeBehindMillis") != null) {
+            try {
+                writeBehindMillis =
+                        Long.parseLong(getParameter("writeBehindMillis"));
+                if (writeBehindMillis < 0) {
+                    throw new NumberFormatException("");
+                }
+            } catch (NumberFormatException nfe) {
+                throw new ModuleInitializationException("writeBehindMillis must be a non-negative integer.",
+                                                        getRole());
+            }
+        }
+
         //
         // get connectionPool from ConnectionPoolManager
         //
@@ -138,7 +169,21 @@ public class FieldSearchSQLModule
                                        doManager,
                                        maxResults,
                                        maxSecondsPerSession,
-                                       indexDCFields);
+                                       indexDCFields,
+                                       writeBatchSize,
+                                       writeBehindMillis);
+    }
+
+    @Override
+    public void shutdownModule() throws ModuleShutdownException {
+        if (m_wrappedFieldSearch != null) {
+            try {
+                m_wrappedFieldSearch.close();
+            } catch (ServerException e) {
+                throw new ModuleShutdownException("Error writing queued "
+                        + "FieldSearch updates", getRole(), e);
+            }
+        }
     }
 
     @Override
@@ -155,6 +200,10 @@ public class FieldSearchSQLModule
         return m_wrappedFieldSearch.delete(pid);
     }
 
+    public void flush() throws ServerException {
+        m_wrappedFieldSearch.flush();
+    }
+
     public FieldSearchResult findObjects(String[] resultFields,
                                          int maxResults,
                                          FieldSearchQuery query)
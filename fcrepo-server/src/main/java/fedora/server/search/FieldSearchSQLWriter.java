@@ -0,0 +1,425 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.search;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.apache.log4j.Logger;
+
+import fedora.server.errors.StorageDeviceException;
+import fedora.server.storage.ConnectionPool;
+
+/**
+ * Writes the rows FieldSearchSQLImpl keeps for each object (doFields,
+ * dcDates, and doFieldValues) using prepared statements, batched across
+ * objects and committed together.
+ * <p>
+ * If writeBehindMillis is 0, each change is written before
+ * {@link #write(ObjectRows)} returns. Otherwise changes are queued by PID, so
+ * a change replaces any unwritten change to the same object, and the queue is
+ * written when batchSize objects are waiting, when writeBehindMillis have
+ * passed, or when {@link #flush()} is called. Queued changes stay queued
+ * until they have been committed, so a failed write is retried by the next
+ * flush.
+ */
+public class FieldSearchSQLWriter {
+
+    /** Logger for this class. */
+    private static final Logger LOG =
+            Logger.getLogger(FieldSearchSQLWriter.class.getName());
+
+    /** The doFields columns that hold dates, as milliseconds. */
+    private static final List<String> NUMERIC_COLUMNS =
+            Arrays.asList("cDate", "mDate", "dcmDate");
+
+    /** Whether each of FieldSearchSQLImpl.DB_COLUMN_NAMES is numeric. */
+    private static final boolean[] DB_COLUMN_NUMERIC = getNumericColumns();
+
+    private static final String[] DELETE_SQL =
+            new String[] {"DELETE FROM doFields WHERE pid = ?",
+                    "DELETE FROM dcDates WHERE pid = ?",
+                    "DELETE FROM doFieldValues WHERE pid = ?"};
+
+    private static final String INSERT_FIELDS_SQL = getInsertFieldsSQL();
+
+    private static final String INSERT_DATE_SQL =
+            "INSERT INTO dcDates (pid, dcDate) VALUES (?, ?)";
+
+    private static final String INSERT_VALUE_SQL =
+            "INSERT INTO doFieldValues (pid, fieldName, valueIndex, fieldValue) "
+                    + "VALUES (?, ?, ?, ?)";
+
+    private final ConnectionPool m_cPool;
+
+    private final int m_batchSize;
+
+    /** Unwritten changes, keyed by PID. */
+    private final Map<String, ObjectRows> m_pending =
+            new LinkedHashMap<String, ObjectRows>();
+
+    /**
+     * Held while writing queued changes, so they are written in order.
+     * Synchronous writes don't take it: each replaces the rows of one object
+     * in its own transaction.
+     */
+    private final Object m_flushLock = new Object();
+
+    /** Flushes the queue periodically; null if writing synchronously. */
+    private final Timer m_timer;
+
+    /**
+     * Construct a FieldSearchSQLWriter.
+     *
+     * @param cPool
+     *        the ConnectionPool with connections to the db containing the
+     *        fields
+     * @param batchSize
+     *        the number of queued objects that causes the queue to be written
+     *        right away.
+     * @param writeBehindMillis
+     *        the maximum number of milliseconds a change may stay queued, or 0
+     *        to write each change synchronously.
+     */
+    public FieldSearchSQLWriter(ConnectionPool cPool,
+                                int batchSize,
+                                long writeBehindMillis) {
+        m_cPool = cPool;
+        m_batchSize = batchSize;
+        if (writeBehindMillis > 0) {
+            m_timer = new Timer("FieldSearchSQLWriter", true);
+            m_timer.schedule(new FlushTask(),
+                             writeBehindMillis,
+                             writeBehindMillis);
+        } else {
+            m_timer = null;
+        }
+    }
+
+    /**
+     * Write (or queue) the given rows, replacing whatever is stored for the
+     * object.
+     *
+     * @throws StorageDeviceException
+     *         if a write was attempted and failed.
+     */
+    public void write(ObjectRows rows) throws StorageDeviceException {
+        if (m_timer == null) {
+            List<ObjectRows> batch = new ArrayList<ObjectRows>(1);
+            batch.add(rows);
+            writeRows(batch);
+            return;
+        }
+        boolean full;
+        synchronized (m_pending) {
+            m_pending.remove(rows.getPID());
+            m_pending.put(rows.getPID(), rows);
+            full = m_pending.size() >= m_batchSize;
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    /**
+     * Write all queued changes.
+     *
+     * @throws StorageDeviceException
+     *         if the changes could not be written. They stay queued, and
+     *         are written by the next flush.
+     */
+    public void flush() throws StorageDeviceException {
+        synchronized (m_flushLock) {
+            List<ObjectRows> batch;
+            synchronized (m_pending) {
+                if (m_pending.isEmpty()) {
+                    return;
+                }
+                batch = new ArrayList<ObjectRows>(m_pending.values());
+            }
+            writeRows(batch);
+            synchronized (m_pending) {
+                // unless a newer change to the object was queued meanwhile
+                for (ObjectRows rows : batch) {
+                    if (m_pending.get(rows.getPID()) == rows) {
+                        m_pending.remove(rows.getPID());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop the periodic flush and write all queued changes.
+     */
+    public void close() throws StorageDeviceException {
+        if (m_timer != null) {
+            m_timer.cancel();
+        }
+        flush();
+    }
+
+    /**
+     * Replace the rows of each object in the batch in a single transaction,
+     * with one round trip per statement.
+     */
+    private void writeRows(List<ObjectRows> batch)
+            throws StorageDeviceException {
+        LOG.debug("Writing FieldSearch rows for " + batch.size()
+                + " object(s)");
+        Connection conn = null;
+        boolean autoCommit = true;
+        PreparedStatement[] deletes = new PreparedStatement[DELETE_SQL.length];
+        PreparedStatement insertFields = null;
+        PreparedStatement insertDate = null;
+        PreparedStatement insertValue = null;
+        try {
+            conn = m_cPool.getConnection();
+            autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            for (int i = 0; i < DELETE_SQL.length; i++) {
+                deletes[i] = conn.prepareStatement(DELETE_SQL[i]);
+            }
+            insertFields = conn.prepareStatement(INSERT_FIELDS_SQL);
+            insertDate = conn.prepareStatement(INSERT_DATE_SQL);
+            insertValue = conn.prepareStatement(INSERT_VALUE_SQL);
+
+            int fieldRows = 0;
+            int dateRows = 0;
+            int valueRows = 0;
+            for (ObjectRows rows : batch) {
+                String pid = rows.getPID();
+                for (PreparedStatement delete : deletes) {
+                    delete.setString(1, pid);
+                    delete.addBatch();
+                }
+                if (rows.isDelete()) {
+                    continue;
+                }
+                String[] values = rows.getFieldValues();
+                for (int i = 0; i < DB_COLUMN_NUMERIC.length; i++) {
+                    String value = i < values.length ? values[i] : null;
+                    if (DB_COLUMN_NUMERIC[i]) {
+                        if (value == null) {
+                            insertFields.setNull(i + 1, Types.BIGINT);
+                        } else {
+                            insertFields.setLong(i + 1, Long.parseLong(value));
+                        }
+                    } else {
+                        if (value == null) {
+                            insertFields.setNull(i + 1, Types.VARCHAR);
+                        } else {
+                            insertFields.setString(i + 1, value);
+                        }
+                    }
+                }
+                insertFields.addBatch();
+                fieldRows++;
+                for (long date : rows.getDCDates()) {
+                    insertDate.setString(1, pid);
+                    insertDate.setLong(2, date);
+                    insertDate.addBatch();
+                    dateRows++;
+                }
+                for (FieldValue value : rows.getExactValues()) {
+                    insertValue.setString(1, pid);
+                    insertValue.setString(2, value.name);
+                    insertValue.setInt(3, value.index);
+                    insertValue.setString(4, value.value);
+                    insertValue.addBatch();
+                    valueRows++;
+                }
+            }
+            for (PreparedStatement delete : deletes) {
+                delete.executeBatch();
+            }
+            if (fieldRows > 0) {
+                insertFields.executeBatch();
+            }
+            if (dateRows > 0) {
+                insertDate.executeBatch();
+            }
+            if (valueRows > 0) {
+                insertValue.executeBatch();
+            }
+            conn.commit();
+        } catch (SQLException sqle) {
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException sqle2) {
+                    LOG.warn("Error rolling back FieldSearch update", sqle2);
+                }
+            }
+            throw new StorageDeviceException("Error attempting FieldSearch "
+                    + "update of " + describe(batch), sqle);
+        } finally {
+            try {
+                for (PreparedStatement delete : deletes) {
+                    if (delete != null) {
+                        delete.close();
+                    }
+                }
+                if (insertFields != null) {
+                    insertFields.close();
+                }
+                if (insertDate != null) {
+                    insertDate.close();
+                }
+                if (insertValue != null) {
+                    insertValue.close();
+                }
+                if (conn != null) {
+                    conn.setAutoCommit(autoCommit);
+                    m_cPool.free(conn);
+                }
+            } catch (SQLException sqle2) {
+                throw new StorageDeviceException("Error closing statement "
+                        + "while attempting update of object"
+                        + sqle2.getMessage());
+            } finally {
+                insertFields = null;
+                insertDate = null;
+                insertValue = null;
+            }
+        }
+    }
+
+    private static String describe(List<ObjectRows> batch) {
+        if (batch.size() == 1) {
+            return batch.get(0).getPID();
+        }
+        return batch.size() + " objects (" + batch.get(0).getPID() + "...)";
+    }
+
+    private static boolean[] getNumericColumns() {
+        boolean[] numeric =
+                new boolean[FieldSearchSQLImpl.DB_COLUMN_NAMES.length];
+        for (int i = 0; i < numeric.length; i++) {
+            numeric[i] =
+                    NUMERIC_COLUMNS
+                            .contains(FieldSearchSQLImpl.DB_COLUMN_NAMES[i]);
+        }
+        return numeric;
+    }
+
+    private static String getInsertFieldsSQL() {
+        StringBuffer columns = new StringBuffer();
+        StringBuffer params = new StringBuffer();
+        for (int i = 0; i < FieldSearchSQLImpl.DB_COLUMN_NAMES.length; i++) {
+            if (i > 0) {
+                columns.append(", ");
+                params.append(", ");
+            }
+            columns.append(FieldSearchSQLImpl.DB_COLUMN_NAMES[i]);
+            params.append('?');
+        }
+        return "INSERT INTO doFields (" + columns + ") VALUES (" + params
+                + ")";
+    }
+
+    /**
+     * Everything stored for one object, or nothing if the object is being
+     * deleted.
+     */
+    public static class ObjectRows {
+
+        private final String m_pid;
+
+        private String[] m_fieldValues;
+
+        private final List<Long> m_dcDates = new ArrayList<Long>();
+
+        private final List<FieldValue> m_exactValues =
+                new ArrayList<FieldValue>();
+
+        /**
+         * Construct an ObjectRows that deletes the object's rows, until
+         * field values are set.
+         */
+        public ObjectRows(String pid) {
+            m_pid = pid;
+        }
+
+        public String getPID() {
+            return m_pid;
+        }
+
+        public boolean isDelete() {
+            return m_fieldValues == null;
+        }
+
+        /**
+         * Set the values of the doFields row, in the order of
+         * FieldSearchSQLImpl.DB_COLUMN_NAMES. Missing or null values are
+         * stored as null.
+         */
+        public void setFieldValues(String[] values) {
+            m_fieldValues = values;
+        }
+
+        public String[] getFieldValues() {
+            return m_fieldValues;
+        }
+
+        /** Add a dcDates row. */
+        public void addDCDate(long date) {
+            m_dcDates.add(date);
+        }
+
+        public List<Long> getDCDates() {
+            return m_dcDates;
+        }
+
+        /** Add a doFieldValues row; null values are ignored. */
+        public void addExactValue(String name, int index, String value) {
+            if (value != null) {
+                m_exactValues.add(new FieldValue(name, index, value));
+            }
+        }
+
+        List<FieldValue> getExactValues() {
+            return m_exactValues;
+        }
+    }
+
+    private static class FieldValue {
+
+        public final String name;
+
+        public final int index;
+
+        public final String value;
+
+        public FieldValue(String name, int index, String value) {
+            this.name = name;
+            this.index = index;
+            this.value = value;
+        }
+    }
+
+    private class FlushTask
+            extends TimerTask {
+
+        @Override
+        public void run() {
+            try {
+                flush();
+            } catch (StorageDeviceException e) {
+                LOG.error("Error writing queued FieldSearch updates", e);
+            }
+        }
+    }
+}
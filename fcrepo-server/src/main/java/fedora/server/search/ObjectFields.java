@@ -239,6 +239,62 @@ public class ObjectFields
         }
     }
 
+    /**
+     * Adds a value of a string-valued field, such as label or title, given
+     * the field's name as used in FieldSearch queries. Values of repeating
+     * (dublin core) fields are appended in the order given.
+     *
+     * @param name
+     *        the name of the field.
+     * @param value
+     *        the exact value of the field.
+     * @throws UnrecognizedFieldException
+     *         if the name is not that of a string-valued field.
+     */
+    public void addFieldValue(String name, String value)
+            throws UnrecognizedFieldException {
+        if (name.equals("label")) {
+            setLabel(value);
+        } else if (name.equals("state")) {
+            setState(value);
+        } else if (name.equals("ownerId")) {
+            setOwnerId(value);
+        } else if (name.equals("title")) {
+            titles().add(new DCField(value));
+        } else if (name.equals("creator")) {
+            creators().add(new DCField(value));
+        } else if (name.equals("subject")) {
+            subjects().add(new DCField(value));
+        } else if (name.equals("description")) {
+            descriptions().add(new DCField(value));
+        } else if (name.equals("publisher")) {
+            publishers().add(new DCField(value));
+        } else if (name.equals("contributor")) {
+            contributors().add(new DCField(value));
+        } else if (name.equals("date")) {
+            dates().add(new DCField(value));
+        } else if (name.equals("type")) {
+            types().add(new DCField(value));
+        } else if (name.equals("format")) {
+            formats().add(new DCField(value));
+        } else if (name.equals("identifier")) {
+            identifiers().add(new DCField(value));
+        } else if (name.equals("source")) {
+            sources().add(new DCField(value));
+        } else if (name.equals("language")) {
+            languages().add(new DCField(value));
+        } else if (name.equals("relation")) {
+            relations().add(new DCField(value));
+        } else if (name.equals("coverage")) {
+            coverages().add(new DCField(value));
+        } else if (name.equals("rights")) {
+            rights().add(new DCField(value));
+        } else {
+            throw new UnrecognizedFieldException("Unrecognized field: '"
+                    + name + "'");
+        }
+    }
+
     public void setPid(String pid) {
         m_pid = pid;
     }
@@ -46,6 +46,14 @@ public interface Authorization {
 
     public void reloadPolicies(Context context) throws Exception;
 
+    /**
+     * Notes that an object has been committed or purged, so that any policy
+     * cached from its POLICY datastream is not used without being checked.
+     *
+     * @param pid the pid of the object.
+     */
+    public void invalidateObjectPolicy(String pid);
+
     public void enforceAddDatastream(Context context,
                                      String pid,
                                      String dsId,
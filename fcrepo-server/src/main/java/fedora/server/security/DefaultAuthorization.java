@@ -425,6 +425,12 @@ public class DefaultAuthorization
         xacmlPep.newPdp();
     }
 
+    public void invalidateObjectPolicy(String pid) {
+        if (xacmlPep != null) {
+            xacmlPep.invalidateObjectPolicy(pid);
+        }
+    }
+
     private final String extractNamespace(String pid) {
         String namespace = "";
         int colonPosition = pid.indexOf(':');
@@ -155,6 +155,11 @@ public class PolicyEnforcementPoint {
 
     private ContextAttributeFinderModule contextAttributeFinder;
 
+    /**
+     * the policy finder of the current pdp
+     */
+    private volatile PolicyFinderModule policyFinderModule = null;
+
     public final void newPdp() throws Exception {
         AttributeFinder attrFinder = new AttributeFinder();
         List<AttributeFinderModule> attrModules =
@@ -214,6 +219,19 @@ public class PolicyEnforcementPoint {
             this.pdp = pdp;
             //so enforce() will wait, if this pdp update is in progress
         }
+        policyFinderModule = combinedPolicyModule;
+    }
+
+    /**
+     * Tells the current pdp that an object has changed, so any policy it has
+     * cached from the object's POLICY datastream is checked before it is used
+     * again.
+     */
+    public void invalidateObjectPolicy(String pid) {
+        PolicyFinderModule module = policyFinderModule;
+        if (module != null) {
+            module.invalidateObjectPolicy(pid);
+        }
     }
 
     String combiningAlgorithm = null;
@@ -13,7 +13,9 @@ import java.net.URI;
 import java.net.URISyntaxException;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.sun.xacml.AbstractPolicy;
 import com.sun.xacml.EvaluationCtx;
@@ -47,6 +49,13 @@ import fedora.server.storage.types.Datastream;
  * <p>
  * This provides repository-wide policies and object-specific policies,
  * when available.
+ * <p>
+ * Object-specific policies are parsed from the POLICY datastream and kept,
+ * along with the fact that an object has no POLICY datastream, for the most
+ * recently used objects. When an object is committed, its entry is marked
+ * stale by {@link #invalidateObjectPolicy(String)}; it is then checked against
+ * the version of the POLICY datastream before it is used again, and parsed
+ * again only if the datastream has changed.
  */
 public class PolicyFinderModule
         extends com.sun.xacml.finder.PolicyFinderModule {
@@ -61,7 +70,13 @@ public class PolicyFinderModule
         ERROR_CODE_LIST.add(Status.STATUS_PROCESSING_ERROR);
     }
 
-    private final String m_combiningAlgorithm;
+    /** The most objects to keep the POLICY datastream (or lack of one) for. */
+    private static final int OBJECT_POLICY_CACHE_SIZE = 1000;
+
+    /** The cached entry for an object without a POLICY datastream. */
+    private static final ObjectPolicy NO_POLICY = new ObjectPolicy(null, null);
+
+    private final PolicyCombiningAlgorithm m_combiningAlgorithm;
 
     private final RepositoryReader m_repoReader;
 
@@ -73,6 +88,21 @@ public class PolicyFinderModule
 
     private final List<AbstractPolicy> m_repositoryPolicies;
 
+    /** Object policies by pid, least recently used first. */
+    private final Map<String, ObjectPolicy> m_objectPolicies =
+            new LinkedHashMap<String, ObjectPolicy>(16, 0.75f, true) {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ObjectPolicy> eldest) {
+                    return size() > OBJECT_POLICY_CACHE_SIZE;
+                }
+            };
+
+    /** Number of invalidations; guarded by m_objectPolicies. */
+    private long m_invalidations = 0;
+
     public PolicyFinderModule(String combiningAlgorithm,
                               String repositoryPolicyDirectoryPath,
                               String repositoryBackendPolicyDirectoryPath,
@@ -83,7 +113,14 @@ public class PolicyFinderModule
                               PolicyParser policyParser)
             throws GeneralException {
 
-        m_combiningAlgorithm = combiningAlgorithm;
+        try {
+            m_combiningAlgorithm =
+                    (PolicyCombiningAlgorithm) Class
+                            .forName(combiningAlgorithm).newInstance();
+        } catch (Exception e) {
+            throw new GeneralException("Error loading combining algorithm "
+                    + combiningAlgorithm, e);
+        }
         m_repoReader = repoReader;
         m_validateRepositoryPolicies = validateRepositoryPolicies;
         m_validateObjectPoliciesFromDatastream = validateObjectPoliciesFromDatastream;
@@ -132,17 +169,14 @@ public class PolicyFinderModule
             List<AbstractPolicy> policies = new ArrayList<AbstractPolicy>(m_repositoryPolicies);
             String pid = getPid(context);
             if (pid != null && !"".equals(pid)) {
-                AbstractPolicy objectPolicyFromObject = loadObjectPolicy(pid);
+                AbstractPolicy objectPolicyFromObject = getObjectPolicy(pid);
                 if (objectPolicyFromObject != null) {
                     policies.add(objectPolicyFromObject);
                 }
             }
-            PolicyCombiningAlgorithm policyCombiningAlgorithm =
-                    (PolicyCombiningAlgorithm) Class
-                            .forName(m_combiningAlgorithm).newInstance();
             PolicySet policySet =
                     new PolicySet(new URI(""),
-                                  policyCombiningAlgorithm,
+                                  m_combiningAlgorithm,
                                   null /*
                                    * no general target beyond those of
                                    * multiplexed individual policies
@@ -157,23 +191,72 @@ public class PolicyFinderModule
         return policyFinderResult;
     }
 
-    // if the object exists and has a POLICY datastream, parse and return it
-    private AbstractPolicy loadObjectPolicy(String pid) throws ServerException {
+    /**
+     * Marks any cached policy for the given object as stale, so the object's
+     * POLICY datastream will be checked before the policy is used again. This
+     * should be called whenever the object is committed or purged.
+     */
+    public void invalidateObjectPolicy(String pid) {
+        synchronized (m_objectPolicies) {
+            m_invalidations++;
+            ObjectPolicy cached = m_objectPolicies.get(pid);
+            if (cached != null && !cached.stale) {
+                m_objectPolicies.put(pid, cached.markStale());
+            }
+        }
+    }
+
+    // get the object's policy from the cache, loading it if necessary
+    private AbstractPolicy getObjectPolicy(String pid) throws ServerException {
+        ObjectPolicy cached;
+        long invalidations;
+        synchronized (m_objectPolicies) {
+            cached = m_objectPolicies.get(pid);
+            invalidations = m_invalidations;
+        }
+        if (cached != null && !cached.stale) {
+            return cached.policy;
+        }
+
+        ObjectPolicy loaded = loadObjectPolicy(pid, cached);
+
+        // don't cache what was loaded if the object may have changed meanwhile
+        synchronized (m_objectPolicies) {
+            if (m_invalidations == invalidations) {
+                m_objectPolicies.put(pid, loaded);
+            }
+        }
+        return loaded.policy;
+    }
+
+    // if the object exists and has a POLICY datastream, parse it, unless it
+    // is the version that was parsed before
+    private ObjectPolicy loadObjectPolicy(String pid, ObjectPolicy previous)
+            throws ServerException {
         try {
             DOReader reader = m_repoReader.getReader(Server.USE_DEFINITIVE_STORE,
                                                      ReadOnlyContext.EMPTY,
                                                      pid);
             Datastream ds = reader.GetDatastream("POLICY", null);
             if (ds != null) {
+                String version = ds.DSVersionID;
+                if (ds.DSCreateDT != null) {
+                    version += "@" + ds.DSCreateDT.getTime();
+                }
+                if (previous != null && version.equals(previous.version)) {
+                    return new ObjectPolicy(version, previous.policy);
+                }
                 LOG.debug("Using POLICY for " + pid);
-                return m_policyParser
-                        .copy().parse(ds.getContentStream(),
-                                      m_validateObjectPoliciesFromDatastream);
+                AbstractPolicy policy =
+                        m_policyParser.copy()
+                                .parse(ds.getContentStream(),
+                                       m_validateObjectPoliciesFromDatastream);
+                return new ObjectPolicy(version, policy);
             } else {
-                return null;
+                return NO_POLICY;
             }
         } catch (ObjectNotInLowlevelStorageException e) {
-            return null;
+            return NO_POLICY;
         }
     }
 
@@ -252,4 +335,33 @@ public class PolicyFinderModule
         return policies;
     }
 
+    /**
+     * The parsed POLICY datastream of an object, and its version. Both are
+     * null if the object has no POLICY datastream.
+     */
+    private static class ObjectPolicy {
+
+        final String version;
+
+        final AbstractPolicy policy;
+
+        final boolean stale;
+
+        ObjectPolicy(String version, AbstractPolicy policy) {
+            this(version, policy, false);
+        }
+
+        private ObjectPolicy(String version,
+                             AbstractPolicy policy,
+                             boolean stale) {
+            this.version = version;
+            this.policy = policy;
+            this.stale = stale;
+        }
+
+        ObjectPolicy markStale() {
+            return new ObjectPolicy(version, policy, true);
+        }
+    }
+
 }
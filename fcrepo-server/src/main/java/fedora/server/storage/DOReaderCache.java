@@ -1,79 +1,93 @@
 /* The contents of this file are subject to the license and copyright terms
- * detailed in the license directory at the root of the source tree (also 
+ * detailed in the license directory at the root of the source tree (also
  * available online at http://fedora-commons.org/license/).
  */
 package fedora.server.storage;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class DOReaderCache
-        extends Thread {
+import fedora.server.storage.types.Datastream;
+import fedora.server.storage.types.DatastreamXMLMetadata;
+import fedora.server.storage.types.DigitalObject;
 
-    private final int m_maxReaders;
+/**
+ * A concurrent, size- and weight-bounded cache of <code>DOReader</code>s.
+ * <p>
+ * Entries are spread across a fixed number of independently-locked segments
+ * (by pid hash), so readers of different objects rarely contend. Each segment
+ * is a segmented LRU: new entries enter a <i>probationary</i> area and are
+ * promoted to a <i>protected</i> area on their second hit, so a scan of
+ * one-off reads cannot flush the frequently-used objects out of the cache.
+ * <p>
+ * Each segment is bounded both by a number of entries and by the approximate
+ * in-memory weight (in bytes) of the deserialized objects it holds; see
+ * {@link #estimateWeight(DOReader)}. Entries that have not been accessed
+ * within the configured idle time are dropped lazily, when they are next
+ * looked up or when a put into the same segment sweeps the least recently
+ * used entries, so no background thread is needed.
+ */
+public class DOReaderCache {
 
-    private final int m_maxCachedSeconds;
+    /** Number of segments; must be a power of two. */
+    private static final int SEGMENTS = 16;
 
-    private final Map m_readers;
+    /** Percentage of each segment's capacity reserved for protected entries. */
+    private static final int PROTECTED_PERCENT = 80;
 
-    private final List m_pidList;
+    /** Fixed per-object overhead assumed by the weigher. */
+    private static final int OBJECT_OVERHEAD = 2048;
 
-    private boolean m_stopRequested;
+    /** Fixed per-datastream-version overhead assumed by the weigher. */
+    private static final int DATASTREAM_OVERHEAD = 512;
 
-    public DOReaderCache(int maxReaders, int maxCachedSeconds) {
+    private final Segment[] m_segments;
 
-        m_maxReaders = maxReaders;
-        m_maxCachedSeconds = maxCachedSeconds;
+    private final long m_maxIdleMillis;
 
-        m_readers = new HashMap();
-        m_pidList = new ArrayList();
+    private final AtomicLong m_hitCount = new AtomicLong();
 
-        m_stopRequested = false;
-        start();
-    }
+    private final AtomicLong m_missCount = new AtomicLong();
+
+    private final AtomicLong m_evictionCount = new AtomicLong();
+
+    private final AtomicLong m_expirationCount = new AtomicLong();
+
+    private final AtomicLong m_loadCount = new AtomicLong();
+
+    private final AtomicLong m_totalLoadNanos = new AtomicLong();
 
     /**
-     * Until closed, check for and remove any expired entries every second.
+     * Creates a cache with no bound on the weight of cached objects.
+     *
+     * @param maxReaders the maximum number of readers to keep.
+     * @param maxCachedSeconds the maximum time a reader is kept without being
+     *        accessed.
      */
-    @Override
-    public void run() {
-        while (!m_stopRequested) {
-            removeExpired();
-            if (!m_stopRequested) {
-                try {
-                    Thread.sleep(1000);
-                } catch (Exception e) {
-                }
-            }
-        }
+    public DOReaderCache(int maxReaders, int maxCachedSeconds) {
+        this(maxReaders, Long.MAX_VALUE, maxCachedSeconds);
     }
 
-    private void removeExpired() {
-        long cutoffTime =
-                System.currentTimeMillis() - 1000 * m_maxCachedSeconds;
-        synchronized (m_readers) {
-            if (m_pidList.size() > 0) {
-                boolean done = false;
-                List expiredList = new ArrayList();
-                Iterator pids = m_pidList.iterator();
-                while (pids.hasNext() && !done) {
-                    String pid = (String) pids.next();
-                    List l = (List) m_readers.get(pid);
-                    long cachedTime = ((Long) l.get(1)).longValue();
-                    if (cachedTime < cutoffTime) {
-                        expiredList.add(pid);
-                    } else {
-                        done = true;
-                    }
-                }
-                pids = expiredList.iterator();
-                while (pids.hasNext()) {
-                    remove((String) pids.next());
-                }
-            }
+    /**
+     * Creates a cache.
+     *
+     * @param maxReaders the maximum number of readers to keep.
+     * @param maxWeight the maximum approximate number of bytes the cached
+     *        objects may occupy.
+     * @param maxCachedSeconds the maximum time a reader is kept without being
+     *        accessed.
+     */
+    public DOReaderCache(int maxReaders, long maxWeight, int maxCachedSeconds) {
+        m_maxIdleMillis = 1000L * maxCachedSeconds;
+        m_segments = new Segment[SEGMENTS];
+        int segmentReaders = Math.max(1, (maxReaders + SEGMENTS - 1) / SEGMENTS);
+        long segmentWeight =
+                maxWeight == Long.MAX_VALUE ? Long.MAX_VALUE : Math
+                        .max(1, maxWeight / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            m_segments[i] = new Segment(segmentReaders, segmentWeight);
         }
     }
 
@@ -82,16 +96,15 @@ public class DOReaderCache
      * nothing.
      */
     public void remove(String pid) {
-        synchronized (m_readers) {
-            if (m_readers.remove(pid) != null) {
-                m_pidList.remove(pid);
-            }
+        if (pid != null) {
+            segmentFor(pid).remove(pid);
         }
     }
 
     /**
      * Add a DOReader to the cache. If it already exists in the cache, refresh
-     * the DOReader in the cache.
+     * the DOReader in the cache. Readers that are heavier than a whole
+     * segment are not cached.
      */
     public void put(DOReader reader) {
         String pid = null;
@@ -99,47 +112,308 @@ public class DOReaderCache
             pid = reader.GetObjectPID();
         } catch (Exception e) {
         }
-        Long time = new Long(System.currentTimeMillis());
-        List l = new ArrayList();
-        l.add(reader);
-        l.add(time);
-        synchronized (m_readers) {
-            m_readers.put(pid, l);
-            if (m_pidList.contains(pid)) {
-                // ensure it only appears in the list once, at the end
-                m_pidList.remove(pid);
-            }
-            m_pidList.add(pid);
-            if (m_readers.size() > m_maxReaders) {
-                Object overflowPid = m_pidList.remove(0);
-                m_readers.remove(overflowPid);
-            }
+        if (pid != null) {
+            segmentFor(pid).put(pid, reader, estimateWeight(reader));
         }
     }
 
     /**
-     * Get a DOReader from the cache. If it doesn't exist in the cache, return
-     * null. If it does exist, set its time to the current time and return it.
+     * Get a DOReader from the cache. If it doesn't exist in the cache (or has
+     * been idle for too long), return null.
      */
     public DOReader get(String pid) {
-        DOReader reader = null;
-        synchronized (m_readers) {
-            List l = (List) m_readers.get(pid);
-            if (l != null) {
-                reader = (DOReader) l.get(0);
-                l.remove(1);
-                l.add(new Long(System.currentTimeMillis()));
-                // move it to the end of the list so the list stays sorted
-                m_pidList.remove(pid);
-                m_pidList.add(pid);
-            }
+        DOReader reader = segmentFor(pid).get(pid);
+        if (reader == null) {
+            m_missCount.incrementAndGet();
+        } else {
+            m_hitCount.incrementAndGet();
         }
         return reader;
     }
 
+    /**
+     * Records the time it took to construct a reader after a cache miss.
+     */
+    public void recordLoad(long nanos) {
+        m_loadCount.incrementAndGet();
+        m_totalLoadNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
     public void close() {
-        // make sure the thread finishes
-        m_stopRequested = true;
+        for (Segment segment : m_segments) {
+            segment.clear();
+        }
+    }
+
+    public long getHitCount() {
+        return m_hitCount.get();
+    }
+
+    public long getMissCount() {
+        return m_missCount.get();
+    }
+
+    /** The number of entries dropped to make room for others. */
+    public long getEvictionCount() {
+        return m_evictionCount.get();
+    }
+
+    /** The number of entries dropped because they were idle too long. */
+    public long getExpirationCount() {
+        return m_expirationCount.get();
+    }
+
+    public long getLoadCount() {
+        return m_loadCount.get();
+    }
+
+    public long getTotalLoadTimeNanos() {
+        return m_totalLoadNanos.get();
+    }
+
+    /** The current number of cached readers. */
+    public int size() {
+        int size = 0;
+        for (Segment segment : m_segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /** The current approximate weight, in bytes, of all cached readers. */
+    public long weight() {
+        long weight = 0;
+        for (Segment segment : m_segments) {
+            weight += segment.weight();
+        }
+        return weight;
+    }
+
+    @Override
+    public String toString() {
+        long hits = getHitCount();
+        long requests = hits + getMissCount();
+        long loads = getLoadCount();
+        return "DOReaderCache[size=" + size() + ", weight=" + weight()
+                + ", hits=" + hits + ", misses=" + getMissCount()
+                + ", hitRate="
+                + (requests == 0 ? 0 : (100 * hits / requests)) + "%"
+                + ", evictions=" + getEvictionCount() + ", expirations="
+                + getExpirationCount() + ", loads=" + loads
+                + ", avgLoadMillis="
+                + (loads == 0 ? 0 : getTotalLoadTimeNanos() / loads / 1000000)
+                + "]";
+    }
+
+    /**
+     * Estimates the number of bytes the deserialized object behind the given
+     * reader occupies. Inline XML content is counted at its serialized size;
+     * other datastream versions and the object itself are counted at a fixed
+     * overhead.
+     */
+    protected static long estimateWeight(DOReader reader) {
+        long weight = OBJECT_OVERHEAD;
+        DigitalObject obj = reader.getObject();
+        if (obj != null) {
+            Iterator<String> dsIds = obj.datastreamIdIterator();
+            while (dsIds.hasNext()) {
+                for (Datastream ds : obj.datastreams(dsIds.next())) {
+                    weight += DATASTREAM_OVERHEAD;
+                    if (ds instanceof DatastreamXMLMetadata) {
+                        byte[] content = ((DatastreamXMLMetadata) ds).xmlContent;
+                        if (content != null) {
+                            weight += content.length;
+                        }
+                    }
+                }
+            }
+        }
+        return weight;
+    }
+
+    private Segment segmentFor(String pid) {
+        // spread the hash so pids differing only in high bits still split
+        int h = pid.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return m_segments[h & (SEGMENTS - 1)];
+    }
+
+    private static class Entry {
+
+        final DOReader reader;
+
+        final long weight;
+
+        long lastAccess;
+
+        Entry(DOReader reader, long weight, long lastAccess) {
+            this.reader = reader;
+            this.weight = weight;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    /**
+     * One independently-locked segmented LRU. Both maps are kept in access
+     * order, so the least recently used entry is always first.
+     */
+    private class Segment {
+
+        private final int m_maxEntries;
+
+        private final long m_maxWeight;
+
+        private final int m_maxProtectedEntries;
+
+        private final long m_maxProtectedWeight;
+
+        private final LinkedHashMap<String, Entry> m_probation =
+                new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+        private final LinkedHashMap<String, Entry> m_protected =
+                new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+        private long m_probationWeight;
+
+        private long m_protectedWeight;
+
+        Segment(int maxEntries, long maxWeight) {
+            m_maxEntries = maxEntries;
+            m_maxWeight = maxWeight;
+            m_maxProtectedEntries =
+                    Math.max(1, maxEntries * PROTECTED_PERCENT / 100);
+            m_maxProtectedWeight =
+                    maxWeight == Long.MAX_VALUE ? Long.MAX_VALUE : maxWeight
+                            / 100 * PROTECTED_PERCENT;
+        }
+
+        synchronized DOReader get(String pid) {
+            long now = System.currentTimeMillis();
+            Entry entry = m_protected.get(pid);
+            if (entry != null) {
+                if (isExpired(entry, now)) {
+                    m_protected.remove(pid);
+                    m_protectedWeight -= entry.weight;
+                    m_expirationCount.incrementAndGet();
+                    return null;
+                }
+            } else {
+                entry = m_probation.remove(pid);
+                if (entry == null) {
+                    return null;
+                }
+                m_probationWeight -= entry.weight;
+                if (isExpired(entry, now)) {
+                    m_expirationCount.incrementAndGet();
+                    return null;
+                }
+                // second hit: promote, demoting protected overflow
+                m_protected.put(pid, entry);
+                m_protectedWeight += entry.weight;
+                demoteOverflow();
+            }
+            entry.lastAccess = now;
+            return entry.reader;
+        }
+
+        synchronized void put(String pid, DOReader reader, long weight) {
+            removeEntry(pid);
+            if (weight > m_maxWeight) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            expireIdle(m_probation, now);
+            expireIdle(m_protected, now);
+            m_probation.put(pid, new Entry(reader, weight, now));
+            m_probationWeight += weight;
+            while (size() > m_maxEntries || weight() > m_maxWeight) {
+                Map.Entry<String, Entry> eldest = eldest(m_probation);
+                if (eldest == null) {
+                    eldest = eldest(m_protected);
+                    m_protected.remove(eldest.getKey());
+                    m_protectedWeight -= eldest.getValue().weight;
+                } else {
+                    m_probation.remove(eldest.getKey());
+                    m_probationWeight -= eldest.getValue().weight;
+                }
+                m_evictionCount.incrementAndGet();
+            }
+        }
+
+        synchronized void remove(String pid) {
+            removeEntry(pid);
+        }
+
+        synchronized void clear() {
+            m_probation.clear();
+            m_protected.clear();
+            m_probationWeight = 0;
+            m_protectedWeight = 0;
+        }
+
+        synchronized int size() {
+            return m_probation.size() + m_protected.size();
+        }
+
+        synchronized long weight() {
+            return m_probationWeight + m_protectedWeight;
+        }
+
+        private void removeEntry(String pid) {
+            Entry entry = m_probation.remove(pid);
+            if (entry != null) {
+                m_probationWeight -= entry.weight;
+            }
+            entry = m_protected.remove(pid);
+            if (entry != null) {
+                m_protectedWeight -= entry.weight;
+            }
+        }
+
+        /** Moves least recently used protected entries back to probation. */
+        private void demoteOverflow() {
+            while (m_protected.size() > m_maxProtectedEntries
+                    || m_protectedWeight > m_maxProtectedWeight) {
+                Map.Entry<String, Entry> eldest = eldest(m_protected);
+                m_protected.remove(eldest.getKey());
+                m_protectedWeight -= eldest.getValue().weight;
+                m_probation.put(eldest.getKey(), eldest.getValue());
+                m_probationWeight += eldest.getValue().weight;
+            }
+        }
+
+        /** Drops idle entries from the least recently used end of a map. */
+        private void expireIdle(LinkedHashMap<String, Entry> map, long now) {
+            Iterator<Entry> entries = map.values().iterator();
+            while (entries.hasNext()) {
+                Entry entry = entries.next();
+                if (!isExpired(entry, now)) {
+                    return;
+                }
+                entries.remove();
+                if (map == m_probation) {
+                    m_probationWeight -= entry.weight;
+                } else {
+                    m_protectedWeight -= entry.weight;
+                }
+                m_expirationCount.incrementAndGet();
+            }
+        }
+
+        private boolean isExpired(Entry entry, long now) {
+            return now - entry.lastAccess > m_maxIdleMillis;
+        }
+
+        private Map.Entry<String, Entry> eldest(LinkedHashMap<String, Entry> map) {
+            if (map.isEmpty()) {
+                return null;
+            }
+            return map.entrySet().iterator().next();
+        }
     }
 
-}
\ No newline at end of file
+}
@@ -28,6 +28,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 import org.apache.log4j.Logger;
@@ -46,6 +48,7 @@ import fedora.server.errors.LowlevelStorageException;
 import fedora.server.errors.ModuleInitializationException;
 import fedora.server.errors.ObjectAlreadyInLowlevelStorageException;
 import fedora.server.errors.ObjectExistsException;
+import fedora.server.errors.ObjectIntegrityException;
 import fedora.server.errors.ObjectLockedException;
 import fedora.server.errors.ObjectNotFoundException;
 import fedora.server.errors.ObjectNotInLowlevelStorageException;
@@ -58,6 +61,7 @@ import fedora.server.resourceIndex.ResourceIndex;
 import fedora.server.search.FieldSearch;
 import fedora.server.search.FieldSearchQuery;
 import fedora.server.search.FieldSearchResult;
+import fedora.server.security.Authorization;
 import fedora.server.storage.lowlevel.ILowlevelStorage;
 import fedora.server.storage.translation.DOTranslationUtility;
 import fedora.server.storage.translation.DOTranslator;
@@ -74,6 +78,7 @@ import fedora.server.utilities.DCFields;
 import fedora.server.utilities.SQLUtility;
 import fedora.server.utilities.StreamUtility;
 import fedora.server.validation.DOValidator;
+import fedora.server.validation.DOValidatorFilter;
 import fedora.server.validation.DOValidatorImpl;
 import fedora.server.validation.ValidationUtility;
 
@@ -123,14 +128,38 @@ public class DefaultDOManager
 
     protected ResourceIndex m_resourceIndex;
 
+    /** Told about commits, so it can drop cached object policies; optional. */
+    private Authorization m_authorization;
+
     private DOReaderCache m_readerCache;
 
+    /**
+     * Cache of service definition and deployment readers, which are read on
+     * every dissemination but rarely change.
+     */
+    private DOReaderCache m_serviceReaderCache;
+
+    /**
+     * Incremented whenever a cached reader is invalidated, so a reader
+     * loaded concurrently with a commit or purge is not cached.
+     */
+    private final AtomicLong m_readerInvalidations = new AtomicLong();
+
     private final Set<String> m_lockedPIDs;
 
+    /**
+     * Bounds the number of ingests being prepared at once, or null if there
+     * is no bound.
+     */
+    private Semaphore m_ingestPermits;
+
     protected ConnectionPool m_connectionPool;
 
     protected Connection m_connection;
 
+    /** The object count and latest modification date, kept as they change. */
+    protected RepositoryCounters m_counters;
+
     private ModelDeploymentMap m_cModelDeploymentMap;
 
     /**
@@ -215,44 +244,62 @@ public class DefaultDOManager
         }
         initRetainPID();
 
-        // readerCacheSize and readerCacheSeconds (optional, defaults = 20, 5)
-        String rcSize = getParameter("readerCacheSize");
-        if (rcSize == null) {
-            LOG.debug("Parameter readerCacheSize not given, using 20");
-            rcSize = "20";
+        // readerCacheSize, readerCacheMaxBytes and readerCacheSeconds
+        // (optional, defaults = 1000, 67108864, 60)
+        int readerCacheSize = getIntParameter("readerCacheSize", 1000, 0);
+        long readerCacheMaxBytes =
+                getIntParameter("readerCacheMaxBytes", 67108864, 1);
+        int readerCacheSeconds = getIntParameter("readerCacheSeconds", 60, 1);
+
+        if (readerCacheSize > 0) {
+            m_readerCache =
+                    new DOReaderCache(readerCacheSize,
+                                      readerCacheMaxBytes,
+                                      readerCacheSeconds);
         }
-        int readerCacheSize;
-        try {
-            readerCacheSize = Integer.parseInt(rcSize);
-            if (readerCacheSize < 0) {
-                throw new Exception("Cannot be less than zero");
-            }
-        } catch (Exception e) {
-            throw new ModuleInitializationException("Bad value for readerCacheSize parameter: "
-                                                            + e.getMessage(),
-                                                    getRole());
+
+        // serviceReaderCacheSize and serviceReaderCacheSeconds
+        // (optional, defaults = 500, 3600)
+        int serviceReaderCacheSize =
+                getIntParameter("serviceReaderCacheSize", 500, 0);
+        int serviceReaderCacheSeconds =
+                getIntParameter("serviceReaderCacheSeconds", 3600, 1);
+
+        if (serviceReaderCacheSize > 0) {
+            m_serviceReaderCache =
+                    new DOReaderCache(serviceReaderCacheSize,
+                                      serviceReaderCacheSeconds);
         }
 
-        String rcSeconds = getParameter("readerCacheSeconds");
-        if (rcSeconds == null) {
-            LOG.debug("Parameter readerCacheSeconds not given, using 5");
-            rcSeconds = "5";
+        // maxConcurrentIngests (optional, default = 0, meaning no limit)
+        int maxConcurrentIngests =
+                getIntParameter("maxConcurrentIngests", 0, 0);
+        if (maxConcurrentIngests > 0) {
+            m_ingestPermits = new Semaphore(maxConcurrentIngests, true);
+        }
+    }
+
+    /**
+     * Gets the value of an optional integer parameter, using the default
+     * value if it isn't given.
+     */
+    private int getIntParameter(String name, int defaultValue, int minValue)
+            throws ModuleInitializationException {
+        String value = getParameter(name);
+        if (value == null) {
+            LOG.debug("Parameter " + name + " not given, using "
+                    + defaultValue);
+            return defaultValue;
         }
-        int readerCacheSeconds;
         try {
-            readerCacheSeconds = Integer.parseInt(rcSeconds);
-            if (readerCacheSeconds < 1) {
-                throw new Exception("Cannot be less than one");
+            int intValue = Integer.parseInt(value);
+            if (intValue < minValue) {
+                throw new Exception("Cannot be less than " + minValue);
             }
+            return intValue;
         } catch (Exception e) {
-            throw new ModuleInitializationException("Bad value for readerCacheSeconds parameter: "
-                                                            + e.getMessage(),
-                                                    getRole());
-        }
-
-        if (readerCacheSize > 0) {
-            m_readerCache =
-                    new DOReaderCache(readerCacheSize, readerCacheSeconds);
+            throw new ModuleInitializationException("Bad value for " + name
+                    + " parameter: " + e.getMessage(), getRole());
         }
     }
 
@@ -328,6 +375,11 @@ public class DefaultDOManager
                                                     getRole());
         }
 
+        // get ref to Authorization, if any, for object policy invalidation
+        m_authorization =
+                (Authorization) getServer()
+                        .getModule("fedora.server.security.Authorization");
+
         // now get the connectionpool
         ConnectionPoolManager cpm =
                 (ConnectionPoolManager) getServer()
@@ -367,6 +419,14 @@ public class DefaultDOManager
                                                     getRole());
         }
 
+        // load the repository counters, computing any that are missing
+        m_counters = new RepositoryCounters(m_connectionPool);
+        try {
+            m_counters.load();
+        } catch (StorageDeviceException e) {
+            throw new ModuleInitializationException(e.getMessage(), getRole());
+        }
+
         // get ref to lowlevelstorage module
         m_permanentStore =
                 (ILowlevelStorage) getServer()
@@ -545,8 +605,14 @@ public class DefaultDOManager
     @Override
     public void shutdownModule() {
         if (m_readerCache != null) {
+            LOG.info("Reader cache statistics: " + m_readerCache);
             m_readerCache.close();
         }
+        if (m_serviceReaderCache != null) {
+            LOG.info("Service reader cache statistics: "
+                    + m_serviceReaderCache);
+            m_serviceReaderCache.close();
+        }
     }
 
     public void releaseWriter(DOWriter writer) {
@@ -644,6 +710,8 @@ public class DefaultDOManager
                     reader = m_readerCache.get(pid);
                 }
                 if (reader == null) {
+                    long invalidations = m_readerInvalidations.get();
+                    long loadStartTime = System.nanoTime();
                     reader =
                             new SimpleDOReader(context,
                                                this,
@@ -654,9 +722,10 @@ public class DefaultDOManager
                                                m_permanentStore
                                                        .retrieveObject(pid));
                     source = "filesystem";
-                    if (m_readerCache != null) {
-                        m_readerCache.put(reader);
-                    }
+                    putCachedReader(m_readerCache,
+                                    reader,
+                                    invalidations,
+                                    loadStartTime);
                 } else {
                     source = "memory";
                 }
@@ -678,16 +747,26 @@ public class DefaultDOManager
                                                               Context context,
                                                               String pid)
             throws ServerException {
-        {
-            return new SimpleServiceDeploymentReader(context,
-                                                     this,
-                                                     m_translator,
-                                                     m_defaultExportFormat,
-                                                     m_defaultStorageFormat,
-                                                     m_storageCharacterEncoding,
-                                                     m_permanentStore
-                                                             .retrieveObject(pid));
-        }
+        DOReader cached = getCachedServiceReader(pid);
+        if (cached instanceof ServiceDeploymentReader) {
+            return (ServiceDeploymentReader) cached;
+        }
+        long invalidations = m_readerInvalidations.get();
+        long loadStartTime = System.nanoTime();
+        ServiceDeploymentReader reader =
+                new SimpleServiceDeploymentReader(context,
+                                                  this,
+                                                  m_translator,
+                                                  m_defaultExportFormat,
+                                                  m_defaultStorageFormat,
+                                                  m_storageCharacterEncoding,
+                                                  m_permanentStore
+                                                          .retrieveObject(pid));
+        putCachedReader(m_serviceReaderCache,
+                        reader,
+                        invalidations,
+                        loadStartTime);
+        return reader;
     }
 
     /**
@@ -697,15 +776,79 @@ public class DefaultDOManager
                                                               Context context,
                                                               String pid)
             throws ServerException {
-        {
-            return new SimpleServiceDefinitionReader(context,
-                                                     this,
-                                                     m_translator,
-                                                     m_defaultExportFormat,
-                                                     m_defaultStorageFormat,
-                                                     m_storageCharacterEncoding,
-                                                     m_permanentStore
-                                                             .retrieveObject(pid));
+        DOReader cached = getCachedServiceReader(pid);
+        if (cached instanceof ServiceDefinitionReader) {
+            return (ServiceDefinitionReader) cached;
+        }
+        long invalidations = m_readerInvalidations.get();
+        long loadStartTime = System.nanoTime();
+        ServiceDefinitionReader reader =
+                new SimpleServiceDefinitionReader(context,
+                                                  this,
+                                                  m_translator,
+                                                  m_defaultExportFormat,
+                                                  m_defaultStorageFormat,
+                                                  m_storageCharacterEncoding,
+                                                  m_permanentStore
+                                                          .retrieveObject(pid));
+        putCachedReader(m_serviceReaderCache,
+                        reader,
+                        invalidations,
+                        loadStartTime);
+        return reader;
+    }
+
+    private DOReader getCachedServiceReader(String pid) {
+        if (m_serviceReaderCache == null) {
+            return null;
+        }
+        return m_serviceReaderCache.get(pid);
+    }
+
+    /**
+     * Caches a newly-loaded reader, unless a reader was invalidated while it
+     * was being loaded (in which case it may be stale). The count is checked
+     * again after the put, in case an invalidation came between the check
+     * and the put.
+     */
+    private void putCachedReader(DOReaderCache cache,
+                                 DOReader reader,
+                                 long invalidationsAtLoad,
+                                 long loadStartTime) throws ServerException {
+        if (cache != null) {
+            cache.recordLoad(System.nanoTime() - loadStartTime);
+            if (m_readerInvalidations.get() == invalidationsAtLoad) {
+                cache.put(reader);
+                if (m_readerInvalidations.get() != invalidationsAtLoad) {
+                    cache.remove(reader.GetObjectPID());
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes sure future requests for the given object will not use a stale
+     * copy from either reader cache. The invalidation is counted before the
+     * readers are removed, so a concurrent load either sees the count change
+     * or has its reader removed here.
+     */
+    private void invalidateReaderCaches(String pid) {
+        m_readerInvalidations.incrementAndGet();
+        if (m_readerCache != null) {
+            m_readerCache.remove(pid);
+        }
+        if (m_serviceReaderCache != null) {
+            m_serviceReaderCache.remove(pid);
+        }
+    }
+
+    /**
+     * Makes sure a policy cached from the given object's POLICY datastream is
+     * checked against the latest copy before it is used again.
+     */
+    private void invalidateObjectPolicy(String pid) {
+        if (m_authorization != null) {
+            m_authorization.invalidateObjectPolicy(pid);
         }
     }
 
@@ -755,28 +898,86 @@ public class DefaultDOManager
      * @param newPid
      *        true if the system should generate a new PID for the object
      */
-    public synchronized DOWriter getIngestWriter(boolean cachedObjectRequired,
-                                                 Context context,
-                                                 InputStream in,
-                                                 String format,
-                                                 String encoding,
-                                                 boolean newPid)
+    public DOWriter getIngestWriter(boolean cachedObjectRequired,
+                                    Context context,
+                                    InputStream in,
+                                    String format,
+                                    String encoding,
+                                    boolean newPid)
+            throws ServerException {
+        if (cachedObjectRequired) {
+            throw new InvalidContextException("A DOWriter is unavailable in a cached context.");
+        }
+        if (m_ingestPermits == null) {
+            return doGetIngestWriter(context, in, format, encoding, newPid);
+        }
+        try {
+            m_ingestPermits.acquire();
+        } catch (InterruptedException e) {
+            throw new GeneralException("Interrupted while waiting to ingest",
+                                       e);
+        }
+        try {
+            return doGetIngestWriter(context, in, format, encoding, newPid);
+        } finally {
+            m_ingestPermits.release();
+        }
+    }
+
+    /**
+     * Does the work of getIngestWriter. Ingests of different objects may run
+     * concurrently; the per-PID write lock is taken before the registry is
+     * checked, so at most one of several ingests of the same PID proceeds.
+     */
+    private DOWriter doGetIngestWriter(Context context,
+                                       InputStream in,
+                                       String format,
+                                       String encoding,
+                                       boolean newPid)
             throws ServerException {
         LOG.debug("Entered getIngestWriter");
 
         DOWriter w = null;
         BasicDigitalObject obj = null;
+        boolean locked = false;
 
         File tempFile = null;
-        if (cachedObjectRequired) {
-            throw new InvalidContextException("A DOWriter is unavailable in a cached context.");
-        } else {
-            try {
-                // CURRENT TIME:
-                // Get the current time to use for created dates on object
-                // and object components (if they are not already there).
-                Date nowUTC = Server.getCurrentDate(context);
-
+        try {
+            // CURRENT TIME:
+            // Get the current time to use for created dates on object
+            // and object components (if they are not already there).
+            Date nowUTC = Server.getCurrentDate(context);
+
+            obj = new BasicDigitalObject();
+            obj.setNew(true);
+            if (m_translator.supportsFilter(format)) {
+                // VALIDATION AND DESERIALIZATION:
+                // validate the ingest submission while it is being
+                // deserialized, in a single pass over the input stream
+                LOG.debug("Validating (ingest phase) and deserializing "
+                        + "from format: " + format);
+                DOValidatorFilter filter =
+                        m_validator
+                                .newValidatorFilter(format,
+                                                    DOValidatorImpl.VALIDATE_ALL,
+                                                    "ingest");
+                try {
+                    m_translator
+                            .deserialize(in,
+                                         obj,
+                                         format,
+                                         encoding,
+                                         DOTranslationUtility.DESERIALIZE_INSTANCE,
+                                         filter);
+                } catch (ObjectIntegrityException e) {
+                    // report invalid objects as such, not as bad streams
+                    if (filter.getFailure() != null) {
+                        throw filter.getFailure();
+                    }
+                    throw e;
+                }
+                filter.checkValid();
+            } else {
                 // TEMP STORAGE:
                 // write ingest input stream to a temporary file
                 tempFile = File.createTempFile("fedora-ingest-temp", ".xml");
@@ -796,8 +997,6 @@ public class DefaultDOManager
 
                 // DESERIALIZE:
                 // deserialize the ingest input stream into a digital object instance
-                obj = new BasicDigitalObject();
-                obj.setNew(true);
                 LOG.debug("Deserializing from format: " + format);
                 m_translator
                         .deserialize(new FileInputStream(tempFile),
@@ -805,171 +1004,172 @@ public class DefaultDOManager
                                      format,
                                      encoding,
                                      DOTranslationUtility.DESERIALIZE_INSTANCE);
+            }
 
-                // SET OBJECT PROPERTIES:
-                LOG.debug("Setting object/component states and create dates if unset");
-                // set object state to "A" (Active) if not already set
-                if (obj.getState() == null || obj.getState().equals("")) {
-                    obj.setState("A");
-                }
-                // set object create date to UTC if not already set
-                if (obj.getCreateDate() == null
-                        || obj.getCreateDate().equals("")) {
-                    obj.setCreateDate(nowUTC);
-                }
-                // set object last modified date to UTC
-                obj.setLastModDate(nowUTC);
-
-                // SET DATASTREAM PROPERTIES...
-                Iterator<String> dsIter = obj.datastreamIdIterator();
-                while (dsIter.hasNext()) {
-                    for (Datastream ds : obj.datastreams(dsIter.next())) {
-                        // Set create date to UTC if not already set
-                        if (ds.DSCreateDT == null || ds.DSCreateDT.equals("")) {
-                            ds.DSCreateDT = nowUTC;
-                        }
-                        // Set state to "A" (Active) if not already set
-                        if (ds.DSState == null || ds.DSState.equals("")) {
-                            ds.DSState = "A";
-                        }
-                        ds.DSChecksumType =
-                                Datastream
-                                        .validateChecksumType(ds.DSChecksumType);
+            // SET OBJECT PROPERTIES:
+            LOG.debug("Setting object/component states and create dates if unset");
+            // set object state to "A" (Active) if not already set
+            if (obj.getState() == null || obj.getState().equals("")) {
+                obj.setState("A");
+            }
+            // set object create date to UTC if not already set
+            if (obj.getCreateDate() == null
+                    || obj.getCreateDate().equals("")) {
+                obj.setCreateDate(nowUTC);
+            }
+            // set object last modified date to UTC
+            obj.setLastModDate(nowUTC);
+
+            // SET DATASTREAM PROPERTIES...
+            Iterator<String> dsIter = obj.datastreamIdIterator();
+            while (dsIter.hasNext()) {
+                for (Datastream ds : obj.datastreams(dsIter.next())) {
+                    // Set create date to UTC if not already set
+                    if (ds.DSCreateDT == null || ds.DSCreateDT.equals("")) {
+                        ds.DSCreateDT = nowUTC;
                     }
+                    // Set state to "A" (Active) if not already set
+                    if (ds.DSState == null || ds.DSState.equals("")) {
+                        ds.DSState = "A";
+                    }
+                    ds.DSChecksumType =
+                            Datastream
+                                    .validateChecksumType(ds.DSChecksumType);
                 }
+            }
 
-                // SET MIMETYPE AND FORMAT_URIS FOR LEGACY OBJECTS' DATASTREAMS
-                if (FOXML1_0.uri.equals(format)
-                        || FOXML1_0_LEGACY.equals(format)
-                        || METS_EXT1_0.uri.equals(format)
-                        || METS_EXT1_0_LEGACY.equals(format)) {
-                    DigitalObjectUtil.updateLegacyDatastreams(obj);
-                }
+            // SET MIMETYPE AND FORMAT_URIS FOR LEGACY OBJECTS' DATASTREAMS
+            if (FOXML1_0.uri.equals(format)
+                    || FOXML1_0_LEGACY.equals(format)
+                    || METS_EXT1_0.uri.equals(format)
+                    || METS_EXT1_0_LEGACY.equals(format)) {
+                DigitalObjectUtil.updateLegacyDatastreams(obj);
+            }
 
-                // PID VALIDATION:
-                // validate and normalized the provided pid, if any
-                if (obj.getPid() != null && obj.getPid().length() > 0) {
-                    obj.setPid(Server.getPID(obj.getPid()).toString());
-                }
+            // PID VALIDATION:
+            // validate and normalized the provided pid, if any
+            if (obj.getPid() != null && obj.getPid().length() > 0) {
+                obj.setPid(Server.getPID(obj.getPid()).toString());
+            }
 
-                // PID GENERATION:
-                // have the system generate a PID if one was not provided
-                if (obj.getPid() != null
-                        && obj.getPid().indexOf(":") != -1
-                        && (m_retainPIDs == null || m_retainPIDs.contains(obj
-                                .getPid().split(":")[0]))) {
-                    LOG
-                            .debug("Stream contained PID with retainable namespace-id; will use PID from stream");
+            // PID GENERATION:
+            // have the system generate a PID if one was not provided
+            if (obj.getPid() != null
+                    && obj.getPid().indexOf(":") != -1
+                    && (m_retainPIDs == null || m_retainPIDs.contains(obj
+                            .getPid().split(":")[0]))) {
+                LOG
+                        .debug("Stream contained PID with retainable namespace-id; will use PID from stream");
+                try {
+                    m_pidGenerator.neverGeneratePID(obj.getPid());
+                } catch (IOException e) {
+                    throw new GeneralException("Error calling pidGenerator.neverGeneratePID(): "
+                            + e.getMessage());
+                }
+            } else {
+                if (newPid) {
+                    LOG.debug("Client wants a new PID");
+                    // yes... so do that, then set it in the obj.
+                    String p = null;
                     try {
-                        m_pidGenerator.neverGeneratePID(obj.getPid());
-                    } catch (IOException e) {
-                        throw new GeneralException("Error calling pidGenerator.neverGeneratePID(): "
+                        // If the context contains a recovery PID, use that.
+                        // Otherwise, generate a new PID as usual.
+                        if (context instanceof RecoveryContext) {
+                            RecoveryContext rContext =
+                                    (RecoveryContext) context;
+                            p =
+                                    rContext
+                                            .getRecoveryValue(Constants.RECOVERY.PID.uri);
+                        }
+                        if (p == null) {
+                            p =
+                                    m_pidGenerator
+                                            .generatePID(m_pidNamespace)
+                                            .toString();
+                        } else {
+                            LOG
+                                    .debug("Using new PID from recovery context");
+                            m_pidGenerator.neverGeneratePID(p);
+                        }
+                    } catch (Exception e) {
+                        throw new GeneralException("Error generating PID, PIDGenerator returned unexpected error: ("
+                                + e.getClass().getName()
+                                + ") - "
                                 + e.getMessage());
                     }
+                    LOG.info("Generated new PID: " + p);
+                    obj.setPid(p);
                 } else {
-                    if (newPid) {
-                        LOG.debug("Client wants a new PID");
-                        // yes... so do that, then set it in the obj.
-                        String p = null;
-                        try {
-                            // If the context contains a recovery PID, use that.
-                            // Otherwise, generate a new PID as usual.
-                            if (context instanceof RecoveryContext) {
-                                RecoveryContext rContext =
-                                        (RecoveryContext) context;
-                                p =
-                                        rContext
-                                                .getRecoveryValue(Constants.RECOVERY.PID.uri);
-                            }
-                            if (p == null) {
-                                p =
-                                        m_pidGenerator
-                                                .generatePID(m_pidNamespace)
-                                                .toString();
-                            } else {
-                                LOG
-                                        .debug("Using new PID from recovery context");
-                                m_pidGenerator.neverGeneratePID(p);
-                            }
-                        } catch (Exception e) {
-                            throw new GeneralException("Error generating PID, PIDGenerator returned unexpected error: ("
-                                    + e.getClass().getName()
-                                    + ") - "
-                                    + e.getMessage());
-                        }
-                        LOG.info("Generated new PID: " + p);
-                        obj.setPid(p);
-                    } else {
-                        LOG.debug("Client wants to use existing PID.");
-                    }
+                    LOG.debug("Client wants to use existing PID.");
                 }
+            }
 
-                LOG.info("New object PID is " + obj.getPid());
+            LOG.info("New object PID is " + obj.getPid());
 
-                // CHECK REGISTRY:
-                // ensure the object doesn't already exist
-                if (objectExists(obj.getPid())) {
-                    throw new ObjectExistsException("The PID '"
-                            + obj.getPid()
-                            + "' already exists in the registry; the object can't be re-created.");
-                }
+            // WRITE LOCK:
+            // ensure no one else can ingest or modify the object now
+            getWriteLock(obj.getPid());
+            locked = true;
+
+            // CHECK REGISTRY:
+            // ensure the object doesn't already exist
+            if (objectExists(obj.getPid())) {
+                throw new ObjectExistsException("The PID '"
+                        + obj.getPid()
+                        + "' already exists in the registry; the object can't be re-created.");
+            }
 
-                // GET DIGITAL OBJECT WRITER:
-                // get an object writer configured with the DEFAULT export format
-                LOG.debug("Getting new writer with default export format: "
-                        + m_defaultExportFormat);
-                LOG.debug("Instantiating a SimpleDOWriter");
-                w = new SimpleDOWriter(context,
-                                       this,
-                                       m_translator,
-                                       m_defaultExportFormat,
-                                       m_storageCharacterEncoding,
-                                       obj);
+            // GET DIGITAL OBJECT WRITER:
+            // get an object writer configured with the DEFAULT export format
+            LOG.debug("Getting new writer with default export format: "
+                    + m_defaultExportFormat);
+            LOG.debug("Instantiating a SimpleDOWriter");
+            w = new SimpleDOWriter(context,
+                                   this,
+                                   m_translator,
+                                   m_defaultExportFormat,
+                                   m_storageCharacterEncoding,
+                                   obj);
 
-                // WRITE LOCK:
-                // ensure no one else can modify the object now
-                getWriteLock(obj.getPid());
+            // DEFAULT DATASTREAMS:
+            populateDC(obj, w, nowUTC);
 
-                // DEFAULT DATASTREAMS:
-                populateDC(obj, w, nowUTC);
+            // DATASTREAM VALIDATION
+            ValidationUtility.validateReservedDatastreams(w);
 
-                // DATASTREAM VALIDATION
-                ValidationUtility.validateReservedDatastreams(w);
+            // REGISTRY:
+            // at this point the object is valid, so make a record
+            // of it in the digital object registry
+            registerObject(obj, getUserId(context), obj.getLabel(), obj
+                    .getCreateDate(), obj.getLastModDate());
+            return w;
+        } catch (IOException e) {
 
-                // REGISTRY:
-                // at this point the object is valid, so make a record
-                // of it in the digital object registry
-                registerObject(obj, getUserId(context), obj.getLabel(), obj
-                        .getCreateDate(), obj.getLastModDate());
-                return w;
-            } catch (IOException e) {
-
-                if (w != null) {
-                    releaseWriteLock(obj.getPid());
-                }
+            if (locked) {
+                releaseWriteLock(obj.getPid());
+            }
 
-                throw new GeneralException("Error reading/writing temporary "
-                        + "ingest file", e);
-            } catch (Exception e) {
+            throw new GeneralException("Error reading/writing temporary "
+                    + "ingest file", e);
+        } catch (Exception e) {
 
-                if (w != null) {
-                    releaseWriteLock(obj.getPid());
-                }
+            if (locked) {
+                releaseWriteLock(obj.getPid());
+            }
 
-                if (e instanceof ServerException) {
-                    ServerException se = (ServerException) e;
-                    throw se;
-                }
-                throw new GeneralException("Ingest failed: "
-                        + e.getClass().getName(), e);
-            } finally {
-                if (tempFile != null) {
-                    LOG.debug("Finally, removing temp file");
-                    try {
-                        tempFile.delete();
-                    } catch (Exception e) {
-                        // don't worry if it doesn't exist
-                    }
+            if (e instanceof ServerException) {
+                ServerException se = (ServerException) e;
+                throw se;
+            }
+            throw new GeneralException("Ingest failed: "
+                    + e.getClass().getName(), e);
+        } finally {
+            if (tempFile != null) {
+                LOG.debug("Finally, removing temp file");
+                try {
+                    tempFile.delete();
+                } catch (Exception e) {
+                    // don't worry if it doesn't exist
                 }
             }
         }
@@ -1083,12 +1283,11 @@ public class DefaultDOManager
                         + "store, but that might be ok; continuing with purge");
             }
 
-            // INVALIDATE DOREADER CACHE:
+            // INVALIDATE DOREADER CACHES:
             // now that the object xml is removed, make sure future requests
             // for the object will not use a stale copy
-            if (m_readerCache != null) {
-                m_readerCache.remove(obj.getPid());
-            }
+            invalidateReaderCaches(obj.getPid());
+            invalidateObjectPolicy(obj.getPid());
 
             // REGISTRY:
             // Remove digital object from the registry
@@ -1340,24 +1539,29 @@ public class DefaultDOManager
                                                            .toByteArray()));
                 }
 
-                // INVALIDATE DOREADER CACHE:
+                // INVALIDATE DOREADER CACHES:
                 // now that the object xml is stored, make sure future DOReaders
                 // will get the latest copy
-                if (m_readerCache != null) {
-                    m_readerCache.remove(obj.getPid());
-                }
+                invalidateReaderCaches(obj.getPid());
+                invalidateObjectPolicy(obj.getPid());
 
                 // REGISTRY:
                 /*
-                 * update systemVersion in doRegistry (add one), and update
-                 * deploymene maps if necesssary.
+                 * update systemVersion in doRegistry (add one), the latest
+                 * modification date, and deploymene maps if necesssary.
                  */
                 LOG.debug("Updating registry");
                 Connection conn = null;
                 Statement s = null;
                 ResultSet results = null;
+                boolean autoCommit = true;
+                boolean committed = false;
+                RepositoryCounters.Change change = m_counters.newChange();
+                change.objectModified(obj.getLastModDate());
                 try {
                     conn = m_connectionPool.getConnection();
+                    autoCommit = conn.getAutoCommit();
+                    conn.setAutoCommit(false);
                     String query =
                             "SELECT systemVersion " + "FROM doRegistry "
                                     + "WHERE doPID='" + obj.getPid() + "'";
@@ -1372,10 +1576,15 @@ public class DefaultDOManager
                             + systemVersion + " " + "WHERE doPID='"
                             + obj.getPid() + "'");
 
+                    change.write(conn);
+
                     //TODO hasModel
                     if (obj.hasContentModel(Models.SERVICE_DEPLOYMENT_3_0)) {
                         updateDeploymentMap(obj, conn, false);
                     }
+                    conn.commit();
+                    committed = true;
+                    change.apply();
                 } catch (SQLException sqle) {
                     throw new StorageDeviceException("Error creating replication job: "
                             + sqle.getMessage());
@@ -1388,6 +1597,10 @@ public class DefaultDOManager
                             s.close();
                         }
                         if (conn != null) {
+                            if (!committed) {
+                                conn.rollback();
+                            }
+                            conn.setAutoCommit(autoCommit);
                             m_connectionPool.free(conn);
                         }
                     } catch (SQLException sqle) {
@@ -1619,15 +1832,30 @@ public class DefaultDOManager
         }
         Connection conn = null;
         Statement st = null;
+        boolean autoCommit = true;
+        RepositoryCounters.Change change = m_counters.newChange();
+        change.objectAdded();
         try {
             String query =
                     "INSERT INTO doRegistry (doPID,  " + "ownerId, label) "
                             + "VALUES ('" + pid + "', '" + userId + "', '"
                             + SQLUtility.aposEscape(theLabel) + "')";
             conn = m_connectionPool.getConnection();
+            autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
             st = conn.createStatement();
             st.executeUpdate(query);
+            change.write(conn);
+            conn.commit();
+            change.apply();
         } catch (SQLException sqle) {
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException sqle2) {
+                    LOG.warn("Error rolling back object registration", sqle2);
+                }
+            }
             // clean up if the INSERT didn't succeeed
             try {
                 unregisterObject(obj);
@@ -1642,6 +1870,7 @@ public class DefaultDOManager
                     st.close();
                 }
                 if (conn != null) {
+                    conn.setAutoCommit(autoCommit);
                     m_connectionPool.free(conn);
                 }
             } catch (Exception sqle) {
@@ -1661,17 +1890,30 @@ public class DefaultDOManager
         String pid = obj.getPid();
         Connection conn = null;
         Statement st = null;
+        boolean autoCommit = true;
+        boolean committed = false;
+        RepositoryCounters.Change change = m_counters.newChange();
         try {
             conn = m_connectionPool.getConnection();
+            autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
             st = conn.createStatement();
-            st
-                    .executeUpdate("DELETE FROM doRegistry WHERE doPID='" + pid
-                            + "'");
+            int removed =
+                    st.executeUpdate("DELETE FROM doRegistry WHERE doPID='"
+                            + pid + "'");
+            // only count the object if it was actually registered
+            if (removed > 0) {
+                change.objectRemoved(obj.getLastModDate());
+                change.write(conn);
+            }
 
             //TODO hasModel
             if (obj.hasContentModel(Models.SERVICE_DEPLOYMENT_3_0)) {
                 updateDeploymentMap(obj, conn, true);
             }
+            conn.commit();
+            committed = true;
+            change.apply();
         } catch (SQLException sqle) {
             throw new StorageDeviceException("Unexpected error from SQL database while unregistering object: "
                     + sqle.getMessage());
@@ -1681,6 +1923,10 @@ public class DefaultDOManager
                     st.close();
                 }
                 if (conn != null) {
+                    if (!committed) {
+                        conn.rollback();
+                    }
+                    conn.setAutoCommit(autoCommit);
                     m_connectionPool.free(conn);
                 }
             } catch (Exception sqle) {
@@ -1923,72 +2169,15 @@ public class DefaultDOManager
         // latest object's modification date (utc millis)
         // in the format: "10|194861293462"
 
-        Connection conn = null;
-        try {
-            conn = m_connectionPool.getConnection();
-
-            StringBuffer hash = new StringBuffer();
-            hash.append(getNumObjectsWithVersion(conn, 0));
-            hash.append("|");
-
-            hash.append(getLatestModificationDate(conn, ""));
-
-            return hash.toString();
-
-        } catch (SQLException e) {
-            throw new GeneralException("SQL error encountered while computing "
-                    + "repository hash", e);
-        } finally {
-            if (conn != null) {
-                m_connectionPool.free(conn);
-            }
-        }
+        return m_counters.getObjectCount() + "|"
+                + m_counters.getLatestModDate();
     }
 
     /**
-     * Get the number of objects in the registry whose system version is equal
-     * to the given value. If n is less than one, return the total number of
-     * objects in the registry.
+     * Gets the counters the repository hash is computed from.
      */
-    private int getNumObjectsWithVersion(Connection conn, int n)
-            throws SQLException {
-
-        Statement st = null;
-        try {
-            st = conn.createStatement();
-            StringBuffer query = new StringBuffer();
-            query.append("SELECT COUNT(*) FROM doRegistry");
-            if (n > 0) {
-                query.append(" WHERE systemVersion = " + n);
-            }
-            ResultSet results = st.executeQuery(query.toString());
-            results.next();
-            return results.getInt(1);
-        } finally {
-            if (st != null) {
-                st.close();
-            }
-        }
-    }
-
-    private long getLatestModificationDate(Connection conn, String whereClause)
-            throws SQLException {
-        Statement st = null;
-        try {
-            st = conn.createStatement();
-            ResultSet results =
-                    st.executeQuery("SELECT MAX(mDate) " + "FROM doFields "
-                            + whereClause);
-            if (results.next()) {
-                return results.getLong(1);
-            } else {
-                return 0L;
-            }
-        } finally {
-            if (st != null) {
-                st.close();
-            }
-        }
+    public RepositoryCounters getRepositoryCounters() {
+        return m_counters;
     }
 
     private class ModelDeploymentMap {
@@ -0,0 +1,351 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import fedora.server.errors.StorageDeviceException;
+import fedora.server.utilities.SQLUtility;
+
+/**
+ * The number of objects in the registry and the latest object modification
+ * date, kept in the repositoryCounters table and mirrored in memory, so that
+ * the repository hash can be computed without scanning doRegistry and
+ * doFields.
+ * <p>
+ * A {@link Change} is written in the same transaction as the registry change
+ * it reflects, and applied to the in-memory values once that transaction has
+ * committed. When the object with the latest modification date is removed,
+ * the date is marked unknown and recomputed from doFields the next time it is
+ * asked for.
+ * <p>
+ * Every counter is a single row, so each ingest, commit and purge locks the
+ * row it updates until its registry transaction ends, and concurrent writers
+ * queue on that lock. Registry transactions are short, a statement or two
+ * before the commit, so this is cheaper than the table scans it replaces; if
+ * it ever limits ingest throughput, the rows can be striped and combined when
+ * the counters are loaded.
+ */
+public class RepositoryCounters {
+
+    /** Logger for this class. */
+    private static final Logger LOG =
+            Logger.getLogger(RepositoryCounters.class.getName());
+
+    /** The name of the counter holding the number of registered objects. */
+    public static final String OBJECT_COUNT = "objectCount";
+
+    /** The name of the counter holding the latest modification date. */
+    public static final String LATEST_MOD_DATE = "latestModDate";
+
+    /** The latest modification date, when it must be recomputed. */
+    static final long UNKNOWN = -1;
+
+    private static final String ADD_OBJECTS_SQL =
+            "UPDATE repositoryCounters SET counterValue = counterValue + ? "
+                    + "WHERE counterName = '" + OBJECT_COUNT + "'";
+
+    private static final String RAISE_DATE_SQL =
+            "UPDATE repositoryCounters SET counterValue = ? "
+                    + "WHERE counterName = '" + LATEST_MOD_DATE
+                    + "' AND counterValue < ?";
+
+    private static final String FORGET_DATE_SQL =
+            "UPDATE repositoryCounters SET counterValue = " + UNKNOWN
+                    + " WHERE counterName = '" + LATEST_MOD_DATE
+                    + "' AND counterValue <= ?";
+
+    private final ConnectionPool m_connectionPool;
+
+    private final AtomicLong m_objectCount = new AtomicLong();
+
+    private final AtomicLong m_latestModDate = new AtomicLong(UNKNOWN);
+
+    public RepositoryCounters(ConnectionPool cPool) {
+        m_connectionPool = cPool;
+    }
+
+    /**
+     * Reads the counters from the database. Any counter that is missing, as
+     * it is the first time the server starts after an upgrade or a rebuild,
+     * is computed from doRegistry or doFields and stored.
+     *
+     * @throws StorageDeviceException
+     *         if the counters could not be read or computed.
+     */
+    public void load() throws StorageDeviceException {
+        Connection conn = null;
+        Statement st = null;
+        try {
+            conn = m_connectionPool.getConnection();
+            st = conn.createStatement();
+            long objectCount = UNKNOWN;
+            long latestModDate = UNKNOWN;
+            ResultSet results =
+                    st.executeQuery("SELECT counterName, counterValue "
+                            + "FROM repositoryCounters");
+            while (results.next()) {
+                String name = results.getString(1);
+                if (name.equals(OBJECT_COUNT)) {
+                    objectCount = results.getLong(2);
+                } else if (name.equals(LATEST_MOD_DATE)) {
+                    latestModDate = results.getLong(2);
+                }
+            }
+            results.close();
+
+            if (objectCount < 0) {
+                LOG.info("Counting objects in the registry");
+                objectCount = countObjects(st);
+                store(conn, OBJECT_COUNT, objectCount);
+            }
+            if (latestModDate < 0) {
+                latestModDate = findLatestModDate(st);
+                store(conn, LATEST_MOD_DATE, latestModDate);
+            }
+            m_objectCount.set(objectCount);
+            m_latestModDate.set(latestModDate);
+            LOG.info("Repository counters: " + this);
+        } catch (SQLException e) {
+            throw new StorageDeviceException("Error loading repository "
+                    + "counters: " + e.getMessage(), e);
+        } finally {
+            close(conn, st);
+        }
+    }
+
+    /**
+     * @return the number of objects in the registry.
+     */
+    public long getObjectCount() {
+        return m_objectCount.get();
+    }
+
+    /**
+     * @return the latest modification date of any object, in milliseconds,
+     *         or 0 if there are none.
+     * @throws StorageDeviceException
+     *         if the date had to be recomputed, and that failed.
+     */
+    public long getLatestModDate() throws StorageDeviceException {
+        long date = m_latestModDate.get();
+        if (date != UNKNOWN) {
+            return date;
+        }
+        synchronized (this) {
+            date = m_latestModDate.get();
+            if (date != UNKNOWN) {
+                return date;
+            }
+            LOG.debug("Recomputing latest modification date");
+            Connection conn = null;
+            Statement st = null;
+            try {
+                conn = m_connectionPool.getConnection();
+                st = conn.createStatement();
+                date = findLatestModDate(st);
+                PreparedStatement raise = conn.prepareStatement(RAISE_DATE_SQL);
+                try {
+                    raise.setLong(1, date);
+                    raise.setLong(2, date);
+                    raise.executeUpdate();
+                } finally {
+                    raise.close();
+                }
+            } catch (SQLException e) {
+                throw new StorageDeviceException("Error computing latest "
+                        + "modification date: " + e.getMessage(), e);
+            } finally {
+                close(conn, st);
+            }
+            raise(date);
+            return m_latestModDate.get();
+        }
+    }
+
+    /**
+     * @return a new, empty change to the counters.
+     */
+    public Change newChange() {
+        return new Change();
+    }
+
+    @Override
+    public String toString() {
+        long date = m_latestModDate.get();
+        return OBJECT_COUNT + "=" + m_objectCount.get() + ", "
+                + LATEST_MOD_DATE + "=" + (date == UNKNOWN ? "unknown" : "" + date);
+    }
+
+    /** Raises the in-memory latest modification date to at least the given one. */
+    private void raise(long date) {
+        long current = m_latestModDate.get();
+        while (current < date && !m_latestModDate.compareAndSet(current, date)) {
+            current = m_latestModDate.get();
+        }
+    }
+
+    /** Marks the in-memory date unknown if it is no later than the given one. */
+    private void forget(long date) {
+        long current = m_latestModDate.get();
+        while (current != UNKNOWN && current <= date
+                && !m_latestModDate.compareAndSet(current, UNKNOWN)) {
+            current = m_latestModDate.get();
+        }
+    }
+
+    private static long countObjects(Statement st) throws SQLException {
+        ResultSet results = st.executeQuery("SELECT COUNT(*) FROM doRegistry");
+        try {
+            results.next();
+            return results.getLong(1);
+        } finally {
+            results.close();
+        }
+    }
+
+    private static long findLatestModDate(Statement st) throws SQLException {
+        ResultSet results = st.executeQuery("SELECT MAX(mDate) FROM doFields");
+        try {
+            if (results.next()) {
+                return results.getLong(1);
+            } else {
+                return 0L;
+            }
+        } finally {
+            results.close();
+        }
+    }
+
+    private static void store(Connection conn, String name, long value)
+            throws SQLException {
+        SQLUtility.replaceInto(conn,
+                               "repositoryCounters",
+                               new String[] {"counterName", "counterValue"},
+                               new String[] {name, "" + value},
+                               "counterName",
+                               new boolean[] {false, true});
+    }
+
+    private void close(Connection conn, Statement st)
+            throws StorageDeviceException {
+        try {
+            if (st != null) {
+                st.close();
+            }
+        } catch (SQLException e) {
+            throw new StorageDeviceException("Unexpected error from SQL "
+                    + "database: " + e.getMessage(), e);
+        } finally {
+            if (conn != null) {
+                m_connectionPool.free(conn);
+            }
+        }
+    }
+
+    /**
+     * The effect of one registry change on the counters.
+     */
+    public class Change {
+
+        private int m_objects;
+
+        private long m_modified = UNKNOWN;
+
+        private long m_removed = UNKNOWN;
+
+        Change() {
+        }
+
+        /**
+         * Records that an object was added to the registry.
+         */
+        public void objectAdded() {
+            m_objects++;
+        }
+
+        /**
+         * Records that an object was removed from the registry.
+         *
+         * @param lastModDate
+         *        the last modification date of the object, or null if unknown.
+         */
+        public void objectRemoved(Date lastModDate) {
+            m_objects--;
+            if (lastModDate != null) {
+                m_removed = Math.max(m_removed, lastModDate.getTime());
+            }
+        }
+
+        /**
+         * Records that an object was stored with the given modification date.
+         */
+        public void objectModified(Date lastModDate) {
+            if (lastModDate != null) {
+                m_modified = Math.max(m_modified, lastModDate.getTime());
+            }
+        }
+
+        /**
+         * Writes the change to the database, using the caller's connection
+         * and transaction.
+         */
+        public void write(Connection conn) throws SQLException {
+            if (m_objects != 0) {
+                PreparedStatement st = conn.prepareStatement(ADD_OBJECTS_SQL);
+                try {
+                    st.setInt(1, m_objects);
+                    st.executeUpdate();
+                } finally {
+                    st.close();
+                }
+            }
+            if (m_removed != UNKNOWN) {
+                PreparedStatement st = conn.prepareStatement(FORGET_DATE_SQL);
+                try {
+                    st.setLong(1, m_removed);
+                    st.executeUpdate();
+                } finally {
+                    st.close();
+                }
+            }
+            if (m_modified != UNKNOWN) {
+                PreparedStatement st = conn.prepareStatement(RAISE_DATE_SQL);
+                try {
+                    st.setLong(1, m_modified);
+                    st.setLong(2, m_modified);
+                    st.executeUpdate();
+                } finally {
+                    st.close();
+                }
+            }
+        }
+
+        /**
+         * Applies the change to the in-memory counters, once the transaction
+         * it was written in has committed.
+         */
+        public void apply() {
+            if (m_objects != 0) {
+                m_objectCount.addAndGet(m_objects);
+            }
+            if (m_removed != UNKNOWN) {
+                forget(m_removed);
+            }
+            if (m_modified != UNKNOWN) {
+                raise(m_modified);
+            }
+        }
+    }
+}
@@ -241,17 +241,12 @@ public class SimpleDOReader
     }
 
     public List<String> getContentModels() throws ServerException {
-
-        List<String> list = new ArrayList<String>();
-        for (RelationshipTuple rel : getRelationships(MODEL.HAS_MODEL,null)) {
-            list.add(rel.object);
-        }
-        return list;
+        return m_obj.getContentModels();
     }
 
     public boolean hasContentModel(ObjectNode contentModel)
             throws ServerException {
-        return hasRelationship(MODEL.HAS_MODEL,contentModel);
+        return m_obj.hasContentModel(contentModel);
     }
 
     /**
@@ -118,4 +118,16 @@ public class SimpleServiceAwareReader
         }
         return dsInSpecDS;
     }
+
+    /**
+     * Gets a key that identifies a particular version of a datastream, for
+     * use in memoizing the parsed form of its content.
+     */
+    protected static String getVersionKey(Datastream ds) {
+        if (ds.DSCreateDT == null) {
+            return ds.DatastreamID + "/" + ds.DSVersionID;
+        }
+        return ds.DatastreamID + "/" + ds.DSVersionID + "/"
+                + ds.DSCreateDT.getTime();
+    }
 }
@@ -8,6 +8,8 @@ import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 
 import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.xml.sax.InputSource;
 
@@ -21,11 +23,15 @@ import fedora.server.errors.StreamIOException;
 import fedora.server.errors.UnsupportedTranslationException;
 import fedora.server.storage.service.ServiceMapper;
 import fedora.server.storage.translation.DOTranslator;
+import fedora.server.storage.types.DatastreamXMLMetadata;
 import fedora.server.storage.types.DigitalObject;
 import fedora.server.storage.types.MethodDef;
 
 /**
  * A Service Definition Reader based on a DigitalObject.
+ * <p>
+ * Parsed method definitions are kept for each METHODMAP version that has been
+ * requested, so a long-lived (cached) reader parses each version only once.
  * 
  * @author Chris Wilper
  */
@@ -33,7 +39,9 @@ public class SimpleServiceDefinitionReader
         extends SimpleServiceAwareReader
         implements ServiceDefinitionReader {
 
-    private final ServiceMapper serviceMapper;
+    /** Parsed method definitions, keyed by METHODMAP version. */
+    private final Map<String, MethodDef[]> m_methodDefs =
+            new ConcurrentHashMap<String, MethodDef[]>();
 
     public SimpleServiceDefinitionReader(Context context,
                             RepositoryReader repoReader,
@@ -51,7 +59,6 @@ public class SimpleServiceDefinitionReader
               storageFormat,
               encoding,
               serializedObject);
-        serviceMapper = new ServiceMapper(GetObjectPID());
     }
 
     /**
@@ -65,14 +72,38 @@ public class SimpleServiceDefinitionReader
                             String encoding,
                             DigitalObject obj) {
         super(context, repoReader, translator, exportFormat, encoding, obj);
-        serviceMapper = new ServiceMapper(GetObjectPID());
     }
 
+    /**
+     * Gets the method definitions. The parsed definitions are kept for reuse
+     * by other threads, so each caller gets its own copies, which it may
+     * change.
+     */
     public MethodDef[] getAbstractMethods(Date versDateTime)
             throws DatastreamNotFoundException, ObjectIntegrityException,
             RepositoryConfigurationException, GeneralException {
-        return serviceMapper
-                .getMethodDefs(new InputSource(new ByteArrayInputStream(getMethodMapDatastream(versDateTime).xmlContent)));
+        DatastreamXMLMetadata mmapDS = getMethodMapDatastream(versDateTime);
+        String key = getVersionKey(mmapDS);
+        MethodDef[] methodDefs = m_methodDefs.get(key);
+        if (methodDefs == null) {
+            // ServiceMapper remembers what it parsed, so use a fresh one
+            methodDefs =
+                    new ServiceMapper(GetObjectPID())
+                            .getMethodDefs(new InputSource(new ByteArrayInputStream(mmapDS.xmlContent)));
+            m_methodDefs.put(key, methodDefs);
+        }
+        return copyOf(methodDefs);
+    }
+
+    private static MethodDef[] copyOf(MethodDef[] methodDefs) {
+        MethodDef[] copies = new MethodDef[methodDefs.length];
+        for (int i = 0; i < methodDefs.length; i++) {
+            copies[i] = new MethodDef();
+            copies[i].methodName = methodDefs[i].methodName;
+            copies[i].methodLabel = methodDefs[i].methodLabel;
+            copies[i].methodParms = methodDefs[i].methodParms.clone();
+        }
+        return copies;
     }
 
     public InputStream getAbstractMethodsXML(Date versDateTime)
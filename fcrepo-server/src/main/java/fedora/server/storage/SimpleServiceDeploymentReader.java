@@ -8,6 +8,8 @@ import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 
 import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.xml.sax.InputSource;
 
@@ -22,6 +24,7 @@ import fedora.server.errors.StreamIOException;
 import fedora.server.errors.UnsupportedTranslationException;
 import fedora.server.storage.service.ServiceMapper;
 import fedora.server.storage.translation.DOTranslator;
+import fedora.server.storage.types.DatastreamXMLMetadata;
 import fedora.server.storage.types.DeploymentDSBindSpec;
 import fedora.server.storage.types.DigitalObject;
 import fedora.server.storage.types.MethodDef;
@@ -30,6 +33,10 @@ import fedora.server.storage.types.MethodParmDef;
 
 /**
  * A ServiceDeploymentReader based on a DigitalObject.
+ * <p>
+ * Parsed method definitions, operation bindings and datastream input specs
+ * are kept for each datastream version that has been requested, so a
+ * long-lived (cached) reader parses each version only once.
  * 
  * @author Chris Wilper
  */
@@ -37,7 +44,17 @@ public class SimpleServiceDeploymentReader
         extends SimpleServiceAwareReader
         implements ServiceDeploymentReader {
 
-    private final ServiceMapper serviceMapper;
+    /** Parsed method definitions, keyed by METHODMAP version. */
+    private final Map<String, MethodDef[]> m_methodDefs =
+            new ConcurrentHashMap<String, MethodDef[]>();
+
+    /** Parsed operation bindings, keyed by WSDL and METHODMAP version. */
+    private final Map<String, MethodDefOperationBind[]> m_methodBindings =
+            new ConcurrentHashMap<String, MethodDefOperationBind[]>();
+
+    /** Parsed datastream input specs, keyed by DSINPUTSPEC version. */
+    private final Map<String, DeploymentDSBindSpec> m_dsInputSpecs =
+            new ConcurrentHashMap<String, DeploymentDSBindSpec>();
 
     public SimpleServiceDeploymentReader(Context context,
                              RepositoryReader repoReader,
@@ -55,7 +72,6 @@ public class SimpleServiceDeploymentReader
               storageFormat,
               encoding,
               serializedObject);
-        serviceMapper = new ServiceMapper(GetObjectPID());
     }
 
     /**
@@ -69,14 +85,22 @@ public class SimpleServiceDeploymentReader
                              String encoding,
                              DigitalObject obj) {
         super(context, repoReader, translator, exportFormat, encoding, obj);
-        serviceMapper = new ServiceMapper(GetObjectPID());
     }
 
     public MethodDef[] getServiceMethods(Date versDateTime)
             throws DatastreamNotFoundException, ObjectIntegrityException,
             RepositoryConfigurationException, GeneralException {
-        return serviceMapper
-                .getMethodDefs(new InputSource(new ByteArrayInputStream(getMethodMapDatastream(versDateTime).xmlContent)));
+        DatastreamXMLMetadata mmapDS = getMethodMapDatastream(versDateTime);
+        String key = getVersionKey(mmapDS);
+        MethodDef[] methodDefs = m_methodDefs.get(key);
+        if (methodDefs == null) {
+            // ServiceMapper remembers what it parsed, so use a fresh one
+            methodDefs =
+                    new ServiceMapper(GetObjectPID())
+                            .getMethodDefs(new InputSource(new ByteArrayInputStream(mmapDS.xmlContent)));
+            m_methodDefs.put(key, methodDefs);
+        }
+        return methodDefs;
     }
 
     public MethodParmDef[] getServiceMethodParms(String methodName,
@@ -88,16 +112,33 @@ public class SimpleServiceDeploymentReader
     public MethodDefOperationBind[] getServiceMethodBindings(Date versDateTime)
             throws DatastreamNotFoundException, ObjectIntegrityException,
             RepositoryConfigurationException, GeneralException {
-        return serviceMapper
-                .getMethodDefBindings(new InputSource(new ByteArrayInputStream(getWSDLDatastream(versDateTime).xmlContent)),
-                                      new InputSource(new ByteArrayInputStream(getMethodMapDatastream(versDateTime).xmlContent)));
+        DatastreamXMLMetadata wsdlDS = getWSDLDatastream(versDateTime);
+        DatastreamXMLMetadata mmapDS = getMethodMapDatastream(versDateTime);
+        String key = getVersionKey(wsdlDS) + " " + getVersionKey(mmapDS);
+        MethodDefOperationBind[] bindings = m_methodBindings.get(key);
+        if (bindings == null) {
+            bindings =
+                    new ServiceMapper(GetObjectPID())
+                            .getMethodDefBindings(new InputSource(new ByteArrayInputStream(wsdlDS.xmlContent)),
+                                                  new InputSource(new ByteArrayInputStream(mmapDS.xmlContent)));
+            m_methodBindings.put(key, bindings);
+        }
+        return bindings;
     }
 
     public DeploymentDSBindSpec getServiceDSInputSpec(Date versDateTime)
             throws DatastreamNotFoundException, ObjectIntegrityException,
             RepositoryConfigurationException, GeneralException {
-        return serviceMapper
-                .getDSInputSpec(new InputSource(new ByteArrayInputStream(getDSInputSpecDatastream(versDateTime).xmlContent)));
+        DatastreamXMLMetadata specDS = getDSInputSpecDatastream(versDateTime);
+        String key = getVersionKey(specDS);
+        DeploymentDSBindSpec spec = m_dsInputSpecs.get(key);
+        if (spec == null) {
+            spec =
+                    new ServiceMapper(GetObjectPID())
+                            .getDSInputSpec(new InputSource(new ByteArrayInputStream(specDS.xmlContent)));
+            m_dsInputSpecs.put(key, spec);
+        }
+        return spec;
     }
 
     public InputStream getServiceMethodsXML(Date versDateTime)
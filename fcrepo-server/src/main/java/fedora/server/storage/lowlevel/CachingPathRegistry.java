@@ -0,0 +1,214 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.storage.lowlevel;
+
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import fedora.server.errors.LowlevelStorageException;
+import fedora.server.errors.LowlevelStorageInconsistencyException;
+import fedora.server.errors.ObjectNotInLowlevelStorageException;
+
+/**
+ * A bounded, write-through cache in front of another <code>PathRegistry</code>.
+ * <p>
+ * Paths found by {@link #get(String)} are remembered, as are pids that were
+ * looked up and not found (which is what happens before every add), so
+ * repeated lookups don't go to the underlying registry. Every change is
+ * written to the underlying registry and then to the cache; this assumes
+ * nothing else changes the underlying registry while the cache is in use.
+ * <p>
+ * Entries are spread across independently-locked segments by pid hash, each
+ * of which drops its least recently used entries when full.
+ */
+public class CachingPathRegistry
+        extends PathRegistry {
+
+    /** Number of segments; must be a power of two. */
+    private static final int SEGMENTS = 16;
+
+    /** Cached in place of a path for pids known not to be registered. */
+    private static final String NOT_FOUND = new String("");
+
+    private final PathRegistry m_registry;
+
+    private final Segment[] m_segments;
+
+    /**
+     * Creates a cache in front of the given registry.
+     *
+     * @param registry
+     *        the registry to cache.
+     * @param configuration
+     *        the configuration the registry was created with.
+     * @param maxEntries
+     *        the maximum number of pids (found or not) to keep.
+     */
+    public CachingPathRegistry(PathRegistry registry,
+                               Map<String, ?> configuration,
+                               int maxEntries) {
+        super(configuration);
+        m_registry = registry;
+        int segmentEntries = Math.max(1, maxEntries / SEGMENTS);
+        m_segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            m_segments[i] = new Segment(segmentEntries);
+        }
+    }
+
+    @Override
+    public String get(String pid) throws LowlevelStorageException {
+        Segment segment = getSegment(pid);
+        int writes;
+        synchronized (segment) {
+            String path = segment.get(pid);
+            if (path == NOT_FOUND) {
+                throw new ObjectNotInLowlevelStorageException("no path in registry for ["
+                        + pid + "]");
+            } else if (path != null) {
+                return path;
+            }
+            writes = segment.m_writes;
+        }
+        try {
+            String path = m_registry.get(pid);
+            cache(segment, writes, pid, path);
+            return path;
+        } catch (ObjectNotInLowlevelStorageException e) {
+            cache(segment, writes, pid, NOT_FOUND);
+            throw e;
+        }
+    }
+
+    @Override
+    public void put(String pid, String path) throws LowlevelStorageException {
+        Segment segment = getSegment(pid);
+        boolean written = false;
+        try {
+            m_registry.put(pid, path);
+            written = true;
+        } finally {
+            synchronized (segment) {
+                segment.m_writes++;
+                if (written) {
+                    segment.put(pid, path);
+                } else {
+                    segment.remove(pid);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void remove(String pid) throws LowlevelStorageException {
+        Segment segment = getSegment(pid);
+        boolean written = false;
+        try {
+            m_registry.remove(pid);
+            written = true;
+        } finally {
+            synchronized (segment) {
+                segment.m_writes++;
+                if (written) {
+                    segment.put(pid, NOT_FOUND);
+                } else {
+                    segment.remove(pid);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void rebuild() throws LowlevelStorageException {
+        try {
+            m_registry.rebuild();
+        } finally {
+            clear();
+        }
+    }
+
+    @Override
+    public void auditFiles() throws LowlevelStorageException {
+        m_registry.auditFiles();
+    }
+
+    @Override
+    protected Enumeration<String> keys() throws LowlevelStorageException,
+            LowlevelStorageInconsistencyException {
+        return m_registry.keys();
+    }
+
+    /**
+     * Drops all cached entries.
+     */
+    public void clear() {
+        for (Segment segment : m_segments) {
+            synchronized (segment) {
+                segment.m_writes++;
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of pids (found or not) in the cache.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : m_segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    // caches the result of a lookup unless the pid's segment was written
+    // while the lookup was in progress, in which case it may be stale
+    private static void cache(Segment segment,
+                              int writes,
+                              String pid,
+                              String path) {
+        synchronized (segment) {
+            if (segment.m_writes == writes) {
+                segment.put(pid, path);
+            }
+        }
+    }
+
+    private Segment getSegment(String pid) {
+        int h = pid.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return m_segments[h & (SEGMENTS - 1)];
+    }
+
+    /**
+     * An access-ordered map that drops its eldest entry when full. All access
+     * is synchronized on the segment.
+     */
+    private static class Segment
+            extends LinkedHashMap<String, String> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int m_maxEntries;
+
+        /** Count of changes made since creation, to detect stale lookups. */
+        int m_writes;
+
+        Segment(int maxEntries) {
+            super(16, 0.75f, true);
+            m_maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > m_maxEntries;
+        }
+    }
+
+}
@@ -15,6 +15,7 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -59,15 +60,16 @@ public class DBPathRegistry
             LowlevelStorageInconsistencyException, LowlevelStorageException {
         String path = null;
         Connection connection = null;
-        Statement statement = null;
+        PreparedStatement statement = null;
         ResultSet rs = null;
         try {
             int paths = 0;
             connection = connectionPool.getConnection();
-            statement = connection.createStatement();
-            rs =
-                    statement.executeQuery("SELECT path FROM "
-                            + getRegistryName() + " WHERE token='" + pid + "'");
+            statement =
+                    connection.prepareStatement("SELECT path FROM "
+                            + getRegistryName() + " WHERE token=?");
+            statement.setString(1, pid);
+            rs = statement.executeQuery();
             for (; rs.next(); paths++) {
                 path = rs.getString(1);
             }
@@ -42,6 +42,9 @@ public class DefaultLowlevelStorage
 
     public static final String PATH_REGISTRY = "path_registry";
 
+    public static final String PATH_REGISTRY_CACHE_SIZE =
+            "path_registry_cache_size";
+
     private final Store objectStore;
 
     private final Store datastreamStore;
@@ -145,6 +148,8 @@ public class DefaultLowlevelStorage
             String filesystem = (String) configuration.get(FILESYSTEM);
             String pathAlgorithm = (String) configuration.get(PATH_ALGORITHM);
             String pathRegistry = (String) configuration.get(PATH_REGISTRY);
+            String cacheSize =
+                    (String) configuration.get(PATH_REGISTRY_CACHE_SIZE);
             //storeBase = (String)configuration.get("storeBase");
 
             Object[] parameters = new Object[] {configuration};
@@ -152,6 +157,7 @@ public class DefaultLowlevelStorage
             ClassLoader loader = getClass().getClassLoader();
             Class cclass;
             Constructor constructor;
+            PathRegistry registry;
             String failureReason = "";
             try {
                 failureReason = FILESYSTEM;
@@ -168,14 +174,23 @@ public class DefaultLowlevelStorage
                 failureReason = PATH_REGISTRY;
                 cclass = loader.loadClass(pathRegistry);
                 constructor = cclass.getConstructor(parameterTypes);
-                this.pathRegistry =
-                        (PathRegistry) constructor.newInstance(parameters);
+                registry = (PathRegistry) constructor.newInstance(parameters);
             } catch (Exception e) {
                 LowlevelStorageException wrapper =
                         new LowlevelStorageException(true, "couldn't set up "
                                 + failureReason + " for " + registryName, e);
                 throw wrapper;
             }
+
+            int maxCached = cacheSize == null ? 0 : Integer.parseInt(cacheSize);
+            if (maxCached > 0) {
+                this.pathRegistry =
+                        new CachingPathRegistry(registry,
+                                                configuration,
+                                                maxCached);
+            } else {
+                this.pathRegistry = registry;
+            }
         }
 
         /**
@@ -258,7 +273,7 @@ public class DefaultLowlevelStorage
             String filePath;
             File file = null;
             try {
-                filePath = pathRegistry.get(pid);
+                filePath = getStoredPath(pid);
             } catch (ObjectNotInLowlevelStorageException ffff) {
                 LowlevelStorageException noPath =
                         new LowlevelStorageException(false, "pid " + pid
@@ -292,7 +307,7 @@ public class DefaultLowlevelStorage
             File file;
 
             try {
-                filePath = pathRegistry.get(pid);
+                filePath = getStoredPath(pid);
             } catch (ObjectNotInLowlevelStorageException eReg) {
                 throw eReg;
             }
@@ -351,5 +366,21 @@ public class DefaultLowlevelStorage
             fileSystem.delete(file);
         }
 
+        /**
+         * Gets the path of a stored file. If the path algorithm always gives
+         * the same path for a pid and the file is there, the path registry
+         * isn't consulted.
+         */
+        private String getStoredPath(String pid)
+                throws LowlevelStorageException {
+            if (pathAlgorithm.isDeterministic()) {
+                String filePath = pathAlgorithm.get(pid);
+                if (new File(filePath).exists()) {
+                    return filePath;
+                }
+            }
+            return pathRegistry.get(pid);
+        }
+
     }
 }
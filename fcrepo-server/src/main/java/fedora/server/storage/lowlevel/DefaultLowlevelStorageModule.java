@@ -72,6 +72,23 @@ public class DefaultLowlevelStorageModule
                                                     getRole());
         }
 
+        // number of paths to cache in front of each path registry
+        String cacheSize =
+                getParameter(DefaultLowlevelStorage.PATH_REGISTRY_CACHE_SIZE);
+        if (cacheSize == null) {
+            cacheSize = "10000";
+        } else {
+            try {
+                if (Integer.parseInt(cacheSize) < 0) {
+                    throw new NumberFormatException("");
+                }
+            } catch (NumberFormatException nfe) {
+                throw new ModuleInitializationException(DefaultLowlevelStorage.PATH_REGISTRY_CACHE_SIZE
+                                                                + " must be a non-negative integer.",
+                                                        getRole());
+            }
+        }
+
         // get connectionPool from ConnectionPoolManager
         ConnectionPoolManager cpm =
                 (ConnectionPoolManager) getServer()
@@ -94,6 +111,8 @@ public class DefaultLowlevelStorageModule
         configuration.put(DefaultLowlevelStorage.FILESYSTEM, filesystem);
         configuration.put(DefaultLowlevelStorage.PATH_ALGORITHM, pathAlgorithm);
         configuration.put(DefaultLowlevelStorage.PATH_REGISTRY, pathRegistry);
+        configuration.put(DefaultLowlevelStorage.PATH_REGISTRY_CACHE_SIZE,
+                          cacheSize);
         configuration.put(DefaultLowlevelStorage.OBJECT_STORE_BASE,
                           objectStoreBase);
         configuration.put(DefaultLowlevelStorage.DATASTREAM_STORE_BASE,
@@ -192,7 +192,7 @@ public class GenericFileSystem
             }
 
             try {
-                fileInputStream = new FileInputStream(file);
+                fileInputStream = new LocalFileInputStream(file);
             } catch (IOException eCaughtOpenFile) {
                 throw new LowlevelStorageException(true,
                                                    "file "
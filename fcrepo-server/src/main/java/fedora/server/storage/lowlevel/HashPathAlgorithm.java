@@ -0,0 +1,48 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.storage.lowlevel;
+
+import java.io.File;
+
+import java.util.Map;
+
+import fedora.server.errors.LowlevelStorageException;
+import fedora.server.utilities.MD5Utility;
+
+/**
+ * A <code>PathAlgorithm</code> that puts each file two directories deep
+ * under the store base, in directories named for the first four hex digits
+ * of the MD5 hash of the pid (e.g. <code>base/3f/a2/demo_1</code>).
+ * <p>
+ * Because the path depends only on the pid, it can be computed again when
+ * the file is read, without consulting the path registry.
+ */
+public class HashPathAlgorithm
+        extends PathAlgorithm {
+
+    private static final String SEP = File.separator;
+
+    private final String storeBase;
+
+    public HashPathAlgorithm(Map<String, ?> configuration) {
+        super(configuration);
+        storeBase = (String) configuration.get("storeBase");
+    }
+
+    @Override
+    public final String get(String pid) throws LowlevelStorageException {
+        String hash = MD5Utility.getBase16Hash(pid);
+        return storeBase + SEP + hash.substring(0, 2) + SEP
+                + hash.substring(2, 4) + SEP + encode(pid);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isDeterministic() {
+        return true;
+    }
+}
@@ -0,0 +1,34 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.storage.lowlevel;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+
+/**
+ * A <code>FileInputStream</code> over stored content that tells which file
+ * it reads, so a container with sendfile support can send the content
+ * straight from the file rather than the servlet copying it through the heap.
+ */
+public class LocalFileInputStream
+        extends FileInputStream {
+
+    private final File m_file;
+
+    public LocalFileInputStream(File file)
+            throws FileNotFoundException {
+        super(file);
+        m_file = file;
+    }
+
+    /**
+     * Gets the file this stream reads.
+     */
+    public File getFile() {
+        return m_file;
+    }
+
+}
@@ -20,6 +20,16 @@ public abstract class PathAlgorithm {
 
     public abstract String get(String pid) throws LowlevelStorageException;
 
+    /**
+     * Tells whether {@link #get(String)} always gives the same path for a
+     * pid. If so, stored files can be found without the path registry.
+     *
+     * @return false, unless overridden.
+     */
+    public boolean isDeterministic() {
+        return false;
+    }
+
     public static String encode(String unencoded)
             throws LowlevelStorageException {
         try {
@@ -0,0 +1,82 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.storage.translation;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A threadsafe pool of idle deserializers for one format.
+ * <p>
+ * Deserializers are created from the prototype's <code>getInstance()</code>
+ * when none is idle. Only <code>SAXDODeserializer</code>s, which keep their
+ * parser and reset their own state at the start of each parse, are returned
+ * to the pool; any other deserializer is used once and dropped.
+ */
+class DODeserializerPool {
+
+    private final DODeserializer m_prototype;
+
+    private final boolean m_reusable;
+
+    private final int m_maxIdle;
+
+    private final ConcurrentLinkedQueue<DODeserializer> m_idle =
+            new ConcurrentLinkedQueue<DODeserializer>();
+
+    /** Approximate size of m_idle, which is costly to count. */
+    private final AtomicInteger m_idleCount = new AtomicInteger();
+
+    /**
+     * Creates a pool.
+     *
+     * @param prototype
+     *        the deserializer whose <code>getInstance()</code> creates the
+     *        pooled instances.
+     * @param maxIdle
+     *        the most idle instances to keep.
+     */
+    DODeserializerPool(DODeserializer prototype, int maxIdle) {
+        m_prototype = prototype;
+        m_reusable = prototype instanceof SAXDODeserializer;
+        m_maxIdle = maxIdle;
+    }
+
+    /**
+     * Gets an idle deserializer, or a new one if none is idle. The caller has
+     * exclusive use of it until it is given to {@link #release}.
+     */
+    DODeserializer borrow() {
+        DODeserializer des = m_idle.poll();
+        if (des != null) {
+            m_idleCount.decrementAndGet();
+            return des;
+        }
+        return m_prototype.getInstance();
+    }
+
+    /**
+     * Returns a deserializer obtained from {@link #borrow} once the caller is
+     * finished with it, whether or not its last parse succeeded.
+     */
+    void release(DODeserializer des) {
+        if (!m_reusable) {
+            return;
+        }
+        if (m_idleCount.incrementAndGet() <= m_maxIdle) {
+            m_idle.offer(des);
+        } else {
+            m_idleCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Gets the number of idle deserializers.
+     */
+    int getIdleCount() {
+        return m_idleCount.get();
+    }
+
+}
@@ -25,6 +25,8 @@ import fedora.server.utilities.DateUtility;
 import fedora.server.utilities.StreamUtility;
 import org.apache.log4j.Logger;
 
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
 import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
@@ -221,6 +223,14 @@ public abstract class DOTranslationUtility
     private static XMLInputFactory m_xmlInputFactory =
             XMLInputFactory.newInstance();
 
+    private static SAXParserFactory m_saxParserFactory =
+            SAXParserFactory.newInstance();
+
+    static {
+        m_saxParserFactory.setValidating(false);
+        m_saxParserFactory.setNamespaceAware(true);
+    }
+
     // initialize static class with stuff that's used by all DO Serializerers
     static {
         // get host port from system properties (for testing without server instance)
@@ -1000,6 +1010,24 @@ public abstract class DOTranslationUtility
         return records;
     }
 
+    /**
+     * Creates a non-validating, namespace-aware SAX parser from a factory
+     * that is shared, so the factory lookup is only done once.
+     *
+     * @return the parser.
+     * @throws RuntimeException
+     *         if the parser can't be created.
+     */
+    protected static SAXParser newSAXParser() {
+        try {
+            synchronized (m_saxParserFactory) {
+                return m_saxParserFactory.newSAXParser();
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Error initializing SAX parser", e);
+        }
+    }
+
     protected static List<AuditRecord> getAuditRecords(Reader auditTrail)
             throws XMLStreamException {
         XMLEventReader eventReader;
@@ -8,6 +8,8 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 
+import org.xml.sax.XMLFilter;
+
 import fedora.server.errors.ObjectIntegrityException;
 import fedora.server.errors.ServerException;
 import fedora.server.errors.StreamIOException;
@@ -52,6 +54,54 @@ public interface DOTranslator {
                      int transContext) throws ObjectIntegrityException,
             StreamIOException, UnsupportedTranslationException, ServerException;
 
+    /**
+     * Tells whether the deserializer for the given format can pass its parse
+     * events through an <code>XMLFilter</code>.
+     * 
+     * @param format
+     *        the format of the stream (typically a format URI).
+     * @return true if
+     *         {@link #deserialize(InputStream, DigitalObject, String, String, int, XMLFilter)}
+     *         may be used for the format.
+     * @see SAXDODeserializer
+     */
+    boolean supportsFilter(String format);
+
+    /**
+     * Deserializes the given stream, passing parse events through the given
+     * filter on their way to the deserializer.
+     * 
+     * @param in
+     *        the stream to read from (closed when finished).
+     * @param obj
+     *        the object to deserialize into.
+     * @param format
+     *        the format of the stream (typically a format URI).
+     * @param encoding
+     *        the character encoding if the format is text-based.
+     * @param transContext
+     *        the translation context.
+     * @param filter
+     *        the filter to interpose between the parser and the deserializer.
+     * @throws ObjectIntegrityException
+     *         if the stream does not properly encode an object, or the filter
+     *         aborts the parse.
+     * @throws StreamIOException
+     *         if there is an error reading from the stream.
+     * @throws UnsupportedTranslationException
+     *         if the deserializer for the format does not support filtering.
+     * @throws ServerException
+     *         if the translator is unable to deserialize for any other reason.
+     * @see #supportsFilter(String)
+     */
+    void deserialize(InputStream in,
+                     DigitalObject obj,
+                     String format,
+                     String encoding,
+                     int transContext,
+                     XMLFilter filter) throws ObjectIntegrityException,
+            StreamIOException, UnsupportedTranslationException, ServerException;
+
     /**
      * Serializes the given object.
      * 
@@ -9,9 +9,12 @@ import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 
+import org.xml.sax.XMLFilter;
+
 import fedora.server.errors.ObjectIntegrityException;
 import fedora.server.errors.ServerException;
 import fedora.server.errors.StreamIOException;
@@ -21,6 +24,9 @@ import fedora.server.storage.types.DigitalObject;
 /**
  * A threadsafe <code>DOTranslator</code> that uses a map of serializers and a
  * map of deserializers to do its job.
+ * <p>
+ * Deserializers that can be reused (see <code>SAXDODeserializer</code>) are
+ * pooled per format, so their parsers are not rebuilt for every object.
  * 
  * @author Chris Wilper
  */
@@ -31,12 +37,19 @@ public class DOTranslatorImpl
     private static final Logger LOG =
             Logger.getLogger(DOTranslatorImpl.class.getName());
 
+    /** The most idle deserializers to keep for each format. */
+    private static final int MAX_IDLE_DESERIALIZERS = 16;
+
     /** The DOSerializer map, keyed by format string. */
     private final Map<String, DOSerializer> m_serializers;
 
     /** The DODeserializer map, keyed by format string. */
     private final Map<String, DODeserializer> m_deserializers;
 
+    /** Pools of deserializer instances, keyed by format string. */
+    private final ConcurrentHashMap<String, DODeserializerPool> m_pools =
+            new ConcurrentHashMap<String, DODeserializerPool>();
+
     /**
      * Creates an instance.
      * 
@@ -71,8 +84,50 @@ public class DOTranslatorImpl
                 throw new UnsupportedTranslationException("No deserializer exists for format: "
                         + format);
             }
-            DODeserializer newDes = des.getInstance();
-            newDes.deserialize(in, obj, encoding, transContext);
+            DODeserializerPool pool = getPool(format, des);
+            DODeserializer newDes = pool.borrow();
+            try {
+                newDes.deserialize(in, obj, encoding, transContext);
+            } finally {
+                pool.release(newDes);
+            }
+        } catch (UnsupportedEncodingException uee) {
+            throw new UnsupportedTranslationException("Deserializer for format: "
+                    + format + " does not support encoding: " + encoding);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean supportsFilter(String format) {
+        return m_deserializers.get(format) instanceof SAXDODeserializer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void deserialize(InputStream in,
+                            DigitalObject obj,
+                            String format,
+                            String encoding,
+                            int transContext,
+                            XMLFilter filter) throws ObjectIntegrityException,
+            StreamIOException, UnsupportedTranslationException, ServerException {
+        try {
+            LOG.debug("Grabbing filtering deserializer for: " + format);
+            DODeserializer des = m_deserializers.get(format);
+            if (!(des instanceof SAXDODeserializer)) {
+                throw new UnsupportedTranslationException("No filtering deserializer exists for format: "
+                        + format);
+            }
+            DODeserializerPool pool = getPool(format, des);
+            SAXDODeserializer newDes = (SAXDODeserializer) pool.borrow();
+            try {
+                newDes.deserialize(in, obj, encoding, transContext, filter);
+            } finally {
+                pool.release(newDes);
+            }
         } catch (UnsupportedEncodingException uee) {
             throw new UnsupportedTranslationException("Deserializer for format: "
                     + format + " does not support encoding: " + encoding);
@@ -103,4 +158,20 @@ public class DOTranslatorImpl
         }
     }
 
+    //---
+    // Instance helpers
+    //---
+
+    private DODeserializerPool getPool(String format, DODeserializer des) {
+        DODeserializerPool pool = m_pools.get(format);
+        if (pool == null) {
+            pool = new DODeserializerPool(des, MAX_IDLE_DESERIALIZERS);
+            DODeserializerPool existing = m_pools.putIfAbsent(format, pool);
+            if (existing != null) {
+                pool = existing;
+            }
+        }
+        return pool;
+    }
+
 }
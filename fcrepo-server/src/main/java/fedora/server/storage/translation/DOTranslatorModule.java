@@ -13,6 +13,8 @@ import java.util.Map;
 
 import org.apache.log4j.Logger;
 
+import org.xml.sax.XMLFilter;
+
 import fedora.server.Module;
 import fedora.server.Server;
 import fedora.server.errors.ModuleInitializationException;
@@ -127,6 +129,31 @@ public class DOTranslatorModule
                 .deserialize(in, out, format, encoding, transContext);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public boolean supportsFilter(String format) {
+        return m_wrappedTranslator.supportsFilter(format);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void deserialize(InputStream in,
+                            DigitalObject out,
+                            String format,
+                            String encoding,
+                            int transContext,
+                            XMLFilter filter) throws ObjectIntegrityException,
+            StreamIOException, UnsupportedTranslationException, ServerException {
+        m_wrappedTranslator.deserialize(in,
+                                        out,
+                                        format,
+                                        encoding,
+                                        transContext,
+                                        filter);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -23,12 +23,13 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 
 import org.apache.log4j.Logger;
 
 import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLFilter;
 import org.xml.sax.helpers.DefaultHandler;
 
 import fedora.common.Constants;
@@ -62,7 +63,7 @@ import fedora.utilities.Base64;
 @SuppressWarnings("deprecation")
 public class FOXMLDODeserializer
         extends DefaultHandler
-        implements DODeserializer, Constants {
+        implements SAXDODeserializer, Constants {
 
     /**
      * The format this deserializer will read if unspecified at construction.
@@ -227,42 +228,65 @@ public class FOXMLDODeserializer
                             String encoding,
                             int transContext) throws ObjectIntegrityException,
             StreamIOException, UnsupportedEncodingException {
+        deserialize(in, obj, encoding, transContext, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void deserialize(InputStream in,
+                            DigitalObject obj,
+                            String encoding,
+                            int transContext,
+                            XMLFilter filter) throws ObjectIntegrityException,
+            StreamIOException, UnsupportedEncodingException {
         LOG.debug("Deserializing " + m_format.uri + " for transContext: "
                 + transContext);
 
-        // initialize sax for this parse
-        try {
-            SAXParserFactory spf = SAXParserFactory.newInstance();
-            spf.setValidating(false);
-            spf.setNamespaceAware(true);
-            m_parser = spf.newSAXParser();
-        } catch (Exception e) {
-            throw new RuntimeException("Error initializing SAX parser", e);
+        // initialize sax for this parse, reusing this instance's parser
+        if (m_parser == null) {
+            m_parser = DOTranslationUtility.newSAXParser();
+        } else {
+            m_parser.reset();
         }
 
-        m_obj = obj;
-        m_obj.setLabel("");
-        m_obj.setOwnerId("");
-        m_characterEncoding = encoding;
-        m_transContext = transContext;
-        initialize();
         try {
-            m_parser.parse(in, this);
-        } catch (IOException ioe) {
-            throw new StreamIOException("low-level stream io problem occurred "
-                    + "while sax was parsing this object.");
-        } catch (SAXException se) {
-            throw new ObjectIntegrityException("FOXML IO stream was bad : "
-                    + se.getMessage(), se);
-        }
-        LOG.debug("Just finished parse.");
+            m_obj = obj;
+            m_obj.setLabel("");
+            m_obj.setOwnerId("");
+            m_characterEncoding = encoding;
+            m_transContext = transContext;
+            initialize();
+            try {
+                if (filter == null) {
+                    m_parser.parse(in, this);
+                } else {
+                    filter.setParent(m_parser.getXMLReader());
+                    filter.setContentHandler(this);
+                    filter.setErrorHandler(this);
+                    filter.setDTDHandler(this);
+                    filter.setEntityResolver(this);
+                    filter.parse(new InputSource(in));
+                }
+            } catch (IOException ioe) {
+                throw new StreamIOException("low-level stream io problem occurred "
+                        + "while sax was parsing this object.");
+            } catch (SAXException se) {
+                throw new ObjectIntegrityException("FOXML IO stream was bad : "
+                        + se.getMessage(), se);
+            }
+            LOG.debug("Just finished parse.");
 
-        if (!m_rootElementFound) {
-            throw new ObjectIntegrityException("FOXMLDODeserializer: Input stream is not valid FOXML."
-                    + " The digitalObject root element was not detected.");
-        }
+            if (!m_rootElementFound) {
+                throw new ObjectIntegrityException("FOXMLDODeserializer: Input stream is not valid FOXML."
+                        + " The digitalObject root element was not detected.");
+            }
 
-        DOTranslationUtility.normalizeDatastreams(m_obj, m_transContext, m_characterEncoding);
+            DOTranslationUtility.normalizeDatastreams(m_obj, m_transContext, m_characterEncoding);
+        } finally {
+            // don't hold on to the object while waiting to be reused
+            release();
+        }
     }
 
     //---
@@ -948,6 +972,7 @@ public class FOXMLDODeserializer
         m_objPropertyName = "";
         m_readingBinaryContent = false; // indicates reading base64-encoded content
         m_inXMLMetadata = false;
+        m_xmlDataLevel = 0;
         m_prefixMap = new HashMap<String, String>();
         m_localPrefixMap = new HashMap<String, String>();
         m_prefixList = new ArrayList<String>();
@@ -988,4 +1013,18 @@ public class FOXMLDODeserializer
         m_auditDate = "";
         m_auditJustification = "";
     }
+
+    /**
+     * Drops references to the object and to content read for it, so they
+     * aren't kept while this instance waits to be reused.
+     */
+    private void release() {
+        m_obj = null;
+        m_elementContent = null;
+        m_dsXMLBuffer = null;
+        m_diss = null;
+        m_dsBindings = null;
+        m_auditRec = null;
+        m_binaryContentTempFile = null;
+    }
 }
@@ -22,12 +22,13 @@ import java.util.Iterator;
 import java.util.List;
 
 import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 
 import org.apache.log4j.Logger;
 
 import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLFilter;
 import org.xml.sax.helpers.DefaultHandler;
 
 import fedora.common.Constants;
@@ -62,7 +63,7 @@ import fedora.utilities.Base64;
 @SuppressWarnings("deprecation")
 public class METSFedoraExtDODeserializer
         extends DefaultHandler
-        implements Constants, DODeserializer {
+        implements Constants, SAXDODeserializer {
 
     /**
      * The format this deserializer will read if unspecified at construction.
@@ -259,59 +260,81 @@ public class METSFedoraExtDODeserializer
                             String encoding,
                             int transContext) throws ObjectIntegrityException,
             StreamIOException, UnsupportedEncodingException {
+        deserialize(in, obj, encoding, transContext, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void deserialize(InputStream in,
+                            DigitalObject obj,
+                            String encoding,
+                            int transContext,
+                            XMLFilter filter) throws ObjectIntegrityException,
+            StreamIOException, UnsupportedEncodingException {
         LOG.debug("Deserializing " + m_format.uri + " for transContext: "
                 + transContext);
 
-        // initialize sax for this parse
-        try {
-            SAXParserFactory spf = SAXParserFactory.newInstance();
-            spf.setValidating(false);
-            spf.setNamespaceAware(true);
-            m_parser = spf.newSAXParser();
-        } catch (Exception e) {
-            throw new RuntimeException("Error initializing SAX parser", e);
+        // initialize sax for this parse, reusing this instance's parser
+        if (m_parser == null) {
+            m_parser = DOTranslationUtility.newSAXParser();
+        } else {
+            m_parser.reset();
         }
 
-        m_obj = obj;
-        m_obj.setOwnerId("");
-        m_obj.setLabel("");
-        m_characterEncoding = encoding;
-        m_transContext = transContext;
-        initialize();
         try {
-            m_parser.parse(in, this);
-        } catch (IOException ioe) {
-            throw new StreamIOException("Low-level stream IO problem occurred "
-                    + "while SAX parsing this object.");
-        } catch (SAXException se) {
-            throw new ObjectIntegrityException("METS stream was bad : "
-                    + se.getMessage());
-        }
-        if (!m_rootElementFound) {
-            throw new ObjectIntegrityException("METS root element not found");
-        }
+            m_obj = obj;
+            m_obj.setOwnerId("");
+            m_obj.setLabel("");
+            m_characterEncoding = encoding;
+            m_transContext = transContext;
+            initialize();
+            try {
+                if (filter == null) {
+                    m_parser.parse(in, this);
+                } else {
+                    filter.setParent(m_parser.getXMLReader());
+                    filter.setContentHandler(this);
+                    filter.setErrorHandler(this);
+                    filter.setDTDHandler(this);
+                    filter.setEntityResolver(this);
+                    filter.parse(new InputSource(in));
+                }
+            } catch (IOException ioe) {
+                throw new StreamIOException("Low-level stream IO problem occurred "
+                        + "while SAX parsing this object.");
+            } catch (SAXException se) {
+                throw new ObjectIntegrityException("METS stream was bad : "
+                        + se.getMessage());
+            }
+            if (!m_rootElementFound) {
+                throw new ObjectIntegrityException("METS root element not found");
+            }
 
-        // POST-PROCESSING...
-        // convert audit records to contain component ids
-        convertAudits();
-        // preserve ADMID and DMDID relationships in a RELS-INT
-        // datastream, if one does not already exist.
-        createRelsInt();
-
-        DOTranslationUtility.normalizeDatastreams(m_obj,
-                                                  m_transContext,
-                                                  m_characterEncoding);
-
-        if (m_format.equals(METS_EXT1_0)) {
-            // DISSEMINATORS... put disseminators in the instantiated digital
-            // object
-            Iterator<Disseminator> dissemIter = m_dissems.values().iterator();
-            while (dissemIter.hasNext()) {
-                Disseminator diss = dissemIter.next();
-                m_obj.disseminators(diss.dissID).add(diss);
+            // POST-PROCESSING...
+            // convert audit records to contain component ids
+            convertAudits();
+            // preserve ADMID and DMDID relationships in a RELS-INT
+            // datastream, if one does not already exist.
+            createRelsInt();
+
+            DOTranslationUtility.normalizeDatastreams(m_obj,
+                                                      m_transContext,
+                                                      m_characterEncoding);
+
+            if (m_format.equals(METS_EXT1_0)) {
+                // DISSEMINATORS... put disseminators in the instantiated digital
+                // object
+                Iterator<Disseminator> dissemIter = m_dissems.values().iterator();
+                while (dissemIter.hasNext()) {
+                    Disseminator diss = dissemIter.next();
+                    m_obj.disseminators(diss.dissID).add(diss);
+                }
             }
+        } finally {
+            // don't hold on to the object while waiting to be reused
+            release();
         }
-
     }
 
     //---
@@ -1231,6 +1254,10 @@ public class METSFedoraExtDODeserializer
         // temporary variables and state variables
         m_rootElementFound = false;
         m_inXMLMetadata = false;
+        m_readingContent = false;
+        m_readingBinaryContent = false;
+        m_xmlDataLevel = 0;
+        hasRels = false;
         m_prefixMap = new HashMap<String, String>();
         m_localPrefixMap = new HashMap<String, String>();
         m_prefixList = new ArrayList<String>();
@@ -1275,6 +1302,24 @@ public class METSFedoraExtDODeserializer
         m_relsBuffer = null;
     }
 
+    /**
+     * Drops references to the object and to content read for it, so they
+     * aren't kept while this instance waits to be reused.
+     */
+    private void release() {
+        m_obj = null;
+        m_elementContent = null;
+        m_dsXMLBuffer = null;
+        m_auditBuffer = null;
+        m_relsBuffer = null;
+        m_diss = null;
+        m_dissems = null;
+        m_dsADMIDs = null;
+        m_dsDMDIDs = null;
+        m_AuditIdToComponentId = null;
+        m_binaryContentTempFile = null;
+    }
+
     //---
     // Static helpers
     //---
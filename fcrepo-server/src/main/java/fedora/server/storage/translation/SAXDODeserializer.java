@@ -0,0 +1,60 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.storage.translation;
+
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+import org.xml.sax.XMLFilter;
+
+import fedora.server.errors.ObjectIntegrityException;
+import fedora.server.errors.StreamIOException;
+import fedora.server.storage.types.DigitalObject;
+
+/**
+ * A <code>DODeserializer</code> that reads its format with a SAX parser, and
+ * can let an <code>XMLFilter</code> see the parse events on their way to the
+ * deserializer. This allows other work on the serialization, such as
+ * validation, to be done in the same pass that builds the object.
+ * <p>
+ * An instance may be used for any number of deserializations, one at a time:
+ * each call resets the instance and its parser, and releases the object when
+ * finished, even if the previous call failed. Instances are not threadsafe.
+ */
+public interface SAXDODeserializer
+        extends DODeserializer {
+
+    /**
+     * Deserializes the given stream, passing parse events through the given
+     * filter.
+     *
+     * @param in
+     *        the stream to read from (closed when finished).
+     * @param obj
+     *        the object to deserialize into.
+     * @param encoding
+     *        the character encoding if the format is text-based.
+     * @param transContext
+     *        the translation context.
+     * @param filter
+     *        the filter to interpose between the parser and the deserializer.
+     *        Its parent and handlers will be set by this method.
+     * @throws ObjectIntegrityException
+     *         if the stream does not properly encode an object, or the filter
+     *         aborts the parse.
+     * @throws StreamIOException
+     *         if there is an error reading from the stream.
+     * @throws UnsupportedEncodingException
+     *         if the encoding is not supported by the JVM.
+     * @see DODeserializer#deserialize(InputStream, DigitalObject, String, int)
+     */
+    public void deserialize(InputStream in,
+                            DigitalObject obj,
+                            String encoding,
+                            int transContext,
+                            XMLFilter filter) throws ObjectIntegrityException,
+            StreamIOException, UnsupportedEncodingException;
+
+}
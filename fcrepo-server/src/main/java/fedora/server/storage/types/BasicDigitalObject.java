@@ -4,9 +4,6 @@
  */
 package fedora.server.storage.types;
 
-import java.net.URI;
-import java.net.URISyntaxException;
-
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
@@ -19,15 +16,16 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.jrdf.graph.Literal;
 import org.jrdf.graph.ObjectNode;
 import org.jrdf.graph.PredicateNode;
 import org.jrdf.graph.SubjectNode;
+import org.jrdf.graph.URIReference;
 
 import fedora.common.Constants;
 import fedora.common.Models;
 import fedora.common.PID;
 import fedora.common.rdf.JRDF;
-import fedora.common.rdf.SimpleURIReference;
 
 import fedora.server.errors.ServerException;
 import fedora.server.storage.RDFRelationshipReader;
@@ -52,7 +50,8 @@ public class BasicDigitalObject
 
     private String m_label;
 
-    private Set<RelationshipTuple> m_rels;
+    /** Relationships, read when first needed; null if not read. */
+    private volatile RelationshipIndex m_relsIndex;
 
     private Date m_createDate;
 
@@ -97,6 +96,7 @@ public class BasicDigitalObject
 
     public void setPid(String pid) {
         m_pid = pid;
+        m_relsIndex = null;
     }
 
     public String getState() {
@@ -305,104 +305,130 @@ public class BasicDigitalObject
 
     // assumes m_pid as subject; ie RELS-EXT only
     public boolean hasRelationship(PredicateNode predicate, ObjectNode object) {
-        return hasRelationship(PID.toURIReference(m_pid), predicate, object);
+        RelationshipIndex index = getRelationshipIndex();
+        return hasMatch(index, index.selfURI, predicate, object);
     }
 
     public boolean hasRelationship(SubjectNode subject, PredicateNode predicate, ObjectNode object) {
-        /* Brute force */
-        return getRelationships(subject, predicate, object).size() > 0;
+        if (subject != null && !(subject instanceof URIReference)) {
+            return false;
+        }
+        return hasMatch(getRelationshipIndex(),
+                        getURI((URIReference) subject),
+                        predicate,
+                        object);
     }
 
     // assume m_pid as subject; ie RELS-EXT only
     public Set<RelationshipTuple> getRelationships(PredicateNode predicate,
                                                    ObjectNode object) {
-        return getRelationships(PID.toURIReference(m_pid), predicate, object);
+        RelationshipIndex index = getRelationshipIndex();
+        return findMatches(index, index.selfURI, predicate, object);
     }
 
     public Set<RelationshipTuple> getRelationships() {
-        return getRelationships(null, null, null);
+        return getRelationshipIndex().all;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The returned set may be shared, and must not be modified.
+     */
     public Set<RelationshipTuple> getRelationships(SubjectNode subject,
                                                    PredicateNode predicate,
                                                    ObjectNode object) {
-        Set<RelationshipTuple> foundRels = new HashSet<RelationshipTuple>();
-
-        if (m_rels == null) {
-            readRels();
+        if (subject != null && !(subject instanceof URIReference)) {
+            return Collections.emptySet();
         }
+        return findMatches(getRelationshipIndex(),
+                           getURI((URIReference) subject),
+                           predicate,
+                           object);
+    }
 
-        boolean basicExplicit = false;
-
-        // Iterate explicit relationships, finding matches and
-        // determining whether the object has an explicit basic cmodel.
-        for (RelationshipTuple t : m_rels) {
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The returned list is shared, and must not be modified.
+     */
+    public List<String> getContentModels() {
+        return getRelationshipIndex().contentModels;
+    }
 
-            // Do any hasModel rels point to a basic cmodel?
-            if (Constants.MODEL.HAS_MODEL.uri.equals(t.predicate)
-                    && Models.isBasicModel(t.object)) {
-                basicExplicit = true;
-            }
+    public boolean hasContentModel(ObjectNode contentModel) {
+        return hasRelationship(Constants.MODEL.HAS_MODEL,contentModel);
+    }
 
-            // Find matching relationships from those that are explicit
-            if (subject != null) {
-                if (!JRDF.sameSubject(subject, t.subject)) {
-                    continue;
-                }
-            }
-            if (predicate != null) {
-                if (!JRDF.samePredicate(predicate, t.predicate)) {
-                    continue;
-                }
+    /**
+     * Get the relationships that match the given subject URI, predicate and
+     * object (each of which may be null to match any), using the index entry
+     * as is when no further filtering is needed.
+     */
+    private static Set<RelationshipTuple> findMatches(RelationshipIndex index,
+                                                      String subjectURI,
+                                                      PredicateNode predicate,
+                                                      ObjectNode object) {
+        String predicateURI = getURI((URIReference) predicate);
+        if (object == null) {
+            if (subjectURI != null && predicateURI != null) {
+                return index.get(subjectURI, predicateURI);
+            } else if (subjectURI == null && predicateURI == null) {
+                return index.all;
             }
-            if (object != null) {
-                if (!JRDF.sameObject(object,
-                                     t.object,
-                                     t.isLiteral,
-                                     t.datatype,
-                                     null)) {
-                    continue;
-                }
-
+        }
+        Set<RelationshipTuple> foundRels = new HashSet<RelationshipTuple>();
+        for (RelationshipTuple t : index.candidates(subjectURI,
+                                                    predicateURI,
+                                                    object)) {
+            if (matches(t, subjectURI, predicateURI, object)) {
+                foundRels.add(t);
             }
-            foundRels.add(t);
         }
+        return foundRels;
+    }
 
-        // If necessary, add the current basic cmodel to the set of matches
-        try {
-            if (!basicExplicit
-                    && (subject == null ||
-                            JRDF.sameSubject(subject, new SimpleURIReference(new URI(PID.toURI(m_pid)))))
-                    && (predicate == null ||
-                        JRDF.samePredicate(predicate, Constants.MODEL.HAS_MODEL))
-                    && (object == null ||
-                        JRDF.sameObject(object, Models.FEDORA_OBJECT_CURRENT))) {
-                foundRels.add(
-                        new RelationshipTuple(Constants.FEDORA.uri + m_pid,
-                                              Constants.MODEL.HAS_MODEL.uri,
-                                              Models.FEDORA_OBJECT_CURRENT.uri,
-                                              false,
-                                              null));
+    private static boolean hasMatch(RelationshipIndex index,
+                                    String subjectURI,
+                                    PredicateNode predicate,
+                                    ObjectNode object) {
+        String predicateURI = getURI((URIReference) predicate);
+        for (RelationshipTuple t : index.candidates(subjectURI,
+                                                    predicateURI,
+                                                    object)) {
+            if (matches(t, subjectURI, predicateURI, object)) {
+                return true;
             }
-        } catch (URISyntaxException e) {
-            // assume that m_pid is a valid pid
         }
-
-        return foundRels;
+        return false;
     }
 
-    public List<String> getContentModels() {
-        Set<RelationshipTuple> cmTubles = getRelationships(Constants.MODEL.HAS_MODEL,
-                                                           null);
-        List<String> cms = new ArrayList<String>();
-        for (RelationshipTuple cmTuble:cmTubles){
-            cms.add(cmTuble.object);
+    private static boolean matches(RelationshipTuple t,
+                                   String subjectURI,
+                                   String predicateURI,
+                                   ObjectNode object) {
+        if (subjectURI != null && !subjectURI.equals(t.subject)) {
+            return false;
+        }
+        if (predicateURI != null && !predicateURI.equals(t.predicate)) {
+            return false;
         }
-        return cms;
+        if (object != null
+                && !JRDF.sameObject(object,
+                                    t.object,
+                                    t.isLiteral,
+                                    t.datatype,
+                                    null)) {
+            return false;
+        }
+        return true;
     }
 
-    public boolean hasContentModel(ObjectNode contentModel) {
-        return hasRelationship(Constants.MODEL.HAS_MODEL,contentModel);
+    private static String getURI(URIReference ref) {
+        if (ref == null) {
+            return null;
+        }
+        return ref.getURI().toString();
     }
 
     /**
@@ -429,11 +455,19 @@ public class BasicDigitalObject
         return start + newNum;
     }
     /**
-     * read relationships from RELS-EXT and RELS-INT datastreams
+     * Get the relationships index, reading relationships from the RELS-EXT
+     * and RELS-INT datastreams if they haven't been read since they last
+     * changed.
      */
-    private void readRels() {
-        m_rels = getRels("RELS-EXT");
-        m_rels.addAll(getRels("RELS-INT"));
+    private RelationshipIndex getRelationshipIndex() {
+        RelationshipIndex index = m_relsIndex;
+        if (index == null) {
+            Set<RelationshipTuple> rels = getRels("RELS-EXT");
+            rels.addAll(getRels("RELS-INT"));
+            index = new RelationshipIndex(PID.toURI(m_pid), rels);
+            m_relsIndex = index;
+        }
+        return index;
     }
 
     /**
@@ -508,7 +542,135 @@ public class BasicDigitalObject
 
         private void invalidateIfLatestRels(Datastream d) {
             if ((d.DatastreamID.equals(RELS_EXT) || d.DatastreamID.equals(RELS_INT))&& isLatestVersion(d)) {
-                m_rels = null;
+                m_relsIndex = null;
+            }
+        }
+    }
+
+    /**
+     * The relationships of an object, including the implied basic content
+     * model if no basic model is explicit, indexed by subject and predicate
+     * and by object. The sets it gives out are shared and unmodifiable.
+     */
+    private static class RelationshipIndex {
+
+        public final String selfURI;
+
+        public final Set<RelationshipTuple> all;
+
+        public final List<String> contentModels;
+
+        private final Map<String, Map<String, Set<RelationshipTuple>>> m_bySubject =
+                new HashMap<String, Map<String, Set<RelationshipTuple>>>();
+
+        private final Map<String, Set<RelationshipTuple>> m_byObject =
+                new HashMap<String, Set<RelationshipTuple>>();
+
+        public RelationshipIndex(String selfURI,
+                                 Set<RelationshipTuple> explicitRels) {
+            this.selfURI = selfURI;
+            Set<RelationshipTuple> rels =
+                    new LinkedHashSet<RelationshipTuple>(explicitRels);
+
+            // Add the current basic cmodel unless one is explicit
+            boolean basicExplicit = false;
+            for (RelationshipTuple t : explicitRels) {
+                if (Constants.MODEL.HAS_MODEL.uri.equals(t.predicate)
+                        && Models.isBasicModel(t.object)) {
+                    basicExplicit = true;
+                    break;
+                }
+            }
+            if (!basicExplicit) {
+                rels.add(new RelationshipTuple(selfURI,
+                                               Constants.MODEL.HAS_MODEL.uri,
+                                               Models.FEDORA_OBJECT_CURRENT.uri,
+                                               false,
+                                               null));
+            }
+
+            List<String> models = new ArrayList<String>();
+            for (RelationshipTuple t : rels) {
+                Map<String, Set<RelationshipTuple>> byPredicate =
+                        m_bySubject.get(t.subject);
+                if (byPredicate == null) {
+                    byPredicate = new HashMap<String, Set<RelationshipTuple>>();
+                    m_bySubject.put(t.subject, byPredicate);
+                }
+                add(byPredicate, t.predicate, t);
+                add(m_byObject, t.object, t);
+                if (selfURI.equals(t.subject)
+                        && Constants.MODEL.HAS_MODEL.uri.equals(t.predicate)) {
+                    models.add(t.object);
+                }
+            }
+            for (Map<String, Set<RelationshipTuple>> byPredicate : m_bySubject
+                    .values()) {
+                freeze(byPredicate);
+            }
+            freeze(m_byObject);
+            all = Collections.unmodifiableSet(rels);
+            contentModels = Collections.unmodifiableList(models);
+        }
+
+        /**
+         * Get the relationships with the given subject and predicate.
+         */
+        public Set<RelationshipTuple> get(String subjectURI,
+                                          String predicateURI) {
+            Map<String, Set<RelationshipTuple>> byPredicate =
+                    m_bySubject.get(subjectURI);
+            if (byPredicate != null) {
+                Set<RelationshipTuple> rels = byPredicate.get(predicateURI);
+                if (rels != null) {
+                    return rels;
+                }
+            }
+            return Collections.emptySet();
+        }
+
+        /**
+         * Get the smallest indexed set of relationships that includes all
+         * those matching the given subject, predicate and object (each of
+         * which may be null).
+         */
+        public Set<RelationshipTuple> candidates(String subjectURI,
+                                                 String predicateURI,
+                                                 ObjectNode object) {
+            if (subjectURI != null && predicateURI != null) {
+                return get(subjectURI, predicateURI);
+            }
+            String objectKey = null;
+            if (object instanceof URIReference) {
+                objectKey = ((URIReference) object).getURI().toString();
+            } else if (object instanceof Literal) {
+                objectKey = ((Literal) object).getLexicalForm();
+            }
+            if (objectKey != null) {
+                Set<RelationshipTuple> rels = m_byObject.get(objectKey);
+                if (rels != null) {
+                    return rels;
+                }
+                return Collections.emptySet();
+            }
+            return all;
+        }
+
+        private static void add(Map<String, Set<RelationshipTuple>> map,
+                                String key,
+                                RelationshipTuple t) {
+            Set<RelationshipTuple> rels = map.get(key);
+            if (rels == null) {
+                rels = new LinkedHashSet<RelationshipTuple>();
+                map.put(key, rels);
+            }
+            rels.add(t);
+        }
+
+        private static void freeze(Map<String, Set<RelationshipTuple>> map) {
+            for (Map.Entry<String, Set<RelationshipTuple>> entry : map
+                    .entrySet()) {
+                entry.setValue(Collections.unmodifiableSet(entry.getValue()));
             }
         }
     }
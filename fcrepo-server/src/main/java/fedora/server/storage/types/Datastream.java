@@ -164,7 +164,7 @@ public class Datastream {
         return false;
     }
 
-    private String computeChecksum(String csType) {
+    protected String computeChecksum(String csType) {
         LOG.debug("checksumType is " + csType);
         String checksum = "none";
         if (csType == null) {
@@ -4,12 +4,10 @@
  */
 package fedora.server.storage.types;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -61,6 +59,30 @@ public class DatastreamXMLMetadata
 
     private final String m_encoding;
 
+    /** The last checksum computed, and the content it was computed from. */
+    private volatile ChecksumMemo m_checksumMemo;
+
+    /**
+     * Parsers for canonicalizing content, one per thread since
+     * DocumentBuilders aren't thread-safe but are reusable.
+     */
+    private static final ThreadLocal<DocumentBuilder> s_builders =
+            new ThreadLocal<DocumentBuilder>() {
+
+                @Override
+                protected DocumentBuilder initialValue() {
+                    DocumentBuilderFactory factory =
+                            DocumentBuilderFactory.newInstance();
+                    factory.setNamespaceAware(true);
+                    try {
+                        return factory.newDocumentBuilder();
+                    } catch (ParserConfigurationException e) {
+                        throw new RuntimeException("Unable to create "
+                                + "DocumentBuilder", e);
+                    }
+                }
+            };
+
     public DatastreamXMLMetadata() {
         m_encoding = "UTF-8";
     }
@@ -80,6 +102,11 @@ public class DatastreamXMLMetadata
             }
         }
         ds.DSMDClass = DSMDClass;
+        ChecksumMemo memo = m_checksumMemo;
+        if (memo != null && memo.content == xmlContent) {
+            ds.m_checksumMemo =
+                    new ChecksumMemo(ds.xmlContent, memo.type, memo.checksum);
+        }
         return ds;
     }
 
@@ -88,9 +115,30 @@ public class DatastreamXMLMetadata
         return new ByteArrayInputStream(xmlContent);
     }
 
+    /**
+     * Computes the checksum of the canonical form of the content, or returns
+     * the last one computed if neither the content nor the checksum type have
+     * changed since. Content is considered changed when
+     * <code>xmlContent</code> is assigned a new array; it should not be
+     * modified in place.
+     */
+    @Override
+    protected String computeChecksum(String csType) {
+        byte[] content = xmlContent;
+        ChecksumMemo memo = m_checksumMemo;
+        if (memo != null && memo.content == content
+                && memo.type.equals(csType)) {
+            return memo.checksum;
+        }
+        String checksum = super.computeChecksum(csType);
+        if (!CHECKSUM_IOEXCEPTION.equals(checksum)) {
+            m_checksumMemo = new ChecksumMemo(content, csType, checksum);
+        }
+        return checksum;
+    }
+
     @Override
     public InputStream getContentStreamForChecksum() {
-        BufferedReader br;
         try {
             ByteArrayOutputStream outStream = new ByteArrayOutputStream();
             OutputFormat fmt = new OutputFormat("XML", "UTF-8", false);
@@ -98,31 +146,44 @@ public class DatastreamXMLMetadata
             fmt.setLineWidth(0);
             fmt.setPreserveSpace(false);
             XMLSerializer ser = new XMLSerializer(outStream, fmt);
-            DocumentBuilderFactory factory =
-                    DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document doc = builder.parse(new ByteArrayInputStream(xmlContent));
+            Document doc =
+                    s_builders.get()
+                            .parse(new ByteArrayInputStream(xmlContent));
             ser.serialize(doc);
 
-            br =
-                    new BufferedReader(new InputStreamReader(new ByteArrayInputStream(outStream
-                                                                     .toByteArray()),
-                                                             m_encoding));
-            String line;
-            StringBuffer buf = new StringBuffer();
-            while ((line = br.readLine()) != null) {
-                line = line.trim();
-                buf = buf.append(line);
+            // join the lines, trimmed
+            String serialized = outStream.toString(m_encoding);
+            int len = serialized.length();
+            StringBuilder buf = new StringBuilder(len);
+            int start = 0;
+            while (start < len) {
+                int end = start;
+                char c;
+                while (end < len && (c = serialized.charAt(end)) != '\n'
+                        && c != '\r') {
+                    end++;
+                }
+                int lineEnd = end;
+                while (start < lineEnd && serialized.charAt(start) <= ' ') {
+                    start++;
+                }
+                while (lineEnd > start
+                        && serialized.charAt(lineEnd - 1) <= ' ') {
+                    lineEnd--;
+                }
+                buf.append(serialized, start, lineEnd);
+                if (end + 1 < len && serialized.charAt(end) == '\r'
+                        && serialized.charAt(end + 1) == '\n') {
+                    end++;
+                }
+                start = end + 1;
             }
-            String bufStr = buf.toString();
-            return new ByteArrayInputStream(bufStr.getBytes(m_encoding));
+            return new ByteArrayInputStream(buf.toString()
+                    .getBytes(m_encoding));
         } catch (UnsupportedEncodingException e) {
             return getContentStream();
         } catch (IOException e) {
             return getContentStream();
-        } catch (ParserConfigurationException e) {
-            return getContentStream();
         } catch (SAXException e) {
             return getContentStream();
         }
@@ -144,4 +205,22 @@ public class DatastreamXMLMetadata
         }
         return new ByteArrayInputStream(out);
     }
+
+    /**
+     * A checksum along with the content array and type it was computed for.
+     */
+    private static class ChecksumMemo {
+
+        public final byte[] content;
+
+        public final String type;
+
+        public final String checksum;
+
+        public ChecksumMemo(byte[] content, String type, String checksum) {
+            this.content = content;
+            this.type = type;
+            this.checksum = checksum;
+        }
+    }
 }
@@ -7,6 +7,8 @@ package fedora.server.storage.types;
 import java.io.IOException;
 import java.io.InputStream;
 
+import java.util.Date;
+
 import org.apache.log4j.Logger;
 
 /**
@@ -27,6 +29,10 @@ public class MIMETypedStream {
 
     private boolean gotStream = false;
 
+    private String eTag;
+
+    private Date lastModified;
+
     /**
      * Constructs a MIMETypedStream.
      *
@@ -59,6 +65,32 @@ public class MIMETypedStream {
         this.stream = stream;
     }
 
+    /**
+     * Gets the HTTP entity tag of the content, if known.
+     *
+     * @return The quoted entity tag, or null.
+     */
+    public String getETag() {
+        return eTag;
+    }
+
+    public void setETag(String eTag) {
+        this.eTag = eTag;
+    }
+
+    /**
+     * Gets the time the content was last changed, if known.
+     *
+     * @return The date, or null.
+     */
+    public Date getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(Date lastModified) {
+        this.lastModified = lastModified;
+    }
+
     /**
      * Closes the underlying stream if it's not already closed.
      *
@@ -0,0 +1,393 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.utilities;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.nio.channels.FileChannel;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Decides how to answer an HTTP GET of some content, given the request's
+ * conditional (<code>If-None-Match</code>, <code>If-Modified-Since</code>)
+ * and range (<code>Range</code>, <code>If-Range</code>) headers, and writes
+ * the response body.
+ * <p>
+ * Ranges are only honored when the length of the content is known, which is
+ * the case when it is read from a <code>FileInputStream</code>; the requested
+ * bytes are then read from the file's channel by position, so nothing before
+ * them is read. Otherwise the whole content is sent, which HTTP allows.
+ * <p>
+ * Overlapping or adjacent ranges are merged, so no byte is sent twice. A
+ * request whose ranges add up to more than the whole content can only be
+ * asking for the same bytes repeatedly; its Range header is ignored and the
+ * content is sent once (RFC 7233, section 6.1).
+ */
+public class HttpRangeRequest {
+
+    public static final int SC_OK = 200;
+
+    public static final int SC_PARTIAL_CONTENT = 206;
+
+    public static final int SC_NOT_MODIFIED = 304;
+
+    public static final int SC_REQUESTED_RANGE_NOT_SATISFIABLE = 416;
+
+    /** More ranges than this in one request are ignored. */
+    private static final int MAX_RANGES = 32;
+
+    private static final String HTTP_DATE_FORMAT =
+            "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private final long m_length;
+
+    private final String m_eTag;
+
+    private final Date m_lastModified;
+
+    private final List<long[]> m_ranges = new ArrayList<long[]>();
+
+    private final int m_status;
+
+    private final String m_boundary;
+
+    /**
+     * Creates an instance.
+     *
+     * @param length
+     *        the length of the content, or -1 if unknown.
+     * @param eTag
+     *        the quoted entity tag of the content, or null.
+     * @param lastModified
+     *        when the content last changed, or null.
+     * @param ifNoneMatch
+     *        the If-None-Match request header, or null.
+     * @param ifModifiedSince
+     *        the If-Modified-Since request header, or null.
+     * @param range
+     *        the Range request header, or null.
+     * @param ifRange
+     *        the If-Range request header, or null.
+     */
+    public HttpRangeRequest(long length,
+                            String eTag,
+                            Date lastModified,
+                            String ifNoneMatch,
+                            String ifModifiedSince,
+                            String range,
+                            String ifRange) {
+        m_length = length;
+        m_eTag = eTag;
+        m_lastModified = lastModified;
+        m_boundary = "fedora-" + Long.toHexString(System.nanoTime());
+        if (isNotModified(ifNoneMatch, ifModifiedSince)) {
+            m_status = SC_NOT_MODIFIED;
+        } else if (range == null || length < 0 || !isCurrent(ifRange)
+                || !parseRanges(range)) {
+            m_status = SC_OK;
+        } else if (m_ranges.isEmpty()) {
+            m_status = SC_REQUESTED_RANGE_NOT_SATISFIABLE;
+        } else {
+            m_status = SC_PARTIAL_CONTENT;
+        }
+    }
+
+    /**
+     * Gets the status code of the response.
+     */
+    public int getStatus() {
+        return m_status;
+    }
+
+    /**
+     * Tells whether the response has a body.
+     */
+    public boolean hasBody() {
+        return m_status == SC_OK || m_status == SC_PARTIAL_CONTENT;
+    }
+
+    /**
+     * Gets the content type of the response, which is the type of the
+     * content unless several ranges were requested.
+     */
+    public String getContentType(String mimeType) {
+        if (m_ranges.size() > 1) {
+            return "multipart/byteranges; boundary=" + m_boundary;
+        }
+        return mimeType;
+    }
+
+    /**
+     * Gets the headers describing the response, other than Content-Type.
+     */
+    public Map<String, String> getHeaders() {
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        if (m_eTag != null) {
+            headers.put("ETag", m_eTag);
+        }
+        if (m_lastModified != null) {
+            headers.put("Last-Modified", formatHttpDate(m_lastModified));
+        }
+        if (m_length >= 0) {
+            headers.put("Accept-Ranges", "bytes");
+        }
+        if (m_status == SC_REQUESTED_RANGE_NOT_SATISFIABLE) {
+            headers.put("Content-Range", "bytes */" + m_length);
+        }
+        long[] range = getBodyRange();
+        if (range != null) {
+            if (m_status == SC_PARTIAL_CONTENT) {
+                headers.put("Content-Range", getContentRange(range));
+            }
+            headers.put("Content-Length", Long.toString(range[1] - range[0]));
+        }
+        return headers;
+    }
+
+    /**
+     * Gets the single span of the content that makes up the body: all of it,
+     * or the only range requested.
+     *
+     * @return the start and (exclusive) end, or null if there is no body, its
+     *         length is unknown, or it has several parts.
+     */
+    public long[] getBodyRange() {
+        if (m_status == SC_OK && m_length >= 0) {
+            return new long[] {0, m_length};
+        } else if (m_status == SC_PARTIAL_CONTENT && m_ranges.size() == 1) {
+            return m_ranges.get(0);
+        }
+        return null;
+    }
+
+    /**
+     * Writes the body of the response, then closes the content stream.
+     *
+     * @param in
+     *        the content, positioned at its start.
+     * @param out
+     *        where to write the body.
+     * @param mimeType
+     *        the type of the content.
+     * @throws IOException
+     *         If any sort of read/write error occurs on either stream.
+     */
+    public void writeBody(InputStream in, OutputStream out, String mimeType)
+            throws IOException {
+        if (m_status == SC_OK) {
+            StreamUtility.transferStream(in, out, 0, -1);
+        } else if (m_status == SC_PARTIAL_CONTENT && m_ranges.size() == 1) {
+            long[] range = m_ranges.get(0);
+            StreamUtility.transferStream(in, out, range[0], range[1] - range[0]);
+        } else if (m_status == SC_PARTIAL_CONTENT) {
+            try {
+                // ranges are only parsed for file streams
+                FileChannel channel = ((FileInputStream) in).getChannel();
+                for (long[] range : m_ranges) {
+                    writeLine(out, "");
+                    writeLine(out, "--" + m_boundary);
+                    writeLine(out, "Content-Type: " + mimeType);
+                    writeLine(out, "Content-Range: " + getContentRange(range));
+                    writeLine(out, "");
+                    StreamUtility.copyRange(channel, out, range[0], range[1]);
+                }
+                writeLine(out, "");
+                writeLine(out, "--" + m_boundary + "--");
+            } finally {
+                in.close();
+            }
+        } else {
+            in.close();
+        }
+    }
+
+    /**
+     * Formats a date as HTTP requires.
+     */
+    public static String formatHttpDate(Date date) {
+        SimpleDateFormat format =
+                new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(date);
+    }
+
+    /**
+     * Parses a date in the preferred HTTP format.
+     *
+     * @return the date, or null if it can't be parsed.
+     */
+    public static Date parseHttpDate(String date) {
+        SimpleDateFormat format =
+                new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return format.parse(date.trim());
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    //---
+    // Instance helpers
+    //---
+
+    // If-None-Match wins over If-Modified-Since when both are given
+    private boolean isNotModified(String ifNoneMatch, String ifModifiedSince) {
+        if (ifNoneMatch != null) {
+            if (m_eTag == null) {
+                return false;
+            }
+            // weak comparison: W/ prefixes are ignored on both sides
+            String eTag = stripWeak(m_eTag);
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = stripWeak(tag.trim());
+                if (tag.equals("*") || tag.equals(eTag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (ifModifiedSince != null && m_lastModified != null) {
+            Date since = parseHttpDate(ifModifiedSince);
+            return since != null
+                    && m_lastModified.getTime() / 1000 <= since.getTime() / 1000;
+        }
+        return false;
+    }
+
+    private static String stripWeak(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    // whether an If-Range header (if any) still describes the content
+    private boolean isCurrent(String ifRange) {
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"")) {
+            // strong comparison: never matches a weak m_eTag
+            return ifRange.equals(m_eTag);
+        } else if (ifRange.startsWith("W/")) {
+            return false; // weak tags can't be used for ranges
+        }
+        Date date = parseHttpDate(ifRange);
+        return date != null && m_lastModified != null
+                && m_lastModified.getTime() / 1000 == date.getTime() / 1000;
+    }
+
+    // adds the satisfiable ranges to m_ranges, merged; false if the header is
+    // invalid or asks for more bytes than the content has
+    private boolean parseRanges(String header) {
+        header = header.trim();
+        if (!header.startsWith("bytes=")) {
+            return false;
+        }
+        String[] specs = header.substring(6).split(",");
+        if (specs.length > MAX_RANGES) {
+            return false;
+        }
+        try {
+            for (String spec : specs) {
+                spec = spec.trim();
+                int dash = spec.indexOf('-');
+                if (dash == -1) {
+                    return false;
+                }
+                String first = spec.substring(0, dash).trim();
+                String last = spec.substring(dash + 1).trim();
+                long start;
+                long end;
+                if (first.length() == 0) {
+                    // suffix range: the last n bytes
+                    long n = Long.parseLong(last);
+                    if (n < 0) {
+                        return false;
+                    }
+                    start = Math.max(0, m_length - n);
+                    end = m_length;
+                    if (n == 0) {
+                        continue;
+                    }
+                } else {
+                    start = Long.parseLong(first);
+                    end = last.length() == 0 ? Long.MAX_VALUE
+                            : Long.parseLong(last) + 1;
+                    if (start < 0 || end <= start) {
+                        return false;
+                    }
+                    if (start >= m_length) {
+                        continue;
+                    }
+                    end = Math.min(end, m_length);
+                }
+                m_ranges.add(new long[] {start, end});
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return mergeRanges();
+    }
+
+    // sorts m_ranges and merges those that overlap or touch; false if the
+    // ranges overlap so much that they ask for more than the whole content
+    private boolean mergeRanges() {
+        long requested = 0;
+        for (long[] range : m_ranges) {
+            requested += range[1] - range[0];
+        }
+        if (requested > m_length) {
+            m_ranges.clear();
+            return false;
+        }
+        Collections.sort(m_ranges, new Comparator<long[]>() {
+
+            public int compare(long[] a, long[] b) {
+                return a[0] < b[0] ? -1 : a[0] == b[0] ? 0 : 1;
+            }
+        });
+        List<long[]> merged = new ArrayList<long[]>(m_ranges.size());
+        for (long[] range : m_ranges) {
+            long[] previous =
+                    merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (previous != null && range[0] <= previous[1]) {
+                previous[1] = Math.max(previous[1], range[1]);
+            } else {
+                merged.add(range);
+            }
+        }
+        m_ranges.clear();
+        m_ranges.addAll(merged);
+        return true;
+    }
+
+    private String getContentRange(long[] range) {
+        return "bytes " + range[0] + "-" + (range[1] - 1) + "/" + m_length;
+    }
+
+    private static void writeLine(OutputStream out, String line)
+            throws IOException {
+        out.write(line.getBytes("US-ASCII"));
+        out.write(CRLF);
+    }
+
+}
@@ -0,0 +1,75 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.utilities;
+
+import java.io.File;
+import java.io.InputStream;
+
+import javax.servlet.http.HttpServletRequest;
+
+import fedora.server.storage.lowlevel.LocalFileInputStream;
+
+/**
+ * Utility methods for handing the sending of a stored file to the servlet
+ * container, so the container can send it with the operating system's
+ * sendfile call instead of the servlet copying it.
+ * <p>
+ * This uses the request attributes Tomcat defines for the purpose. It is
+ * only used if the container sets <code>org.apache.tomcat.sendfile.support</code>
+ * on the request; other containers get the content through the response's
+ * output stream as usual.
+ */
+public abstract class SendfileUtility {
+
+    /** Request attribute set by the container if it can send files. */
+    public static final String SENDFILE_SUPPORT =
+            "org.apache.tomcat.sendfile.support";
+
+    /** Request attribute naming the file to send. */
+    public static final String SENDFILE_FILENAME =
+            "org.apache.tomcat.sendfile.filename";
+
+    /** Request attribute giving the first byte to send. */
+    public static final String SENDFILE_START =
+            "org.apache.tomcat.sendfile.start";
+
+    /** Request attribute giving the byte after the last byte to send. */
+    public static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    /**
+     * Gets the file the given stream reads, if it can be sent for the
+     * request by the container.
+     *
+     * @return the file, or null if the stream isn't reading a stored file or
+     *         the container can't send files.
+     */
+    public static File getSendableFile(HttpServletRequest request,
+                                       InputStream in) {
+        if (request != null && in instanceof LocalFileInputStream
+                && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            File file = ((LocalFileInputStream) in).getFile();
+            if (file.canRead()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Asks the container to send bytes <code>start</code> up to (but not
+     * including) <code>end</code> of the file once the servlet has finished.
+     * The caller must set the Content-Length of the response to
+     * <code>end - start</code> and must not write to the response body.
+     */
+    public static void sendfile(HttpServletRequest request,
+                                File file,
+                                long start,
+                                long end) {
+        request.setAttribute(SENDFILE_FILENAME, file.getAbsolutePath());
+        request.setAttribute(SENDFILE_START, new Long(start));
+        request.setAttribute(SENDFILE_END, new Long(end));
+    }
+
+}
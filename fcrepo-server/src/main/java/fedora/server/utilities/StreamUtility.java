@@ -6,11 +6,15 @@ package fedora.server.utilities;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
 import org.apache.log4j.Logger;
 
 import fedora.common.FaultException;
@@ -133,6 +137,104 @@ public abstract class StreamUtility {
         }
     }
 
+    /**
+     * Copies a range of bytes from an InputStream to an OutputStream, then
+     * closes the InputStream. The OutputStream is left open.
+     * <p>
+     * If the source is a FileInputStream, the offset is reached by seeking
+     * rather than by reading and discarding bytes. The bytes themselves are
+     * always copied through a heap buffer; only the container's sendfile
+     * support (see {@link SendfileUtility}) avoids that.
+     *
+     * @param in
+     *        The source stream, positioned at its start.
+     * @param out
+     *        The target stream.
+     * @param offset
+     *        Number of bytes to skip from the start of the source.
+     * @param length
+     *        Number of bytes to copy, or -1 to copy to the end of the source.
+     * @return The number of bytes copied.
+     * @throws IOException
+     *         If any sort of read/write error occurs on either stream.
+     */
+    public static long transferStream(InputStream in,
+                                      OutputStream out,
+                                      long offset,
+                                      long length) throws IOException {
+        try {
+            if (in instanceof FileInputStream) {
+                FileChannel channel = ((FileInputStream) in).getChannel();
+                if (offset >= channel.size()) {
+                    return 0;
+                }
+                channel.position(offset);
+            } else {
+                long skipped = 0;
+                while (skipped < offset) {
+                    long n = in.skip(offset - skipped);
+                    if (n <= 0) {
+                        return 0;
+                    }
+                    skipped += n;
+                }
+            }
+            byte[] buf = new byte[8192];
+            long count = 0;
+            while (length < 0 || count < length) {
+                int max = buf.length;
+                if (length >= 0 && length - count < max) {
+                    max = (int) (length - count);
+                }
+                int len = in.read(buf, 0, max);
+                if (len == -1) {
+                    break;
+                }
+                out.write(buf, 0, len);
+                count += len;
+            }
+            return count;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                LOG.warn("Unable to close stream", e);
+            }
+        }
+    }
+
+    /**
+     * Copies bytes <code>start</code> up to (but not including)
+     * <code>end</code> of a file to an OutputStream. The channel's position
+     * is not changed and neither stream is closed, so it can be called
+     * repeatedly for different ranges of the same file.
+     *
+     * @return The number of bytes copied, which is less than requested only
+     *         if the file is shorter than <code>end</code>.
+     * @throws IOException
+     *         If any sort of read/write error occurs.
+     */
+    public static long copyRange(FileChannel channel,
+                                 OutputStream out,
+                                 long start,
+                                 long end) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8192);
+        long position = start;
+        while (position < end) {
+            buf.clear();
+            if (end - position < buf.capacity()) {
+                buf.limit((int) (end - position));
+            }
+            int len = channel.read(buf, position);
+            if (len == -1) {
+                break; // shorter than expected
+            }
+            out.write(buf.array(), 0, len);
+            position += len;
+        }
+        return Math.max(0, position - start);
+    }
+
     /**
      * Gets a byte array for the given input stream.
      */
@@ -0,0 +1,33 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.utilities.rebuild;
+
+import java.util.List;
+
+import fedora.server.storage.types.DigitalObject;
+
+/**
+ * A Rebuilder that can add a number of objects at once, and make what it has
+ * added durable on request.
+ * <p>
+ * Clients call addObjects in place of addObject, and call flush before
+ * recording that the objects added so far are done, so that a rebuild that is
+ * interrupted can be resumed without losing any of them. If addObjects fails,
+ * the objects in that call may be passed to addObject one at a time.
+ */
+public interface BatchRebuilder
+        extends Rebuilder {
+
+    /**
+     * Add the data of interest for the given objects.
+     */
+    public void addObjects(List<DigitalObject> objects) throws Exception;
+
+    /**
+     * Make the data added so far durable.
+     */
+    public void flush() throws Exception;
+
+}
@@ -12,9 +12,11 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import fedora.common.Constants;
 
@@ -27,19 +29,19 @@ import fedora.server.config.ServerConfigurationParser;
 import fedora.server.errors.InitializationException;
 import fedora.server.errors.LowlevelStorageException;
 import fedora.server.storage.lowlevel.FileSystem;
-import fedora.server.storage.lowlevel.IListable;
 import fedora.server.storage.lowlevel.ILowlevelStorage;
-import fedora.server.storage.translation.DODeserializer;
-import fedora.server.storage.translation.DOTranslationUtility;
-import fedora.server.storage.translation.FOXML1_1DODeserializer;
-import fedora.server.storage.types.BasicDigitalObject;
-import fedora.server.storage.types.DigitalObject;
 import fedora.server.utilities.ServerUtility;
 
 import fedora.utilities.FileComparator;
 
 /**
  * Entry-point for rebuilding various aspects of the repository.
+ * <p>
+ * Objects are read by a {@link RebuildPipeline}. The number of reader
+ * threads, the number of objects given to a {@link BatchRebuilder} at a time,
+ * and the number of objects between checkpoints can be set with the system
+ * properties fedora.rebuild.readers, fedora.rebuild.batchSize and
+ * fedora.rebuild.checkpointInterval.
  *
  * @author Chris Wilper
  */
@@ -53,6 +55,13 @@ public class Rebuild
     private static FileComparator _REVERSE_FILE_COMPARATOR =
             new FileComparator(true);
 
+    /**
+     * The option that is set to "true" to resume an interrupted rebuild
+     * rather than start a new one. Rebuilders should not clear what they
+     * rebuild when it is set.
+     */
+    public static final String RESUME_OPTION = "resume";
+
     /**
      * Rebuilders that the rebuild utility knows about.
      */
@@ -80,6 +89,11 @@ public class Rebuild
         if (options != null) {
             System.err.println();
             System.err.println("Rebuilding...");
+            RebuildCheckpoint checkpoint =
+                    new RebuildCheckpoint(new File(new File(Constants.FEDORA_HOME),
+                                                   "server"),
+                                          rebuilder);
+            boolean complete = false;
             try {
                 // ensure rebuilds are possible before trying anything,
                 // as rebuilder.start() may be destructive!
@@ -103,27 +117,60 @@ public class Rebuild
                             + " interface.");
                 }
 
+                Set<String> done = null;
+                if ("true".equals(options.get(RESUME_OPTION))) {
+                    done = checkpoint.resume();
+                    System.out.println("Resuming rebuild; " + done.size()
+                            + " objects were already rebuilt.");
+                } else {
+                    // an old checkpoint no longer describes what is done once
+                    // rebuilder.start() has cleared it, so don't leave one
+                    // behind for a later resume to trust
+                    checkpoint.delete();
+                }
+
                 // looks good, so init the rebuilder
                 rebuilder.start(options);
+                if (done == null) {
+                    if (rebuilder instanceof BatchRebuilder) {
+                        checkpoint.start();
+                    }
+                    done = new HashSet<String>();
+                }
 
                 // add each object in llstore
                 ILowlevelStorage llstore = (ILowlevelStorage)
                         getServer().getModule(llstoreInterface);
-                Iterator<String> pids = ((IListable) llstore).listObjects();
-                int total = 0;
-                int errors = 0;
-                while (pids.hasNext()) {
-                    total++;
-                    String pid = pids.next();
-                    System.out.println("Adding object #" + total + ": " + pid);
-                    if (!addObject(rebuilder, llstore, pid)) {
-                        errors++;
-                    }
+                RebuildPipeline pipeline =
+                        new RebuildPipeline(rebuilder,
+                                            llstore,
+                                            Integer.getInteger("fedora.rebuild.readers",
+                                                               Runtime.getRuntime()
+                                                                       .availableProcessors()),
+                                            Integer.getInteger("fedora.rebuild.batchSize",
+                                                               100),
+                                            Integer.getInteger("fedora.rebuild.checkpointInterval",
+                                                               1000));
+                pipeline.setCheckpoint(checkpoint, done);
+                try {
+                    pipeline.run();
+                } finally {
+                    checkpoint.close();
+                }
+                int total = pipeline.getAdded() + pipeline.getFailed();
+                int errors = pipeline.getFailed();
+                if (pipeline.getSkipped() > 0) {
+                    System.out.println(pipeline.getSkipped()
+                            + " objects were skipped, having been rebuilt"
+                            + " before the rebuild was resumed.");
                 }
                 if (errors == 0) {
                     System.out.println("SUCCESS: " + total + " objects rebuilt.");
+                    complete = true;
                 } else {
                     System.out.println("WARNING: " + errors + " of " + total + " objects failed to rebuild due to errors.");
+                    System.out.println("Run the rebuild again and resume it"
+                            + " to retry them.");
                 }
             } finally {
                 rebuilder.finish();
@@ -132,36 +179,14 @@ public class Rebuild
                     server = null;
                 }
             }
+            if (complete) {
+                checkpoint.delete();
+            }
             System.err.print("Finished.");
             System.err.println();
         }
     }
 
-    private boolean addObject(Rebuilder rebuilder,
-                              ILowlevelStorage llstore,
-                              String pid) {
-        InputStream in = null;
-        try {
-            in = llstore.retrieveObject(pid);
-            DigitalObject obj = new BasicDigitalObject();
-            DODeserializer deser = new FOXML1_1DODeserializer();
-            deser.deserialize(in,
-                              obj,
-                              "UTF-8",
-                              DOTranslationUtility.SERIALIZE_STORAGE_INTERNAL);
-            rebuilder.addObject(obj);
-            return true;
-        } catch (Exception e) {
-            System.out.println("WARNING: Skipped " + pid + " due to exception: ");
-            e.printStackTrace();
-            return false;
-        } finally {
-            if (in != null) {
-                try { in.close(); } catch (IOException e) { }
-            }
-        }
-    }
-
     /**
      * Gets the instance of the server appropriate for rebuilding.
      * If no such instance has been initialized yet, initialize one.
@@ -201,6 +226,35 @@ public class Rebuild
         return null;
     }
 
+    /**
+     * If an earlier rebuild with the same rebuilder was interrupted, asks
+     * whether to resume it.
+     */
+    private static Map<String, String> getResumeOption(Rebuilder rebuilder,
+                                                       File serverDir,
+                                                       Map<String, String> options)
+            throws IOException {
+        RebuildCheckpoint checkpoint =
+                new RebuildCheckpoint(serverDir, rebuilder);
+        if (!checkpoint.exists()) {
+            return options;
+        }
+        System.err.println("An earlier rebuild did not complete. Its progress"
+                + " was kept in " + checkpoint.getFile());
+        System.err.println();
+        int c =
+                getChoice("Resume that rebuild?",
+                          new String[] {"Yes, rebuild only the remaining objects.",
+                                  "No, start over.",
+                                  "No, exit."});
+        if (c == 0) {
+            options.put(RESUME_OPTION, "true");
+        } else if (c == 2) {
+            return null;
+        }
+        return options;
+    }
+
     private static String getOptionValue(String name, String desc)
             throws IOException {
         System.err.println("[" + name + "]");
@@ -417,6 +471,9 @@ public class Rebuild
             Rebuilder rebuilder = getRebuilder();
             Map<String, String> options =
                     getUserInput(rebuilder, serverDir, serverConfig);
+            if (rebuilder != null && options != null) {
+                options = getResumeOption(rebuilder, serverDir, options);
+            }
             new Rebuild(rebuilder, options, serverConfig);
         } catch (Throwable th) {
             String msg = th.getMessage();
@@ -0,0 +1,140 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.utilities.rebuild;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The objects that a rebuild has finished with, kept in a file so that an
+ * interrupted rebuild can be resumed.
+ * <p>
+ * The file lists one PID per line. PIDs are appended, and the file synced,
+ * only after the rebuilder has made them durable. The order in which objects
+ * are listed by the low-level store is not stable, so the file records which
+ * objects are done rather than how far the rebuild got.
+ */
+public class RebuildCheckpoint {
+
+    private final File m_file;
+
+    private FileOutputStream m_out;
+
+    /**
+     * Creates the checkpoint for a rebuilder.
+     *
+     * @param serverDir
+     *        the server directory, in which the file is kept.
+     * @param rebuilder
+     *        the rebuilder whose progress is recorded.
+     */
+    public RebuildCheckpoint(File serverDir, Rebuilder rebuilder) {
+        m_file =
+                new File(serverDir, "rebuild-"
+                        + rebuilder.getClass().getSimpleName() + ".checkpoint");
+    }
+
+    /**
+     * @return whether an earlier rebuild with the same rebuilder was
+     *         interrupted.
+     */
+    public boolean exists() {
+        return m_file.exists();
+    }
+
+    /**
+     * @return the file the checkpoint is kept in.
+     */
+    public File getFile() {
+        return m_file;
+    }
+
+    /**
+     * Reads the PIDs of the objects that are done, and opens the file to
+     * record more.
+     *
+     * @return the PIDs.
+     * @throws IOException
+     *         if the file could not be read or opened.
+     */
+    public Set<String> resume() throws IOException {
+        Set<String> pids = new HashSet<String>();
+        BufferedReader reader =
+                new BufferedReader(new InputStreamReader(new FileInputStream(m_file),
+                                                         "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() > 0) {
+                    pids.add(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        m_out = new FileOutputStream(m_file, true);
+        return pids;
+    }
+
+    /**
+     * Starts an empty checkpoint, replacing any existing one.
+     *
+     * @throws IOException
+     *         if the file could not be created.
+     */
+    public void start() throws IOException {
+        m_out = new FileOutputStream(m_file, false);
+        m_out.getFD().sync();
+    }
+
+    /**
+     * Records that the given objects are done.
+     *
+     * @throws IOException
+     *         if they could not be written.
+     */
+    public void record(Collection<String> pids) throws IOException {
+        if (pids.isEmpty()) {
+            return;
+        }
+        StringBuffer lines = new StringBuffer();
+        for (String pid : pids) {
+            lines.append(pid);
+            lines.append('\n');
+        }
+        m_out.write(lines.toString().getBytes("UTF-8"));
+        m_out.flush();
+        m_out.getFD().sync();
+    }
+
+    /**
+     * Closes the file, keeping it so the rebuild can be resumed.
+     */
+    public void close() {
+        if (m_out != null) {
+            try {
+                m_out.close();
+            } catch (IOException e) {
+            }
+            m_out = null;
+        }
+    }
+
+    /**
+     * Closes and removes the file, once the rebuild has completed.
+     */
+    public void delete() {
+        close();
+        m_file.delete();
+    }
+}
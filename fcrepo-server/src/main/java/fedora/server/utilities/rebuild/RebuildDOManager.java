@@ -19,6 +19,7 @@ import fedora.server.search.FieldSearch;
 import fedora.server.storage.ConnectionPoolManager;
 import fedora.server.storage.DefaultDOManager;
 import fedora.server.storage.ExternalContentManager;
+import fedora.server.storage.RepositoryCounters;
 import fedora.server.storage.lowlevel.ILowlevelStorage;
 import fedora.server.storage.translation.DOTranslator;
 import fedora.server.utilities.SQLUtility;
@@ -136,6 +137,9 @@ public class RebuildDOManager
                                                             + e.getMessage(),
                                                     getRole());
         }
+        // the rebuild blanks the counters; they are recomputed at the next
+        // server startup
+        m_counters = new RepositoryCounters(m_connectionPool);
 
         // get ref to lowlevelstorage module
         m_permanentStore =
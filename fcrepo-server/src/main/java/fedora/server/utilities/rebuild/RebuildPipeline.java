@@ -0,0 +1,454 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.utilities.rebuild;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import fedora.server.storage.lowlevel.IListable;
+import fedora.server.storage.lowlevel.ILowlevelStorage;
+import fedora.server.storage.translation.DODeserializer;
+import fedora.server.storage.translation.DOTranslationUtility;
+import fedora.server.storage.translation.FOXML1_1DODeserializer;
+import fedora.server.storage.types.BasicDigitalObject;
+import fedora.server.storage.types.DigitalObject;
+
+/**
+ * Feeds the objects in the low-level store to a Rebuilder.
+ * <p>
+ * One thread lists the objects, a number of reader threads retrieve and
+ * deserialize them, and the calling thread hands them to the rebuilder, in
+ * batches if it is a {@link BatchRebuilder}. The queues between them are
+ * bounded, so the number of objects in memory doesn't grow with the size of
+ * the repository.
+ * <p>
+ * When a checkpoint is given and the rebuilder is a BatchRebuilder, the
+ * rebuilder is flushed every so many objects, and the objects added since
+ * the last flush are recorded in the checkpoint. Objects that failed are not
+ * recorded, so a resumed rebuild tries them again.
+ */
+public class RebuildPipeline {
+
+    /** How often progress is reported, in milliseconds. */
+    private static final long REPORT_INTERVAL = 10000;
+
+    /** Tells a reader thread that there are no more PIDs. */
+    private static final String NO_MORE_PIDS = new String("");
+
+    /** Tells the calling thread that a reader thread has finished. */
+    private static final Item READER_DONE = new Item(null, null, null);
+
+    private final Rebuilder m_rebuilder;
+
+    private final ILowlevelStorage m_llstore;
+
+    private final DODeserializer m_deserializer;
+
+    private final int m_readerCount;
+
+    private final int m_batchSize;
+
+    private final int m_checkpointInterval;
+
+    private RebuildCheckpoint m_checkpoint;
+
+    private Set<String> m_done = Collections.emptySet();
+
+    private final BlockingQueue<String> m_pids;
+
+    private final BlockingQueue<Item> m_items;
+
+    private final List<Thread> m_threads = new ArrayList<Thread>();
+
+    /** PIDs added since the last checkpoint. */
+    private final List<String> m_unrecorded = new ArrayList<String>();
+
+    private volatile Throwable m_listError;
+
+    private volatile Throwable m_readError;
+
+    /** Set once the rebuild has been stopped, so threads stop handing off. */
+    private volatile boolean m_stopped;
+
+    private volatile int m_skipped;
+
+    private int m_added;
+
+    private int m_failed;
+
+    private long m_startTime;
+
+    private long m_lastReportTime;
+
+    private int m_lastReportCount;
+
+    /**
+     * Creates a pipeline.
+     *
+     * @param rebuilder
+     *        the rebuilder to add the objects to.
+     * @param llstore
+     *        the low-level store, which must be IListable.
+     * @param readerCount
+     *        the number of threads that read and deserialize objects.
+     * @param batchSize
+     *        the number of objects given to a BatchRebuilder at a time.
+     * @param checkpointInterval
+     *        the minimum number of objects added between checkpoints.
+     */
+    public RebuildPipeline(Rebuilder rebuilder,
+                           ILowlevelStorage llstore,
+                           int readerCount,
+                           int batchSize,
+                           int checkpointInterval) {
+        this(rebuilder,
+             llstore,
+             new FOXML1_1DODeserializer(),
+             readerCount,
+             batchSize,
+             checkpointInterval);
+    }
+
+    /**
+     * Creates a pipeline that reads objects with the given deserializer.
+     *
+     * @param deserializer
+     *        the deserializer, of which each reader thread gets an instance
+     *        of its own.
+     * @see #RebuildPipeline(Rebuilder, ILowlevelStorage, int, int, int)
+     */
+    public RebuildPipeline(Rebuilder rebuilder,
+                           ILowlevelStorage llstore,
+                           DODeserializer deserializer,
+                           int readerCount,
+                           int batchSize,
+                           int checkpointInterval) {
+        m_rebuilder = rebuilder;
+        m_llstore = llstore;
+        m_deserializer = deserializer;
+        m_readerCount = Math.max(1, readerCount);
+        m_batchSize = Math.max(1, batchSize);
+        m_checkpointInterval = Math.max(m_batchSize, checkpointInterval);
+        m_pids = new ArrayBlockingQueue<String>(m_batchSize * 2);
+        m_items = new ArrayBlockingQueue<Item>(m_batchSize * 2);
+    }
+
+    /**
+     * Records progress in the given checkpoint, skipping the objects that it
+     * already records as done.
+     *
+     * @param checkpoint
+     *        the opened checkpoint.
+     * @param done
+     *        the PIDs it records.
+     */
+    public void setCheckpoint(RebuildCheckpoint checkpoint, Set<String> done) {
+        if (m_rebuilder instanceof BatchRebuilder) {
+            m_checkpoint = checkpoint;
+        }
+        m_done = done;
+    }
+
+    /**
+     * @return the number of objects added to the rebuilder.
+     */
+    public int getAdded() {
+        return m_added;
+    }
+
+    /**
+     * @return the number of objects that could not be read or added.
+     */
+    public int getFailed() {
+        return m_failed;
+    }
+
+    /**
+     * @return the number of objects skipped because they were already done.
+     */
+    public int getSkipped() {
+        return m_skipped;
+    }
+
+    /**
+     * Adds every object in the low-level store that is not already done,
+     * returning when they have all been added and checkpointed.
+     *
+     * @throws Exception
+     *         if the objects could not be listed, a reader thread failed
+     *         unexpectedly, or the rebuilder or checkpoint could not be
+     *         flushed. Objects that could not be
+     *         read or added are reported and counted, but don't stop the
+     *         rebuild.
+     */
+    public void run() throws Exception {
+        m_startTime = System.currentTimeMillis();
+        m_lastReportTime = m_startTime;
+        m_threads.add(new Lister());
+        for (int i = 0; i < m_readerCount; i++) {
+            m_threads.add(new Reader(i));
+        }
+        for (Thread thread : m_threads) {
+            thread.start();
+        }
+
+        boolean finished = false;
+        try {
+            List<Item> batch = new ArrayList<Item>(m_batchSize);
+            int readersDone = 0;
+            while (readersDone < m_readerCount) {
+                Item item = m_items.poll(REPORT_INTERVAL, TimeUnit.MILLISECONDS);
+                if (item == READER_DONE) {
+                    readersDone++;
+                } else if (item != null) {
+                    if (item.error == null) {
+                        batch.add(item);
+                    } else {
+                        failed(item.pid, item.error);
+                    }
+                }
+                if (batch.size() >= m_batchSize
+                        || readersDone == m_readerCount && !batch.isEmpty()) {
+                    add(batch);
+                    batch.clear();
+                    if (m_unrecorded.size() >= m_checkpointInterval) {
+                        checkpoint();
+                    }
+                }
+                report(false);
+            }
+            checkpoint();
+            finished = true;
+            if (m_listError != null) {
+                throw new Exception("Error listing objects: "
+                        + m_listError.getMessage(), m_listError);
+            }
+            if (m_readError != null) {
+                throw new Exception("Error reading objects: "
+                        + m_readError.getMessage(), m_readError);
+            }
+        } finally {
+            if (!finished) {
+                m_stopped = true;
+                for (Thread thread : m_threads) {
+                    thread.interrupt();
+                }
+                // keep what was added, so a resumed rebuild needn't redo it
+                try {
+                    checkpoint();
+                } catch (Exception e) {
+                    System.out.println("WARNING: Could not record progress: "
+                            + e.getMessage());
+                }
+            }
+            report(true);
+        }
+    }
+
+    private void add(List<Item> batch) {
+        if (m_rebuilder instanceof BatchRebuilder) {
+            List<DigitalObject> objects =
+                    new ArrayList<DigitalObject>(batch.size());
+            for (Item item : batch) {
+                objects.add(item.object);
+            }
+            try {
+                ((BatchRebuilder) m_rebuilder).addObjects(objects);
+                for (Item item : batch) {
+                    added(item.pid);
+                }
+                return;
+            } catch (Exception e) {
+                System.out.println("WARNING: Failed to add a batch of "
+                        + batch.size() + " objects; adding them one at a "
+                        + "time: " + e.getMessage());
+            }
+        }
+        for (Item item : batch) {
+            try {
+                m_rebuilder.addObject(item.object);
+                added(item.pid);
+            } catch (Exception e) {
+                failed(item.pid, e);
+            }
+        }
+    }
+
+    private void added(String pid) {
+        m_added++;
+        if (m_checkpoint != null) {
+            m_unrecorded.add(pid);
+        }
+    }
+
+    private void failed(String pid, Exception e) {
+        m_failed++;
+        System.out.println("WARNING: Skipped " + pid + " due to exception: ");
+        e.printStackTrace();
+    }
+
+    private void checkpoint() throws Exception {
+        if (m_checkpoint != null && !m_unrecorded.isEmpty()) {
+            ((BatchRebuilder) m_rebuilder).flush();
+            m_checkpoint.record(m_unrecorded);
+            m_unrecorded.clear();
+        }
+    }
+
+    private void report(boolean last) {
+        long now = System.currentTimeMillis();
+        if (!last && now - m_lastReportTime < REPORT_INTERVAL) {
+            return;
+        }
+        int done = m_added + m_failed;
+        StringBuffer out = new StringBuffer();
+        out.append("Rebuilt " + m_added + " objects");
+        if (m_failed > 0) {
+            out.append(" (" + m_failed + " failed)");
+        }
+        if (!last) {
+            out.append(", " + rate(done - m_lastReportCount,
+                                   now - m_lastReportTime)
+                    + " objects/second");
+        }
+        out.append(", " + rate(done, now - m_startTime)
+                + " objects/second overall");
+        System.out.println(out);
+        m_lastReportTime = now;
+        m_lastReportCount = done;
+    }
+
+    private static String rate(int count, long millis) {
+        if (millis <= 0) {
+            return "" + count;
+        }
+        return "" + (Math.round(count * 10000.0 / millis) / 10.0);
+    }
+
+    /**
+     * An object that was read, or the error that prevented reading it.
+     */
+    private static class Item {
+
+        final String pid;
+
+        final DigitalObject object;
+
+        final Exception error;
+
+        Item(String pid, DigitalObject object, Exception error) {
+            this.pid = pid;
+            this.object = object;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Lists the PIDs of the objects that are not already done.
+     */
+    private class Lister
+            extends Thread {
+
+        Lister() {
+            super("RebuildLister");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                try {
+                    Iterator<String> pids =
+                            ((IListable) m_llstore).listObjects();
+                    while (pids.hasNext()) {
+                        String pid = pids.next();
+                        if (m_done.contains(pid)) {
+                            m_skipped++;
+                        } else {
+                            m_pids.put(pid);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Throwable th) {
+                    m_listError = th;
+                } finally {
+                    // whatever happened, or the readers would wait forever
+                    for (int i = 0; i < m_readerCount && !m_stopped; i++) {
+                        m_pids.put(NO_MORE_PIDS);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // the rebuild was stopped
+            }
+        }
+    }
+
+    /**
+     * Retrieves and deserializes objects, with a deserializer of its own.
+     */
+    private class Reader
+            extends Thread {
+
+        private final DODeserializer m_readerDeserializer =
+                m_deserializer.getInstance();
+
+        Reader(int number) {
+            super("RebuildReader-" + number);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                try {
+                    String pid;
+                    while ((pid = m_pids.take()) != NO_MORE_PIDS) {
+                        m_items.put(read(pid));
+                    }
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Throwable th) {
+                    m_readError = th;
+                } finally {
+                    // whatever happened, or run() would wait forever
+                    if (!m_stopped) {
+                        m_items.put(READER_DONE);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // the rebuild was stopped
+            }
+        }
+
+        private Item read(String pid) {
+            InputStream in = null;
+            try {
+                in = m_llstore.retrieveObject(pid);
+                DigitalObject obj = new BasicDigitalObject();
+                m_readerDeserializer.deserialize(in,
+                                                 obj,
+                                                 "UTF-8",
+                                                 DOTranslationUtility.SERIALIZE_STORAGE_INTERNAL);
+                return new Item(pid, obj, null);
+            } catch (Exception e) {
+                return new Item(pid, null, e);
+            } finally {
+                if (in != null) {
+                    try { in.close(); } catch (IOException e) { }
+                }
+            }
+        }
+    }
+}
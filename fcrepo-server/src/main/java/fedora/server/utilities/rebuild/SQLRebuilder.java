@@ -12,24 +12,20 @@ import fedora.server.Server;
 import fedora.server.config.DatastoreConfiguration;
 import fedora.server.config.ModuleConfiguration;
 import fedora.server.config.ServerConfiguration;
+import fedora.server.errors.GeneralException;
 import fedora.server.errors.InitializationException;
 import fedora.server.errors.LowlevelStorageException;
 import fedora.server.errors.ModuleInitializationException;
-import fedora.server.errors.ObjectNotFoundException;
 import fedora.server.errors.ServerException;
 import fedora.server.errors.StorageDeviceException;
 import fedora.server.management.PIDGenerator;
 import fedora.server.search.FieldSearch;
 import fedora.server.storage.ConnectionPool;
 import fedora.server.storage.ConnectionPoolManager;
-import fedora.server.storage.DOManager;
-import fedora.server.storage.DOReader;
-import fedora.server.storage.DOWriter;
+import fedora.server.storage.SimpleDOReader;
 import fedora.server.storage.lowlevel.ILowlevelStorage;
-import fedora.server.storage.types.Datastream;
 import fedora.server.storage.types.DigitalObject;
 import fedora.server.storage.types.RelationshipTuple;
-import fedora.server.utilities.SQLUtility;
 import fedora.server.utilities.TableSpec;
 import org.apache.log4j.Logger;
 
@@ -39,13 +35,13 @@ import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -54,12 +50,26 @@ import java.util.Set;
  * A Rebuilder for the SQL database.
  */
 public class SQLRebuilder
-        implements Rebuilder {
+        implements BatchRebuilder {
 
     /** Logger for this class. */
     private static final Logger LOG =
             Logger.getLogger(Rebuilder.class.getName());
 
+    private static final String REGISTER_SQL =
+            "INSERT INTO doRegistry (doPID, systemVersion, ownerId, label) "
+                    + "VALUES (?, 1, ?, ?)";
+
+    private static final String UNREGISTER_SQL =
+            "DELETE FROM doRegistry WHERE doPID = ?";
+
+    private static final String DEPLOY_SQL =
+            "INSERT INTO modelDeploymentMap (cModel, sDef, sDep) "
+                    + "VALUES (?, ?, ?)";
+
+    private static final String UNDEPLOY_SQL =
+            "DELETE FROM modelDeploymentMap WHERE sDep = ?";
+
     private ServerConfiguration m_serverConfig;
 
     private Server m_server;
@@ -68,6 +78,13 @@ public class SQLRebuilder
 
     private Context m_context;
 
+    private FieldSearch m_fieldSearch;
+
+    private PIDGenerator m_pidGenerator;
+
+    /** Whether an interrupted rebuild is being resumed. */
+    private boolean m_resume;
+
     /**
      * Get a short phrase describing what the user can do with this rebuilder.
      */
@@ -99,11 +116,17 @@ public class SQLRebuilder
      * Validate the provided options and perform any necessary startup tasks.
      */
     public void start(Map<String, String> options) throws Exception {
+        // When resuming, the tables hold what the interrupted rebuild wrote,
+        // which is kept.
+        m_resume = "true".equals(options.get(Rebuild.RESUME_OPTION));
+
         // This must be done before starting "RebuildServer"
         // rather than after, so any application caches
         // (in particular the hash map held by PIDGenerator)
         // don't get out of sync with the database.
-        blankExistingTables();
+        if (!m_resume) {
+            blankExistingTables();
+        }
 
         try {
             m_server = Rebuild.getServer();
@@ -119,16 +142,25 @@ public class SQLRebuilder
             m_context =
                     ReadOnlyContext.getContext("utility", "fedoraAdmin", "", /* null, */
                     ReadOnlyContext.DO_OP);
+            m_fieldSearch =
+                    (FieldSearch) m_server
+                            .getModule("fedora.server.search.FieldSearch");
+            m_pidGenerator =
+                    (PIDGenerator) m_server
+                            .getModule("fedora.server.management.PIDGenerator");
             String registryClassTemp = m_server.getParameter("registry");
             ILowlevelStorage llstore =
                     (ILowlevelStorage) m_server
                             .getModule("fedora.server.storage.lowlevel.ILowlevelStorage");
-            try {
-                llstore.rebuildObject();
-                llstore.rebuildDatastream();
-            } catch (LowlevelStorageException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
+            // the path registry was rebuilt before the checkpoint was started
+            if (!m_resume) {
+                try {
+                    llstore.rebuildObject();
+                    llstore.rebuildDatastream();
+                } catch (LowlevelStorageException e) {
+                    // TODO Auto-generated catch block
+                    e.printStackTrace();
+                }
             }
 
         } catch (InitializationException ie) {
@@ -259,203 +291,144 @@ public class SQLRebuilder
     /**
      * Add the data of interest for the given object.
      */
-    public void addObject(DigitalObject obj) {
-        // CURRENT TIME:
-        // Get the current time to use for created dates on object
-        // and object components (if they are not already there).
-        Date nowUTC = new Date();
-
-        // DOReplicator replicator=(DOReplicator)
-        // m_server.getModule("fedora.server.storage.replication.DOReplicator");
-        DOManager manager =
-                (DOManager) m_server
-                        .getModule("fedora.server.storage.DOManager");
-        FieldSearch fieldSearch =
-                (FieldSearch) m_server
-                        .getModule("fedora.server.search.FieldSearch");
-        PIDGenerator pidGenerator =
-                (PIDGenerator) m_server
-                        .getModule("fedora.server.management.PIDGenerator");
-
-        // SET OBJECT PROPERTIES:
-        LOG
-                .debug("Rebuild: Setting object/component states and create dates if unset...");
-        // set object state to "A" (Active) if not already set
-        if (obj.getState() == null || obj.getState().equals("")) {
-            obj.setState("A");
-        }
-        // set object create date to UTC if not already set
-        if (obj.getCreateDate() == null || obj.getCreateDate().equals("")) {
-            obj.setCreateDate(nowUTC);
-        }
-        // set object last modified date to UTC
-        obj.setLastModDate(nowUTC);
-
-        // SET OBJECT PROPERTIES:
-        LOG
-                .debug("Rebuild: Setting object/component states and create dates if unset...");
-        // set object state to "A" (Active) if not already set
-        if (obj.getState() == null || obj.getState().equals("")) {
-            obj.setState("A");
-        }
-        // set object create date to UTC if not already set
-        if (obj.getCreateDate() == null || obj.getCreateDate().equals("")) {
-            obj.setCreateDate(nowUTC);
-        }
-        // set object last modified date to UTC
-        obj.setLastModDate(nowUTC);
-
-        // SET DATASTREAM PROPERTIES...
-        Iterator<String> dsIter = obj.datastreamIdIterator();
-        while (dsIter.hasNext()) {
-            for (Datastream ds : obj.datastreams(dsIter.next())) {
-                // Set create date to UTC if not already set
-                if (ds.DSCreateDT == null || ds.DSCreateDT.equals("")) {
-                    ds.DSCreateDT = nowUTC;
-                }
-                // Set state to "A" (Active) if not already set
-                if (ds.DSState == null || ds.DSState.equals("")) {
-                    ds.DSState = "A";
-                }
-            }
-        }
-
-        // GET DIGITAL OBJECT WRITER:
-        // get an object writer configured with the DEFAULT export format
-        LOG.debug("INGEST: Instantiating a SimpleDOWriter...");
-        try {
-            DOWriter w =
-                    manager.getWriter(Server.USE_DEFINITIVE_STORE,
-                                      m_context,
-                                      obj.getPid());
-        } catch (ServerException se) {
-        }
+    public void addObject(DigitalObject obj) throws ServerException {
+        addObjects(Collections.singletonList(obj));
+    }
 
+    /**
+     * Add the data of interest for the given objects. The objects are
+     * registered in one transaction, with a single JDBC batch.
+     */
+    public void addObjects(List<DigitalObject> objects)
+            throws ServerException {
         // PID GENERATION:
-        // have the system generate a PID if one was not provided
-        LOG
-                .debug("INGEST: Stream contained PID with retainable namespace-id... will use PID from stream.");
-        try {
-            pidGenerator.neverGeneratePID(obj.getPid());
-        } catch (IOException e) {
-            throw new RuntimeException("Error calling pidGenerator.neverGeneratePID(): "
-                                               + e.getMessage(),
-                                       e);
+        // make sure the generator never hands out a PID that is in use
+        for (DigitalObject obj : objects) {
+            try {
+                m_pidGenerator.neverGeneratePID(obj.getPid());
+            } catch (IOException e) {
+                throw new GeneralException("Error calling pidGenerator.neverGeneratePID(): "
+                                                   + e.getMessage(),
+                                           e);
+            }
         }
 
-        // REGISTRY:
-        // at this point the object is valid, so make a record
-        // of it in the digital object registry
-        try {
-            registerObject(obj);
-        } catch (StorageDeviceException e) {
+        // FIELDSEARCH:
+        // queued, and written in batches; an update replaces any earlier
+        // one, so this is done first to make the batch safe to retry
+        for (DigitalObject obj : objects) {
+            m_fieldSearch.update(new SimpleDOReader(null,
+                                                    null,
+                                                    null,
+                                                    null,
+                                                    null,
+                                                    obj));
         }
 
-        try {
-            LOG.info("COMMIT: Attempting replication: " + obj.getPid());
-            DOReader reader =
-                    manager.getReader(Server.USE_DEFINITIVE_STORE,
-                                      m_context,
-                                      obj.getPid());
-            LOG.info("COMMIT: Updating FieldSearch indexes...");
-            fieldSearch.update(reader);
+        // REGISTRY:
+        registerObjects(objects);
+    }
 
-        } catch (ServerException se) {
-            System.out.println("Error while replicating: "
-                    + se.getClass().getName() + ": " + se.getMessage());
-            se.printStackTrace();
-        } catch (Throwable th) {
-            System.out.println("Error while replicating: "
-                    + th.getClass().getName() + ": " + th.getMessage());
-            th.printStackTrace();
-        }
+    /**
+     * Write any queued FieldSearch updates; the registry is already written.
+     */
+    public void flush() throws ServerException {
+        m_fieldSearch.flush();
     }
 
     /**
-     * Adds a new object.
+     * Adds the objects to the registry and, for service deployments, the
+     * deployment map. When resuming, rows left by the interrupted rebuild
+     * for objects that were not checkpointed are replaced.
      */
-    private void registerObject(DigitalObject obj)
+    private void registerObjects(List<DigitalObject> objects)
             throws StorageDeviceException {
-        String pid = obj.getPid();
-        String userId = obj.getOwnerId();
-        String label = obj.getLabel();
-
-        // label or contentModelId may be null...set to blank if so
-        String theLabel = label;
-        if (theLabel == null) {
-            theLabel = "";
-        }
         Connection conn = null;
-        Statement s1 = null;
+        PreparedStatement register = null;
+        PreparedStatement deploy = null;
         try {
-            String query =
-                    "INSERT INTO doRegistry (doPID, " + "ownerId, label) "
-                            + "VALUES ('" + pid + "', '" + userId + "', '"
-                            + SQLUtility.aposEscape(theLabel) + "')";
             conn = m_connectionPool.getConnection();
-            s1 = conn.createStatement();
-            s1.executeUpdate(query);
-
-            if (obj.hasContentModel(Models.SERVICE_DEPLOYMENT_3_0)){
-                updateDeploymentMap(obj, conn);
+            conn.setAutoCommit(false);
+            if (m_resume) {
+                unregisterObjects(conn, objects);
             }
-        } catch (SQLException sqle) {
-            throw new StorageDeviceException("Unexpected error from SQL database while registering object: "
-                    + sqle.getMessage());
-        } finally {
-            try {
-                if (s1 != null) {
-                    s1.close();
+
+            register = conn.prepareStatement(REGISTER_SQL);
+            deploy = conn.prepareStatement(DEPLOY_SQL);
+            int deployments = 0;
+            for (DigitalObject obj : objects) {
+                // label may be null...set to blank if so
+                String label = obj.getLabel();
+                if (label == null) {
+                    label = "";
                 }
-            } catch (Exception sqle) {
-                throw new StorageDeviceException("Unexpected error from SQL database while registering object: "
-                        + sqle.getMessage());
-            } finally {
-                s1 = null;
-            }
-        }
+                register.setString(1, obj.getPid());
+                register.setString(2, obj.getOwnerId());
+                register.setString(3, label);
+                register.addBatch();
 
-        Statement s2 = null;
-        ResultSet results = null;
-        try {
-            // REGISTRY:
-            // update systemVersion in doRegistry (add one)
-            LOG.debug("COMMIT: Updating registry...");
-            String query =
-                    "SELECT systemVersion " + "FROM doRegistry "
-                            + "WHERE doPID='" + pid + "'";
-            s2 = conn.createStatement();
-            results = s2.executeQuery(query);
-            if (!results.next()) {
-                throw new ObjectNotFoundException("Error creating replication job: The requested object doesn't exist in the registry.");
+                if (obj.hasContentModel(Models.SERVICE_DEPLOYMENT_3_0)) {
+                    deployments += addDeployments(deploy, obj);
+                }
+            }
+            register.executeBatch();
+            if (deployments > 0) {
+                deploy.executeBatch();
             }
-            int systemVersion = results.getInt("systemVersion");
-            systemVersion++;
-            s2.executeUpdate("UPDATE doRegistry SET systemVersion="
-                    + systemVersion + " " + "WHERE doPID='" + pid + "'");
+            conn.commit();
         } catch (SQLException sqle) {
-            throw new StorageDeviceException("Error creating replication job: "
-                    + sqle.getMessage());
-        } catch (ObjectNotFoundException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+            rollback(conn);
+            throw new StorageDeviceException("Unexpected error from SQL database while registering objects: "
+                                                     + sqle.getMessage(),
+                                             sqle);
         } finally {
             try {
-                if (results != null) {
-                    results.close();
+                if (register != null) {
+                    register.close();
                 }
-                if (s2 != null) {
-                    s2.close();
+                if (deploy != null) {
+                    deploy.close();
                 }
                 if (conn != null) {
-                    m_connectionPool.free(conn);
+                    conn.setAutoCommit(true);
                 }
             } catch (SQLException sqle) {
                 throw new StorageDeviceException("Unexpected error from SQL database: "
                         + sqle.getMessage());
             } finally {
-                results = null;
-                s2 = null;
+                if (conn != null) {
+                    m_connectionPool.free(conn);
+                }
+            }
+        }
+    }
+
+    private static void unregisterObjects(Connection conn,
+                                          List<DigitalObject> objects)
+            throws SQLException {
+        PreparedStatement unregister = conn.prepareStatement(UNREGISTER_SQL);
+        PreparedStatement undeploy = conn.prepareStatement(UNDEPLOY_SQL);
+        try {
+            for (DigitalObject obj : objects) {
+                unregister.setString(1, obj.getPid());
+                unregister.addBatch();
+                undeploy.setString(1, obj.getPid());
+                undeploy.addBatch();
+            }
+            unregister.executeBatch();
+            undeploy.executeBatch();
+        } finally {
+            unregister.close();
+            undeploy.close();
+        }
+    }
+
+    private static void rollback(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.rollback();
+            } catch (SQLException e) {
+                LOG.warn("Error rolling back registry changes", e);
             }
         }
     }
@@ -464,7 +437,15 @@ public class SQLRebuilder
      * Free up any system resources associated with rebuilding.
      */
     public void finish() {
-        // nothing to do
+        // write any FieldSearch updates that are still queued
+        if (m_fieldSearch == null) {
+            return;
+        }
+        try {
+            m_fieldSearch.flush();
+        } catch (ServerException se) {
+            LOG.error("Error writing queued FieldSearch updates", se);
+        }
     }
 
     /**
@@ -500,50 +481,30 @@ public class SQLRebuilder
     }
 
     /**
-     * Update the registry and deployment cache to reflect the latest state of
-     * reality.
+     * Adds a row to the deployment map batch for each service definition and
+     * content model of a service deployment.
      *
-     * @param obj
-     *        DOReader of a service deployment object
+     * @return the number of rows added.
      */
-    private synchronized void updateDeploymentMap(DigitalObject obj,
-                                                  Connection c)
+    private static int addDeployments(PreparedStatement deploy,
+                                      DigitalObject sDep)
             throws SQLException {
-
         Set<RelationshipTuple> sDefs =
-                obj.getRelationships(Constants.MODEL.IS_DEPLOYMENT_OF, null);
+                sDep.getRelationships(Constants.MODEL.IS_DEPLOYMENT_OF, null);
         Set<RelationshipTuple> models =
-                obj.getRelationships(Constants.MODEL.IS_CONTRACTOR_OF, null);
+                sDep.getRelationships(Constants.MODEL.IS_CONTRACTOR_OF, null);
 
+        int count = 0;
         for (RelationshipTuple sDefTuple : sDefs) {
             String sDef = sDefTuple.getObjectPID();
             for (RelationshipTuple cModelTuple : models) {
-                String cModel = cModelTuple.getObjectPID();
-                addDeployment(cModel, sDef, obj, c);
-            }
-        }
-    }
-
-    private void addDeployment(String cModel,
-                               String sDef,
-                               DigitalObject sDep,
-                               Connection c) throws SQLException {
-
-        Statement s = c.createStatement();
-
-        try {
-            s
-                    .executeUpdate("INSERT INTO modelDeploymentMap (cModel, sDef, sDep) VALUES ('"
-                            + cModel
-                            + "' , '"
-                            + sDef
-                            + "', '"
-                            + sDep.getPid()
-                            + "')");
-        } finally {
-            if (s != null) {
-                s.close();
+                deploy.setString(1, cModelTuple.getObjectPID());
+                deploy.setString(2, sDef);
+                deploy.setString(3, sDep.getPid());
+                deploy.addBatch();
+                count++;
             }
         }
+        return count;
     }
 }
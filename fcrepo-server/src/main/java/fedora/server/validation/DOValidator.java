@@ -64,4 +64,26 @@ public interface DOValidator {
                          int validationLevel,
                          String phase) throws ServerException;
 
+    /**
+     * Gets a filter that validates a digital object as it is parsed for
+     * another purpose, typically deserialization. The caller must pass the
+     * whole serialization through the filter, then call
+     * {@link DOValidatorFilter#checkValid()}.
+     * 
+     * @param format
+     *        The format URI of the object serialization (an XML format).
+     * @param validationLevel
+     *        The level of validation to perform, as for validate.
+     * @param phase
+     *        The stage in the work flow for which the validation should be
+     *        contextualized, as for validate.
+     * @return the filter.
+     * @throws ServerException
+     *         If validation of the format can't be done this way.
+     */
+    public DOValidatorFilter newValidatorFilter(String format,
+                                                int validationLevel,
+                                                String phase)
+            throws ServerException;
+
 }
@@ -0,0 +1,276 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.validation;
+
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.validation.ValidatorHandler;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import fedora.server.errors.ObjectValidityException;
+
+/**
+ * An <code>XMLFilter</code> that validates a digital object serialization
+ * from the SAX events of a parse that is being done for another purpose,
+ * typically deserialization.
+ * <p>
+ * Every event is passed to a handler that performs XML Schema validation
+ * against a pre-compiled schema, and to a handler that runs the Schematron
+ * validating stylesheet over the events (so the rules are evaluated without
+ * re-parsing the object), before being forwarded to this filter's own
+ * <code>ContentHandler</code>. After the parse, call {@link #checkValid()}.
+ *
+ * @see DOValidator#newValidatorFilter(String, int, String)
+ */
+public class DOValidatorFilter
+        extends XMLFilterImpl {
+
+    private final ValidatorHandler m_schemaHandler;
+
+    private final TransformerHandler m_rulesHandler;
+
+    private final DOValidatorSchematronHandler m_rulesResult;
+
+    private ObjectValidityException m_failure;
+
+    /**
+     * Creates a filter.
+     *
+     * @param schemaHandler
+     *        handler that does XML Schema validation, or null.
+     * @param rulesHandler
+     *        handler that runs the Schematron validating stylesheet, or null.
+     * @param rulesResult
+     *        the result the rulesHandler writes to, or null.
+     */
+    public DOValidatorFilter(ValidatorHandler schemaHandler,
+                             TransformerHandler rulesHandler,
+                             DOValidatorSchematronHandler rulesResult) {
+        m_schemaHandler = schemaHandler;
+        m_rulesHandler = rulesHandler;
+        m_rulesResult = rulesResult;
+        if (m_schemaHandler != null) {
+            m_schemaHandler.setErrorHandler(new SchemaErrorHandler());
+        }
+    }
+
+    /**
+     * Gets the XML Schema validation failure encountered during the parse,
+     * if any. When the parse was aborted, this tells whether it was aborted
+     * because the object is invalid.
+     *
+     * @return the failure, or null if none has been seen.
+     */
+    public ObjectValidityException getFailure() {
+        return m_failure;
+    }
+
+    /**
+     * Checks the outcome of validation after the whole object has been
+     * parsed through this filter.
+     *
+     * @throws ObjectValidityException
+     *         if the object failed XML Schema or Schematron validation.
+     */
+    public void checkValid() throws ObjectValidityException {
+        if (m_failure != null) {
+            throw m_failure;
+        }
+        if (m_rulesResult != null && !m_rulesResult.isValid()) {
+            throw new ObjectValidityException(m_rulesResult.getXMLResult());
+        }
+    }
+
+    //---
+    // ContentHandler overrides
+    //---
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+        if (m_schemaHandler != null) {
+            m_schemaHandler.setDocumentLocator(locator);
+        }
+        if (m_rulesHandler != null) {
+            m_rulesHandler.setDocumentLocator(locator);
+        }
+        super.setDocumentLocator(locator);
+    }
+
+    @Override
+    public void startDocument() throws SAXException {
+        if (m_schemaHandler != null) {
+            m_schemaHandler.startDocument();
+        }
+        if (m_rulesHandler != null) {
+            m_rulesHandler.startDocument();
+        }
+        super.startDocument();
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+        if (m_schemaHandler != null) {
+            m_schemaHandler.endDocument();
+        }
+        if (m_rulesHandler != null) {
+            try {
+                m_rulesHandler.endDocument();
+            } catch (SAXException e) {
+                // the report handler stops the rules at the first failure,
+                // which checkValid will report
+                if (m_rulesResult == null || m_rulesResult.isValid()) {
+                    throw e;
+                }
+            }
+        }
+        super.endDocument();
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri)
+            throws SAXException {
+        if (m_schemaHandler != null) {
+            m_schemaHandler.startPrefixMapping(prefix, uri);
+        }
+        if (m_rulesHandler != null) {
+            m_rulesHandler.startPrefixMapping(prefix, uri);
+        }
+        super.startPrefixMapping(prefix, uri);
+    }
+
+    @Override
+    public void endPrefixMapping(String prefix) throws SAXException {
+        if (m_schemaHandler != null) {
+            m_schemaHandler.endPrefixMapping(prefix);
+        }
+        if (m_rulesHandler != null) {
+            m_rulesHandler.endPrefixMapping(prefix);
+        }
+        super.endPrefixMapping(prefix);
+    }
+
+    @Override
+    public void startElement(String uri,
+                             String localName,
+                             String qName,
+                             Attributes atts) throws SAXException {
+        if (m_schemaHandler != null) {
+            m_schemaHandler.startElement(uri, localName, qName, atts);
+        }
+        if (m_rulesHandler != null) {
+            m_rulesHandler.startElement(uri, localName, qName, atts);
+        }
+        super.startElement(uri, localName, qName, atts);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName)
+            throws SAXException {
+        if (m_schemaHandler != null) {
+            m_schemaHandler.endElement(uri, localName, qName);
+        }
+        if (m_rulesHandler != null) {
+            m_rulesHandler.endElement(uri, localName, qName);
+        }
+        super.endElement(uri, localName, qName);
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length)
+            throws SAXException {
+        if (m_schemaHandler != null) {
+            m_schemaHandler.characters(ch, start, length);
+        }
+        if (m_rulesHandler != null) {
+            m_rulesHandler.characters(ch, start, length);
+        }
+        super.characters(ch, start, length);
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length)
+            throws SAXException {
+        if (m_schemaHandler != null) {
+            m_schemaHandler.ignorableWhitespace(ch, start, length);
+        }
+        if (m_rulesHandler != null) {
+            m_rulesHandler.ignorableWhitespace(ch, start, length);
+        }
+        super.ignorableWhitespace(ch, start, length);
+    }
+
+    @Override
+    public void processingInstruction(String target, String data)
+            throws SAXException {
+        if (m_schemaHandler != null) {
+            m_schemaHandler.processingInstruction(target, data);
+        }
+        if (m_rulesHandler != null) {
+            m_rulesHandler.processingInstruction(target, data);
+        }
+        super.processingInstruction(target, data);
+    }
+
+    @Override
+    public void skippedEntity(String name) throws SAXException {
+        if (m_schemaHandler != null) {
+            m_schemaHandler.skippedEntity(name);
+        }
+        if (m_rulesHandler != null) {
+            m_rulesHandler.skippedEntity(name);
+        }
+        super.skippedEntity(name);
+    }
+
+    /**
+     * Reports XML Schema errors like DOValidatorXMLErrorHandler, but also
+     * remembers the first one so it can be told apart from other parse
+     * failures.
+     */
+    private class SchemaErrorHandler
+            implements ErrorHandler {
+
+        private final ErrorHandler m_delegate =
+                new DOValidatorXMLErrorHandler();
+
+        public void warning(SAXParseException e) throws SAXException {
+            m_delegate.warning(e);
+        }
+
+        public void error(SAXParseException e) throws SAXException {
+            try {
+                m_delegate.error(e);
+            } catch (SAXException se) {
+                recordFailure(se);
+                throw se;
+            }
+        }
+
+        public void fatalError(SAXParseException e) throws SAXException {
+            try {
+                m_delegate.fatalError(e);
+            } catch (SAXException se) {
+                recordFailure(se);
+                throw se;
+            }
+        }
+
+        private void recordFailure(SAXException e) {
+            if (m_failure == null) {
+                m_failure =
+                        new ObjectValidityException("DOValidatorXMLSchema returned validation exception.\n"
+                                                            + "The message was \""
+                                                            + e.getMessage()
+                                                            + "\"",
+                                                    e);
+            }
+        }
+    }
+}
@@ -10,9 +10,16 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
+import javax.xml.XMLConstants;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.ValidatorHandler;
+
 import org.apache.log4j.Logger;
 
 import fedora.common.Constants;
@@ -100,6 +107,20 @@ public class DOValidatorImpl
      */
     private final Map<String, String> m_ruleSchemaMap;
 
+    /**
+     * Compiled XML Schemas, used for validation in the same pass as
+     * deserialization. key = schema file path, value = schema
+     */
+    private final Map<String, Schema> m_compiledSchemas =
+            new ConcurrentHashMap<String, Schema>();
+
+    /**
+     * Schematron validators, each holding its compiled validating stylesheet.
+     * key = rule schema file path + "#" + phase, value = validator
+     */
+    private final Map<String, DOValidatorSchematron> m_compiledRules =
+            new ConcurrentHashMap<String, DOValidatorSchematron>();
+
     /**
      * <p>
      * Constructs a new DOValidatorImpl to support all forms of digital object
@@ -270,6 +291,111 @@ public class DOValidatorImpl
         cleanUp(objectAsFile);
     }
 
+    /**
+     * <p>
+     * Gets a filter that validates a digital object from the SAX events of a
+     * parse being done for another purpose, such as deserialization, so the
+     * object need not be spooled and parsed separately for validation.
+     * </p>
+     * 
+     * @param format
+     *        The format URI of the object serialization. This must be an XML
+     *        format; zipped formats are not supported.
+     * @param validationType
+     *        The level of validation to perform (see validate).
+     * @param phase
+     *        The stage in the work flow for which the validation should be
+     *        contextualized (see validate).
+     * @return a filter whose checkValid method must be called after parsing.
+     * @throws ObjectValidityException
+     *         If the format is not supported.
+     * @throws GeneralException
+     *         If the schemas can't be loaded.
+     */
+    public DOValidatorFilter newValidatorFilter(String format,
+                                                int validationType,
+                                                String phase)
+            throws ObjectValidityException, GeneralException {
+        checkFormat(format);
+        if (format.equals(Constants.ATOM_ZIP1_1.uri)) {
+            throw new ObjectValidityException("Single-pass validation is "
+                    + "not supported for format: " + format);
+        }
+        ValidatorHandler schemaHandler = null;
+        TransformerHandler rulesHandler = null;
+        DOValidatorSchematronHandler rulesResult = null;
+        if (validationType == VALIDATE_ALL
+                || validationType == VALIDATE_XML_SCHEMA) {
+            schemaHandler =
+                    getCompiledSchema(m_xmlSchemaMap.get(format))
+                            .newValidatorHandler();
+            schemaHandler.setResourceResolver(new DOValidatorResourceResolver());
+        }
+        if (validationType == VALIDATE_ALL
+                || validationType == VALIDATE_SCHEMATRON) {
+            DOValidatorSchematron schtron =
+                    getCompiledRules(m_ruleSchemaMap.get(format),
+                                     schematronPreprocessorPath,
+                                     phase);
+            rulesResult = new DOValidatorSchematronHandler();
+            rulesHandler = schtron.newValidatingHandler(rulesResult);
+        }
+        if (schemaHandler == null && rulesHandler == null) {
+            String msg = "VALIDATE: ERROR - missing or invalid validationType";
+            LOG.error(msg);
+            throw new GeneralException("[DOValidatorImpl] " + msg + ":"
+                    + validationType);
+        }
+        return new DOValidatorFilter(schemaHandler, rulesHandler, rulesResult);
+    }
+
+    /**
+     * Gets the compiled form of the XML Schema at the given path, compiling
+     * it if this is the first time it's been asked for. Compiled schemas are
+     * thread-safe. A {@link DOValidatorResourceResolver} limits what they
+     * import, and what an object names with xsi:schemaLocation, to local
+     * files.
+     */
+    private Schema getCompiledSchema(String xmlSchemaPath)
+            throws GeneralException {
+        Schema schema = m_compiledSchemas.get(xmlSchemaPath);
+        if (schema == null) {
+            try {
+                SchemaFactory factory =
+                        SchemaFactory
+                                .newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+                factory.setResourceResolver(new DOValidatorResourceResolver());
+                schema = factory.newSchema(new File(xmlSchemaPath));
+            } catch (Exception e) {
+                throw new GeneralException("Error compiling XML Schema "
+                        + xmlSchemaPath, e);
+            }
+            m_compiledSchemas.put(xmlSchemaPath, schema);
+        }
+        return schema;
+    }
+
+    /**
+     * Gets the Schematron validator for the given rule schema and phase,
+     * generating and compiling its validating stylesheet if this is the first
+     * time it's been asked for.
+     */
+    private DOValidatorSchematron getCompiledRules(String ruleSchemaPath,
+                                                   String preprocessorPath,
+                                                   String phase)
+            throws ObjectValidityException {
+        String key = ruleSchemaPath + "#" + phase;
+        DOValidatorSchematron schtron = m_compiledRules.get(key);
+        if (schtron == null) {
+            schtron =
+                    new DOValidatorSchematron(ruleSchemaPath,
+                                              preprocessorPath,
+                                              phase);
+            m_compiledRules.put(key, schtron);
+        }
+        return schtron;
+    }
+
     private void checkFormat(String format) throws ObjectValidityException {
         if (!m_xmlSchemaMap.containsKey(format)) {
             throw new ObjectValidityException("Unsupported format: " + format);
@@ -332,9 +458,7 @@ public class DOValidatorImpl
 
         try {
             DOValidatorSchematron schtron =
-                    new DOValidatorSchematron(ruleSchemaPath,
-                                              preprocessorPath,
-                                              phase);
+                    getCompiledRules(ruleSchemaPath, preprocessorPath, phase);
             schtron.validate(objectAsFile);
         } catch (ObjectValidityException e) {
             LOG.error("VALIDATE: ERROR - failed Schematron rules validation.",
@@ -187,4 +187,14 @@ public class DOValidatorModule
                          String phase) throws ServerException {
         dov.validate(objectAsFile, format, validationType, phase);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    public DOValidatorFilter newValidatorFilter(String format,
+                                                int validationType,
+                                                String phase)
+            throws ServerException {
+        return dov.newValidatorFilter(format, validationType, phase);
+    }
 }
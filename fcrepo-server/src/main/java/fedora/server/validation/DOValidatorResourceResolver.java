@@ -0,0 +1,139 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.validation;
+
+import java.io.InputStream;
+import java.io.Reader;
+
+import java.net.URI;
+
+import org.w3c.dom.ls.LSInput;
+import org.w3c.dom.ls.LSResourceResolver;
+
+/**
+ * Restricts the schemas that compiled XML Schema validation may load to
+ * local files, as {@link DOValidatorXMLSchema#resolveEntity(String, String)}
+ * does for the SAX parser. Any other schema, such as one named by
+ * xsi:schemaLocation in an object, resolves to an empty input, which the
+ * validator skips, so it is never fetched.
+ */
+public class DOValidatorResourceResolver
+        implements LSResourceResolver {
+
+    public LSInput resolveResource(String type,
+                                   String namespaceURI,
+                                   String publicId,
+                                   String systemId,
+                                   String baseURI) {
+        if (isLocal(systemId, baseURI)) {
+            return null;
+        } else {
+            return new EmptyInput(publicId, systemId, baseURI);
+        }
+    }
+
+    private static boolean isLocal(String systemId, String baseURI) {
+        if (systemId == null) {
+            return false;
+        }
+        try {
+            URI uri = new URI(systemId);
+            if (!uri.isAbsolute() && baseURI != null) {
+                uri = new URI(baseURI).resolve(uri);
+            }
+            return "file".equals(uri.getScheme());
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * An input with no content. Only the identifiers are kept, for error
+     * messages.
+     */
+    private static class EmptyInput
+            implements LSInput {
+
+        private String publicId;
+
+        private String systemId;
+
+        private String baseURI;
+
+        EmptyInput(String publicId, String systemId, String baseURI) {
+            this.publicId = publicId;
+            this.systemId = systemId;
+            this.baseURI = baseURI;
+        }
+
+        public Reader getCharacterStream() {
+            return null;
+        }
+
+        public void setCharacterStream(Reader characterStream) {
+        }
+
+        public InputStream getByteStream() {
+            return null;
+        }
+
+        public void setByteStream(InputStream byteStream) {
+        }
+
+        public String getStringData() {
+            return null;
+        }
+
+        public void setStringData(String stringData) {
+        }
+
+        /**
+         * Always null: a system id would let the validator load the schema
+         * itself.
+         */
+        public String getSystemId() {
+            return null;
+        }
+
+        public void setSystemId(String systemId) {
+            this.systemId = systemId;
+        }
+
+        public String getPublicId() {
+            return publicId;
+        }
+
+        public void setPublicId(String publicId) {
+            this.publicId = publicId;
+        }
+
+        public String getBaseURI() {
+            return baseURI;
+        }
+
+        public void setBaseURI(String baseURI) {
+            this.baseURI = baseURI;
+        }
+
+        public String getEncoding() {
+            return null;
+        }
+
+        public void setEncoding(String encoding) {
+        }
+
+        public boolean getCertifiedText() {
+            return false;
+        }
+
+        public void setCertifiedText(boolean certifiedText) {
+        }
+
+        @Override
+        public String toString() {
+            return "empty input for " + systemId;
+        }
+    }
+}
@@ -11,13 +11,13 @@ import java.io.InputStream;
 
 import java.net.URL;
 
-import java.util.HashMap;
-import java.util.Map;
-
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
@@ -35,6 +35,10 @@ import fedora.utilities.XmlTransformUtility;
  * in the METS XML schema, or that cannot be expressed with XML Schema language.
  * Generally we will look for things that are requirements of Fedora objects,
  * which are not requirements for METS objects in general.
+ * <p>
+ * The validating stylesheet is generated and compiled once, when an instance
+ * is constructed; an instance may then be used to validate any number of
+ * objects, concurrently.
  * 
  * @author Sandy Payette
  * @version $Id$
@@ -45,14 +49,7 @@ public class DOValidatorSchematron {
     private static final Logger LOG =
             Logger.getLogger(DOValidatorSchematron.class.getName());
 
-    private StreamSource rulesSource;
-
-    private StreamSource preprocessorSource;
-
-    private final StreamSource validatingStyleSheet;
-
-    private static Map<String, ByteArrayOutputStream> generatedStyleSheets = 
-        new HashMap<String, ByteArrayOutputStream>();
+    private final Templates validatingStyleSheet;
 
     /**
      * Constructs a DOValidatorSchematron instance with a Schematron
@@ -106,38 +103,57 @@ public class DOValidatorSchematron {
      * @throws ServerException
      */
     public void validate(StreamSource objectSource) throws ServerException {
-        DOValidatorSchematronResult result = null;
+        DOValidatorSchematronHandler result = new DOValidatorSchematronHandler();
         try {
-            // Create a transformer that uses the validating stylesheet.
-            // Run the Schematron validation of the Fedora object and
-            // output results in DOM format.
-            TransformerFactory tfactory = XmlTransformUtility.getTransformerFactory();
-            Transformer vtransformer =
-                    tfactory.newTransformer(validatingStyleSheet);
-            DOMResult validationResult = new DOMResult();
-            vtransformer.transform(objectSource, validationResult);
-            result = new DOValidatorSchematronResult(validationResult);
+            // Run the Schematron validation of the Fedora object, streaming
+            // the results to a handler that stops at the first failure.
+            Transformer vtransformer = validatingStyleSheet.newTransformer();
+            vtransformer.transform(objectSource, new SAXResult(result));
         } catch (Exception e) {
-            LOG.error("Schematron validation failed", e);
-            throw new ObjectValidityException(e.getMessage());
+            if (result.isValid()) {
+                LOG.error("Schematron validation failed", e);
+                throw new ObjectValidityException(e.getMessage());
+            }
+            // otherwise, the handler stopped the transformation
         }
 
         if (!result.isValid()) {
-            String msg = null;
-            try {
-                msg = result.getXMLResult();
-            } catch (Exception e) {
-                LOG
-                        .warn("Error getting XML result of schematron validation failure",
-                              e);
-            }
-            throw new ObjectValidityException(msg);
+            throw new ObjectValidityException(result.getXMLResult());
+        }
+    }
+
+    /**
+     * Gets a SAX handler that runs the Schematron validation over the events
+     * of a Fedora object as they are parsed, writing the validation report
+     * to the given result.
+     *
+     * @param validationResult
+     *        receives the report, and stops the transformation at the
+     *        first failure.
+     * @return the handler to send the object's SAX events to.
+     * @throws ObjectValidityException
+     *         if a handler can't be created.
+     */
+    public TransformerHandler newValidatingHandler(DOValidatorSchematronHandler validationResult)
+            throws ObjectValidityException {
+        try {
+            SAXTransformerFactory tfactory =
+                    (SAXTransformerFactory) XmlTransformUtility
+                            .getTransformerFactory();
+            TransformerHandler handler =
+                    tfactory.newTransformerHandler(validatingStyleSheet);
+            handler.setResult(new SAXResult(validationResult));
+            return handler;
+        } catch (Exception e) {
+            LOG.error("Schematron validation failed", e);
+            throw new ObjectValidityException(e.getMessage());
         }
     }
 
     /**
      * Run setup to prepare for Schematron validation. This entails dynamically
-     * creating the validating stylesheet using the preprocessor and the schema.
+     * creating the validating stylesheet using the preprocessor and the schema,
+     * and compiling it.
      * 
      * @param preprocessorPath
      *        the location of the Schematron preprocessor
@@ -146,25 +162,26 @@ public class DOValidatorSchematron {
      * @param phase
      *        the phase in the fedora object lifecycle to which validation
      *        should pertain. (Currently options are "ingest" and "store")
-     * @return StreamSource
+     * @return the compiled validating stylesheet
      * @throws ObjectValidityException
      */
-    private StreamSource setUp(String preprocessorPath,
-                               String fedoraschemaPath,
-                               String phase) throws ObjectValidityException {
-        String key = fedoraschemaPath + "#" + phase;
+    private Templates setUp(String preprocessorPath,
+                            String fedoraschemaPath,
+                            String phase) throws ObjectValidityException {
+        StreamSource rulesSource = fileToStreamSource(fedoraschemaPath);
+        StreamSource preprocessorSource = fileToStreamSource(preprocessorPath);
         ByteArrayOutputStream out =
-                (ByteArrayOutputStream) generatedStyleSheets.get(key);
-        if (out == null) {
-            rulesSource = fileToStreamSource(fedoraschemaPath);
-            preprocessorSource = fileToStreamSource(preprocessorPath);
-            out =
-                    createValidatingStyleSheet(rulesSource,
-                                               preprocessorSource,
-                                               phase);
-            generatedStyleSheets.put(key, out);
+                createValidatingStyleSheet(rulesSource,
+                                           preprocessorSource,
+                                           phase);
+        try {
+            TransformerFactory tfactory = XmlTransformUtility.getTransformerFactory();
+            return tfactory.newTemplates(new StreamSource(new ByteArrayInputStream(out
+                    .toByteArray())));
+        } catch (TransformerException e) {
+            LOG.error("Schematron validating stylesheet failed to compile", e);
+            throw new ObjectValidityException(e.getMessage());
         }
-        return new StreamSource(new ByteArrayInputStream(out.toByteArray()));
     }
 
     /**
@@ -0,0 +1,100 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.validation;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import fedora.server.utilities.StreamUtility;
+
+/**
+ * Receives the report of a Schematron validating stylesheet as SAX events.
+ * <p>
+ * The report is not kept. The text of the first ASSERT or REPORT element is
+ * recorded, and the transformation is then stopped by throwing a
+ * <code>SAXException</code>, since the object is already known to be
+ * invalid. Callers should check {@link #isValid()} before treating an
+ * exception from the transformation as an error.
+ *
+ * @see DOValidatorSchematronResult
+ */
+public class DOValidatorSchematronHandler
+        extends DefaultHandler {
+
+    /** The text of the failed ASSERT or REPORT being read, or null. */
+    private StringBuffer m_text;
+
+    /** The name of the failed element being read. */
+    private String m_element;
+
+    /** Depth of the current element within the failed element. */
+    private int m_depth;
+
+    /** The first failure, or null if none has been seen. */
+    private String m_failure;
+
+    /**
+     * Check if the object passes Schematron validation.
+     *
+     * @return <code>true</code>, object is valid, <code>false</code>
+     *         object had errors.
+     */
+    public boolean isValid() {
+        return m_failure == null;
+    }
+
+    /**
+     * Gets the first failed assertion or report, as an XML element.
+     *
+     * @return the failure, or null if the object is valid.
+     */
+    public String getXMLResult() {
+        return m_failure;
+    }
+
+    @Override
+    public void startElement(String uri,
+                             String localName,
+                             String qName,
+                             Attributes atts) {
+        if (m_text != null) {
+            m_depth++;
+            return;
+        }
+        String name = localName.length() > 0 ? localName : qName;
+        if (m_failure == null
+                && (name.equals("ASSERT") || name.equals("REPORT"))) {
+            m_element = name;
+            m_text = new StringBuffer();
+            m_depth = 0;
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        if (m_text != null) {
+            m_text.append(ch, start, length);
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName)
+            throws SAXException {
+        if (m_text == null) {
+            return;
+        }
+        if (m_depth > 0) {
+            m_depth--;
+            return;
+        }
+        String text = m_text.toString().replaceAll("\\s+", " ").trim();
+        m_failure =
+                "<" + m_element + ">" + StreamUtility.enc(text) + "</"
+                        + m_element + ">";
+        m_text = null;
+        throw new SAXException("Schematron validation failed: " + text);
+    }
+}
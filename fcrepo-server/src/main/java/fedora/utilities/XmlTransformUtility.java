@@ -4,17 +4,54 @@
  */
 package fedora.utilities;
 
+import java.io.File;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.transform.ErrorListener;
+import javax.xml.transform.Result;
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.URIResolver;
+import javax.xml.transform.stream.StreamSource;
 
 import net.sf.saxon.FeatureKeys;
 
+import org.apache.log4j.Logger;
+
 /**
+ * Utilities for XSLT transformations.
+ * <p>
+ * Stylesheets obtained through {@link #getTemplates(File)} or
+ * {@link #getTransformer(File)} are compiled once and shared by all threads,
+ * until the stylesheet file is modified. The time taken by the transformations
+ * done with each stylesheet is recorded, logged periodically, and available
+ * from {@link #getTransformStatistics()}.
  *
  * @author Edwin Shin
  * @version $Id$
  */
 public class XmlTransformUtility {
 
+    /** Logger for this class. */
+    private static final Logger LOG =
+            Logger.getLogger(XmlTransformUtility.class.getName());
+
+    /** How many transformations with a stylesheet between statistics logs. */
+    private static final int STATISTICS_INTERVAL = 1000;
+
+    /** Compiled stylesheets, by absolute path. */
+    private static final Map<String, CachedTemplates> TEMPLATES =
+            new ConcurrentHashMap<String, CachedTemplates>();
+
     /**
      * Convenience method to get a new instance of a TransformerFactory.
      * If the {@link #TransformerFactory} is an instance of
@@ -32,4 +69,242 @@ public class XmlTransformUtility {
         }
         return factory;
     }
+
+    /**
+     * Gets the compiled form of a stylesheet, compiling it if this is the first
+     * time it has been asked for, or if the file has been modified since it
+     * was compiled.
+     *
+     * @param xslFile the stylesheet.
+     * @return the compiled stylesheet, which may be used concurrently.
+     * @throws TransformerException if the stylesheet can't be compiled.
+     */
+    public static Templates getTemplates(File xslFile)
+            throws TransformerException {
+        return getCachedTemplates(xslFile).templates;
+    }
+
+    /**
+     * Gets a new transformer for a stylesheet, compiled as by
+     * {@link #getTemplates(File)}. The time taken by its transformations is
+     * recorded against the stylesheet.
+     *
+     * @param xslFile the stylesheet.
+     * @return a transformer, for use by a single thread.
+     * @throws TransformerException if the stylesheet can't be compiled.
+     */
+    public static Transformer getTransformer(File xslFile)
+            throws TransformerException {
+        CachedTemplates cached = getCachedTemplates(xslFile);
+        return new TimedTransformer(cached.templates.newTransformer(), cached);
+    }
+
+    /**
+     * Gets the statistics for each stylesheet that has been used.
+     *
+     * @return the number of transformations done with each stylesheet and
+     *         the time they took, as of this call.
+     */
+    public static List<TransformStatistics> getTransformStatistics() {
+        List<TransformStatistics> statistics =
+                new ArrayList<TransformStatistics>();
+        for (CachedTemplates cached : TEMPLATES.values()) {
+            statistics.add(cached.getStatistics());
+        }
+        return statistics;
+    }
+
+    static CachedTemplates getCachedTemplates(File xslFile)
+            throws TransformerException {
+        String path = xslFile.getAbsolutePath();
+        long lastModified = xslFile.lastModified();
+        CachedTemplates cached = TEMPLATES.get(path);
+        if (cached == null || cached.lastModified != lastModified) {
+            // two threads may compile at once; either result may be kept
+            TransformerFactory factory = getTransformerFactory();
+            Templates templates = factory.newTemplates(new StreamSource(xslFile));
+            cached = new CachedTemplates(path, templates, lastModified, cached);
+            TEMPLATES.put(path, cached);
+            LOG.debug("Compiled stylesheet " + path);
+        }
+        return cached;
+    }
+
+    /**
+     * A compiled stylesheet, the modification time of the file it was compiled
+     * from, and the time taken by transformations with it.
+     */
+    static class CachedTemplates {
+
+        final String path;
+
+        final Templates templates;
+
+        final long lastModified;
+
+        final AtomicLong count;
+
+        final AtomicLong totalNanos;
+
+        CachedTemplates(String path,
+                        Templates templates,
+                        long lastModified,
+                        CachedTemplates previous) {
+            this.path = path;
+            this.templates = templates;
+            this.lastModified = lastModified;
+            // a recompiled stylesheet keeps its statistics
+            count = previous == null ? new AtomicLong() : previous.count;
+            totalNanos =
+                    previous == null ? new AtomicLong() : previous.totalNanos;
+        }
+
+        void record(long nanos) {
+            long n = count.incrementAndGet();
+            long total = totalNanos.addAndGet(nanos);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Transformed with " + path + " in "
+                        + nanos / 1000000 + "ms");
+            }
+            if (n % STATISTICS_INTERVAL == 0) {
+                LOG.info(new TransformStatistics(path, n, total));
+            }
+        }
+
+        TransformStatistics getStatistics() {
+            return new TransformStatistics(path, count.get(), totalNanos.get());
+        }
+    }
+
+    /**
+     * The number of transformations done with a stylesheet, and the time
+     * they took.
+     */
+    public static class TransformStatistics {
+
+        private final String m_path;
+
+        private final long m_count;
+
+        private final long m_totalNanos;
+
+        TransformStatistics(String path, long count, long totalNanos) {
+            m_path = path;
+            m_count = count;
+            m_totalNanos = totalNanos;
+        }
+
+        /**
+         * @return the absolute path of the stylesheet.
+         */
+        public String getPath() {
+            return m_path;
+        }
+
+        /**
+         * @return the number of transformations done with the stylesheet.
+         */
+        public long getCount() {
+            return m_count;
+        }
+
+        /**
+         * @return the mean time taken by a transformation, in microseconds,
+         *         or 0 if there have been none.
+         */
+        public long getAverageMicroseconds() {
+            return m_count == 0 ? 0 : m_totalNanos / m_count / 1000;
+        }
+
+        @Override
+        public String toString() {
+            return "Stylesheet " + m_path + ": " + m_count
+                    + " transformations, average "
+                    + getAverageMicroseconds() + " microseconds";
+        }
+    }
+
+    /**
+     * A transformer that records the time taken by each transformation.
+     */
+    private static class TimedTransformer
+            extends Transformer {
+
+        private final Transformer transformer;
+
+        private final CachedTemplates cached;
+
+        TimedTransformer(Transformer transformer, CachedTemplates cached) {
+            this.transformer = transformer;
+            this.cached = cached;
+        }
+
+        @Override
+        public void transform(Source xmlSource, Result outputTarget)
+                throws TransformerException {
+            long start = System.nanoTime();
+            transformer.transform(xmlSource, outputTarget);
+            cached.record(System.nanoTime() - start);
+        }
+
+        @Override
+        public void setParameter(String name, Object value) {
+            transformer.setParameter(name, value);
+        }
+
+        @Override
+        public Object getParameter(String name) {
+            return transformer.getParameter(name);
+        }
+
+        @Override
+        public void clearParameters() {
+            transformer.clearParameters();
+        }
+
+        @Override
+        public void setURIResolver(URIResolver resolver) {
+            transformer.setURIResolver(resolver);
+        }
+
+        @Override
+        public URIResolver getURIResolver() {
+            return transformer.getURIResolver();
+        }
+
+        @Override
+        public void setOutputProperties(Properties oformat) {
+            transformer.setOutputProperties(oformat);
+        }
+
+        @Override
+        public Properties getOutputProperties() {
+            return transformer.getOutputProperties();
+        }
+
+        @Override
+        public void setOutputProperty(String name, String value) {
+            transformer.setOutputProperty(name, value);
+        }
+
+        @Override
+        public String getOutputProperty(String name) {
+            return transformer.getOutputProperty(name);
+        }
+
+        @Override
+        public void setErrorListener(ErrorListener listener) {
+            transformer.setErrorListener(listener);
+        }
+
+        @Override
+        public ErrorListener getErrorListener() {
+            return transformer.getErrorListener();
+        }
+
+        @Override
+        public void reset() {
+            transformer.reset();
+        }
+    }
 }
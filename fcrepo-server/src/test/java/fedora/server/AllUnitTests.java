@@ -10,6 +10,7 @@ import org.junit.runners.Suite;
 @RunWith(Suite.class)
 @Suite.SuiteClasses( {
         fedora.server.journal.AllUnitTests.class,
+        fedora.server.management.AllUnitTests.class,
         fedora.server.messaging.AllUnitTests.class,
         fedora.server.proxy.AllUnitTests.class,
         fedora.server.search.AllUnitTests.class,
@@ -26,6 +27,7 @@ public class AllUnitTests {
                 new junit.framework.TestSuite(AllUnitTests.class.getName());
 
         suite.addTest(fedora.server.journal.AllUnitTests.suite());
+        suite.addTest(fedora.server.management.AllUnitTests.suite());
         suite.addTest(fedora.server.messaging.AllUnitTests.suite());
         suite.addTest(fedora.server.proxy.AllUnitTests.suite());
         suite.addTest(fedora.server.search.AllUnitTests.suite());
@@ -11,7 +11,8 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses( {fedora.server.journal.helpers.AllUnitTests.class,
         fedora.server.journal.readerwriter.AllUnitTests.class,
         fedora.server.journal.xmlhelpers.AllUnitTests.class,
-        TestJournalRoundTrip.class})
+        TestJournalRoundTrip.class, TestJournalGroupCommit.class,
+        TestJournalReplayDispatcher.class})
 public class AllUnitTests {
 
     // Supports legacy tests runners
@@ -23,6 +24,8 @@ public class AllUnitTests {
         suite.addTest(fedora.server.journal.readerwriter.AllUnitTests.suite());
         suite.addTest(fedora.server.journal.xmlhelpers.AllUnitTests.suite());
         suite.addTest(TestJournalRoundTrip.suite());
+        suite.addTest(TestJournalGroupCommit.suite());
+        suite.addTest(TestJournalReplayDispatcher.suite());
 
         return suite;
     }
@@ -52,7 +52,7 @@ public class MockJournalRecoveryLog
     // ----------------------------------------------------------------------
 
     @Override
-    public void log(String message) {
+    public synchronized void log(String message) {
         messages.add(message);
     }
 
@@ -66,6 +66,11 @@ public class MockJournalWriter
         }
     }
 
+    @Override
+    public boolean needsPreparation() {
+        return firstEntry;
+    }
+
     @Override
     public void shutdown() throws JournalException {
         try {
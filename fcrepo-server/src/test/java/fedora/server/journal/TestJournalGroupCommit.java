@@ -0,0 +1,243 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+
+package fedora.server.journal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+import fedora.server.Context;
+import fedora.server.errors.GeneralException;
+import fedora.server.errors.ServerException;
+import fedora.server.journal.entry.JournalEntryContext;
+import fedora.server.management.MockManagementDelegate;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Run journaled methods through a {@link JournalCreator} that uses a
+ * {@link JournalGroupCommitter}, and check that methods on different objects
+ * run concurrently, and that the entries for each object are journaled in the
+ * order the methods ran.
+ */
+public class TestJournalGroupCommit {
+
+    private static final Pattern PID_ARGUMENT =
+            Pattern.compile("name=\"pid\" type=\"string\">([^<]*)<");
+
+    private static final Pattern LOG_MESSAGE_ARGUMENT =
+            Pattern.compile("name=\"message\" type=\"string\">([^<]*)<");
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TestJournalGroupCommit.class);
+    }
+
+    private RecordingManagementDelegate delegate;
+
+    private JournalCreator creator;
+
+    @Before
+    public void setUp() throws Exception {
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put(JournalConstants.PARAMETER_JOURNAL_WRITER_CLASSNAME,
+                       MockJournalWriter.class.getName());
+        parameters.put(JournalConstants.PARAMETER_JOURNAL_GROUP_COMMIT,
+                       JournalConstants.VALUE_TRUE);
+        delegate = new RecordingManagementDelegate();
+        creator =
+                new JournalCreator(parameters,
+                                   "theRole",
+                                   new MockServerForJournalTesting(delegate,
+                                                                   "theHash"));
+        creator.setManagementDelegate(delegate);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        JournalOperatingMode.setMode(JournalOperatingMode.NORMAL);
+    }
+
+    /**
+     * Each method waits until the other has started. Holding a single lock
+     * for each method, as without group commit, this would time out.
+     */
+    @Test
+    public void differentObjectsRunConcurrently() throws Exception {
+        delegate.rendezvous = new CountDownLatch(2);
+        List<Thread> threads = new ArrayList<Thread>();
+        List<Throwable> errors =
+                Collections.synchronizedList(new ArrayList<Throwable>());
+        threads.add(modifyInThread("demo:1", "a", errors));
+        threads.add(modifyInThread("demo:2", "b", errors));
+        joinAll(threads);
+        assertEquals(Collections.emptyList(), errors);
+
+        creator.shutdown();
+        assertEquals(2, getJournaledEntries(MockJournalWriter.getBuffer())
+                .size());
+    }
+
+    @Test
+    public void entriesAreJournaledInExecutionOrder() throws Exception {
+        List<Thread> threads = new ArrayList<Thread>();
+        List<Throwable> errors =
+                Collections.synchronizedList(new ArrayList<Throwable>());
+        for (int i = 0; i < 40; i++) {
+            threads.add(modifyInThread("demo:" + i % 3, "m" + i, errors));
+        }
+        joinAll(threads);
+        assertEquals(Collections.emptyList(), errors);
+
+        creator.shutdown();
+        List<String[]> entries =
+                getJournaledEntries(MockJournalWriter.getBuffer());
+        assertEquals(40, entries.size());
+        for (int i = 0; i < 3; i++) {
+            String pid = "demo:" + i;
+            List<String> journaled = new ArrayList<String>();
+            for (String[] entry : entries) {
+                if (entry[0].equals(pid)) {
+                    journaled.add(entry[1]);
+                }
+            }
+            assertEquals(delegate.getExecutionOrder(pid), journaled);
+        }
+    }
+
+    @Test
+    public void failedMethodIsNotJournaled() throws Exception {
+        modify("demo:1", "first");
+        JournalOperatingMode.setMode(JournalOperatingMode.READ_ONLY);
+        try {
+            modify("demo:1", "second");
+        } catch (ServerException e) {
+            // expected
+        }
+        JournalOperatingMode.setMode(JournalOperatingMode.NORMAL);
+        modify("demo:1", "third");
+
+        creator.shutdown();
+        List<String[]> entries =
+                getJournaledEntries(MockJournalWriter.getBuffer());
+        assertEquals(2, entries.size());
+        assertEquals("first", entries.get(0)[1]);
+        assertEquals("third", entries.get(1)[1]);
+    }
+
+    private void modify(String pid, String logMessage) throws ServerException {
+        Date result =
+                creator.modifyObject(new JournalEntryContext(),
+                                     pid,
+                                     "A",
+                                     "label",
+                                     "owner",
+                                     logMessage);
+        assertNotNull(result);
+    }
+
+    private Thread modifyInThread(final String pid,
+                                  final String logMessage,
+                                  final List<Throwable> errors) {
+        Thread thread = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    modify(pid, logMessage);
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    private void joinAll(List<Thread> threads) throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join(10000);
+            assertTrue("thread is hung", !thread.isAlive());
+        }
+    }
+
+    /**
+     * Get the PID and log message of each entry in the journal, in order.
+     */
+    private List<String[]> getJournaledEntries(String journal) {
+        List<String[]> entries = new ArrayList<String[]>();
+        String[] parts = journal.split("<JournalEntry ");
+        for (int i = 1; i < parts.length; i++) {
+            Matcher pid = PID_ARGUMENT.matcher(parts[i]);
+            Matcher logMessage = LOG_MESSAGE_ARGUMENT.matcher(parts[i]);
+            assertTrue(pid.find());
+            assertTrue(logMessage.find());
+            entries.add(new String[] {pid.group(1), logMessage.group(1)});
+        }
+        return entries;
+    }
+
+    /**
+     * Records the order that modifyObject is called for each PID, and can
+     * make calls wait for each other.
+     */
+    private static class RecordingManagementDelegate
+            extends MockManagementDelegate {
+
+        volatile CountDownLatch rendezvous;
+
+        private final Map<String, List<String>> executionOrder =
+                new HashMap<String, List<String>>();
+
+        @Override
+        public Date modifyObject(Context context,
+                                 String pid,
+                                 String state,
+                                 String label,
+                                 String ownerId,
+                                 String logMessage) throws ServerException {
+            if (rendezvous != null) {
+                rendezvous.countDown();
+                try {
+                    if (!rendezvous.await(5, TimeUnit.SECONDS)) {
+                        throw new GeneralException("methods did not overlap");
+                    }
+                } catch (InterruptedException e) {
+                    throw new GeneralException("interrupted", e);
+                }
+            }
+            synchronized (executionOrder) {
+                List<String> order = executionOrder.get(pid);
+                if (order == null) {
+                    order = new ArrayList<String>();
+                    executionOrder.put(pid, order);
+                }
+                order.add(logMessage);
+            }
+            return new Date(10000L);
+        }
+
+        List<String> getExecutionOrder(String pid) {
+            synchronized (executionOrder) {
+                return new ArrayList<String>(executionOrder.get(pid));
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+
+package fedora.server.journal;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+import fedora.server.Context;
+import fedora.server.errors.GeneralException;
+import fedora.server.errors.ServerException;
+import fedora.server.journal.entry.ConsumerJournalEntry;
+import fedora.server.journal.entry.JournalEntryContext;
+import fedora.server.management.MockManagementDelegate;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.fail;
+
+/**
+ * Replay entries through a {@link JournalReplayDispatcher}, and check that
+ * the entries for each object are replayed in journal order, that barrier
+ * entries and file boundaries wait for everything before them, and that
+ * failures are reported.
+ */
+public class TestJournalReplayDispatcher
+        implements JournalConstants {
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TestJournalReplayDispatcher.class);
+    }
+
+    private RecordingManagementDelegate delegate;
+
+    private JournalReplayStatistics statistics;
+
+    private JournalReplayDispatcher dispatcher;
+
+    @Before
+    public void setUp() throws Exception {
+        delegate = new RecordingManagementDelegate();
+        MockJournalRecoveryLog recoveryLog =
+                new MockJournalRecoveryLog(new HashMap<String, String>(),
+                                           "theRole",
+                                           new MockServerForJournalTesting(delegate,
+                                                                           "theHash"));
+        statistics = new JournalReplayStatistics(recoveryLog);
+        dispatcher =
+                new JournalReplayDispatcher(4, delegate, recoveryLog, statistics);
+    }
+
+    @Test
+    public void entriesForEachObjectAreReplayedInOrder() throws Exception {
+        Map<String, List<String>> expected = new HashMap<String, List<String>>();
+        for (int i = 0; i < 200; i++) {
+            String pid = "demo:" + i % 7;
+            String logMessage = "m" + i;
+            if (!expected.containsKey(pid)) {
+                expected.put(pid, new ArrayList<String>());
+            }
+            expected.get(pid).add(logMessage);
+            dispatcher.dispatch(modifyObjectEntry(pid, logMessage));
+        }
+        dispatcher.finish();
+
+        assertEquals(200, statistics.getEntryCount());
+        for (String pid : expected.keySet()) {
+            assertEquals(expected.get(pid), delegate.getExecutionOrder(pid));
+        }
+    }
+
+    @Test
+    public void barrierWaitsForEarlierEntries() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            dispatcher.dispatch(modifyObjectEntry("demo:" + i, "before"));
+        }
+        dispatcher.dispatch(getNextPidEntry());
+        for (int i = 0; i < 20; i++) {
+            dispatcher.dispatch(modifyObjectEntry("demo:" + i, "after"));
+        }
+        dispatcher.finish();
+
+        assertEquals(41, statistics.getEntryCount());
+        assertEquals(20, delegate.modifyCountAtGetNextPid);
+    }
+
+    @Test
+    public void fileBoundaryWaitsForEarlierEntries() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            dispatcher.dispatch(modifyObjectEntry("demo:" + i % 7, "m" + i));
+        }
+        dispatcher.fileBoundary();
+        assertEquals(50, statistics.getEntryCount());
+
+        dispatcher.dispatch(modifyObjectEntry("demo:1", "next file"));
+        dispatcher.finish();
+        assertEquals(51, statistics.getEntryCount());
+    }
+
+    @Test
+    public void fileBoundaryReportsFailure() throws Exception {
+        dispatcher.dispatch(modifyObjectEntry("demo:1", "first"));
+        dispatcher.dispatch(modifyObjectEntry("demo:1", "fail"));
+        try {
+            dispatcher.fileBoundary();
+            fail("Expected a JournalException");
+        } catch (JournalException e) {
+            // expected: the file must not be archived
+        }
+        try {
+            dispatcher.finish();
+        } catch (JournalException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void failureIsReported() throws Exception {
+        dispatcher.dispatch(modifyObjectEntry("demo:1", "first"));
+        dispatcher.dispatch(modifyObjectEntry("demo:1", "fail"));
+        try {
+            // may find the failure already, or leave it to finish()
+            dispatcher.dispatch(modifyObjectEntry("demo:1", "third"));
+            dispatcher.finish();
+            fail("Expected a JournalException");
+        } catch (JournalException e) {
+            // expected
+        }
+        List<String> replayed = delegate.getExecutionOrder("demo:1");
+        assertEquals("first", replayed.get(0));
+        assertEquals(1, replayed.size());
+    }
+
+    private ConsumerJournalEntry modifyObjectEntry(String pid,
+                                                  String logMessage) {
+        ConsumerJournalEntry entry =
+                new ConsumerJournalEntry(METHOD_MODIFY_OBJECT,
+                                         new JournalEntryContext());
+        entry.addArgument(ARGUMENT_NAME_PID, pid);
+        entry.addArgument(ARGUMENT_NAME_STATE, "A");
+        entry.addArgument(ARGUMENT_NAME_LABEL, "label");
+        entry.addArgument(ARGUMENT_NAME_OWNERID, "owner");
+        entry.addArgument(ARGUMENT_NAME_LOG_MESSAGE, logMessage);
+        return entry;
+    }
+
+    private ConsumerJournalEntry getNextPidEntry() {
+        ConsumerJournalEntry entry =
+                new ConsumerJournalEntry(METHOD_GET_NEXT_PID,
+                                         new JournalEntryContext());
+        entry.addArgument(ARGUMENT_NAME_NUM_PIDS, 1);
+        entry.addArgument(ARGUMENT_NAME_NAMESPACE, "demo");
+        return entry;
+    }
+
+    /**
+     * Records the order that modifyObject is called for each PID, taking a
+     * random moment over each call so the workers interleave.
+     */
+    private static class RecordingManagementDelegate
+            extends MockManagementDelegate {
+
+        private final Random random = new Random();
+
+        private final Map<String, List<String>> executionOrder =
+                new HashMap<String, List<String>>();
+
+        private int modifyCount = 0;
+
+        volatile int modifyCountAtGetNextPid = -1;
+
+        @Override
+        public Date modifyObject(Context context,
+                                 String pid,
+                                 String state,
+                                 String label,
+                                 String ownerId,
+                                 String logMessage) throws ServerException {
+            if ("fail".equals(logMessage)) {
+                throw new GeneralException("failing on purpose");
+            }
+            try {
+                Thread.sleep(nextDelay());
+            } catch (InterruptedException e) {
+                throw new GeneralException("interrupted", e);
+            }
+            synchronized (executionOrder) {
+                List<String> order = executionOrder.get(pid);
+                if (order == null) {
+                    order = new ArrayList<String>();
+                    executionOrder.put(pid, order);
+                }
+                order.add(logMessage);
+                modifyCount++;
+            }
+            return new Date(10000L);
+        }
+
+        @Override
+        public String[] getNextPID(Context context,
+                                   int numPIDs,
+                                   String namespace) throws ServerException {
+            synchronized (executionOrder) {
+                modifyCountAtGetNextPid = modifyCount;
+            }
+            return super.getNextPID(context, numPIDs, namespace);
+        }
+
+        private synchronized int nextDelay() {
+            return random.nextInt(3);
+        }
+
+        List<String> getExecutionOrder(String pid) {
+            synchronized (executionOrder) {
+                return new ArrayList<String>(executionOrder.get(pid));
+            }
+        }
+    }
+}
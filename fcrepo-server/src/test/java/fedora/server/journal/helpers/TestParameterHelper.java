@@ -122,6 +122,45 @@ public class TestParameterHelper
         }
     }
 
+    @Test
+    public void testGetOptionalPositiveIntegerParameter_Value()
+            throws JournalException {
+        parameters.put(PARAMETER_NAME, " 8 ");
+        int result =
+                ParameterHelper
+                        .getOptionalPositiveIntegerParameter(parameters,
+                                                             PARAMETER_NAME,
+                                                             1);
+        assertEquals(8, result);
+    }
+
+    @Test
+    public void testGetOptionalPositiveIntegerParameter_Default()
+            throws JournalException {
+        int result =
+                ParameterHelper
+                        .getOptionalPositiveIntegerParameter(parameters,
+                                                             PARAMETER_NAME,
+                                                             1);
+        assertEquals(1, result);
+    }
+
+    @Test
+    public void testGetOptionalPositiveIntegerParameter_InvalidValue() {
+        for (String value : new String[] {"0", "-2", "BOGUS"}) {
+            parameters.put(PARAMETER_NAME, value);
+            try {
+                ParameterHelper
+                        .getOptionalPositiveIntegerParameter(parameters,
+                                                             PARAMETER_NAME,
+                                                             1);
+                fail("Expected a JournalException for '" + value + "'");
+            } catch (JournalException e) {
+                // expected the exception
+            }
+        }
+    }
+
     @Test
     public void testGetOptionalStringParameter_Value() {
         parameters.put("fred", "theValue");
@@ -10,7 +10,8 @@ import org.junit.runners.Suite;
 @RunWith(Suite.class)
 @Suite.SuiteClasses( {
         fedora.server.journal.readerwriter.multifile.AllUnitTests.class,
-        fedora.server.journal.readerwriter.multicast.AllUnitTests.class})
+        fedora.server.journal.readerwriter.multicast.AllUnitTests.class,
+        fedora.server.journal.readerwriter.binary.AllUnitTests.class})
 public class AllUnitTests {
 
     // Supports legacy tests runners
@@ -23,6 +24,8 @@ public class AllUnitTests {
                 .suite());
         suite.addTest(fedora.server.journal.readerwriter.multicast.AllUnitTests
                 .suite());
+        suite.addTest(fedora.server.journal.readerwriter.binary.AllUnitTests
+                .suite());
 
         return suite;
     }
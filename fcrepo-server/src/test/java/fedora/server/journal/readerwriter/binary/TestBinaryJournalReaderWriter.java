@@ -0,0 +1,282 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.journal.readerwriter.binary;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fedora.server.journal.JournalConstants;
+import fedora.server.journal.MockJournalRecoveryLog;
+import fedora.server.journal.MockServerForJournalTesting;
+import fedora.server.journal.entry.ConsumerJournalEntry;
+import fedora.server.journal.entry.CreatorJournalEntry;
+import fedora.server.journal.entry.JournalEntryContext;
+import fedora.server.journal.readerwriter.multifile.MultiFileJournalConstants;
+import fedora.server.management.MockManagementDelegate;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Write journal entries with a {@link BinaryJournalWriter}, read them back
+ * with a {@link BinaryJournalReader}, and check that nothing was lost.
+ */
+public class TestBinaryJournalReaderWriter
+        implements JournalConstants, MultiFileJournalConstants,
+        BinaryJournalConstants {
+
+    private static final String HASH = "theHash";
+
+    private File journalDirectory;
+
+    private File archiveDirectory;
+
+    private Map<String, String> parameters;
+
+    private MockServerForJournalTesting server;
+
+    /** Compressible, and larger than one block. */
+    private byte[] content;
+
+    @Before
+    public void setUp() throws Exception {
+        journalDirectory = createTempDirectory("fedoraBinaryJournal");
+        archiveDirectory = createTempDirectory("fedoraBinaryArchive");
+
+        parameters = new HashMap<String, String>();
+        parameters.put(PARAMETER_JOURNAL_DIRECTORY, journalDirectory.getPath());
+        parameters.put(PARAMETER_ARCHIVE_DIRECTORY, archiveDirectory.getPath());
+        parameters.put(PARAMETER_JOURNAL_FILENAME_PREFIX, "binary");
+
+        server =
+                new MockServerForJournalTesting(new MockManagementDelegate(),
+                                                HASH);
+
+        StringBuffer buffer = new StringBuffer();
+        for (int i = 0; buffer.length() < 3 * BLOCK_SIZE; i++) {
+            buffer.append("<line number=\"").append(i).append("\"/>\n");
+        }
+        content = buffer.toString().getBytes("UTF-8");
+    }
+
+    @After
+    public void tearDown() {
+        deleteDirectory(journalDirectory);
+        deleteDirectory(archiveDirectory);
+    }
+
+    @Test
+    public void roundTripUncompressed() throws Exception {
+        roundTrip();
+    }
+
+    @Test
+    public void roundTripCompressed() throws Exception {
+        parameters.put(PARAMETER_JOURNAL_COMPRESSION,
+                       VALUE_COMPRESSION_DEFLATE);
+        roundTrip();
+    }
+
+    @Test
+    public void compressedFileIsSmaller() throws Exception {
+        long uncompressed = writeAndMeasure();
+        deleteDirectory(journalDirectory);
+        journalDirectory.mkdir();
+
+        parameters.put(PARAMETER_JOURNAL_COMPRESSION,
+                       VALUE_COMPRESSION_DEFLATE);
+        long compressed = writeAndMeasure();
+
+        assertTrue("uncompressed=" + uncompressed + ", compressed="
+                + compressed, compressed * 4 < uncompressed);
+    }
+
+    @Test
+    public void blocksRoundTrip() throws Exception {
+        byte[] random = new byte[2 * BLOCK_SIZE + 17];
+        new Random(42).nextBytes(random);
+        for (byte compression : new byte[] {COMPRESSION_NONE,
+                COMPRESSION_DEFLATE}) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            BlockOutputStream out = new BlockOutputStream(bytes, compression);
+            out.write(content);
+            out.flush();
+            out.write(7);
+            out.write(random, 0, random.length);
+            out.close();
+
+            BlockInputStream in =
+                    new BlockInputStream(new ByteArrayInputStream(bytes
+                            .toByteArray()));
+            assertArrayEquals(content, readFully(in, content.length));
+            assertEquals(7, in.read());
+            assertArrayEquals(random, readFully(in, random.length));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    private void roundTrip() throws Exception {
+        List<CreatorJournalEntry> written = new ArrayList<CreatorJournalEntry>();
+
+        JournalEntryContext context = new JournalEntryContext();
+        context.setPassword("secret");
+        CreatorJournalEntry modify =
+                new CreatorJournalEntry(METHOD_MODIFY_OBJECT, context);
+        modify.addArgument(ARGUMENT_NAME_PID, "demo:1");
+        modify.addArgument(ARGUMENT_NAME_LABEL, "a label with \u00e9");
+        modify.addArgument(ARGUMENT_NAME_OWNERID, (String) null);
+        modify.setRecoveryValue("info:fedora/test", "recovered");
+        written.add(modify);
+
+        CreatorJournalEntry add =
+                new CreatorJournalEntry(METHOD_ADD_DATASTREAM,
+                                        new JournalEntryContext());
+        add.addArgument(ARGUMENT_NAME_PID, "demo:1");
+        add.addArgument(ARGUMENT_NAME_ALT_IDS, new String[] {"a", "b"});
+        add.addArgument(ARGUMENT_NAME_VERSIONABLE, true);
+        add.addArgument(ARGUMENT_NAME_NUM_PIDS, 3);
+        add.addArgument(ARGUMENT_NAME_START_DATE, new Date(1234567890123L));
+        written.add(add);
+
+        CreatorJournalEntry ingest =
+                new CreatorJournalEntry(METHOD_INGEST, new JournalEntryContext());
+        ingest.addArgument(ARGUMENT_NAME_SERIALIZATION,
+                           new ByteArrayInputStream(content));
+        written.add(ingest);
+
+        BinaryJournalWriter writer =
+                new BinaryJournalWriter(parameters, "theRole", server);
+        writer.prepareToWriteJournalEntry();
+        writer.writeJournalEntry(written.get(0));
+        writer.writeJournalEntries(written.subList(1, 3));
+        writer.shutdown();
+
+        BinaryJournalReader reader =
+                new BinaryJournalReader(parameters,
+                                        "theRole",
+                                        new MockJournalRecoveryLog(parameters,
+                                                                   "theRole",
+                                                                   server),
+                                        server);
+        for (CreatorJournalEntry expected : written) {
+            ConsumerJournalEntry actual = reader.readJournalEntry();
+            assertEquals(expected.getMethodName(), actual.getMethodName());
+            assertEquals(expected.getContext(), actual.getContext());
+            assertArgumentsEqual(expected.getArgumentsMap(), actual
+                    .getArgumentsMap());
+        }
+        assertNull(reader.readJournalEntry());
+        reader.shutdown();
+
+        assertEquals(0, journalDirectory.listFiles().length);
+        assertEquals(1, archiveDirectory.listFiles().length);
+    }
+
+    /**
+     * A null argument isn't read back, and a stream argument comes back as a
+     * different file with the same contents.
+     */
+    private void assertArgumentsEqual(Map<String, Object> expected,
+                                      Map<String, Object> actual)
+            throws IOException {
+        int nulls = 0;
+        for (String name : expected.keySet()) {
+            Object value = expected.get(name);
+            if (value == null) {
+                nulls++;
+                assertTrue(!actual.containsKey(name));
+            } else if (value instanceof File) {
+                assertArrayEquals(readFile((File) value),
+                                  readFile((File) actual.get(name)));
+            } else if (value instanceof String[]) {
+                assertTrue(Arrays.equals((String[]) value, (String[]) actual
+                        .get(name)));
+            } else {
+                assertEquals(value, actual.get(name));
+            }
+        }
+        assertEquals(expected.size() - nulls, actual.size());
+    }
+
+    private long writeAndMeasure() throws Exception {
+        CreatorJournalEntry ingest =
+                new CreatorJournalEntry(METHOD_INGEST, new JournalEntryContext());
+        ingest.addArgument(ARGUMENT_NAME_SERIALIZATION,
+                           new ByteArrayInputStream(content));
+        BinaryJournalWriter writer =
+                new BinaryJournalWriter(parameters, "theRole", server);
+        writer.prepareToWriteJournalEntry();
+        writer.writeJournalEntry(ingest);
+        writer.shutdown();
+
+        File[] files = journalDirectory.listFiles();
+        assertEquals(1, files.length);
+        return files[0].length();
+    }
+
+    private byte[] readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return readFully(in, (int) file.length());
+        } finally {
+            in.close();
+        }
+    }
+
+    private byte[] readFully(InputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            int howMany = in.read(bytes, offset, length - offset);
+            if (howMany == -1) {
+                throw new IOException("Expected " + length + " bytes, found "
+                        + offset);
+            }
+            offset += howMany;
+        }
+        return bytes;
+    }
+
+    private File createTempDirectory(String name) throws IOException {
+        File directory = File.createTempFile(name, "");
+        directory.delete();
+        directory.mkdirs();
+        return directory;
+    }
+
+    private void deleteDirectory(File directory) {
+        File[] children = directory.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                child.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    // Supports legacy test runners
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(TestBinaryJournalReaderWriter.class);
+    }
+
+}
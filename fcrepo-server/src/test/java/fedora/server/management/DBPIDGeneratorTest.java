@@ -0,0 +1,292 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.management;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import mock.sql.MockConnection;
+import mock.sql.MockDriver;
+import mock.sql.MockPreparedStatement;
+import mock.sql.MockStatement;
+
+import fedora.common.PID;
+
+import fedora.server.storage.ConnectionPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for {@link DBPIDGenerator}, run against a mock pidGen table.
+ */
+public class DBPIDGeneratorTest {
+
+    private static final int BLOCK_SIZE = 10;
+
+    /** The pidGen table: highestID by namespace. */
+    private final Map<String, Integer> m_pidGen =
+            Collections.synchronizedMap(new HashMap<String, Integer>());
+
+    /** The number of rows written to the pidGen table. */
+    private int m_writes;
+
+    private final PidGenMockDriver m_mockDriver = new PidGenMockDriver();
+
+    private ConnectionPool m_connectionPool;
+
+    @Before
+    public void setUp() throws SQLException {
+        DriverManager.registerDriver(m_mockDriver);
+        m_connectionPool =
+                new ConnectionPool(MockDriver.class.getName(),
+                                   "mock://bogus.url",
+                                   "bogusUsername",
+                                   "bogusPassword",
+                                   5,
+                                   5,
+                                   5,
+                                   0,
+                                   0,
+                                   2,
+                                   300,
+                                   null,
+                                   false,
+                                   false,
+                                   false,
+                                   (byte) 0);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        DriverManager.deregisterDriver(m_mockDriver);
+    }
+
+    @Test
+    public void testReservesInBlocks() throws Exception {
+        DBPIDGenerator generator = newGenerator();
+        for (int i = 1; i <= 25; i++) {
+            assertEquals("demo:" + i, generator.generatePID("demo").toString());
+        }
+        assertEquals("demo:25", generator.getLastPID().toString());
+        assertEquals(3, m_writes);
+        assertEquals(new Integer(30), m_pidGen.get("demo"));
+    }
+
+    @Test
+    public void testConcurrentPIDsAreUnique() throws Exception {
+        final DBPIDGenerator generator = newGenerator();
+        final int threadCount = 8;
+        final int pidsPerThread = 200;
+        final Set<String> pids =
+                Collections.synchronizedSet(new HashSet<String>());
+        final List<Throwable> errors =
+                Collections.synchronizedList(new ArrayList<Throwable>());
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < threadCount; i++) {
+            threads.add(new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < pidsPerThread; j++) {
+                            String pid =
+                                    generator.generatePID("demo").toString();
+                            if (!pids.add(pid)) {
+                                fail("Generated " + pid + " twice");
+                            }
+                        }
+                    } catch (Throwable th) {
+                        errors.add(th);
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue("Errors generating PIDs: " + errors, errors.isEmpty());
+        assertEquals(threadCount * pidsPerThread, pids.size());
+        // every id handed out was recorded as used first
+        int highest = m_pidGen.get("demo").intValue();
+        for (String pid : pids) {
+            assertTrue(pid + " is beyond " + highest,
+                       Integer.parseInt(new PID(pid).getObjectId()) <= highest);
+        }
+    }
+
+    @Test
+    public void testNeverGeneratePIDBeyondBlock() throws Exception {
+        DBPIDGenerator generator = newGenerator();
+        assertEquals("demo:1", generator.generatePID("demo").toString());
+
+        generator.neverGeneratePID("demo:50");
+        assertEquals(new Integer(50), m_pidGen.get("demo"));
+        assertEquals("demo:51", generator.generatePID("demo").toString());
+
+        // ids that are already behind are left alone
+        generator.neverGeneratePID("demo:7");
+        generator.neverGeneratePID("demo:notanumber");
+        assertEquals("demo:52", generator.generatePID("demo").toString());
+        assertEquals(new Integer(60), m_pidGen.get("demo"));
+    }
+
+    @Test
+    public void testNeverGeneratePIDInNewNamespace() throws Exception {
+        DBPIDGenerator generator = newGenerator();
+        generator.neverGeneratePID("other:5");
+        assertEquals("other:6", generator.generatePID("other").toString());
+        assertEquals("demo:1", generator.generatePID("demo").toString());
+    }
+
+    @Test
+    public void testRestartContinuesPastBlock() throws Exception {
+        DBPIDGenerator first = newGenerator();
+        for (int i = 0; i < 3; i++) {
+            first.generatePID("demo");
+        }
+        first.generatePID("other");
+        assertEquals(new Integer(BLOCK_SIZE), m_pidGen.get("demo"));
+
+        // the rest of the first block is skipped, not handed out again
+        DBPIDGenerator second = newGenerator();
+        assertEquals("demo:" + (BLOCK_SIZE + 1), second.generatePID("demo")
+                .toString());
+        assertEquals("other:" + (BLOCK_SIZE + 1), second.generatePID("other")
+                .toString());
+        assertEquals("new:1", second.generatePID("new").toString());
+        assertEquals(new Integer(2 * BLOCK_SIZE), m_pidGen.get("demo"));
+    }
+
+    private DBPIDGenerator newGenerator() throws Exception {
+        return new DBPIDGenerator(m_connectionPool, null, BLOCK_SIZE);
+    }
+
+    /**
+     * A connection whose statements read and write the pidGen table.
+     */
+    private class PidGenMockConnection
+            extends MockConnection {
+
+        @Override
+        public Statement createStatement() throws SQLException {
+            return new MockStatement() {
+
+                @Override
+                public ResultSet executeQuery(String sql) {
+                    assertTrue(sql, sql.startsWith("SELECT namespace"));
+                    synchronized (m_pidGen) {
+                        return rows(new HashMap<String, Integer>(m_pidGen));
+                    }
+                }
+            };
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql)
+                throws SQLException {
+            return new MockPreparedStatement(sql) {
+
+                @Override
+                public int executeUpdate() throws SQLException {
+                    Object[] params = getParameters();
+                    super.executeUpdate();
+                    synchronized (m_pidGen) {
+                        if (getSql().startsWith("UPDATE pidGen")) {
+                            String namespace = (String) params[1];
+                            if (!m_pidGen.containsKey(namespace)) {
+                                return 0;
+                            }
+                            m_pidGen.put(namespace, (Integer) params[0]);
+                        } else {
+                            m_pidGen.put((String) params[0],
+                                         (Integer) params[1]);
+                        }
+                        m_writes++;
+                        return 1;
+                    }
+                }
+            };
+        }
+    }
+
+    /**
+     * Returns a result set with a namespace and highestID column, holding the
+     * given rows.
+     */
+    private static ResultSet rows(Map<String, Integer> rows) {
+        final Iterator<Map.Entry<String, Integer>> iter =
+                rows.entrySet().iterator();
+        InvocationHandler handler = new InvocationHandler() {
+
+            private Map.Entry<String, Integer> m_row;
+
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("next")) {
+                    m_row = iter.hasNext() ? iter.next() : null;
+                    return Boolean.valueOf(m_row != null);
+                } else if (name.equals("getString")
+                        && "namespace".equals(args[0])) {
+                    return m_row.getKey();
+                } else if (name.equals("getInt")
+                        && "highestID".equals(args[0])) {
+                    return m_row.getValue();
+                } else if (name.equals("close")) {
+                    return null;
+                }
+                throw new RuntimeException("ResultSet." + name
+                        + " not implemented");
+            }
+        };
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class
+                .getClassLoader(), new Class[] {ResultSet.class}, handler);
+    }
+
+    private class PidGenMockDriver
+            extends MockDriver {
+
+        @Override
+        public Connection connect(String url, Properties info)
+                throws SQLException {
+            return new PidGenMockConnection();
+        }
+    }
+
+    // Supports legacy test runners
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(DBPIDGeneratorTest.class);
+    }
+}
@@ -10,7 +10,8 @@ import org.junit.runners.Suite;
 import junit.framework.JUnit4TestAdapter;
 
 @RunWith(Suite.class)
-@Suite.SuiteClasses( {fedora.server.messaging.JMSManagerTest.class})
+@Suite.SuiteClasses( {fedora.server.messaging.JMSManagerTest.class,
+        fedora.server.messaging.NotificationDispatcherTest.class})
 public class AllUnitTests {
 
     // Supports legacy tests runners
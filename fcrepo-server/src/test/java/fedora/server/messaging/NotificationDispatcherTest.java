@@ -0,0 +1,205 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.messaging;
+
+import java.lang.reflect.Method;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+import fedora.server.Context;
+import fedora.server.errors.MessagingException;
+import fedora.server.management.Management;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the NotificationDispatcher.
+ */
+public class NotificationDispatcherTest {
+
+    private static final Method PURGE_OBJECT;
+
+    static {
+        try {
+            PURGE_OBJECT =
+                    Management.class.getMethod("purgeObject",
+                                               Context.class,
+                                               String.class,
+                                               String.class,
+                                               boolean.class);
+        } catch (NoSuchMethodException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    public void testOrderIsKeptForEachPid() throws Exception {
+        RecordingMessaging messaging = new RecordingMessaging(null);
+        NotificationDispatcher dispatcher =
+                new NotificationDispatcher(messaging, 3, 4, 3);
+        for (int i = 0; i < 200; i++) {
+            dispatcher.dispatch(purgeObject("demo:" + i % 7, i));
+        }
+        dispatcher.close();
+
+        assertEquals(200, messaging.sent.size());
+        assertEquals(200, dispatcher.getSentCount());
+        assertEquals(0, dispatcher.getQueueDepth());
+
+        Map<String, Integer> last = new HashMap<String, Integer>();
+        for (FedoraMethod method : messaging.sent) {
+            String pid = method.getPID().toString();
+            int sequence = sequence(method);
+            Integer previous = last.get(pid);
+            assertTrue(pid + " sent out of order", previous == null
+                    || previous < sequence);
+            last.put(pid, sequence);
+        }
+    }
+
+    @Test
+    public void testFailedBatchIsSentSeparately() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingMessaging messaging = new RecordingMessaging(release);
+        messaging.failOn = 3;
+        NotificationDispatcher dispatcher =
+                new NotificationDispatcher(messaging, 1, 10, 10);
+        for (int i = 0; i < 6; i++) {
+            dispatcher.dispatch(purgeObject("demo:1", i));
+        }
+        release.countDown();
+        dispatcher.close();
+
+        assertEquals(5, messaging.sent.size());
+        assertEquals(5, dispatcher.getSentCount());
+        assertEquals(1, dispatcher.getFailedCount());
+        for (FedoraMethod method : messaging.sent) {
+            assertTrue(sequence(method) != 3);
+        }
+    }
+
+    @Test
+    public void testPartlySentBatchIsNotResent() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingMessaging messaging = new RecordingMessaging(release);
+        messaging.failOn = 3;
+        messaging.partial = true;
+        NotificationDispatcher dispatcher =
+                new NotificationDispatcher(messaging, 1, 10, 10);
+        for (int i = 0; i < 6; i++) {
+            dispatcher.dispatch(purgeObject("demo:1", i));
+        }
+        release.countDown();
+        dispatcher.close();
+
+        assertEquals(5, messaging.sent.size());
+        assertEquals(5, dispatcher.getSentCount());
+        assertEquals(1, dispatcher.getFailedCount());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i < 3 ? i : i + 1, sequence(messaging.sent.get(i)));
+        }
+    }
+
+    @Test
+    public void testClosedDispatcherDropsNotifications() throws Exception {
+        RecordingMessaging messaging = new RecordingMessaging(null);
+        NotificationDispatcher dispatcher =
+                new NotificationDispatcher(messaging, 2, 10, 10);
+        dispatcher.close();
+        dispatcher.dispatch(purgeObject("demo:1", 0));
+
+        assertTrue(dispatcher.isClosed());
+        assertEquals(0, messaging.sent.size());
+    }
+
+    private static FedoraMethod purgeObject(String pid, int sequence) {
+        return new FedoraMethod(PURGE_OBJECT, new Object[] {null, pid,
+                Integer.toString(sequence), false}, null);
+    }
+
+    private static int sequence(FedoraMethod method) {
+        return Integer.parseInt((String) method.getParameters()[2]);
+    }
+
+    /**
+     * Records what is sent, optionally waiting for a signal before the first
+     * send, and failing any batch that holds a given sequence number. If
+     * <code>partial</code> is set, the rest of that batch is sent and only the
+     * failing method is reported as unsent.
+     */
+    private static class RecordingMessaging
+            implements Messaging {
+
+        final List<FedoraMethod> sent = new ArrayList<FedoraMethod>();
+
+        private final CountDownLatch release;
+
+        int failOn = -1;
+
+        boolean partial = false;
+
+        RecordingMessaging(CountDownLatch release) {
+            this.release = release;
+        }
+
+        public void send(String destName, FedoraMessage message) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void send(FedoraMethod method) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void send(List<FedoraMethod> methods) throws MessagingException {
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new MessagingException("interrupted");
+                }
+            }
+            List<FedoraMethod> unsent = new ArrayList<FedoraMethod>();
+            for (FedoraMethod method : methods) {
+                if (sequence(method) == failOn) {
+                    if (!partial) {
+                        throw new MessagingException("failed on " + failOn);
+                    }
+                    unsent.add(method);
+                } else if (partial) {
+                    synchronized (sent) {
+                        sent.add(method);
+                    }
+                }
+            }
+            if (!unsent.isEmpty()) {
+                throw new PartialBatchException("failed on " + failOn,
+                                                unsent,
+                                                null);
+            }
+            if (!partial) {
+                synchronized (sent) {
+                    sent.addAll(methods);
+                }
+            }
+        }
+
+        public void close() {
+        }
+    }
+
+    // Supports legacy test runners
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(NotificationDispatcherTest.class);
+    }
+}
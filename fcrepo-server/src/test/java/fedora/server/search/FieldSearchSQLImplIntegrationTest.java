@@ -87,6 +87,7 @@ public class FieldSearchSQLImplIntegrationTest {
         Connection conn = cPool.getConnection();
         executeUpdate(conn, "DROP TABLE doFields", true);
         executeUpdate(conn, "DROP TABLE dcDates", true);
+        executeUpdate(conn, "DROP TABLE doFieldValues", true);
         executeUpdate(conn, "CREATE TABLE doFields (\n"
             + "pid VARCHAR(64) NOT NULL,\n"
             + "label VARCHAR(255) NOT NULL,\n"
@@ -117,6 +118,13 @@ public class FieldSearchSQLImplIntegrationTest {
             + "dcDate BIGINT NOT NULL)", false);
         executeUpdate(conn,
                "CREATE INDEX dcDates_pid ON dcDates (pid)", false);
+        executeUpdate(conn, "CREATE TABLE doFieldValues (\n"
+            + "pid VARCHAR(64) NOT NULL,\n"
+            + "fieldName VARCHAR(32) NOT NULL,\n"
+            + "valueIndex INT NOT NULL,\n"
+            + "fieldValue CLOB)", false);
+        executeUpdate(conn,
+               "CREATE INDEX doFieldValues_pid ON doFieldValues (pid)", false);
         cPool.free(conn);
     }
 
@@ -208,6 +216,72 @@ public class FieldSearchSQLImplIntegrationTest {
         checkResults(expected, countResults(query, 1));
     }
 
+    @Test
+    public void testResultFieldsFromIndex() throws Exception {
+        init(maxResultsDefault, maxSecondsPerSessionDefault, true);
+
+        String pid1 = "test:1";
+        DigitalObject obj1 = getTestObject(pid1, "Mixed Case Label");
+        String dcContent = "<dc:title>First Title</dc:title>"
+                + "<dc:title>Second Title</dc:title>";
+        addXDatastream(obj1, "DC", getDC(dcContent));
+        setDates(obj1, new Date());
+        m_repo.putObject(obj1);
+        m_impl.update(m_repo.getReader(false, null, pid1));
+
+        // results should come from the index even if the object is gone
+        m_repo.deleteObject(pid1);
+
+        FieldSearchQuery query = new FieldSearchQuery("*");
+        FieldSearchResult page =
+                m_impl.findObjects(new String[] {"pid", "label", "title"},
+                                   maxResultsDefault,
+                                   query);
+        assertEquals(1, page.objectFieldsList().size());
+        ObjectFields fields = (ObjectFields) page.objectFieldsList().get(0);
+        assertEquals(pid1, fields.getPid());
+        assertEquals("Mixed Case Label", fields.getLabel());
+        assertEquals(2, fields.titles().size());
+        assertEquals("First Title", fields.titles().get(0).getValue());
+        assertEquals("Second Title", fields.titles().get(1).getValue());
+    }
+
+    @Test
+    public void testPagesInPidOrder() throws Exception {
+        init(maxResultsDefault, maxSecondsPerSessionDefault, true);
+
+        String[] pids = new String[] {"test:5", "test:3", "test:1", "test:4",
+                "test:2"};
+        for (String pid : pids) {
+            DigitalObject obj = getTestObject(pid, pid);
+            setDates(obj, new Date());
+            m_repo.putObject(obj);
+            m_impl.update(m_repo.getReader(false, null, pid));
+        }
+
+        // more open sessions than there are pooled connections
+        FieldSearchQuery query = new FieldSearchQuery("*");
+        FieldSearchResult[] pages = new FieldSearchResult[maxActive * 2];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = m_impl.findObjects(new String[] {"pid"}, 2, query);
+        }
+        for (FieldSearchResult page : pages) {
+            int expected = 1;
+            while (page != null) {
+                for (Object o : page.objectFieldsList()) {
+                    assertEquals("test:" + expected++,
+                                 ((ObjectFields) o).getPid());
+                }
+                if (page.getToken() != null) {
+                    page = m_impl.resumeFindObjects(page.getToken());
+                } else {
+                    page = null;
+                }
+            }
+            assertEquals(6, expected);
+        }
+    }
+
     // runs the query (all pages) and returns { pageCount, resultCount }
     private int[] countResults(FieldSearchQuery query,
                                int maxResultsPerPage) throws Exception {
@@ -220,7 +294,7 @@ public class FieldSearchSQLImplIntegrationTest {
             pageCount++;
             resultCount += page.objectFieldsList().size();
             if (page.getToken() != null) {
-                m_impl.resumeFindObjects(page.getToken());
+                page = m_impl.resumeFindObjects(page.getToken());
             } else {
                 page = null;
             }
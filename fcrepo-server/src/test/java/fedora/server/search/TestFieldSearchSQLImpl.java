@@ -5,14 +5,9 @@
 
 package fedora.server.search;
 
-import java.io.IOException;
-import java.io.InputStream;
-
-import java.lang.reflect.Field;
-
 import java.sql.Connection;
 import java.sql.DriverManager;
-import java.sql.ResultSet;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 
@@ -26,21 +21,19 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.junit.After;
-import org.junit.AfterClass;
 import org.junit.Before;
-import org.junit.BeforeClass;
 import org.junit.Test;
 
 import junit.framework.JUnit4TestAdapter;
 import mock.sql.MockConnection;
 import mock.sql.MockDriver;
-import mock.sql.MockStatement;
+import mock.sql.MockPreparedStatement;
 
 import fedora.server.Context;
-import fedora.server.config.DatastoreConfiguration;
-import fedora.server.errors.InconsistentTableSpecException;
 import fedora.server.errors.ServerException;
+import fedora.server.errors.StorageDeviceException;
 import fedora.server.storage.ConnectionPool;
+import fedora.server.storage.DOReader;
 import fedora.server.storage.MockDOReader;
 import fedora.server.storage.MockRepositoryReader;
 import fedora.server.storage.MockServiceDeploymentReader;
@@ -48,16 +41,12 @@ import fedora.server.storage.ServiceDeploymentReader;
 import fedora.server.storage.types.BasicDigitalObject;
 import fedora.server.storage.types.DatastreamXMLMetadata;
 import fedora.server.storage.types.DeploymentDSBindSpec;
-import fedora.server.utilities.SQLUtility;
-import fedora.server.utilities.TableCreatingConnection;
-import fedora.server.utilities.TableSpec;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.fail;
 
 public class TestFieldSearchSQLImpl {
-    private static final String[] SHORT_FIELDS = FieldSearchSQLImpl.DB_COLUMN_NAMES_NODC;
-
     private static final String[] LONG_FIELDS = FieldSearchSQLImpl.DB_COLUMN_NAMES;
 
     private static final String DC_PAYLOAD_NO_DATES = "<oai_dc:dc "
@@ -98,19 +87,7 @@ public class TestFieldSearchSQLImpl {
                     12345), new Date(67890), new Date(10000),
             DC_PAYLOAD_WITH_DATES);
 
-    private static SQLUtility saveSqlUtility;
-
-    @BeforeClass
-    public static void saveSqlUtilityImpl() {
-        saveSqlUtility = getSqlUtilityInstance();
-    }
-
-    @AfterClass
-    public static void restoreSqlUtilityImpl() {
-        setSqlUtilityInstance(saveSqlUtility);
-    }
-
-    private MockConnection mockConnection;
+    private BatchingMockConnection mockConnection;
 
     private MockRepositoryReader mockRepositoryReader;
 
@@ -152,70 +129,192 @@ public class TestFieldSearchSQLImpl {
     @Before
     public void clearExpectedValues() {
         this.expectedDateInserts = 0;
-        this.expectedDateDeletes = 0;
+        this.expectedDateDeletes = 1;
     }
 
     @Test
     public void noDC() throws ServerException {
-        setSqlUtilityInstance(new UpdatingMockSqlUtility(SHORT_FIELDS,
-                OBJECT_WITH_NO_DC.getShortFieldValueList()));
-        this.mockConnection = new UnusedMockConnection();
+        this.mockConnection = new BatchingMockConnection();
         this.mockRepositoryReader = new UnusedMockRepositoryReader();
 
         updateRecord(OBJECT_WITH_NO_DC, false);
-        checkExpectations();
+        checkExpectations(OBJECT_WITH_NO_DC.getShortFieldValueList());
     }
 
     @Test
     public void dcNoDatesShortFields() throws ServerException {
-        setSqlUtilityInstance(new UpdatingMockSqlUtility(SHORT_FIELDS,
-                OBJECT_WITH_DC.getShortFieldValueList()));
-        this.mockConnection = new UnusedMockConnection();
+        this.mockConnection = new BatchingMockConnection();
         this.mockRepositoryReader = new UnusedMockRepositoryReader();
 
         updateRecord(OBJECT_WITH_DC, false);
-        checkExpectations();
+        checkExpectations(OBJECT_WITH_DC.getShortFieldValueList());
     }
 
     @Test
     public void dcNoDatesLongFields() throws ServerException {
-        setSqlUtilityInstance(new UpdatingMockSqlUtility(LONG_FIELDS,
-                OBJECT_WITH_DC.getLongFieldValueList()));
-        this.mockConnection = new UpdatingMockConnection();
+        this.mockConnection = new BatchingMockConnection();
         this.expectedDateDeletes = 1;
         this.expectedDateInserts = 0;
         this.mockRepositoryReader = new UnusedMockRepositoryReader();
 
         updateRecord(OBJECT_WITH_DC, true);
-        checkExpectations();
+        checkExpectations(OBJECT_WITH_DC.getLongFieldValueList());
     }
 
     @Test
     public void dcDatesShortFields() throws ServerException {
-        setSqlUtilityInstance(new UpdatingMockSqlUtility(SHORT_FIELDS,
-                OBJECT_WITH_DC_AND_DATES.getShortFieldValueList()));
-        this.mockConnection = new UnusedMockConnection();
+        this.mockConnection = new BatchingMockConnection();
         this.mockRepositoryReader = new UnusedMockRepositoryReader();
 
         updateRecord(OBJECT_WITH_DC_AND_DATES, false);
-        checkExpectations();
+        checkExpectations(OBJECT_WITH_DC_AND_DATES.getShortFieldValueList());
     }
 
     @Test
     public void dcDatesLongFields() throws ServerException {
-        setSqlUtilityInstance(new UpdatingMockSqlUtility(LONG_FIELDS,
-                OBJECT_WITH_DC_AND_DATES.getLongFieldValueList()));
-        this.mockConnection = new UpdatingMockConnection();
+        this.mockConnection = new BatchingMockConnection();
         this.expectedDateDeletes = 1;
         this.expectedDateInserts = 1;
         this.mockRepositoryReader = new UnusedMockRepositoryReader();
 
         updateRecord(OBJECT_WITH_DC_AND_DATES, true);
-        checkExpectations();
+        checkExpectations(OBJECT_WITH_DC_AND_DATES.getLongFieldValueList());
+    }
+
+    @Test
+    public void dcExactValuesLongFields() throws ServerException {
+        this.mockConnection = new BatchingMockConnection();
+        this.mockRepositoryReader = new UnusedMockRepositoryReader();
+
+        updateRecord(OBJECT_WITH_DC, true);
+
+        List<String> values = new ArrayList<String>();
+        for (Object[] row : mockConnection.getRows("INSERT INTO doFieldValues")) {
+            values.add(row[1] + "=" + row[3]);
+        }
+        assertTrue(values.contains("state=A"));
+        assertTrue(values.contains("label=myLabel"));
+        assertTrue(values.contains("ownerId=theOwner"));
+        assertTrue(values.contains("title=Sandy's Reference Object"));
+        assertTrue(values.contains("identifier=test:100"));
+        assertEquals(9, values.size());
+    }
+
+    @Test
+    public void delete() throws ServerException {
+        this.mockConnection = new BatchingMockConnection();
+        this.mockRepositoryReader = new UnusedMockRepositoryReader();
+
+        FieldSearchSQLImpl fssi = new FieldSearchSQLImpl(this.connectionPool,
+                this.mockRepositoryReader, 50, 50, true);
+        fssi.delete("somePid");
+
+        assertEquals(1, mockConnection.getRows("DELETE FROM doFields").size());
+        assertEquals(1, mockConnection.getRows("DELETE FROM dcDates").size());
+        assertEquals(1, mockConnection.getRows("DELETE FROM doFieldValues")
+                .size());
+        assertEquals(0, mockConnection.getRows("INSERT").size());
+    }
+
+    @Test
+    public void writeBehindCoalescesUpdates() throws ServerException {
+        this.mockConnection = new BatchingMockConnection();
+        this.mockRepositoryReader = new UnusedMockRepositoryReader();
+
+        // long enough that only flush() will write
+        FieldSearchSQLImpl fssi = new FieldSearchSQLImpl(this.connectionPool,
+                this.mockRepositoryReader, 50, 50, true, 10, 3600000);
+        try {
+            fssi.update(newReader(OBJECT_WITH_DC));
+            fssi.update(newReader(OBJECT_WITH_DC_AND_DATES));
+            fssi.delete("otherPid");
+            assertEquals(0, mockConnection.getCommitCount());
+
+            fssi.flush();
+            assertEquals(1, mockConnection.getCommitCount());
+            List<Object[]> inserts =
+                    mockConnection.getRows("INSERT INTO doFields");
+            assertEquals(1, inserts.size());
+            assertEqualValues(LONG_FIELDS,
+                    OBJECT_WITH_DC_AND_DATES.getLongFieldValueList().toArray(),
+                    toStrings(inserts.get(0)));
+            assertEquals(1, mockConnection.getRows("INSERT INTO dcDates")
+                    .size());
+            assertEquals(2, mockConnection.getRows("DELETE FROM doFields")
+                    .size());
+
+            fssi.flush();
+            assertEquals(1, mockConnection.getCommitCount());
+        } finally {
+            fssi.close();
+        }
+    }
+
+    @Test
+    public void writeBehindFullBatch() throws ServerException {
+        this.mockConnection = new BatchingMockConnection();
+        this.mockRepositoryReader = new UnusedMockRepositoryReader();
+
+        FieldSearchSQLImpl fssi = new FieldSearchSQLImpl(this.connectionPool,
+                this.mockRepositoryReader, 50, 50, true, 2, 3600000);
+        try {
+            fssi.update(newReader(OBJECT_WITH_DC));
+            assertEquals(0, mockConnection.getCommitCount());
+            fssi.delete("otherPid");
+            assertEquals(1, mockConnection.getCommitCount());
+            assertEquals(1, mockConnection.getRows("INSERT INTO doFields")
+                    .size());
+        } finally {
+            fssi.close();
+        }
+    }
+
+    @Test
+    public void writeBehindKeepsFailedBatch() throws ServerException {
+        this.mockConnection = new BatchingMockConnection();
+        this.mockRepositoryReader = new UnusedMockRepositoryReader();
+
+        FieldSearchSQLImpl fssi = new FieldSearchSQLImpl(this.connectionPool,
+                this.mockRepositoryReader, 50, 50, true, 10, 3600000);
+        try {
+            fssi.update(newReader(OBJECT_WITH_DC));
+            fssi.delete("otherPid");
+
+            mockConnection.failNextBatch();
+            try {
+                fssi.flush();
+                fail("Expected the batch to fail");
+            } catch (StorageDeviceException e) {
+            }
+            assertEquals(0, mockConnection.getCommitCount());
+            assertEquals(1, mockConnection.getRollbackCount());
+
+            // still queued, so the next flush writes them
+            fssi.flush();
+            assertEquals(1, mockConnection.getCommitCount());
+            assertEquals(1, mockConnection.getRows("INSERT INTO doFields")
+                    .size());
+            assertEquals(2, mockConnection.getRows("DELETE FROM doFields")
+                    .size());
+
+            fssi.flush();
+            assertEquals(1, mockConnection.getCommitCount());
+        } finally {
+            fssi.close();
+        }
     }
 
     private void updateRecord(ObjectData objectData, boolean longFields)
             throws ServerException {
+        // Create the test instance.
+        FieldSearchSQLImpl fssi = new FieldSearchSQLImpl(this.connectionPool,
+                this.mockRepositoryReader, 50, 50, longFields);
+
+        // And do the update.
+        fssi.update(newReader(objectData));
+    }
+
+    private DOReader newReader(ObjectData objectData) {
         // Create a DC datastream if appropriate.
         DatastreamXMLMetadata dcmd = null;
         if (objectData.getDcPayload() != null) {
@@ -237,22 +336,27 @@ public class TestFieldSearchSQLImpl {
         if (dcmd != null) {
             theObject.addDatastreamVersion(dcmd, false);
         }
-
-        // Create the test instance.
-        FieldSearchSQLImpl fssi = new FieldSearchSQLImpl(this.connectionPool,
-                this.mockRepositoryReader, 50, 50, longFields);
-
-        // And do the update.
-        fssi.update(new MockDOReader(theObject));
+        return new MockDOReader(theObject);
     }
 
-    private void checkExpectations() {
-        ((MockSqlUtility) getSqlUtilityInstance()).checkExpectations();
-
-        if (mockConnection instanceof UpdatingMockConnection) {
-            ((UpdatingMockConnection) mockConnection).checkExpectations(
-                    expectedDateDeletes, expectedDateInserts);
+    /**
+     * Check the doFields row that was written (DC columns that weren't
+     * given are expected to be null), and the dcDates rows.
+     */
+    private void checkExpectations(List<String> expectedValues) {
+        List<Object[]> inserts = mockConnection.getRows("INSERT INTO doFields");
+        assertEquals("doFields inserts", 1, inserts.size());
+        String[] expected = new String[LONG_FIELDS.length];
+        for (int i = 0; i < expectedValues.size(); i++) {
+            expected[i] = expectedValues.get(i);
         }
+        assertEqualValues(LONG_FIELDS, expected, toStrings(inserts.get(0)));
+
+        assertEquals("dcDates deletes", expectedDateDeletes,
+                mockConnection.getRows("DELETE FROM dcDates").size());
+        assertEquals("dcDates inserts", expectedDateInserts,
+                mockConnection.getRows("INSERT INTO dcDates").size());
+        assertEquals("commits", 1, mockConnection.getCommitCount());
 
         if (mockRepositoryReader instanceof SDepMockRepositoryReader) {
             ((SDepMockRepositoryReader) mockRepositoryReader)
@@ -260,13 +364,12 @@ public class TestFieldSearchSQLImpl {
         }
     }
 
-    private void assertEqualArrays(String label, Object[] expected,
-            Object[] actual) {
-        if (!Arrays.equals(expected, actual)) {
-            fail(label + ", expected: " + Arrays.deepToString(expected)
-                    + ", actual: " + Arrays.deepToString(actual));
-
+    private static String[] toStrings(Object[] values) {
+        String[] strings = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            strings[i] = (values[i] == null) ? null : values[i].toString();
         }
+        return strings;
     }
 
     private void assertEqualValues(String[] columns, Object[] expected,
@@ -308,193 +411,58 @@ public class TestFieldSearchSQLImpl {
     }
 
     /**
-     * Reach into the {@link SQLUtility} class and get the instance that is
-     * handling the JDBC-based methods.
+     * Records the parameters of every batch executed through its prepared
+     * statements. Unprepared statements are not expected.
      */
-    private static SQLUtility getSqlUtilityInstance() {
-        try {
-            Field instanceField = SQLUtility.class.getDeclaredField("instance");
-            instanceField.setAccessible(true);
-            return (SQLUtility) instanceField.get(null);
-        } catch (SecurityException e) {
-            fail("Failed to set SqlUtility instance: " + e);
-        } catch (NoSuchFieldException e) {
-            fail("Failed to set SqlUtility instance: " + e);
-        } catch (IllegalArgumentException e) {
-            fail("Failed to set SqlUtility instance: " + e);
-        } catch (IllegalAccessException e) {
-            fail("Failed to set SqlUtility instance: " + e);
-        }
-        return null;
-    }
+    private static class BatchingMockConnection extends MockConnection {
+        private final List<String> sqls = new ArrayList<String>();
 
-    /**
-     * Reach into the {@link SQLUtility} class and set an instance to handle the
-     * JDBC-based methods.
-     */
-    private static void setSqlUtilityInstance(SQLUtility instance) {
-        try {
-            Field instanceField = SQLUtility.class.getDeclaredField("instance");
-            instanceField.setAccessible(true);
-            instanceField.set(null, instance);
-        } catch (SecurityException e) {
-            fail("Failed to set SqlUtility instance: " + e);
-        } catch (NoSuchFieldException e) {
-            fail("Failed to set SqlUtility instance: " + e);
-        } catch (IllegalArgumentException e) {
-            e.printStackTrace();
-            fail("Failed to set SqlUtility instance: " + e);
-        } catch (IllegalAccessException e) {
-            fail("Failed to set SqlUtility instance: " + e);
-        }
-    }
-
-    /**
-     * Base class for Mock {@link SQLUtility} implementations. Every method
-     * causes the test to fail, unless overridden by the subclass.
-     */
-    public abstract static class MockSqlUtility extends SQLUtility {
-        public abstract void checkExpectations();
-
-        @Override
-        protected void i_addRow(Connection conn, String table,
-                String[] columns, String[] values, boolean[] numeric)
-                throws SQLException {
-            fail("Unexpected call to MockSqlUtility.i_addRow");
-        }
+        private final List<Object[]> rows = new ArrayList<Object[]>();
 
-        @Override
-        protected void i_createNonExistingTables(ConnectionPool pool,
-                InputStream dbSpec) throws IOException,
-                InconsistentTableSpecException, SQLException {
-            fail("Unexpected call to MockSqlUtility.i_addRow");
-        }
+        private boolean failNextBatch;
 
-        @Override
-        protected void i_createTables(TableCreatingConnection tcConn,
-                List<TableSpec> specs) throws SQLException {
-            fail("Unexpected call to MockSqlUtility.i_addRow");
+        /** Make the next executeBatch fail, as if the database had. */
+        public void failNextBatch() {
+            failNextBatch = true;
         }
 
-        @Override
-        protected ConnectionPool i_getConnectionPool(DatastoreConfiguration cpDC)
-                throws SQLException {
-            fail("Unexpected call to MockSqlUtility.i_addRow");
-            return null;
-        }
-
-        @Override
-        protected String i_getLongString(ResultSet rs, int pos)
-                throws SQLException {
-            fail("Unexpected call to MockSqlUtility.i_addRow");
-            return null;
-        }
-
-        @Override
-        protected List<TableSpec> i_getNonExistingTables(Connection conn,
-                List<TableSpec> specs) throws SQLException {
-            fail("Unexpected call to MockSqlUtility.i_addRow");
-            return null;
-        }
-
-        @Override
-        protected void i_replaceInto(Connection conn, String table,
-                String[] columns, String[] values, String uniqueColumn,
-                boolean[] numeric) throws SQLException {
-            fail("Unexpected call to MockSqlUtility.i_addRow");
-        }
-
-        @Override
-        protected boolean i_updateRow(Connection conn, String table,
-                String[] columns, String[] values, String uniqueColumn,
-                boolean[] numeric) throws SQLException {
-            fail("Unexpected call to MockSqlUtility.i_addRow");
-            return false;
-        }
-    }
-
-    public static class UnusedMockSqlUtility extends MockSqlUtility {
-        @Override
-        public void checkExpectations() {
-            // Nothing to check.
-        }
-
-    }
-
-    private class UpdatingMockSqlUtility extends MockSqlUtility {
-        private final String[] expectedColumns;
-
-        private final String[] expectedValues;
-
-        private String[] actualColumns;
-
-        private String[] actualValues;
-
-        /**
-         * Write down some of what we expect to have happen.
-         *
-         * @param expectedColumns
-         * @param expectedValues
-         */
-        public UpdatingMockSqlUtility(String[] expectedColumns,
-                List<String> expectedValues) {
-            this.expectedColumns = expectedColumns;
-            this.expectedValues = expectedValues
-                    .toArray(new String[expectedValues.size()]);
-        }
-
-        /**
-         * If we get a replace call, store the columns and values for testing
-         * later. (If we get more then one call, only the last will be
-         * retained.)
-         */
-        @Override
-        protected void i_replaceInto(Connection conn, String table,
-                String[] columns, String[] values, String uniqueColumn,
-                boolean[] numeric) throws SQLException {
-            this.actualColumns = columns;
-            this.actualValues = values;
-        }
-
-        @Override
-        public void checkExpectations() {
-            assertEqualArrays("column names", expectedColumns, actualColumns);
-            assertEqualValues(expectedColumns, expectedValues, actualValues);
-        }
-    }
-
-    private static class UnusedMockConnection extends MockConnection {
         @Override
         public Statement createStatement() throws SQLException {
-            fail("Unexpected call to UnusedMockConnection.createStatement");
+            fail("Unexpected call to BatchingMockConnection.createStatement");
             return null;
         }
-    }
-
-    private static class UpdatingMockConnection extends MockConnection {
-        private int deleteCalls = 0;
-
-        private int insertCalls = 0;
 
         @Override
-        public Statement createStatement() throws SQLException {
-            return new MockStatement() {
+        public PreparedStatement prepareStatement(String sql)
+                throws SQLException {
+            return new MockPreparedStatement(sql) {
                 @Override
-                public int executeUpdate(String sql) throws SQLException {
-                    if (sql.trim().toLowerCase().startsWith("insert")) {
-                        insertCalls++;
+                public int[] executeBatch() throws SQLException {
+                    if (failNextBatch) {
+                        failNextBatch = false;
+                        throw new SQLException("Simulated batch failure");
                     }
-                    if (sql.trim().toLowerCase().startsWith("delete")) {
-                        deleteCalls++;
+                    for (Object[] batch : getBatches()) {
+                        sqls.add(getSql());
+                        rows.add(batch);
                     }
-                    return 1;
+                    return super.executeBatch();
                 }
             };
         }
 
-        public void checkExpectations(int expectedDeletes, int expectedInserts) {
-            assertEquals("delete calls", expectedDeletes, deleteCalls);
-            assertEquals("insert calls", expectedInserts, insertCalls);
+        /**
+         * Get the parameters of each row written by statements whose SQL
+         * starts with the given string.
+         */
+        public List<Object[]> getRows(String sqlStart) {
+            List<Object[]> result = new ArrayList<Object[]>();
+            for (int i = 0; i < sqls.size(); i++) {
+                if (sqls.get(i).startsWith(sqlStart)) {
+                    result.add(rows.get(i));
+                }
+            }
+            return result;
         }
     }
 
@@ -9,8 +9,13 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
-@Suite.SuiteClasses( {fedora.server.storage.translation.AllUnitTests.class,
-                      fedora.server.storage.lowlevel.akubra.AllUnitTests.class})
+@Suite.SuiteClasses( {DefaultDOManagerTest.class,
+                      DOReaderCacheTest.class,
+                      RepositoryCountersTest.class,
+                      SimpleServiceDefinitionReaderTest.class,
+                      fedora.server.storage.translation.AllUnitTests.class,
+                      fedora.server.storage.types.AllUnitTests.class,
+                      fedora.server.storage.lowlevel.AllUnitTests.class})
 public class AllUnitTests {
 
     // Supports legacy tests runners
@@ -19,8 +24,13 @@ public class AllUnitTests {
         junit.framework.TestSuite suite =
                 new junit.framework.TestSuite(AllUnitTests.class.getName());
 
+        suite.addTest(DefaultDOManagerTest.suite());
+        suite.addTest(DOReaderCacheTest.suite());
+        suite.addTest(RepositoryCountersTest.suite());
+        suite.addTest(SimpleServiceDefinitionReaderTest.suite());
         suite.addTest(fedora.server.storage.translation.AllUnitTests.suite());
-        suite.addTest(fedora.server.storage.lowlevel.akubra.AllUnitTests.suite());
+        suite.addTest(fedora.server.storage.types.AllUnitTests.suite());
+        suite.addTest(fedora.server.storage.lowlevel.AllUnitTests.suite());
 
         return suite;
     }
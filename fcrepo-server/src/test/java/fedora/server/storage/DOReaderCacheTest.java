@@ -0,0 +1,117 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.storage;
+
+import org.junit.Test;
+
+import fedora.server.storage.types.BasicDigitalObject;
+import fedora.server.storage.types.DatastreamXMLMetadata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link DOReaderCache}.
+ */
+public class DOReaderCacheTest {
+
+    @Test
+    public void testPutGetRemove() {
+        DOReaderCache cache = new DOReaderCache(100, 60);
+        DOReader reader = newReader("test:1", 0);
+        cache.put(reader);
+        assertSame(reader, cache.get("test:1"));
+        assertSame(reader, cache.get("test:1"));
+        assertNull(cache.get("test:2"));
+        cache.remove("test:1");
+        assertNull(cache.get("test:1"));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testPutReplaces() {
+        DOReaderCache cache = new DOReaderCache(100, 60);
+        cache.put(newReader("test:1", 0));
+        DOReader reader = newReader("test:1", 0);
+        cache.put(reader);
+        assertSame(reader, cache.get("test:1"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testSizeBound() {
+        DOReaderCache cache = new DOReaderCache(32, 60);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(newReader("test:" + i, 0));
+        }
+        assertTrue(cache.size() <= 32);
+        assertTrue(cache.getEvictionCount() >= 1000 - 32);
+    }
+
+    @Test
+    public void testWeightBound() {
+        long maxWeight = 16 * 64 * 1024;
+        DOReaderCache cache = new DOReaderCache(10000, maxWeight, 60);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(newReader("test:" + i, 8 * 1024));
+        }
+        assertTrue(cache.weight() <= maxWeight);
+        assertTrue(cache.size() > 0);
+    }
+
+    @Test
+    public void testOverweightNotCached() {
+        DOReaderCache cache = new DOReaderCache(100, 16 * 1024, 60);
+        cache.put(newReader("test:1", 64 * 1024));
+        assertNull(cache.get("test:1"));
+    }
+
+    @Test
+    public void testFrequentlyUsedSurvivesScan() {
+        DOReaderCache cache = new DOReaderCache(16 * 10, 60);
+        DOReader hot = newReader("test:hot", 0);
+        cache.put(hot);
+        cache.get("test:hot");
+        for (int i = 0; i < 1000; i++) {
+            cache.put(newReader("test:" + i, 0));
+        }
+        assertSame(hot, cache.get("test:hot"));
+    }
+
+    @Test
+    public void testIdleExpiry() throws Exception {
+        DOReaderCache cache = new DOReaderCache(100, 1);
+        cache.put(newReader("test:1", 0));
+        assertNotNull(cache.get("test:1"));
+        Thread.sleep(1100);
+        assertNull(cache.get("test:1"));
+        assertEquals(1, cache.getExpirationCount());
+    }
+
+    private static DOReader newReader(String pid, int xmlBytes) {
+        BasicDigitalObject obj = new BasicDigitalObject();
+        obj.setPid(pid);
+        if (xmlBytes > 0) {
+            DatastreamXMLMetadata ds = new DatastreamXMLMetadata();
+            ds.DatastreamID = "DS1";
+            ds.DSVersionID = "DS1.0";
+            ds.DSControlGrp = "X";
+            ds.xmlContent = new byte[xmlBytes];
+            obj.addDatastreamVersion(ds, true);
+        }
+        return new MockDOReader(obj);
+    }
+
+    // Supports legacy test runners
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(DOReaderCacheTest.class);
+    }
+
+}
@@ -0,0 +1,660 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.xml.sax.XMLFilter;
+
+import mock.sql.MockConnection;
+import mock.sql.MockDriver;
+import mock.sql.MockStatement;
+
+import fedora.common.Constants;
+
+import fedora.server.Context;
+import fedora.server.ReadOnlyContext;
+import fedora.server.errors.GeneralException;
+import fedora.server.errors.LowlevelStorageException;
+import fedora.server.errors.ObjectExistsException;
+import fedora.server.errors.ObjectLockedException;
+import fedora.server.errors.ObjectNotInLowlevelStorageException;
+import fedora.server.errors.ServerException;
+import fedora.server.management.DBPIDGenerator;
+import fedora.server.resourceIndex.ResourceIndex;
+import fedora.server.search.FieldSearch;
+import fedora.server.search.FieldSearchQuery;
+import fedora.server.search.FieldSearchResult;
+import fedora.server.storage.lowlevel.ILowlevelStorage;
+import fedora.server.storage.translation.DOTranslator;
+import fedora.server.storage.types.BasicDigitalObject;
+import fedora.server.storage.types.DigitalObject;
+import fedora.server.validation.DOValidator;
+import fedora.server.validation.DOValidatorFilter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for {@link DefaultDOManager}, run against a mock object registry
+ * and pidGen table, and objects kept in memory.
+ */
+public class DefaultDOManagerTest {
+
+    private static final String PID_NAMESPACE = "test";
+
+    /** The PIDs in the object registry. */
+    private final Set<String> m_registry =
+            Collections.synchronizedSet(new HashSet<String>());
+
+    /** The serialized objects in low-level storage. */
+    private final MemoryStore m_store = new MemoryStore();
+
+    /** If set, every ingest waits here after validation. */
+    private volatile CyclicBarrier m_validationBarrier;
+
+    private final RegistryMockDriver m_mockDriver = new RegistryMockDriver();
+
+    private DefaultDOManager m_manager;
+
+    private Context m_context;
+
+    @Before
+    public void setUp() throws Exception {
+        DriverManager.registerDriver(m_mockDriver);
+        ConnectionPool connectionPool =
+                new ConnectionPool(MockDriver.class.getName(),
+                                   "mock://bogus.url",
+                                   "bogusUsername",
+                                   "bogusPassword",
+                                   20,
+                                   20,
+                                   5,
+                                   0,
+                                   0,
+                                   2,
+                                   300,
+                                   null,
+                                   false,
+                                   false,
+                                   false,
+                                   (byte) 0);
+
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("pidNamespace", PID_NAMESPACE);
+        params.put("defaultExportFormat", Constants.FOXML1_1.uri);
+        m_manager =
+                new DefaultDOManager(params,
+                                     null,
+                                     "fedora.server.storage.DOManager");
+        m_manager.m_connectionPool = connectionPool;
+        m_manager.m_counters = new RepositoryCounters(connectionPool);
+        m_manager.m_pidGenerator = new DBPIDGenerator(connectionPool, null);
+        m_manager.m_translator = new PidTranslator();
+        m_manager.m_validator = new WaitingValidator();
+        m_manager.m_permanentStore = m_store;
+        m_manager.m_fieldSearch = new NoFieldSearch();
+        m_manager.m_resourceIndex = disabledResourceIndex();
+
+        m_context =
+                ReadOnlyContext.getContext(Constants.HTTP_REQUEST.REST.uri,
+                                           "fedoraAdmin",
+                                           "",
+                                           false);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        m_manager.shutdownModule();
+        DriverManager.deregisterDriver(m_mockDriver);
+    }
+
+    @Test(timeout = 30000)
+    public void testIngestsOfDifferentObjectsRunConcurrently()
+            throws Exception {
+        // no ingest gets past validation until all of them have reached it
+        m_validationBarrier = new CyclicBarrier(4);
+        List<Object> results =
+                ingestConcurrently("demo:1", "demo:2", "demo:3", "demo:4");
+
+        Set<String> pids = new HashSet<String>();
+        for (Object result : results) {
+            assertTrue("Ingest failed: " + result, result instanceof DOWriter);
+            pids.add(((DOWriter) result).GetObjectPID());
+        }
+        assertEquals(m_registry, pids);
+        assertEquals(4, pids.size());
+    }
+
+    @Test(timeout = 30000)
+    public void testIngestsOfSameObjectAreSerialized() throws Exception {
+        m_validationBarrier = new CyclicBarrier(2);
+        List<Object> results = ingestConcurrently("demo:1", "demo:1");
+        m_validationBarrier = null;
+
+        // the PID is locked by whichever ingest got there first
+        DOWriter writer = null;
+        int locked = 0;
+        for (Object result : results) {
+            if (result instanceof DOWriter) {
+                writer = (DOWriter) result;
+            } else if (result instanceof ObjectLockedException) {
+                locked++;
+            } else {
+                fail("Unexpected ingest result: " + result);
+            }
+        }
+        assertEquals("demo:1", writer.GetObjectPID());
+        assertEquals(1, locked);
+        assertEquals(1, m_registry.size());
+
+        // until its writer is released
+        try {
+            ingest("demo:1", false);
+            fail("Locked object was ingested");
+        } catch (ObjectLockedException e) {
+        }
+        m_manager.releaseWriter(writer);
+        assertFalse(m_registry.contains("demo:1"));
+        m_manager.releaseWriter(ingest("demo:1", false));
+    }
+
+    @Test
+    public void testFailedIngestReleasesLock() throws Exception {
+        m_registry.add("demo:1");
+        for (int i = 0; i < 2; i++) {
+            try {
+                ingest("demo:1", false);
+                fail("Existing object was ingested");
+            } catch (ObjectExistsException e) {
+            }
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testGeneratedPidsAreUnique() throws Exception {
+        int threadCount = 8;
+        final int ingestsPerThread = 25;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        List<Future<List<String>>> futures =
+                new ArrayList<Future<List<String>>>();
+        for (int i = 0; i < threadCount; i++) {
+            futures.add(executor.submit(new Callable<List<String>>() {
+
+                public List<String> call() throws Exception {
+                    List<String> pids = new ArrayList<String>();
+                    for (int j = 0; j < ingestsPerThread; j++) {
+                        pids.add(ingest("", true).GetObjectPID());
+                    }
+                    return pids;
+                }
+            }));
+        }
+        Set<String> pids = new HashSet<String>();
+        for (Future<List<String>> future : futures) {
+            for (String pid : future.get()) {
+                assertTrue(pid, pid.startsWith(PID_NAMESPACE + ":"));
+                assertTrue("Generated " + pid + " twice", pids.add(pid));
+            }
+        }
+        executor.shutdown();
+        assertEquals(threadCount * ingestsPerThread, pids.size());
+        assertEquals(pids, m_registry);
+    }
+
+    @Test
+    public void testCommitInvalidatesServiceDefinitionReader()
+            throws Exception {
+        store("demo:sdef", "Old label");
+        ServiceDefinitionReader reader =
+                m_manager.getServiceDefinitionReader(false,
+                                                     m_context,
+                                                     "demo:sdef");
+        assertSame(reader, m_manager.getServiceDefinitionReader(false,
+                                                                m_context,
+                                                                "demo:sdef"));
+
+        m_manager.doCommit(false,
+                           m_context,
+                           object("demo:sdef", "New label"),
+                           "Changed label",
+                           false);
+        ServiceDefinitionReader updated =
+                m_manager.getServiceDefinitionReader(false,
+                                                     m_context,
+                                                     "demo:sdef");
+        assertNotSame(reader, updated);
+        assertEquals("New label", updated.GetObjectLabel());
+    }
+
+    @Test
+    public void testPurgeInvalidatesServiceDeploymentReader()
+            throws Exception {
+        store("demo:sdep", "Deployment");
+        ServiceDeploymentReader reader =
+                m_manager.getServiceDeploymentReader(false,
+                                                     m_context,
+                                                     "demo:sdep");
+        assertSame(reader, m_manager.getServiceDeploymentReader(false,
+                                                                m_context,
+                                                                "demo:sdep"));
+
+        m_manager.doCommit(false,
+                           m_context,
+                           object("demo:sdep", "Deployment"),
+                           "Purged",
+                           true);
+        assertFalse(m_registry.contains("demo:sdep"));
+        try {
+            m_manager.getServiceDeploymentReader(false,
+                                                 m_context,
+                                                 "demo:sdep");
+            fail("Reader of purged object was returned from the cache");
+        } catch (ObjectNotInLowlevelStorageException e) {
+        }
+    }
+
+    /**
+     * Puts an existing object into storage and the registry.
+     */
+    private void store(String pid, String label) throws Exception {
+        m_store.addObject(pid, new ByteArrayInputStream((pid + "\n" + label)
+                .getBytes("UTF-8")));
+        m_registry.add(pid);
+    }
+
+    /**
+     * @return a changed copy of an existing object.
+     */
+    private static DigitalObject object(String pid, String label) {
+        DigitalObject obj = new BasicDigitalObject();
+        obj.setNew(false);
+        obj.setPid(pid);
+        obj.setLabel(label);
+        obj.setLastModDate(new Date());
+        return obj;
+    }
+
+    private DOWriter ingest(String pid, boolean newPid) throws Exception {
+        return m_manager.getIngestWriter(false,
+                                         m_context,
+                                         new ByteArrayInputStream(pid
+                                                 .getBytes("UTF-8")),
+                                         Constants.FOXML1_1.uri,
+                                         "UTF-8",
+                                         newPid);
+    }
+
+    /**
+     * Ingests an object with each of the given PIDs, each in its own thread,
+     * and returns the writer or exception each ingest ended with.
+     */
+    private List<Object> ingestConcurrently(String... pids) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(pids.length);
+        List<Future<DOWriter>> futures = new ArrayList<Future<DOWriter>>();
+        for (final String pid : pids) {
+            futures.add(executor.submit(new Callable<DOWriter>() {
+
+                public DOWriter call() throws Exception {
+                    return ingest(pid, false);
+                }
+            }));
+        }
+        List<Object> results = new ArrayList<Object>();
+        for (Future<DOWriter> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                results.add(e.getCause());
+            }
+        }
+        executor.shutdown();
+        return results;
+    }
+
+    /**
+     * Reads and writes objects as their PID, which may be empty, optionally
+     * followed by a line with their label.
+     */
+    private static class PidTranslator
+            implements DOTranslator {
+
+        public void deserialize(InputStream in,
+                                DigitalObject obj,
+                                String format,
+                                String encoding,
+                                int transContext) throws ServerException {
+            String content;
+            try {
+                content = new String(readAll(in), "UTF-8");
+            } catch (IOException e) {
+                throw new GeneralException("Error reading object", e);
+            }
+            String[] lines = content.split("\n");
+            if (lines[0].length() > 0) {
+                obj.setPid(lines[0]);
+            }
+            obj.setLabel(lines.length > 1 ? lines[1] : "Test object");
+        }
+
+        public boolean supportsFilter(String format) {
+            return false;
+        }
+
+        public void deserialize(InputStream in,
+                                DigitalObject obj,
+                                String format,
+                                String encoding,
+                                int transContext,
+                                XMLFilter filter) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void serialize(DigitalObject obj,
+                              OutputStream out,
+                              String format,
+                              String encoding,
+                              int transContext) throws ServerException {
+            try {
+                out.write((obj.getPid() + "\n" + obj.getLabel())
+                        .getBytes("UTF-8"));
+            } catch (IOException e) {
+                throw new GeneralException("Error writing object", e);
+            }
+        }
+    }
+
+    /**
+     * Accepts every object, after waiting for the other ingests if the test
+     * has set a barrier.
+     */
+    private class WaitingValidator
+            implements DOValidator {
+
+        public void validate(File in,
+                             String format,
+                             int validationLevel,
+                             String phase) throws ServerException {
+            CyclicBarrier barrier = m_validationBarrier;
+            if (barrier != null) {
+                try {
+                    barrier.await(10, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new GeneralException("Ingests did not run "
+                            + "concurrently", e);
+                }
+            }
+        }
+
+        public void validate(InputStream in,
+                             String format,
+                             int validationLevel,
+                             String phase) {
+        }
+
+        public DOValidatorFilter newValidatorFilter(String format,
+                                                    int validationLevel,
+                                                    String phase) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Keeps serialized objects in memory.
+     */
+    private static class MemoryStore
+            implements ILowlevelStorage {
+
+        private final Map<String, byte[]> m_objects =
+                Collections.synchronizedMap(new HashMap<String, byte[]>());
+
+        public void addObject(String objectKey, InputStream content)
+                throws LowlevelStorageException {
+            try {
+                m_objects.put(objectKey, readAll(content));
+            } catch (IOException e) {
+                throw new LowlevelStorageException(true,
+                                                   "Error storing object",
+                                                   e);
+            }
+        }
+
+        public void replaceObject(String objectKey, InputStream content)
+                throws LowlevelStorageException {
+            addObject(objectKey, content);
+        }
+
+        public InputStream retrieveObject(String objectKey)
+                throws ObjectNotInLowlevelStorageException {
+            byte[] content = m_objects.get(objectKey);
+            if (content == null) {
+                throw new ObjectNotInLowlevelStorageException(objectKey
+                        + " is not in storage");
+            }
+            return new ByteArrayInputStream(content);
+        }
+
+        public void removeObject(String objectKey) {
+            m_objects.remove(objectKey);
+        }
+
+        public void rebuildObject() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void auditObject() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void addDatastream(String dsKey, InputStream content) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void replaceDatastream(String dsKey, InputStream content) {
+            throw new UnsupportedOperationException();
+        }
+
+        public InputStream retrieveDatastream(String dsKey) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void removeDatastream(String dsKey) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void rebuildDatastream() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void auditDatastream() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * A FieldSearch index that ignores all changes.
+     */
+    private static class NoFieldSearch
+            implements FieldSearch {
+
+        public void update(DOReader reader) {
+        }
+
+        public boolean delete(String pid) {
+            return true;
+        }
+
+        public void flush() {
+        }
+
+        public FieldSearchResult findObjects(String[] resultFields,
+                                             int maxResults,
+                                             FieldSearchQuery query) {
+            throw new UnsupportedOperationException();
+        }
+
+        public FieldSearchResult resumeFindObjects(String sessionToken) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * @return a resource index whose index level is off, so it is never
+     *         asked to change.
+     */
+    private static ResourceIndex disabledResourceIndex() {
+        InvocationHandler handler = new InvocationHandler() {
+
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getIndexLevel")) {
+                    return new Integer(ResourceIndex.INDEX_LEVEL_OFF);
+                }
+                throw new RuntimeException("ResourceIndex." + method.getName()
+                        + " not implemented");
+            }
+        };
+        return (ResourceIndex) Proxy.newProxyInstance(ResourceIndex.class
+                .getClassLoader(), new Class[] {ResourceIndex.class}, handler);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int len;
+        while ((len = in.read(buf)) != -1) {
+            out.write(buf, 0, len);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * A connection whose statements read and write the object registry. The
+     * pidGen table appears empty, and other tables accept any update.
+     */
+    private class RegistryMockConnection
+            extends MockConnection {
+
+        @Override
+        public Statement createStatement() throws SQLException {
+            return new MockStatement() {
+
+                @Override
+                public ResultSet executeQuery(String sql)
+                        throws SQLException {
+                    if (sql.startsWith("SELECT")
+                            && sql.indexOf("FROM doRegistry") != -1) {
+                        return rows(m_registry.contains(quoted(sql)) ? 1 : 0);
+                    }
+                    throw new SQLException("No such table");
+                }
+
+                @Override
+                public int executeUpdate(String sql) throws SQLException {
+                    if (sql.startsWith("INSERT INTO doRegistry")) {
+                        if (!m_registry.add(quoted(sql))) {
+                            throw new SQLException("Duplicate key");
+                        }
+                        return 1;
+                    } else if (sql.startsWith("DELETE FROM doRegistry")) {
+                        return m_registry.remove(quoted(sql)) ? 1 : 0;
+                    }
+                    return 0;
+                }
+            };
+        }
+    }
+
+    /**
+     * @return the first quoted value in the given SQL.
+     */
+    private static String quoted(String sql) {
+        int start = sql.indexOf('\'') + 1;
+        return sql.substring(start, sql.indexOf('\'', start));
+    }
+
+    /**
+     * @return a result set with the given number of rows, whose integer
+     *         columns are all 0.
+     */
+    private static ResultSet rows(final int count) {
+        InvocationHandler handler = new InvocationHandler() {
+
+            private int m_row;
+
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("next")) {
+                    return Boolean.valueOf(m_row++ < count);
+                } else if (name.equals("getInt")) {
+                    return new Integer(0);
+                } else if (name.equals("close")) {
+                    return null;
+                }
+                throw new RuntimeException("ResultSet." + name
+                        + " not implemented");
+            }
+        };
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class
+                .getClassLoader(), new Class[] {ResultSet.class}, handler);
+    }
+
+    private class RegistryMockDriver
+            extends MockDriver {
+
+        @Override
+        public Connection connect(String url, Properties info)
+                throws SQLException {
+            return new RegistryMockConnection();
+        }
+    }
+
+    // Supports legacy test runners
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(DefaultDOManagerTest.class);
+    }
+}
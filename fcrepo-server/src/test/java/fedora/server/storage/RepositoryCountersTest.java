@@ -0,0 +1,100 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.storage;
+
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import mock.sql.MockConnection;
+import mock.sql.MockPreparedStatement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link RepositoryCounters}.
+ */
+public class RepositoryCountersTest {
+
+    private RepositoryCounters m_counters;
+
+    private MockConnection m_conn;
+
+    @Before
+    public void setUp() {
+        m_counters = new RepositoryCounters(null);
+        m_conn = new MockConnection();
+    }
+
+    @Test
+    public void testObjectsAdded() throws Exception {
+        RepositoryCounters.Change change = m_counters.newChange();
+        change.objectAdded();
+        change.objectAdded();
+        change.write(m_conn);
+
+        List<MockPreparedStatement> statements =
+                m_conn.getPreparedStatements();
+        assertEquals(1, statements.size());
+        assertTrue(statements.get(0).getSql().indexOf("counterValue + ?") != -1);
+        assertEquals(2, statements.get(0).getParameters()[0]);
+        assertEquals(0, m_counters.getObjectCount());
+
+        change.apply();
+        assertEquals(2, m_counters.getObjectCount());
+    }
+
+    @Test
+    public void testLatestModDateOnlyRises() throws Exception {
+        modified(2000);
+        modified(1000);
+        assertEquals(2000, m_counters.getLatestModDate());
+        modified(3000);
+        assertEquals(3000, m_counters.getLatestModDate());
+    }
+
+    @Test
+    public void testRemovingLatestObjectForgetsDate() throws Exception {
+        modified(2000);
+
+        RepositoryCounters.Change change = m_counters.newChange();
+        change.objectRemoved(new Date(1000));
+        change.write(m_conn);
+        change.apply();
+        assertEquals(-1, m_counters.getObjectCount());
+        assertEquals(2000, m_counters.getLatestModDate());
+
+        change = m_counters.newChange();
+        change.objectRemoved(new Date(2000));
+        change.apply();
+        assertTrue(m_counters.toString(), m_counters.toString()
+                .endsWith("unknown"));
+
+        // a later modification is the latest again
+        modified(2500);
+        assertEquals(2500, m_counters.getLatestModDate());
+    }
+
+    @Test
+    public void testEmptyChangeWritesNothing() throws Exception {
+        m_counters.newChange().write(m_conn);
+        assertEquals(0, m_conn.getPreparedStatements().size());
+    }
+
+    private void modified(long date) throws Exception {
+        RepositoryCounters.Change change = m_counters.newChange();
+        change.objectModified(new Date(date));
+        change.write(m_conn);
+        change.apply();
+    }
+
+    // Supports legacy test runners
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(RepositoryCountersTest.class);
+    }
+}
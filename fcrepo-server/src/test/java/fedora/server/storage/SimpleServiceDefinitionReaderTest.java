@@ -0,0 +1,88 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.storage;
+
+import java.util.Date;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fedora.server.storage.types.BasicDigitalObject;
+import fedora.server.storage.types.DatastreamXMLMetadata;
+import fedora.server.storage.types.MethodDef;
+import fedora.server.storage.types.MethodParmDef;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+/**
+ * Tests that the method definitions a {@link SimpleServiceDefinitionReader}
+ * keeps are not changed by its callers.
+ */
+public class SimpleServiceDefinitionReaderTest {
+
+    private static final String METHOD_MAP =
+            "<MethodMap name=\"MethodMap\" "
+                    + "xmlns=\"http://fedora.comm.nsdlib.org/service/methodmap\">"
+                    + "<Method operationName=\"view\">"
+                    + "<UserInputParm parmName=\"size\" passBy=\"VALUE\" "
+                    + "defaultValue=\"\" required=\"true\"/>"
+                    + "<DefaultInputParm parmName=\"format\" passBy=\"VALUE\" "
+                    + "defaultValue=\"jpg\" required=\"true\"/>"
+                    + "</Method></MethodMap>";
+
+    private SimpleServiceDefinitionReader m_reader;
+
+    @Before
+    public void setUp() throws Exception {
+        DatastreamXMLMetadata methodMap = new DatastreamXMLMetadata();
+        methodMap.DatastreamID = "METHODMAP";
+        methodMap.DSVersionID = "METHODMAP1.0";
+        methodMap.DSCreateDT = new Date(0);
+        methodMap.xmlContent = METHOD_MAP.getBytes("UTF-8");
+
+        BasicDigitalObject obj = new BasicDigitalObject();
+        obj.setPid("demo:sdef");
+        obj.addDatastreamVersion(methodMap, false);
+        m_reader =
+                new SimpleServiceDefinitionReader(null,
+                                                  null,
+                                                  null,
+                                                  null,
+                                                  null,
+                                                  obj);
+    }
+
+    @Test
+    public void testCallersGetTheirOwnCopies() throws Exception {
+        MethodDef[] methods = m_reader.getAbstractMethods(null);
+        assertEquals(1, methods.length);
+        assertEquals(2, methods[0].methodParms.length);
+
+        // as SimpleDOReader.listMethods does
+        methods[0].methodParms = new MethodParmDef[0];
+        methods[0].methodLabel = "changed";
+
+        MethodDef[] again = m_reader.getAbstractMethods(null);
+        assertNotSame(methods[0], again[0]);
+        assertEquals("view", again[0].methodName);
+        assertEquals(2, again[0].methodParms.length);
+    }
+
+    @Test
+    public void testParmArraysAreCopied() throws Exception {
+        MethodDef[] methods = m_reader.getAbstractMethods(null);
+        methods[0].methodParms[0] = null;
+        assertEquals("size",
+                     m_reader.getAbstractMethods(null)[0].methodParms[0].parmName);
+    }
+
+    // Supports legacy test runners
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SimpleServiceDefinitionReaderTest.class);
+    }
+}
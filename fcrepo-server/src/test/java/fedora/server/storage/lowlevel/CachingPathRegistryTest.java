@@ -0,0 +1,165 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.storage.lowlevel;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fedora.server.errors.LowlevelStorageException;
+import fedora.server.errors.ObjectNotInLowlevelStorageException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for {@link CachingPathRegistry}.
+ */
+public class CachingPathRegistryTest {
+
+    private MockPathRegistry m_registry;
+
+    private CachingPathRegistry m_cache;
+
+    @Before
+    public void setUp() {
+        Map<String, Object> config = new HashMap<String, Object>();
+        m_registry = new MockPathRegistry(config);
+        m_cache = new CachingPathRegistry(m_registry, config, 1000);
+    }
+
+    @Test
+    public void testGetIsCached() throws Exception {
+        m_registry.paths.put("test:1", "/path/1");
+        assertEquals("/path/1", m_cache.get("test:1"));
+        assertEquals("/path/1", m_cache.get("test:1"));
+        assertEquals(1, m_registry.gets);
+    }
+
+    @Test
+    public void testMissIsCached() throws Exception {
+        assertNotFound("test:1");
+        assertNotFound("test:1");
+        assertEquals(1, m_registry.gets);
+    }
+
+    @Test
+    public void testWriteThrough() throws Exception {
+        assertNotFound("test:1");
+        m_cache.put("test:1", "/path/1");
+        assertEquals("/path/1", m_registry.paths.get("test:1"));
+        assertEquals("/path/1", m_cache.get("test:1"));
+        m_cache.remove("test:1");
+        assertTrue(m_registry.paths.isEmpty());
+        assertNotFound("test:1");
+        assertEquals(1, m_registry.gets);
+    }
+
+    @Test
+    public void testFailedPutNotCached() throws Exception {
+        m_registry.fail = true;
+        try {
+            m_cache.put("test:1", "/path/1");
+            fail("Put should have failed");
+        } catch (LowlevelStorageException e) {
+            // expected
+        }
+        m_registry.fail = false;
+        assertNotFound("test:1");
+    }
+
+    @Test
+    public void testRebuildClears() throws Exception {
+        m_registry.paths.put("test:1", "/path/1");
+        m_cache.get("test:1");
+        m_registry.paths.put("test:1", "/path/2");
+        m_cache.rebuild();
+        assertEquals(0, m_cache.size());
+        assertEquals("/path/2", m_cache.get("test:1"));
+    }
+
+    @Test
+    public void testSizeBound() throws Exception {
+        for (int i = 0; i < 10000; i++) {
+            m_cache.put("test:" + i, "/path/" + i);
+        }
+        assertTrue(m_cache.size() <= 1000);
+        assertEquals("/path/0", m_cache.get("test:0"));
+    }
+
+    private void assertNotFound(String pid) throws Exception {
+        try {
+            m_cache.get(pid);
+            fail("Expected ObjectNotInLowlevelStorageException for " + pid);
+        } catch (ObjectNotInLowlevelStorageException e) {
+            // expected
+        }
+    }
+
+    /**
+     * An in-memory registry that counts lookups.
+     */
+    private static class MockPathRegistry
+            extends PathRegistry {
+
+        final Map<String, String> paths = new HashMap<String, String>();
+
+        int gets;
+
+        boolean fail;
+
+        MockPathRegistry(Map<String, ?> configuration) {
+            super(configuration);
+        }
+
+        @Override
+        public String get(String pid) throws LowlevelStorageException {
+            gets++;
+            String path = paths.get(pid);
+            if (path == null) {
+                throw new ObjectNotInLowlevelStorageException(pid);
+            }
+            return path;
+        }
+
+        @Override
+        public void put(String pid, String path)
+                throws LowlevelStorageException {
+            if (fail) {
+                throw new LowlevelStorageException(true, "put failed");
+            }
+            paths.put(pid, path);
+        }
+
+        @Override
+        public void remove(String pid) throws LowlevelStorageException {
+            paths.remove(pid);
+        }
+
+        @Override
+        public void rebuild() {
+        }
+
+        @Override
+        public void auditFiles() {
+        }
+
+        @Override
+        protected Enumeration<String> keys() {
+            return Collections.enumeration(paths.keySet());
+        }
+    }
+
+    // Supports legacy test runners
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(CachingPathRegistryTest.class);
+    }
+
+}
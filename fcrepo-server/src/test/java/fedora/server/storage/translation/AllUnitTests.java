@@ -9,7 +9,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
-@Suite.SuiteClasses( {TestDOTranslatorImpl.class,
+@Suite.SuiteClasses( {TestDOTranslatorImpl.class, TestDODeserializerPool.class,
         TestFOXML1_0DOSerializer.class, TestFOXML1_0DODeserializer.class,
         TestFOXML1_1DOSerializer.class, TestFOXML1_1DODeserializer.class,
         TestMETSFedoraExt1_0DOSerializer.class,
@@ -28,6 +28,7 @@ public class AllUnitTests {
                 new junit.framework.TestSuite(AllUnitTests.class.getName());
 
         suite.addTest(TestDOTranslatorImpl.suite());
+        suite.addTest(TestDODeserializerPool.suite());
 
         suite.addTest(TestFOXML1_0DOSerializer.suite());
         suite.addTest(TestFOXML1_0DODeserializer.suite());
@@ -0,0 +1,60 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+
+package fedora.server.storage.translation;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Unit tests for DODeserializerPool.
+ */
+public class TestDODeserializerPool {
+
+    @Test
+    public void testReusesSAXDeserializers() {
+        DODeserializer prototype = new FOXML1_1DODeserializer();
+        DODeserializerPool pool = new DODeserializerPool(prototype, 2);
+        DODeserializer des = pool.borrow();
+        assertNotSame(prototype, des);
+        pool.release(des);
+        assertEquals(1, pool.getIdleCount());
+        assertSame(des, pool.borrow());
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    public void testMaxIdle() {
+        DODeserializerPool pool =
+                new DODeserializerPool(new FOXML1_1DODeserializer(), 2);
+        DODeserializer[] borrowed = new DODeserializer[5];
+        for (int i = 0; i < borrowed.length; i++) {
+            borrowed[i] = pool.borrow();
+        }
+        for (DODeserializer des : borrowed) {
+            pool.release(des);
+        }
+        assertEquals(2, pool.getIdleCount());
+    }
+
+    @Test
+    public void testOtherDeserializersNotReused() {
+        DODeserializerPool pool =
+                new DODeserializerPool(new MockDODeserializer("format1"), 2);
+        DODeserializer des = pool.borrow();
+        pool.release(des);
+        assertEquals(0, pool.getIdleCount());
+        assertNotSame(des, pool.borrow());
+    }
+
+    // Supports legacy test runners
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(TestDODeserializerPool.class);
+    }
+
+}
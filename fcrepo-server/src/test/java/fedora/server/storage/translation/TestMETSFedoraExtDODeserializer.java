@@ -5,6 +5,8 @@
 
 package fedora.server.storage.translation;
 
+import org.junit.Test;
+
 /**
  * Common unit tests for METSFedoraExt deserializers.
  *
@@ -18,4 +20,13 @@ public abstract class TestMETSFedoraExtDODeserializer
         super(deserializer, associatedSerializer);
     }
 
+    //---
+    // Tests
+    //---
+
+    @Test
+    public void testReuse() {
+        doTestReuse();
+    }
+
 }
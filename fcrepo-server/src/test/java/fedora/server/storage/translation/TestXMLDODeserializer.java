@@ -315,6 +315,34 @@ public abstract class TestXMLDODeserializer
         assertEquals(TEST_PID, obj.getPid());
     }
 
+    /**
+     * Deserializes with the same instance after a failed parse and after a
+     * successful one, and checks that nothing carries over between objects.
+     */
+    protected void doTestReuse() {
+        try {
+            doDeserialize(new ByteArrayInputStream("<bad".getBytes("UTF-8")));
+            fail("Deserializer should have failed on malformed input");
+        } catch (ObjectIntegrityException e) {
+            // expected
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("Deserializer threw " + e.getClass().getName());
+        }
+
+        DigitalObject obj1 = createTestObject(FEDORA_OBJECT_3_0);
+        obj1.addDatastreamVersion(createXDatastream("DS1"), true);
+        DigitalObject result1 = doDeserializeOrFail(obj1);
+        assertTrue(result1.datastreams("DS1").iterator().hasNext());
+
+        DigitalObject obj2 = createTestObject(FEDORA_OBJECT_3_0);
+        obj2.addDatastreamVersion(createXDatastream("DS2"), true);
+        DigitalObject result2 = doDeserializeOrFail(obj2);
+        assertEquals(TEST_PID, result2.getPid());
+        assertTrue(result2.datastreams("DS2").iterator().hasNext());
+        assertFalse(result2.datastreams("DS1").iterator().hasNext());
+    }
+
     protected DigitalObject doDeserializeOrFail(DigitalObject obj) {
         DigitalObject result = null;
         try {
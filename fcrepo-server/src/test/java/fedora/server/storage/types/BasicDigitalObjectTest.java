@@ -0,0 +1,123 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.storage.types;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import fedora.common.Models;
+import fedora.common.PID;
+
+import static fedora.common.Constants.MODEL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the relationship lookups of {@link BasicDigitalObject}.
+ */
+public class BasicDigitalObjectTest {
+
+    private static final String RELS_START =
+            "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\""
+                    + " xmlns:fedora-model=\"info:fedora/fedora-system:def/model#\">"
+                    + "<rdf:Description rdf:about=\"info:fedora/test:1\">";
+
+    private static final String RELS_END = "</rdf:Description></rdf:RDF>";
+
+    @Test
+    public void testImplicitBasicModel() {
+        BasicDigitalObject obj = newObject();
+        List<String> models = obj.getContentModels();
+        assertEquals(1, models.size());
+        assertEquals(Models.FEDORA_OBJECT_CURRENT.uri, models.get(0));
+        assertTrue(obj.hasContentModel(Models.FEDORA_OBJECT_CURRENT));
+        assertEquals(1, obj.getRelationships().size());
+    }
+
+    @Test
+    public void testExplicitModels() {
+        BasicDigitalObject obj = newObject();
+        addRelsExt(obj, 1, hasModel("test:model"));
+        List<String> models = obj.getContentModels();
+        assertEquals(2, models.size());
+        assertTrue(models.contains("info:fedora/test:model"));
+        assertTrue(obj.hasContentModel(PID.toURIReference("test:model")));
+        assertFalse(obj.hasContentModel(PID.toURIReference("test:other")));
+        assertTrue(obj.hasRelationship(PID.toURIReference("test:1"),
+                                       MODEL.HAS_MODEL,
+                                       PID.toURIReference("test:model")));
+        assertFalse(obj.hasRelationship(PID.toURIReference("test:2"),
+                                        MODEL.HAS_MODEL,
+                                        null));
+    }
+
+    @Test
+    public void testExplicitBasicModel() {
+        BasicDigitalObject obj = newObject();
+        addRelsExt(obj, 1, hasModel("fedora-system:FedoraObject-3.0"));
+        assertEquals(1, obj.getContentModels().size());
+        assertEquals(1, obj.getRelationships().size());
+    }
+
+    @Test
+    public void testMatchByObject() {
+        BasicDigitalObject obj = newObject();
+        addRelsExt(obj, 1, hasModel("test:model") + hasModel("test:model2"));
+        Set<RelationshipTuple> rels =
+                obj.getRelationships(null,
+                                     null,
+                                     PID.toURIReference("test:model2"));
+        assertEquals(1, rels.size());
+        assertEquals("info:fedora/test:model2", rels.iterator().next().object);
+        assertEquals(3,
+                     obj.getRelationships(MODEL.HAS_MODEL, null).size());
+    }
+
+    @Test
+    public void testNewRelsExtVersion() {
+        BasicDigitalObject obj = newObject();
+        addRelsExt(obj, 1, hasModel("test:model"));
+        assertTrue(obj.hasContentModel(PID.toURIReference("test:model")));
+        addRelsExt(obj, 2, hasModel("test:model2"));
+        assertFalse(obj.hasContentModel(PID.toURIReference("test:model")));
+        assertTrue(obj.hasContentModel(PID.toURIReference("test:model2")));
+    }
+
+    private static BasicDigitalObject newObject() {
+        BasicDigitalObject obj = new BasicDigitalObject();
+        obj.setPid("test:1");
+        return obj;
+    }
+
+    private static String hasModel(String pid) {
+        return "<fedora-model:hasModel rdf:resource=\"info:fedora/" + pid
+                + "\"/>";
+    }
+
+    private static void addRelsExt(BasicDigitalObject obj,
+                                   long created,
+                                   String rels) {
+        DatastreamXMLMetadata ds = new DatastreamXMLMetadata();
+        ds.DatastreamID = "RELS-EXT";
+        ds.DSVersionID = "RELS-EXT." + created;
+        ds.DSCreateDT = new Date(created);
+        try {
+            ds.xmlContent = (RELS_START + rels + RELS_END).getBytes("UTF-8");
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        obj.addDatastreamVersion(ds, true);
+    }
+
+    // Supports legacy test runners
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(BasicDigitalObjectTest.class);
+    }
+
+}
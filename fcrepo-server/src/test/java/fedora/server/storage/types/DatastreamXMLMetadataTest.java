@@ -0,0 +1,82 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.storage.types;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link DatastreamXMLMetadata} checksums.
+ */
+public class DatastreamXMLMetadataTest {
+
+    private static final String XML =
+            "<a xmlns=\"urn:test\">\n  <b c=\"d\">text</b>\n</a>";
+
+    @Test
+    public void testWhitespaceBetweenLinesIgnored() throws Exception {
+        DatastreamXMLMetadata ds1 = newDatastream(XML);
+        DatastreamXMLMetadata ds2 =
+                newDatastream("<a xmlns=\"urn:test\"><b c=\"d\">text</b></a>");
+        assertEquals(ds1.setChecksum("MD5"), ds2.setChecksum("MD5"));
+    }
+
+    @Test
+    public void testCompareChecksum() throws Exception {
+        DatastreamXMLMetadata ds = newDatastream(XML);
+        ds.setChecksum("MD5");
+        assertTrue(ds.compareChecksum());
+        ds.xmlContent = "<a xmlns=\"urn:test\"/>".getBytes("UTF-8");
+        assertFalse(ds.compareChecksum());
+    }
+
+    @Test
+    public void testNewContentNewChecksum() throws Exception {
+        DatastreamXMLMetadata ds = newDatastream(XML);
+        String before = ds.setChecksum("MD5");
+        ds.xmlContent = "<a xmlns=\"urn:test\"/>".getBytes("UTF-8");
+        String after = ds.setChecksum("MD5");
+        assertFalse(before.equals(after));
+        assertEquals(after, newDatastream("<a xmlns=\"urn:test\"/>")
+                .setChecksum("MD5"));
+    }
+
+    @Test
+    public void testChecksumTypeChange() throws Exception {
+        DatastreamXMLMetadata ds = newDatastream(XML);
+        String md5 = ds.setChecksum("MD5");
+        String sha1 = ds.setChecksum("SHA-1");
+        assertEquals(32, md5.length());
+        assertEquals(40, sha1.length());
+    }
+
+    @Test
+    public void testCopy() throws Exception {
+        DatastreamXMLMetadata ds = newDatastream(XML);
+        String checksum = ds.setChecksum("MD5");
+        DatastreamXMLMetadata copy = (DatastreamXMLMetadata) ds.copy();
+        assertTrue(copy.compareChecksum());
+        copy.xmlContent = "<a xmlns=\"urn:test\"/>".getBytes("UTF-8");
+        assertFalse(copy.compareChecksum());
+        assertEquals(checksum, ds.setChecksum("MD5"));
+    }
+
+    private static DatastreamXMLMetadata newDatastream(String xml)
+            throws Exception {
+        DatastreamXMLMetadata ds = new DatastreamXMLMetadata();
+        ds.DatastreamID = "DS1";
+        ds.xmlContent = xml.getBytes("UTF-8");
+        return ds;
+    }
+
+    // Supports legacy test runners
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(DatastreamXMLMetadataTest.class);
+    }
+
+}
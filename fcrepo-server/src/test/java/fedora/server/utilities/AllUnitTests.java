@@ -8,7 +8,9 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
-@Suite.SuiteClasses( {TestDateUtility.class, DCFieldsTest.class})
+@Suite.SuiteClasses( {TestDateUtility.class, DCFieldsTest.class,
+        StreamUtilityTest.class, HttpRangeRequestTest.class,
+        fedora.server.utilities.rebuild.RebuildPipelineTest.class})
 public class AllUnitTests {
 
     // Supports legacy tests runners
@@ -19,6 +21,9 @@ public class AllUnitTests {
 
         suite.addTestSuite(TestDateUtility.class);
         suite.addTestSuite(DCFieldsTest.class);
+        suite.addTest(StreamUtilityTest.suite());
+        suite.addTest(HttpRangeRequestTest.suite());
+        suite.addTest(fedora.server.utilities.rebuild.RebuildPipelineTest.suite());
 
         return suite;
     }
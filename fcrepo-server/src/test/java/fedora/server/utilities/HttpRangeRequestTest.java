@@ -0,0 +1,245 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.utilities;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+
+import java.util.Date;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link HttpRangeRequest}.
+ */
+public class HttpRangeRequestTest {
+
+    private static final String ETAG = "\"abc\"";
+
+    private static final Date MODIFIED = new Date(1234567890000L);
+
+    private byte[] m_content;
+
+    private File m_file;
+
+    @Before
+    public void setUp() throws Exception {
+        m_content = new byte[1000];
+        for (int i = 0; i < m_content.length; i++) {
+            m_content[i] = (byte) i;
+        }
+        m_file = File.createTempFile("HttpRangeRequestTest", null);
+        FileOutputStream out = new FileOutputStream(m_file);
+        out.write(m_content);
+        out.close();
+    }
+
+    @After
+    public void tearDown() {
+        m_file.delete();
+    }
+
+    @Test
+    public void testNoConditions() throws Exception {
+        HttpRangeRequest req = newRequest(null, null, null, null);
+        assertEquals(200, req.getStatus());
+        Map<String, String> headers = req.getHeaders();
+        assertEquals(ETAG, headers.get("ETag"));
+        assertEquals("bytes", headers.get("Accept-Ranges"));
+        assertEquals("1000", headers.get("Content-Length"));
+        assertArrayEquals(m_content, getBody(req));
+    }
+
+    @Test
+    public void testIfNoneMatch() throws Exception {
+        assertEquals(304, newRequest(ETAG, null, null, null).getStatus());
+        assertEquals(304, newRequest("\"x\", W/" + ETAG, null, null, null)
+                .getStatus());
+        assertEquals(304, newRequest("*", null, null, null).getStatus());
+        assertEquals(200, newRequest("\"x\"", null, null, null).getStatus());
+        // If-None-Match takes precedence over If-Modified-Since
+        String since = HttpRangeRequest.formatHttpDate(MODIFIED);
+        assertEquals(200, newRequest("\"x\"", since, null, null).getStatus());
+    }
+
+    @Test
+    public void testIfModifiedSince() throws Exception {
+        String same = HttpRangeRequest.formatHttpDate(MODIFIED);
+        String before =
+                HttpRangeRequest.formatHttpDate(new Date(MODIFIED.getTime()
+                        - 1000));
+        assertEquals(304, newRequest(null, same, null, null).getStatus());
+        assertEquals(200, newRequest(null, before, null, null).getStatus());
+        assertEquals(200, newRequest(null, "garbage", null, null).getStatus());
+    }
+
+    @Test
+    public void testSingleRange() throws Exception {
+        assertRange("bytes=0-9", 0, 10);
+        assertRange("bytes=990-", 990, 1000);
+        assertRange("bytes=-10", 990, 1000);
+        assertRange("bytes=-5000", 0, 1000);
+        assertRange("bytes=500-5000", 500, 1000);
+    }
+
+    @Test
+    public void testMultipleRanges() throws Exception {
+        HttpRangeRequest req = newRequest(null, null, "bytes=0-1,-2", null);
+        assertEquals(206, req.getStatus());
+        assertNull(req.getBodyRange());
+        String type = req.getContentType("text/plain");
+        assertTrue(type.startsWith("multipart/byteranges; boundary="));
+        String body = new String(getBody(req), "ISO-8859-1");
+        String boundary = type.substring(type.indexOf('=') + 1);
+        assertTrue(body.indexOf("Content-Range: bytes 0-1/1000\r\n\r\n"
+                + new String(m_content, 0, 2, "ISO-8859-1")) != -1);
+        assertTrue(body.indexOf("Content-Range: bytes 998-999/1000\r\n\r\n"
+                + new String(m_content, 998, 2, "ISO-8859-1")) != -1);
+        assertTrue(body.endsWith("--" + boundary + "--\r\n"));
+    }
+
+    @Test
+    public void testOverlappingRangesMerged() throws Exception {
+        assertRange("bytes=0-9,5-19", 0, 20);
+        assertRange("bytes=10-19,0-9", 0, 20);
+        assertRange("bytes=900-949,-100", 900, 1000);
+
+        HttpRangeRequest req =
+                newRequest(null, null, "bytes=500-509,0-9,5-14", null);
+        assertEquals(206, req.getStatus());
+        String body = new String(getBody(req), "ISO-8859-1");
+        assertTrue(body.indexOf("Content-Range: bytes 0-14/1000") != -1);
+        assertTrue(body.indexOf("Content-Range: bytes 500-509/1000") != -1);
+        assertTrue(body.indexOf("Content-Range: bytes 0-14/1000") < body
+                .indexOf("Content-Range: bytes 500-509/1000"));
+    }
+
+    @Test
+    public void testRepeatedRangesIgnored() throws Exception {
+        StringBuilder range = new StringBuilder("bytes=0-");
+        for (int i = 0; i < 10; i++) {
+            range.append(",0-199");
+        }
+        HttpRangeRequest req = newRequest(null, null, range.toString(), null);
+        assertEquals(200, req.getStatus());
+        assertArrayEquals(m_content, getBody(req));
+    }
+
+    @Test
+    public void testWeakETag() throws Exception {
+        String weak = "W/" + ETAG;
+        assertEquals(304, newRequest(weak, ETAG, null, null, null)
+                .getStatus());
+        assertEquals(304, newRequest(weak, weak, null, null, null)
+                .getStatus());
+        // weak tags can't validate ranges
+        assertEquals(200, newRequest(weak, null, null, "bytes=0-1", ETAG)
+                .getStatus());
+        assertEquals(200, newRequest(weak, null, null, "bytes=0-1", weak)
+                .getStatus());
+    }
+
+    @Test
+    public void testUnsatisfiableRange() throws Exception {
+        HttpRangeRequest req = newRequest(null, null, "bytes=1000-", null);
+        assertEquals(416, req.getStatus());
+        assertEquals("bytes */1000", req.getHeaders().get("Content-Range"));
+    }
+
+    @Test
+    public void testInvalidRangeIgnored() throws Exception {
+        assertEquals(200, newRequest(null, null, "bytes=9-0", null)
+                .getStatus());
+        assertEquals(200, newRequest(null, null, "bytes=a-b", null)
+                .getStatus());
+        assertEquals(200, newRequest(null, null, "items=0-1", null)
+                .getStatus());
+    }
+
+    @Test
+    public void testIfRange() throws Exception {
+        String date = HttpRangeRequest.formatHttpDate(MODIFIED);
+        assertEquals(206, newRequest(null, null, "bytes=0-1", ETAG)
+                .getStatus());
+        assertEquals(206, newRequest(null, null, "bytes=0-1", date)
+                .getStatus());
+        assertEquals(200, newRequest(null, null, "bytes=0-1", "\"x\"")
+                .getStatus());
+        assertEquals(200, newRequest(null, null, "bytes=0-1", "W/" + ETAG)
+                .getStatus());
+    }
+
+    @Test
+    public void testUnknownLength() throws Exception {
+        HttpRangeRequest req =
+                new HttpRangeRequest(-1,
+                                     ETAG,
+                                     MODIFIED,
+                                     null,
+                                     null,
+                                     "bytes=0-9",
+                                     null);
+        assertEquals(200, req.getStatus());
+        assertNull(req.getBodyRange());
+        assertNull(req.getHeaders().get("Content-Length"));
+        assertNull(req.getHeaders().get("Accept-Ranges"));
+    }
+
+    private void assertRange(String range, int start, int end)
+            throws Exception {
+        HttpRangeRequest req = newRequest(null, null, range, null);
+        assertEquals(206, req.getStatus());
+        assertEquals("bytes " + start + "-" + (end - 1) + "/1000", req
+                .getHeaders().get("Content-Range"));
+        assertEquals(Integer.toString(end - start), req.getHeaders()
+                .get("Content-Length"));
+        byte[] expected = new byte[end - start];
+        System.arraycopy(m_content, start, expected, 0, expected.length);
+        assertArrayEquals(expected, getBody(req));
+    }
+
+    private HttpRangeRequest newRequest(String ifNoneMatch,
+                                        String ifModifiedSince,
+                                        String range,
+                                        String ifRange) {
+        return newRequest(ETAG, ifNoneMatch, ifModifiedSince, range, ifRange);
+    }
+
+    private HttpRangeRequest newRequest(String eTag,
+                                        String ifNoneMatch,
+                                        String ifModifiedSince,
+                                        String range,
+                                        String ifRange) {
+        return new HttpRangeRequest(m_content.length,
+                                    eTag,
+                                    MODIFIED,
+                                    ifNoneMatch,
+                                    ifModifiedSince,
+                                    range,
+                                    ifRange);
+    }
+
+    private byte[] getBody(HttpRangeRequest req) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        req.writeBody(new FileInputStream(m_file), out, "text/plain");
+        return out.toByteArray();
+    }
+
+    // Supports legacy test runners
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(HttpRangeRequestTest.class);
+    }
+
+}
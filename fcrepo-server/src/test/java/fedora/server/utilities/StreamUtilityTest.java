@@ -0,0 +1,122 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.utilities;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+
+import java.nio.channels.FileChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests for {@link StreamUtility}.
+ */
+public class StreamUtilityTest {
+
+    private byte[] m_content;
+
+    private File m_file;
+
+    @Before
+    public void setUp() throws Exception {
+        m_content = new byte[100000];
+        for (int i = 0; i < m_content.length; i++) {
+            m_content[i] = (byte) i;
+        }
+        m_file = File.createTempFile("StreamUtilityTest", null);
+        FileOutputStream out = new FileOutputStream(m_file);
+        out.write(m_content);
+        out.close();
+    }
+
+    @After
+    public void tearDown() {
+        m_file.delete();
+    }
+
+    @Test
+    public void testTransferFile() throws Exception {
+        doTransferTests(true);
+    }
+
+    @Test
+    public void testTransferStream() throws Exception {
+        doTransferTests(false);
+    }
+
+    @Test
+    public void testCopyRange() throws Exception {
+        FileInputStream in = new FileInputStream(m_file);
+        try {
+            FileChannel channel = in.getChannel();
+            assertCopyRange(channel, 0, 10);
+            assertCopyRange(channel, 5000, 25000);
+            assertCopyRange(channel, 0, m_content.length);
+            assertEquals(0, channel.position());
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(10, StreamUtility.copyRange(channel, out, 99990,
+                                                     200000));
+            assertEquals(0, StreamUtility.copyRange(channel, out, 200000,
+                                                    300000));
+        } finally {
+            in.close();
+        }
+    }
+
+    private void assertCopyRange(FileChannel channel, int start, int end)
+            throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(end - start,
+                     StreamUtility.copyRange(channel, out, start, end));
+        byte[] expected = new byte[end - start];
+        System.arraycopy(m_content, start, expected, 0, end - start);
+        assertArrayEquals(expected, out.toByteArray());
+    }
+
+    private void doTransferTests(boolean fromFile) throws Exception {
+        assertTransfer(fromFile, 0, -1, 0, m_content.length);
+        assertTransfer(fromFile, 0, 10, 0, 10);
+        assertTransfer(fromFile, 5000, 20000, 5000, 20000);
+        assertTransfer(fromFile, 99990, -1, 99990, 10);
+        assertTransfer(fromFile, 99990, 20000, 99990, 10);
+        assertTransfer(fromFile, 200000, -1, 0, 0);
+    }
+
+    private void assertTransfer(boolean fromFile,
+                                long offset,
+                                long length,
+                                int expectedStart,
+                                int expectedLength) throws Exception {
+        InputStream in;
+        if (fromFile) {
+            in = new FileInputStream(m_file);
+        } else {
+            in = new ByteArrayInputStream(m_content);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long count = StreamUtility.transferStream(in, out, offset, length);
+        assertEquals(expectedLength, count);
+        byte[] expected = new byte[expectedLength];
+        System.arraycopy(m_content, expectedStart, expected, 0, expectedLength);
+        assertArrayEquals(expected, out.toByteArray());
+    }
+
+    // Supports legacy test runners
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(StreamUtilityTest.class);
+    }
+
+}
@@ -0,0 +1,403 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.utilities.rebuild;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fedora.server.config.ServerConfiguration;
+import fedora.server.errors.ObjectIntegrityException;
+import fedora.server.storage.lowlevel.IListable;
+import fedora.server.storage.lowlevel.ILowlevelStorage;
+import fedora.server.storage.translation.DODeserializer;
+import fedora.server.storage.types.DigitalObject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for {@link RebuildPipeline}, run against a fake low-level store
+ * and a rebuilder that records what it is given.
+ */
+public class RebuildPipelineTest {
+
+    private static final int OBJECT_COUNT = 250;
+
+    private static final int BATCH_SIZE = 10;
+
+    private static final int CHECKPOINT_INTERVAL = 50;
+
+    private File m_serverDir;
+
+    private RecordingRebuilder m_rebuilder;
+
+    private RebuildCheckpoint m_checkpoint;
+
+    @Before
+    public void setUp() throws Exception {
+        m_serverDir = File.createTempFile("RebuildPipelineTest", null);
+        m_serverDir.delete();
+        m_serverDir.mkdir();
+        m_rebuilder = new RecordingRebuilder();
+        m_checkpoint = new RebuildCheckpoint(m_serverDir, m_rebuilder);
+    }
+
+    @After
+    public void tearDown() {
+        m_checkpoint.delete();
+        m_serverDir.delete();
+    }
+
+    @Test
+    public void testBatchesAndCheckpoints() throws Exception {
+        Set<String> pids = pids("demo:", OBJECT_COUNT);
+        m_checkpoint.start();
+        RebuildPipeline pipeline = newPipeline(new FakeStore(pids));
+        pipeline.setCheckpoint(m_checkpoint, new HashSet<String>());
+        pipeline.run();
+        m_checkpoint.close();
+
+        assertEquals(OBJECT_COUNT, pipeline.getAdded());
+        assertEquals(0, pipeline.getFailed());
+        assertEquals(pids, m_rebuilder.durable);
+        assertEquals(0, m_rebuilder.singles);
+        for (Integer size : m_rebuilder.batchSizes) {
+            assertTrue("Batch of " + size, size <= BATCH_SIZE);
+        }
+        assertTrue("Only " + m_rebuilder.flushes + " flushes",
+                   m_rebuilder.flushes >= OBJECT_COUNT / CHECKPOINT_INTERVAL);
+        assertEquals(pids, m_checkpoint.resume());
+    }
+
+    @Test
+    public void testResumeSkipsDone() throws Exception {
+        Set<String> pids = pids("demo:", OBJECT_COUNT);
+        Set<String> done = pids("demo:", 100);
+        m_checkpoint.start();
+        m_checkpoint.record(done);
+        m_checkpoint.close();
+
+        Set<String> resumed = m_checkpoint.resume();
+        RebuildPipeline pipeline = newPipeline(new FakeStore(pids));
+        pipeline.setCheckpoint(m_checkpoint, resumed);
+        pipeline.run();
+        m_checkpoint.close();
+
+        assertEquals(OBJECT_COUNT - done.size(), pipeline.getAdded());
+        assertEquals(done.size(), pipeline.getSkipped());
+        for (String pid : done) {
+            assertFalse(pid + " was added again",
+                        m_rebuilder.durable.contains(pid));
+        }
+        assertEquals(pids, m_checkpoint.resume());
+    }
+
+    @Test
+    public void testFailedBatchFallsBackToSingleObjects() throws Exception {
+        Set<String> pids = pids("demo:", OBJECT_COUNT);
+        pids.add("bad:1");
+        m_checkpoint.start();
+        RebuildPipeline pipeline = newPipeline(new FakeStore(pids));
+        pipeline.setCheckpoint(m_checkpoint, new HashSet<String>());
+        pipeline.run();
+        m_checkpoint.close();
+
+        assertEquals(OBJECT_COUNT, pipeline.getAdded());
+        assertEquals(1, pipeline.getFailed());
+        assertTrue(m_rebuilder.singles > 0);
+        assertTrue(m_rebuilder.singles <= BATCH_SIZE);
+        assertFalse(m_rebuilder.durable.contains("bad:1"));
+        Set<String> recorded = m_checkpoint.resume();
+        assertFalse(recorded.contains("bad:1"));
+        pids.remove("bad:1");
+        assertEquals(pids, recorded);
+    }
+
+    @Test
+    public void testUnreadableObjectsAreNotRecorded() throws Exception {
+        Set<String> pids = pids("demo:", OBJECT_COUNT);
+        pids.add("unreadable:1");
+        pids.add("unreadable:2");
+        m_checkpoint.start();
+        RebuildPipeline pipeline = newPipeline(new FakeStore(pids));
+        pipeline.setCheckpoint(m_checkpoint, new HashSet<String>());
+        pipeline.run();
+        m_checkpoint.close();
+
+        assertEquals(OBJECT_COUNT, pipeline.getAdded());
+        assertEquals(2, pipeline.getFailed());
+        Set<String> recorded = m_checkpoint.resume();
+        assertFalse(recorded.contains("unreadable:1"));
+        assertFalse(recorded.contains("unreadable:2"));
+        assertEquals(OBJECT_COUNT, recorded.size());
+    }
+
+    @Test(timeout = 10000)
+    public void testListErrorStopsRebuild() throws Exception {
+        Set<String> pids = pids("demo:", OBJECT_COUNT);
+        FakeStore store = new FakeStore(pids);
+        store.failListingAfter = 20;
+        m_checkpoint.start();
+        RebuildPipeline pipeline = newPipeline(store);
+        pipeline.setCheckpoint(m_checkpoint, new HashSet<String>());
+        try {
+            pipeline.run();
+            fail("Listing error was ignored");
+        } catch (Exception e) {
+            assertTrue(e.getCause() instanceof Error);
+        }
+        m_checkpoint.close();
+        // what was added before the error is still recorded
+        assertEquals(m_rebuilder.durable, m_checkpoint.resume());
+        assertEquals(20, m_rebuilder.durable.size());
+    }
+
+    @Test(timeout = 10000)
+    public void testReadErrorStopsRebuild() throws Exception {
+        Set<String> pids = pids("demo:", OBJECT_COUNT);
+        pids.add("error:1");
+        m_checkpoint.start();
+        RebuildPipeline pipeline = newPipeline(new FakeStore(pids));
+        pipeline.setCheckpoint(m_checkpoint, new HashSet<String>());
+        try {
+            pipeline.run();
+            fail("Reader error was ignored");
+        } catch (Exception e) {
+            assertTrue(e.getCause() instanceof Error);
+        }
+        m_checkpoint.close();
+        assertFalse(m_checkpoint.resume().contains("error:1"));
+    }
+
+    private RebuildPipeline newPipeline(ILowlevelStorage store) {
+        return new RebuildPipeline(m_rebuilder,
+                                   store,
+                                   new FakeDeserializer(),
+                                   3,
+                                   BATCH_SIZE,
+                                   CHECKPOINT_INTERVAL);
+    }
+
+    private static Set<String> pids(String prefix, int count) {
+        Set<String> pids = new HashSet<String>();
+        for (int i = 0; i < count; i++) {
+            pids.add(prefix + i);
+        }
+        return pids;
+    }
+
+    /**
+     * Lists the given PIDs, and returns each PID as the object's content.
+     */
+    private static class FakeStore
+            implements ILowlevelStorage, IListable {
+
+        private final List<String> m_pids;
+
+        int failListingAfter = -1;
+
+        FakeStore(Set<String> pids) {
+            m_pids = new ArrayList<String>(pids);
+            Collections.sort(m_pids);
+        }
+
+        public Iterator<String> listObjects() {
+            final Iterator<String> pids = m_pids.iterator();
+            return new Iterator<String>() {
+
+                private int m_count;
+
+                public boolean hasNext() {
+                    return pids.hasNext();
+                }
+
+                public String next() {
+                    if (m_count++ == failListingAfter) {
+                        throw new Error("Simulated listing failure");
+                    }
+                    return pids.next();
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        public Iterator<String> listDatastreams() {
+            throw new UnsupportedOperationException();
+        }
+
+        public InputStream retrieveObject(String objectKey) {
+            return new ByteArrayInputStream(objectKey.getBytes());
+        }
+
+        public void addObject(String objectKey, InputStream content) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void replaceObject(String objectKey, InputStream content) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void removeObject(String objectKey) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void rebuildObject() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void auditObject() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void addDatastream(String dsKey, InputStream content) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void replaceDatastream(String dsKey, InputStream content) {
+            throw new UnsupportedOperationException();
+        }
+
+        public InputStream retrieveDatastream(String dsKey) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void removeDatastream(String dsKey) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void rebuildDatastream() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void auditDatastream() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Reads the PID written by FakeStore. PIDs starting with "unreadable:"
+     * fail with an exception, and those starting with "error:" with an Error.
+     */
+    private static class FakeDeserializer
+            implements DODeserializer {
+
+        public DODeserializer getInstance() {
+            return new FakeDeserializer();
+        }
+
+        public void deserialize(InputStream in,
+                                DigitalObject obj,
+                                String encoding,
+                                int transContext)
+                throws ObjectIntegrityException {
+            StringBuffer pid = new StringBuffer();
+            try {
+                int c;
+                while ((c = in.read()) != -1) {
+                    pid.append((char) c);
+                }
+            } catch (IOException e) {
+                throw new Error(e);
+            }
+            if (pid.indexOf("unreadable:") == 0) {
+                throw new ObjectIntegrityException("Simulated bad object");
+            }
+            if (pid.indexOf("error:") == 0) {
+                throw new Error("Simulated reader failure");
+            }
+            obj.setPid(pid.toString());
+        }
+    }
+
+    /**
+     * Records the objects it is given, and which of them have been flushed.
+     * Batches containing a PID starting with "bad:" fail, as does adding that
+     * object on its own.
+     */
+    private static class RecordingRebuilder
+            implements BatchRebuilder {
+
+        final List<Integer> batchSizes = new ArrayList<Integer>();
+
+        final Set<String> durable = new HashSet<String>();
+
+        private final Set<String> m_pending = new HashSet<String>();
+
+        int singles;
+
+        int flushes;
+
+        public String getAction() {
+            return "Recording rebuilder";
+        }
+
+        public Map<String, String> init(File serverBaseDir,
+                                        ServerConfiguration serverConfig) {
+            return null;
+        }
+
+        public boolean shouldStopServer() {
+            return false;
+        }
+
+        public void start(Map<String, String> options) {
+        }
+
+        public void addObjects(List<DigitalObject> objects) throws Exception {
+            batchSizes.add(objects.size());
+            for (DigitalObject obj : objects) {
+                if (obj.getPid().startsWith("bad:")) {
+                    throw new Exception("Simulated batch failure");
+                }
+            }
+            for (DigitalObject obj : objects) {
+                m_pending.add(obj.getPid());
+            }
+        }
+
+        public void addObject(DigitalObject object) throws Exception {
+            singles++;
+            if (object.getPid().startsWith("bad:")) {
+                throw new Exception("Simulated object failure");
+            }
+            m_pending.add(object.getPid());
+        }
+
+        public void flush() {
+            flushes++;
+            durable.addAll(m_pending);
+            m_pending.clear();
+        }
+
+        public void finish() {
+        }
+    }
+
+    // Supports legacy test runners
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(RebuildPipelineTest.class);
+    }
+}
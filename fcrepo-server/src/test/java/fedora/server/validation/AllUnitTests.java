@@ -10,6 +10,9 @@ import org.junit.runners.Suite;
 @RunWith(Suite.class)
 @Suite.SuiteClasses( {RelsValidatorTest.class,
                       DOValidatorXMLSchemaTest.class,
+                      DOValidatorSchematronTest.class,
+                      DOValidatorFilterTest.class,
+                      DOValidatorResourceResolverTest.class,
                       ValidationUtilityTest.class})
 public class AllUnitTests {
 
@@ -21,6 +24,9 @@ public class AllUnitTests {
 
         suite.addTestSuite(RelsValidatorTest.class);
         suite.addTest(DOValidatorXMLSchemaTest.suite());
+        suite.addTest(DOValidatorSchematronTest.suite());
+        suite.addTest(DOValidatorFilterTest.suite());
+        suite.addTest(DOValidatorResourceResolverTest.suite());
         suite.addTest(ValidationUtilityTest.suite());
 
         return suite;
@@ -0,0 +1,183 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.validation;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+import fedora.common.Constants;
+
+import fedora.server.errors.ObjectIntegrityException;
+import fedora.server.errors.ObjectValidityException;
+import fedora.server.storage.translation.DOTranslationUtility;
+import fedora.server.storage.translation.FOXML1_1DODeserializer;
+import fedora.server.storage.types.BasicDigitalObject;
+import fedora.server.storage.types.DigitalObject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that validating an object in the same pass as deserializing it, with
+ * a {@link DOValidatorFilter}, accepts and rejects the same objects as
+ * validating it first and then deserializing it.
+ */
+public class DOValidatorFilterTest {
+
+    private static final String RESOURCES = "src/main/resources/";
+
+    private static final String FORMAT = Constants.FOXML1_1.uri;
+
+    private DOValidatorImpl m_validator;
+
+    private byte[] m_valid;
+
+    @Before
+    public void setUp() throws Exception {
+        // HACK: make DOTranslationUtility happy
+        System.setProperty("fedora.hostname", "localhost");
+        System.setProperty("fedora.port", "8080");
+        System.setProperty("fedora.appServerContext",
+                           Constants.FEDORA_DEFAULT_APP_CONTEXT);
+
+        Map<String, String> xmlSchemaMap = new HashMap<String, String>();
+        xmlSchemaMap.put(FORMAT, RESOURCES + "xsd/foxml1-1.xsd");
+        Map<String, String> ruleSchemaMap = new HashMap<String, String>();
+        ruleSchemaMap.put(FORMAT, DOValidatorSchematronTest.FOXML_RULES);
+        m_validator =
+                new DOValidatorImpl(System.getProperty("java.io.tmpdir"),
+                                    xmlSchemaMap,
+                                    DOValidatorSchematronTest.PREPROCESSOR,
+                                    ruleSchemaMap);
+        m_valid =
+                DOValidatorSchematronTest
+                        .readFile(new File(DOValidatorSchematronTest.DEMO_OBJECT));
+    }
+
+    @Test
+    public void testValidObject() throws Exception {
+        DigitalObject before = new BasicDigitalObject();
+        DigitalObject single = new BasicDigitalObject();
+        assertNull(validateThenDeserialize(m_valid, before));
+        assertNull(validateWhileDeserializing(m_valid, single));
+        assertEquals(before.getPid(), single.getPid());
+        assertEquals(before.getLabel(), single.getLabel());
+        assertEquals(count(before.datastreamIdIterator()),
+                     count(single.datastreamIdIterator()));
+    }
+
+    @Test
+    public void testSchemaInvalidObject() throws Exception {
+        byte[] invalid =
+                replace(m_valid,
+                        "<foxml:objectProperties>",
+                        "<foxml:objectProperties><foxml:bogus/>");
+        assertSameOutcome(invalid);
+    }
+
+    @Test
+    public void testSchematronInvalidObject() throws Exception {
+        byte[] invalid =
+                replace(m_valid, "CONTROL_GROUP=\"X\"", "CONTROL_GROUP=\"Q\"");
+        Exception e = assertSameOutcome(invalid);
+        assertTrue(e.getMessage(), e.getMessage().indexOf("control group") != -1);
+    }
+
+    /**
+     * Checks that both ways of validating reject the object with the same
+     * type of exception, and returns the exception from the single pass.
+     */
+    private Exception assertSameOutcome(byte[] object) throws Exception {
+        Exception before =
+                validateThenDeserialize(object, new BasicDigitalObject());
+        Exception single =
+                validateWhileDeserializing(object, new BasicDigitalObject());
+        assertNotNull("Invalid object was accepted", before);
+        assertNotNull("Invalid object was accepted in a single pass", single);
+        assertEquals(before.getClass(), single.getClass());
+        return single;
+    }
+
+    private Exception validateThenDeserialize(byte[] object,
+                                              DigitalObject obj)
+            throws Exception {
+        try {
+            m_validator.validate(new ByteArrayInputStream(object),
+                                 FORMAT,
+                                 DOValidatorImpl.VALIDATE_ALL,
+                                 "ingest");
+            new FOXML1_1DODeserializer()
+                    .deserialize(new ByteArrayInputStream(object),
+                                 obj,
+                                 "UTF-8",
+                                 DOTranslationUtility.DESERIALIZE_INSTANCE);
+            return null;
+        } catch (ObjectValidityException e) {
+            return e;
+        }
+    }
+
+    /**
+     * Validates like DefaultDOManager does for ingest.
+     */
+    private Exception validateWhileDeserializing(byte[] object,
+                                                 DigitalObject obj)
+            throws Exception {
+        DOValidatorFilter filter =
+                m_validator.newValidatorFilter(FORMAT,
+                                               DOValidatorImpl.VALIDATE_ALL,
+                                               "ingest");
+        try {
+            try {
+                new FOXML1_1DODeserializer()
+                        .deserialize(new ByteArrayInputStream(object),
+                                     obj,
+                                     "UTF-8",
+                                     DOTranslationUtility.DESERIALIZE_INSTANCE,
+                                     filter);
+            } catch (ObjectIntegrityException e) {
+                if (filter.getFailure() != null) {
+                    throw filter.getFailure();
+                }
+                throw e;
+            }
+            filter.checkValid();
+            return null;
+        } catch (ObjectValidityException e) {
+            return e;
+        }
+    }
+
+    private static byte[] replace(byte[] object, String from, String to)
+            throws Exception {
+        String xml = new String(object, "UTF-8");
+        assertTrue(from + " not found", xml.indexOf(from) != -1);
+        return xml.replace(from, to).getBytes("UTF-8");
+    }
+
+    private static int count(Iterator<?> iter) {
+        int n = 0;
+        while (iter.hasNext()) {
+            iter.next();
+            n++;
+        }
+        return n;
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(DOValidatorFilterTest.class);
+    }
+}
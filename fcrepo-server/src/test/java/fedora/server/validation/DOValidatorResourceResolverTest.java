@@ -0,0 +1,57 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.validation;
+
+import org.junit.Test;
+
+import org.w3c.dom.ls.LSInput;
+
+import junit.framework.JUnit4TestAdapter;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests that only local schemas are loaded during compiled XML Schema
+ * validation.
+ */
+public class DOValidatorResourceResolverTest {
+
+    private static final String XSD = "http://www.w3.org/2001/XMLSchema";
+
+    private final DOValidatorResourceResolver m_resolver =
+            new DOValidatorResourceResolver();
+
+    @Test
+    public void testLocalSchemasLoaded() {
+        assertNull(resolve("file:/tmp/xlink.xsd", null));
+        assertNull(resolve("xlink.xsd", "file:/fedora/xsd/foxml1-1.xsd"));
+    }
+
+    @Test
+    public void testOtherSchemasEmpty() {
+        assertEmpty(resolve("http://example.org/evil.xsd", null));
+        assertEmpty(resolve("evil.xsd", "http://example.org/object.xml"));
+        assertEmpty(resolve("evil.xsd", null));
+        assertEmpty(resolve(null, "file:/fedora/xsd/foxml1-1.xsd"));
+    }
+
+    private LSInput resolve(String systemId, String baseURI) {
+        return m_resolver.resolveResource(XSD, "urn:x", null, systemId, baseURI);
+    }
+
+    private static void assertEmpty(LSInput input) {
+        assertNotNull(input);
+        assertNull(input.getSystemId());
+        assertNull(input.getByteStream());
+        assertNull(input.getCharacterStream());
+        assertNull(input.getStringData());
+    }
+
+    // Supports legacy test runners
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(DOValidatorResourceResolverTest.class);
+    }
+}
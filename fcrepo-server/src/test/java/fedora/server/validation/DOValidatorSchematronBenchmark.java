@@ -0,0 +1,106 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.validation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import fedora.utilities.XmlTransformUtility;
+
+/**
+ * Measures the cost of Schematron validation per object, both the way it was
+ * done before validating stylesheets were compiled once (compiling the
+ * stylesheet for each object and building a DOM of the report), and with a
+ * reused {@link DOValidatorSchematron}.
+ * <p>
+ * Run from the fcrepo-server directory, optionally giving the number of
+ * objects to validate and the path of a FOXML object:
+ * <pre>
+ * java fedora.server.validation.DOValidatorSchematronBenchmark [count [object]]
+ * </pre>
+ */
+public class DOValidatorSchematronBenchmark {
+
+    private static final String PHASE = "store";
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        String objectPath =
+                args.length > 1 ? args[1] : DOValidatorSchematronTest.DEMO_OBJECT;
+        byte[] object =
+                DOValidatorSchematronTest.readFile(new File(objectPath));
+
+        byte[] styleSheet = generateStyleSheet();
+        DOValidatorSchematron schtron =
+                new DOValidatorSchematron(DOValidatorSchematronTest.FOXML_RULES,
+                                          DOValidatorSchematronTest.PREPROCESSOR,
+                                          PHASE);
+
+        // warm up both paths before timing them
+        for (int i = 0; i < Math.min(count, 50); i++) {
+            validateCompilingEachTime(styleSheet, object);
+            schtron.validate(new ByteArrayInputStream(object));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            validateCompilingEachTime(styleSheet, object);
+        }
+        long before = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            schtron.validate(new ByteArrayInputStream(object));
+        }
+        long after = System.nanoTime() - start;
+
+        System.out.println("Validated " + count + " objects (" + object.length
+                + " bytes each)");
+        System.out.println("Compiled per object: " + format(before, count));
+        System.out.println("Compiled once:       " + format(after, count));
+    }
+
+    /**
+     * What DOValidatorSchematron.validate used to do for each object.
+     */
+    private static void validateCompilingEachTime(byte[] styleSheet,
+                                                  byte[] object)
+            throws Exception {
+        TransformerFactory tfactory = XmlTransformUtility.getTransformerFactory();
+        Transformer vtransformer =
+                tfactory.newTransformer(new StreamSource(new ByteArrayInputStream(styleSheet)));
+        DOMResult validationResult = new DOMResult();
+        vtransformer.transform(new StreamSource(new ByteArrayInputStream(object)),
+                               validationResult);
+        if (!new DOValidatorSchematronResult(validationResult).isValid()) {
+            throw new IllegalStateException("Benchmark object is not valid");
+        }
+    }
+
+    private static byte[] generateStyleSheet() throws Exception {
+        TransformerFactory tfactory = XmlTransformUtility.getTransformerFactory();
+        Transformer ptransformer =
+                tfactory.newTransformer(DOValidatorSchematron
+                        .fileToStreamSource(DOValidatorSchematronTest.PREPROCESSOR));
+        ptransformer.setParameter("phase", PHASE);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ptransformer.transform(DOValidatorSchematron
+                .fileToStreamSource(DOValidatorSchematronTest.FOXML_RULES),
+                               new StreamResult(out));
+        return out.toByteArray();
+    }
+
+    private static String format(long nanos, int count) {
+        return (nanos / count / 1000) + " microseconds per object, "
+                + (nanos / 1000000) + " ms total";
+    }
+}
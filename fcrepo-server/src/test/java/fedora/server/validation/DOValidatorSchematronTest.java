@@ -0,0 +1,143 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.server.validation;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.sax.TransformerHandler;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import junit.framework.JUnit4TestAdapter;
+
+import fedora.server.errors.ObjectValidityException;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests Schematron validation with a compiled validating stylesheet.
+ */
+public class DOValidatorSchematronTest {
+
+    private static final String RESOURCES = "src/main/resources/";
+
+    static final String PREPROCESSOR =
+            RESOURCES + "schematron/preprocessor.xslt";
+
+    static final String FOXML_RULES =
+            RESOURCES + "schematron/foxmlRules1-1.xml";
+
+    static final String DEMO_OBJECT =
+            RESOURCES
+                    + "demo/demo-objects/foxml/local-server-demos/simple-image-demo/obj_demo_5.xml";
+
+    private byte[] m_valid;
+
+    private byte[] m_invalid;
+
+    @Before
+    public void setUp() throws Exception {
+        m_valid = readFile(new File(DEMO_OBJECT));
+        m_invalid =
+                new String(m_valid, "UTF-8").replace("CONTROL_GROUP=\"X\"",
+                                                     "CONTROL_GROUP=\"Q\"")
+                        .getBytes("UTF-8");
+    }
+
+    @Test
+    public void testValidObject() throws Exception {
+        DOValidatorSchematron schtron =
+                new DOValidatorSchematron(FOXML_RULES, PREPROCESSOR, "ingest");
+        schtron.validate(new ByteArrayInputStream(m_valid));
+    }
+
+    @Test
+    public void testInvalidObject() throws Exception {
+        DOValidatorSchematron schtron =
+                new DOValidatorSchematron(FOXML_RULES, PREPROCESSOR, "ingest");
+        try {
+            schtron.validate(new ByteArrayInputStream(m_invalid));
+            fail("Invalid control group was not reported");
+        } catch (ObjectValidityException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("<ASSERT>"));
+            assertTrue(e.getMessage(), e.getMessage().indexOf("control group") != -1);
+        }
+    }
+
+    @Test
+    public void testValidatorIsReusable() throws Exception {
+        DOValidatorSchematron schtron =
+                new DOValidatorSchematron(FOXML_RULES, PREPROCESSOR, "store");
+        for (int i = 0; i < 3; i++) {
+            try {
+                schtron.validate(new ByteArrayInputStream(m_invalid));
+                fail("Invalid control group was not reported");
+            } catch (ObjectValidityException e) {
+            }
+        }
+    }
+
+    @Test
+    public void testValidatingHandler() throws Exception {
+        DOValidatorSchematron schtron =
+                new DOValidatorSchematron(FOXML_RULES, PREPROCESSOR, "ingest");
+
+        DOValidatorSchematronHandler result = new DOValidatorSchematronHandler();
+        parse(m_valid, schtron.newValidatingHandler(result));
+        assertTrue(result.isValid());
+
+        result = new DOValidatorSchematronHandler();
+        try {
+            parse(m_invalid, schtron.newValidatingHandler(result));
+        } catch (SAXException e) {
+            // stopped at the first failure
+        }
+        assertFalse(result.isValid());
+    }
+
+    private static void parse(byte[] object, TransformerHandler handler)
+            throws Exception {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        XMLReader reader = factory.newSAXParser().getXMLReader();
+        reader.setContentHandler(handler);
+        reader.parse(new InputSource(new ByteArrayInputStream(object)));
+    }
+
+    static byte[] readFile(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        InputStream in = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < bytes.length) {
+                int howMany = in.read(bytes, offset, bytes.length - offset);
+                if (howMany == -1) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+                offset += howMany;
+            }
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+
+    // Supports legacy test runners
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(DOValidatorSchematronTest.class);
+    }
+}
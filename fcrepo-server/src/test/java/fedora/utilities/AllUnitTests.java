@@ -12,7 +12,8 @@ import org.junit.runners.Suite;
     TestBase64.class,
     TestFileUtils.class,
     TestZip.class,
-    NamespaceContextImplTest.class})
+    NamespaceContextImplTest.class,
+    XmlTransformUtilityTest.class})
 public class AllUnitTests {
 
     // Supports legacy tests runners
@@ -26,6 +27,7 @@ public class AllUnitTests {
         suite.addTestSuite(TestFileUtils.class);
         suite.addTestSuite(TestZip.class);
         suite.addTest(NamespaceContextImplTest.suite());
+        suite.addTest(XmlTransformUtilityTest.suite());
 
         return suite;
     }
@@ -0,0 +1,141 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package fedora.utilities;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fedora.utilities.XmlTransformUtility.TransformStatistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the stylesheet cache of {@link XmlTransformUtility}: compiled
+ * stylesheets are shared until their file changes, and transformations are
+ * counted per stylesheet.
+ */
+public class XmlTransformUtilityTest {
+
+    private File m_first;
+
+    private File m_second;
+
+    @Before
+    public void setUp() throws IOException {
+        m_first = File.createTempFile("XmlTransformUtilityTest", ".xslt");
+        m_second = File.createTempFile("XmlTransformUtilityTest", ".xslt");
+        writeStylesheet(m_first, "first");
+        writeStylesheet(m_second, "second");
+    }
+
+    @After
+    public void tearDown() {
+        m_first.delete();
+        m_second.delete();
+    }
+
+    @Test
+    public void testSameTemplatesWhileUnchanged() throws Exception {
+        Templates templates = XmlTransformUtility.getTemplates(m_first);
+        assertSame(templates, XmlTransformUtility.getTemplates(m_first));
+        assertSame(templates, XmlTransformUtility.getCachedTemplates(m_first)
+                .templates);
+        assertNotSame(templates, XmlTransformUtility.getTemplates(m_second));
+    }
+
+    @Test
+    public void testRecompiledAfterModification() throws Exception {
+        Templates templates = XmlTransformUtility.getTemplates(m_first);
+        assertEquals("first", transform(m_first));
+
+        writeStylesheet(m_first, "changed");
+        m_first.setLastModified(m_first.lastModified() + 10000);
+        Templates recompiled = XmlTransformUtility.getTemplates(m_first);
+        assertNotSame(templates, recompiled);
+        assertEquals("changed", transform(m_first));
+        assertSame(recompiled, XmlTransformUtility.getTemplates(m_first));
+    }
+
+    @Test
+    public void testStatisticsPerStylesheet() throws Exception {
+        long first = count(m_first);
+        long second = count(m_second);
+        for (int i = 0; i < 3; i++) {
+            transform(m_first);
+        }
+        transform(m_second);
+        assertEquals(first + 3, count(m_first));
+        assertEquals(second + 1, count(m_second));
+
+        // a recompiled stylesheet keeps its statistics
+        writeStylesheet(m_first, "changed");
+        m_first.setLastModified(m_first.lastModified() + 10000);
+        transform(m_first);
+        assertEquals(first + 4, count(m_first));
+        assertEquals(first + 4, statistics(m_first).getCount());
+    }
+
+    private static String transform(File xslFile) throws Exception {
+        Transformer transformer = XmlTransformUtility.getTransformer(xslFile);
+        StringWriter out = new StringWriter();
+        transformer.transform(new StreamSource(new StringReader("<doc/>")),
+                              new StreamResult(out));
+        return out.toString();
+    }
+
+    private static long count(File xslFile) throws Exception {
+        return XmlTransformUtility.getCachedTemplates(xslFile).count.get();
+    }
+
+    private static TransformStatistics statistics(File xslFile) {
+        for (TransformStatistics stats : XmlTransformUtility
+                .getTransformStatistics()) {
+            if (stats.getPath().equals(xslFile.getAbsolutePath())) {
+                return stats;
+            }
+        }
+        fail("No statistics for " + xslFile);
+        return null;
+    }
+
+    /**
+     * Writes a stylesheet that outputs the given text, whatever its input.
+     */
+    private static void writeStylesheet(File xslFile, String text)
+            throws IOException {
+        FileWriter out = new FileWriter(xslFile);
+        try {
+            out.write("<xsl:stylesheet version=\"1.0\" "
+                    + "xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+                    + "<xsl:output method=\"text\"/>"
+                    + "<xsl:template match=\"/\">" + text + "</xsl:template>"
+                    + "</xsl:stylesheet>");
+        } finally {
+            out.close();
+        }
+    }
+
+    // Supports legacy test runners
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(XmlTransformUtilityTest.class);
+    }
+}
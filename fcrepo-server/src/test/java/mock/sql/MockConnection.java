@@ -48,6 +48,10 @@ public class MockConnection
 
     protected SQLWarning warnings;
 
+    protected int commits;
+
+    protected int rollbacks;
+
     protected final List<MockStatement> statements =
             new ArrayList<MockStatement>();
 
@@ -58,6 +62,8 @@ public class MockConnection
         closed = false;
         autoCommit = false;
         warnings = null;
+        commits = 0;
+        rollbacks = 0;
         statements.clear();
         preparedStatements.clear();
     }
@@ -66,6 +72,14 @@ public class MockConnection
         return new ArrayList<MockStatement>(statements);
     }
 
+    public int getCommitCount() {
+        return commits;
+    }
+
+    public int getRollbackCount() {
+        return rollbacks;
+    }
+
     public List<MockPreparedStatement> getPreparedStatements() {
         return new ArrayList<MockPreparedStatement>(preparedStatements);
     }
@@ -113,14 +127,18 @@ public class MockConnection
         return stmt;
     }
 
+    public void commit() throws SQLException {
+        commits++;
+    }
+
+    public void rollback() throws SQLException {
+        rollbacks++;
+    }
+
     // ----------------------------------------------------------------------
     // Un-implemented methods
     // ----------------------------------------------------------------------
 
-    public void commit() throws SQLException {
-        throw new RuntimeException("MockConnection.commit not implemented");
-    }
-
     public Statement createStatement(int arg0, int arg1) throws SQLException {
         throw new RuntimeException("MockConnection.createStatement not implemented");
     }
@@ -205,10 +223,6 @@ public class MockConnection
         throw new RuntimeException("MockConnection.releaseSavepoint not implemented");
     }
 
-    public void rollback() throws SQLException {
-        throw new RuntimeException("MockConnection.rollback not implemented");
-    }
-
     public void rollback(Savepoint arg0) throws SQLException {
         throw new RuntimeException("MockConnection.rollback not implemented");
     }
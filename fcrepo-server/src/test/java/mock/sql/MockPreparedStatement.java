@@ -31,8 +31,10 @@ import java.sql.SQLWarning;
 import java.sql.Time;
 import java.sql.Timestamp;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.List;
 
 import java.math.BigDecimal;
 
@@ -58,6 +60,8 @@ public class MockPreparedStatement
 
     private boolean executed;
 
+    private final List<Object[]> batches = new ArrayList<Object[]>();
+
     public MockPreparedStatement(String sql) {
         this.sql = sql;
 
@@ -72,6 +76,7 @@ public class MockPreparedStatement
 
     public void reset() {
         Arrays.fill(parameters, null);
+        batches.clear();
         closed = false;
         executed = false;
     }
@@ -84,6 +89,11 @@ public class MockPreparedStatement
         return parameters.clone();
     }
 
+    /** The parameters of each batch added since the last executeBatch. */
+    public List<Object[]> getBatches() {
+        return new ArrayList<Object[]>(batches);
+    }
+
     /** Insure that a closed statement doesn't do anything else. */
     private void checkClosed() {
         if (closed) {
@@ -126,6 +136,32 @@ public class MockPreparedStatement
         return 0;
     }
 
+    public void addBatch() throws SQLException {
+        checkClosed();
+        batches.add(parameters.clone());
+        Arrays.fill(parameters, null);
+    }
+
+    public int[] executeBatch() throws SQLException {
+        checkClosed();
+        int[] counts = new int[batches.size()];
+        Arrays.fill(counts, 1);
+        batches.clear();
+        return counts;
+    }
+
+    public void setInt(int parameterIndex, int x) throws SQLException {
+        checkClosed();
+        checkExecuted();
+        parameters[convertIndex(parameterIndex)] = x;
+    }
+
+    public void setNull(int parameterIndex, int sqlType) throws SQLException {
+        checkClosed();
+        checkExecuted();
+        parameters[convertIndex(parameterIndex)] = null;
+    }
+
     public void setLong(int parameterIndex, long x) throws SQLException {
         checkClosed();
         checkExecuted();
@@ -142,10 +178,6 @@ public class MockPreparedStatement
     // Un-implemented methods
     // ----------------------------------------------------------------------
 
-    public void addBatch() throws SQLException {
-        throw new RuntimeException("MockPreparedStatement.addBatch not implemented");
-    }
-
     public void clearParameters() throws SQLException {
         throw new RuntimeException("MockPreparedStatement.clearParameters not implemented");
     }
@@ -225,14 +257,6 @@ public class MockPreparedStatement
         throw new RuntimeException("MockPreparedStatement.setFloat not implemented");
     }
 
-    public void setInt(int arg0, int arg1) throws SQLException {
-        throw new RuntimeException("MockPreparedStatement.setInt not implemented");
-    }
-
-    public void setNull(int arg0, int arg1) throws SQLException {
-        throw new RuntimeException("MockPreparedStatement.setNull not implemented");
-    }
-
     public void setNull(int arg0, int arg1, String arg2) throws SQLException {
         throw new RuntimeException("MockPreparedStatement.setNull not implemented");
     }
@@ -316,10 +340,6 @@ public class MockPreparedStatement
         throw new RuntimeException("MockPreparedStatement.execute not implemented");
     }
 
-    public int[] executeBatch() throws SQLException {
-        throw new RuntimeException("MockPreparedStatement.executeBatch not implemented");
-    }
-
     public ResultSet executeQuery(String arg0) throws SQLException {
         throw new RuntimeException("MockPreparedStatement.executeQuery not implemented");
     }